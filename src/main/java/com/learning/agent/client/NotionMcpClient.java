@@ -8,6 +8,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.learning.agent.config.AppConfigProperties;
 import com.learning.agent.dto.client.NotionCreatedPage;
 import com.learning.agent.dto.client.NotionWritePayload;
+import com.learning.agent.util.Deadline;
 import com.learning.agent.util.McpConfigLoader;
 import com.learning.agent.util.McpConfigLoader.McpServerConfig;
 import lombok.extern.slf4j.Slf4j;
@@ -22,10 +23,13 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Notion MCP 客户端实现
  * 通过 MCP 协议与 Notion API 交互
+ * 所有工具调用共用一个 MCP 进程：只有启动进程和写入请求时持有锁，响应按请求 ID 匹配，
+ * 多个工具调用可以同时等待各自的结果
  */
 @Slf4j
 @Component
@@ -46,6 +50,11 @@ public class NotionMcpClient implements NotionClient {
     private final Map<Integer, CompletableFuture<JsonNode>> pendingRequests = new ConcurrentHashMap<>();
     private volatile boolean connected = false;
 
+    /**
+     * 保护进程的启动、重启和标准输入的写入；等待响应时不持有
+     */
+    private final ReentrantLock processLock = new ReentrantLock();
+
     public NotionMcpClient(ObjectMapper objectMapper, McpConfigLoader configLoader, AppConfigProperties appConfig) {
         this.objectMapper = objectMapper;
         this.configLoader = configLoader;
@@ -437,23 +446,23 @@ public class NotionMcpClient implements NotionClient {
         return block;
     }
 
-    private synchronized JsonNode callTool(String name, Map<String, Object> args) {
+    private JsonNode callTool(String name, Map<String, Object> args) {
         return callToolWithRetry(name, args, 0);
     }
 
     private JsonNode callToolWithRetry(String name, Map<String, Object> args, int attempt) {
-        ensureConnected();
-
-        // 检查进程是否仍在运行
-        if (mcpProcess == null || !mcpProcess.isAlive()) {
-            log.warn("MCP process is not alive, attempting to reconnect...");
-            connected = false;
-            ensureConnected();
-        }
+        // 只使用请求剩余的时间预算；截止时间已过时不再发起调用
+        long timeoutMillis = Deadline.clampMillis(TimeUnit.SECONDS.toMillis(CALL_TIMEOUT_SECONDS), "notion:" + name);
 
         int requestId = requestIdCounter.incrementAndGet();
         CompletableFuture<JsonNode> future = new CompletableFuture<>();
         pendingRequests.put(requestId, future);
+        // 请求被取消时立即结束等待，不必等到超时
+        Deadline deadline = Deadline.current();
+        Deadline.Registration cancellation = Deadline.onCurrentCancel(
+                () -> future.completeExceptionally(deadline.failure("notion:" + name)));
+
+        Process target = null;
 
         try {
             ObjectNode request = objectMapper.createObjectNode();
@@ -469,11 +478,27 @@ public class NotionMcpClient implements NotionClient {
             String requestStr = objectMapper.writeValueAsString(request);
             log.debug("Sending MCP request: {}", requestStr);
 
-            processWriter.write(requestStr);
-            processWriter.newLine();
-            processWriter.flush();
+            processLock.lock();
+            try {
+                ensureConnected();
+
+                // 检查进程是否仍在运行
+                if (mcpProcess == null || !mcpProcess.isAlive()) {
+                    log.warn("MCP process is not alive, attempting to reconnect...");
+                    connected = false;
+                    ensureConnected();
+                }
 
-            JsonNode response = future.get(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                target = mcpProcess;
+                processWriter.write(requestStr);
+                processWriter.newLine();
+                processWriter.flush();
+            } finally {
+                processLock.unlock();
+            }
+
+            // 在锁外等待响应，其他工具调用可以同时发送
+            JsonNode response = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
             log.debug("Received MCP response: {}", response);
 
             if (response.has("error")) {
@@ -482,26 +507,56 @@ public class NotionMcpClient implements NotionClient {
 
             return response.get("result");
         } catch (java.util.concurrent.TimeoutException e) {
-            log.error("MCP call timeout after {}s for tool: {}. Process alive: {}",
-                    CALL_TIMEOUT_SECONDS, name, mcpProcess != null && mcpProcess.isAlive());
+            if (Deadline.currentExpired()) {
+                // 超时来自请求截止时间而不是进程无响应：放弃调用，不重启进程也不重试
+                log.warn("MCP call abandoned at request deadline for tool: {} (request id {})", name, requestId);
+                throw Deadline.currentFailure("notion:" + name);
+            }
+            log.error("MCP call timeout after {}ms for tool: {}. Process alive: {}",
+                    timeoutMillis, name, target != null && target.isAlive());
 
             // 尝试重连和重试
             if (attempt < MAX_RETRY_ATTEMPTS) {
                 log.info("Retrying MCP call (attempt {}/{})", attempt + 1, MAX_RETRY_ATTEMPTS);
-                connected = false;
-                destroyProcess();
+                restartProcess(target);
                 return callToolWithRetry(name, args, attempt + 1);
             }
 
             throw new RuntimeException("MCP call timeout: " + name, e);
+        } catch (Deadline.DeadlineExceededException e) {
+            throw e;
+        } catch (java.util.concurrent.ExecutionException e) {
+            if (e.getCause() instanceof Deadline.DeadlineExceededException cancelled) {
+                log.warn("MCP call abandoned for tool: {} (request id {}): {}", name, requestId, cancelled.getMessage());
+                throw cancelled;
+            }
+            log.error("MCP call failed for tool: {}", name, e);
+            throw new RuntimeException("MCP call failed: " + name, e);
         } catch (Exception e) {
             log.error("MCP call failed for tool: {}", name, e);
             throw new RuntimeException("MCP call failed: " + name, e);
         } finally {
+            // 释放请求 ID；被放弃的请求之后到达的响应会被读取线程忽略
+            cancellation.close();
             pendingRequests.remove(requestId);
         }
     }
 
+    /**
+     * 重启超时请求所在的进程；进程已被其他请求重启时直接复用新进程
+     */
+    private void restartProcess(Process target) {
+        processLock.lock();
+        try {
+            if (mcpProcess == target) {
+                connected = false;
+                destroyProcess();
+            }
+        } finally {
+            processLock.unlock();
+        }
+    }
+
     private void destroyProcess() {
         if (mcpProcess != null) {
             try {
@@ -589,13 +644,14 @@ public class NotionMcpClient implements NotionClient {
         }
 
         pb.redirectErrorStream(false);
-        mcpProcess = pb.start();
+        mcpProcess = startProcess(pb);
 
         processWriter = new BufferedWriter(new OutputStreamWriter(mcpProcess.getOutputStream()));
         processReader = new BufferedReader(new InputStreamReader(mcpProcess.getInputStream()));
 
         // 启动响应读取线程
-        Thread readerThread = new Thread(this::readResponses);
+        BufferedReader reader = processReader;
+        Thread readerThread = new Thread(() -> readResponses(reader));
         readerThread.setDaemon(true);
         readerThread.setName("NotionMCP-ResponseReader");
         readerThread.start();
@@ -613,6 +669,13 @@ public class NotionMcpClient implements NotionClient {
         log.info("Notion MCP connected");
     }
 
+    /**
+     * 启动 MCP 进程
+     */
+    Process startProcess(ProcessBuilder pb) throws IOException {
+        return pb.start();
+    }
+
     private void sendInitialize() throws Exception {
         int requestId = requestIdCounter.incrementAndGet();
         CompletableFuture<JsonNode> future = new CompletableFuture<>();
@@ -648,10 +711,10 @@ public class NotionMcpClient implements NotionClient {
         processWriter.flush();
     }
 
-    private void readResponses() {
+    private void readResponses(BufferedReader reader) {
         try {
             String line;
-            while ((line = processReader.readLine()) != null) {
+            while ((line = reader.readLine()) != null) {
                 log.debug("MCP raw response: {}", line);
                 try {
                     JsonNode response = objectMapper.readTree(line);
@@ -7,6 +7,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.learning.agent.config.AppConfigProperties;
 import com.learning.agent.dto.client.OcrStructuredResult;
 import com.learning.agent.dto.client.OcrTextSpan;
+import com.learning.agent.util.Deadline;
 import com.learning.agent.util.McpConfigLoader;
 import com.learning.agent.util.McpConfigLoader.McpServerConfig;
 import lombok.extern.slf4j.Slf4j;
@@ -19,10 +20,13 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * PaddleOCR MCP 客户端实现
  * 通过 MCP 协议与 PaddleOCR 服务交互
+ * 多个识别请求共用一个 MCP 进程：只有启动进程和写入请求时持有锁，响应按请求 ID 匹配，
+ * 多张图片的识别请求可以同时等待各自的结果
  */
 @Slf4j
 @Component
@@ -40,6 +44,11 @@ public class PaddleOcrMcpClient implements PaddleOcrClient {
     private final Map<Integer, CompletableFuture<JsonNode>> pendingRequests = new ConcurrentHashMap<>();
     private volatile boolean connected = false;
 
+    /**
+     * 保护进程的启动和标准输入的写入；等待响应时不持有
+     */
+    private final ReentrantLock processLock = new ReentrantLock();
+
     public PaddleOcrMcpClient(ObjectMapper objectMapper, McpConfigLoader configLoader, AppConfigProperties appConfig) {
         this.objectMapper = objectMapper;
         this.configLoader = configLoader;
@@ -53,7 +62,12 @@ public class PaddleOcrMcpClient implements PaddleOcrClient {
 
         try {
             // 确保连接已建立，以便 currentPipeline 被正确设置
-            ensureConnected();
+            processLock.lock();
+            try {
+                ensureConnected();
+            } finally {
+                processLock.unlock();
+            }
 
             Map<String, Object> args = new HashMap<>();
             args.put("input_data", normalizedPath);
@@ -65,6 +79,8 @@ public class PaddleOcrMcpClient implements PaddleOcrClient {
             JsonNode result = callToolWithRetry(toolName, args);
             JsonNode rawPayload = parseDetailedResult(result);
             return toStructuredResult(rawPayload, normalizedPath);
+        } catch (Deadline.DeadlineExceededException e) {
+            throw e;
         } catch (Exception e) {
             String errorMsg = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
             log.error("OCR failed: {}", errorMsg, e);
@@ -76,16 +92,20 @@ public class PaddleOcrMcpClient implements PaddleOcrClient {
         Exception lastError = null;
 
         for (int attempt = 1; attempt <= appConfig.getPaddleOcrRequestRetries(); attempt++) {
-            int timeout = appConfig.getPaddleOcrRequestTimeoutMs() * attempt;
+            // 每次重试的超时逐渐增长，但不超过请求剩余的时间预算
+            long timeout = Deadline.clampMillis((long) appConfig.getPaddleOcrRequestTimeoutMs() * attempt, "ocr");
             try {
                 return callTool(name, args, timeout);
             } catch (Exception e) {
                 lastError = e;
                 log.warn("PaddleOcrMcpClient.callTool attempt {} failed: {}", attempt, e.getMessage());
+                if (Deadline.currentExpired()) {
+                    throw Deadline.currentFailure("ocr");
+                }
 
                 if (attempt < appConfig.getPaddleOcrRequestRetries()) {
                     // 指数退避等待
-                    Thread.sleep(1000L * attempt);
+                    Thread.sleep(Deadline.clampMillis(1000L * attempt, "ocr"));
                 }
             }
         }
@@ -96,12 +116,14 @@ public class PaddleOcrMcpClient implements PaddleOcrClient {
         throw new RuntimeException("MCP connection failed after " + appConfig.getPaddleOcrRequestRetries() + " attempts");
     }
 
-    private synchronized JsonNode callTool(String name, Map<String, Object> args, int timeoutMs) throws Exception {
-        ensureConnected();
-
+    private JsonNode callTool(String name, Map<String, Object> args, long timeoutMs) throws Exception {
         int requestId = requestIdCounter.incrementAndGet();
         CompletableFuture<JsonNode> future = new CompletableFuture<>();
         pendingRequests.put(requestId, future);
+        // 请求被取消时立即结束等待，不必等到超时
+        Deadline deadline = Deadline.current();
+        Deadline.Registration cancellation = Deadline.onCurrentCancel(
+                () -> future.completeExceptionally(deadline.failure("ocr")));
 
         try {
             ObjectNode request = objectMapper.createObjectNode();
@@ -117,10 +139,17 @@ public class PaddleOcrMcpClient implements PaddleOcrClient {
             String requestStr = objectMapper.writeValueAsString(request);
             log.debug("Sending OCR MCP request: {}", requestStr);
 
-            processWriter.write(requestStr);
-            processWriter.newLine();
-            processWriter.flush();
+            processLock.lock();
+            try {
+                ensureConnected();
+                processWriter.write(requestStr);
+                processWriter.newLine();
+                processWriter.flush();
+            } finally {
+                processLock.unlock();
+            }
 
+            // 在锁外等待响应，其他请求可以同时发送
             JsonNode response = future.get(timeoutMs, TimeUnit.MILLISECONDS);
 
             if (response.has("error")) {
@@ -143,6 +172,7 @@ public class PaddleOcrMcpClient implements PaddleOcrClient {
 
             return result;
         } finally {
+            cancellation.close();
             pendingRequests.remove(requestId);
         }
     }
@@ -211,7 +241,7 @@ public class PaddleOcrMcpClient implements PaddleOcrClient {
 
         pb.redirectErrorStream(false);
         log.info("Starting PaddleOCR MCP process: {}", String.join(" ", command));
-        mcpProcess = pb.start();
+        mcpProcess = startProcess(pb);
 
         processWriter = new BufferedWriter(new OutputStreamWriter(mcpProcess.getOutputStream()));
         processReader = new BufferedReader(new InputStreamReader(mcpProcess.getInputStream()));
@@ -236,6 +266,13 @@ public class PaddleOcrMcpClient implements PaddleOcrClient {
         log.info("PaddleOCR MCP connected");
     }
 
+    /**
+     * 启动 MCP 进程
+     */
+    Process startProcess(ProcessBuilder pb) throws IOException {
+        return pb.start();
+    }
+
     private void sendInitialize() throws Exception {
         int requestId = requestIdCounter.incrementAndGet();
         CompletableFuture<JsonNode> future = new CompletableFuture<>();
@@ -2,7 +2,9 @@ package com.learning.agent.config.client;
 
 import com.learning.agent.config.AppConfigProperties;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -42,6 +44,23 @@ public class LangChain4jConfig {
                 .build();
     }
 
+    /**
+     * 流式规划模型 - 与规划模型参数相同，逐段返回输出，使任务可以在计划完成前开始执行
+     */
+    @Bean("planningStreamingChatModel")
+    public StreamingChatLanguageModel planningStreamingChatModel() {
+        return OpenAiStreamingChatModel.builder()
+                .baseUrl(appConfig.getWenxinApiBaseUrl())
+                .apiKey(appConfig.getWenxinApiKey())
+                .modelName(appConfig.getWenxinApiModel())
+                .temperature(0.1)
+                .maxTokens(2048)
+                .timeout(Duration.ofSeconds(120))
+                .logRequests(true)
+                .logResponses(true)
+                .build();
+    }
+
     /**
      * 执行模型 - 用于执行任务，支持工具调用
      * 温度适中，平衡创造性和准确性
@@ -2,11 +2,23 @@ package com.learning.agent.controller;
 
 import com.learning.agent.dto.web.AnalyzeResponse;
 import com.learning.agent.service.AnalyzeService;
+import com.learning.agent.service.AnalyzeSlots;
+import com.learning.agent.service.AnalyzeStreamService;
+import com.learning.agent.workflow.WorkflowListener;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * 分析控制器
@@ -17,33 +29,154 @@ import org.springframework.web.multipart.MultipartFile;
 public class AnalyzeController {
 
     private final AnalyzeService analyzeService;
+    private final AnalyzeStreamService analyzeStreamService;
+    private final int maxImages;
+    private final long asyncTimeoutMillis;
+    private final AnalyzeSlots analyzeSlots;
 
-    public AnalyzeController(AnalyzeService analyzeService) {
+    public AnalyzeController(AnalyzeService analyzeService, AnalyzeStreamService analyzeStreamService,
+                             AnalyzeSlots analyzeSlots,
+                             @Value("${agent.analyze.max-images:10}") int maxImages,
+                             @Value("${agent.request.timeout-seconds:300}") long requestTimeoutSeconds) {
         this.analyzeService = analyzeService;
+        this.analyzeStreamService = analyzeStreamService;
+        this.analyzeSlots = analyzeSlots;
+        this.maxImages = maxImages;
+        // 请求截止时间之后工作流会自行结束，留出构建响应的余量
+        this.asyncTimeoutMillis = TimeUnit.SECONDS.toMillis(Math.max(1, requestTimeoutSeconds) + 30);
     }
 
+    /**
+     * 分析图片/文本；多页内容可通过多个 images 字段一次上传，合并为一次规划
+     * 带 sessionId 的追问（不上传图片）复用同一会话上一轮的 OCR 结果和计划
+     * 工作流在虚拟线程上执行，客户端断开连接时取消请求，释放 LLM 和 MCP 调用；
+     * 同时执行的请求数达到上限时返回 503
+     */
     @PostMapping(value = "/analyze", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<AnalyzeResponse> analyze(
+    public DeferredResult<ResponseEntity<AnalyzeResponse>> analyze(
             @RequestParam(value = "image", required = false) MultipartFile image,
+            @RequestParam(value = "images", required = false) List<MultipartFile> images,
             @RequestParam(value = "message", required = false) String message,
             @RequestParam(value = "profile", required = false) String profile,
-            @RequestParam(value = "learnerId", required = false) String learnerId) {
+            @RequestParam(value = "learnerId", required = false) String learnerId,
+            @RequestParam(value = "sessionId", required = false) String sessionId) {
 
         log.info("Analyze request received");
-        log.debug("Parameters - image: {}, message: {}, profile: {}, learnerId: {}",
-                image != null ? image.getOriginalFilename() : "null",
+        List<MultipartFile> allImages = collectImages(image, images);
+        log.debug("Parameters - images: {}, message: {}, profile: {}, learnerId: {}, sessionId: {}",
+                allImages.stream().map(MultipartFile::getOriginalFilename).toList(),
                 message,
                 profile,
-                learnerId);
+                learnerId,
+                sessionId);
+
+        DeferredResult<ResponseEntity<AnalyzeResponse>> result = new DeferredResult<>(asyncTimeoutMillis);
+        String rejection = validate(allImages, message);
+        if (rejection != null) {
+            log.warn("Request rejected: {}", rejection);
+            result.setResult(ResponseEntity.badRequest().body(AnalyzeResponse.error(rejection)));
+            return result;
+        }
+
+        return runWorkflow(result, "analyze",
+                watcher -> analyzeService.analyzeImages(allImages, message, profile, learnerId, sessionId, watcher));
+    }
+
+    /**
+     * 取消执行中的分析请求（包括异步任务，任务 ID 即请求 ID）；已完成节点的检查点保留，之后仍可恢复
+     */
+    @DeleteMapping("/analyze/{requestId}")
+    public ResponseEntity<AnalyzeResponse> cancel(@PathVariable String requestId) {
+        log.info("Cancel request received: {}", requestId);
+
+        if (!analyzeService.cancel(requestId, "cancelled by client")) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(AnalyzeResponse.error("No running request: " + requestId).withRequestId(requestId));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(AnalyzeResponse.error("Request cancelled").withRequestId(requestId));
+    }
+
+    /**
+     * 流式分析：通过 SSE 推送 OCR 结果、任务计划、每个任务的内容和创建的页面
+     * 与 /analyze 共用并发名额，没有空闲名额时推送 error 事件后结束
+     */
+    @PostMapping(value = "/analyze/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter analyzeStream(
+            @RequestParam(value = "image", required = false) MultipartFile image,
+            @RequestParam(value = "images", required = false) List<MultipartFile> images,
+            @RequestParam(value = "message", required = false) String message,
+            @RequestParam(value = "profile", required = false) String profile,
+            @RequestParam(value = "learnerId", required = false) String learnerId,
+            @RequestParam(value = "sessionId", required = false) String sessionId) {
+
+        log.info("Streaming analyze request received");
+        List<MultipartFile> allImages = collectImages(image, images);
+
+        String rejection = validate(allImages, message);
+        if (rejection != null) {
+            log.warn("Request rejected: {}", rejection);
+            return analyzeStreamService.error(rejection);
+        }
+
+        return analyzeStreamService.stream(allImages, message, profile, learnerId, sessionId);
+    }
+
+    /**
+     * 从检查点恢复中断的分析请求
+     * 与 /analyze 一样在虚拟线程上执行并占用并发名额，客户端断开连接时取消恢复的请求
+     */
+    @PostMapping("/analyze/{requestId}/resume")
+    public DeferredResult<ResponseEntity<AnalyzeResponse>> resume(@PathVariable String requestId) {
+        log.info("Resume request received: {}", requestId);
+
+        DeferredResult<ResponseEntity<AnalyzeResponse>> result = new DeferredResult<>(asyncTimeoutMillis);
+        if (!analyzeService.hasCheckpoint(requestId)) {
+            result.setResult(ResponseEntity.status(404)
+                    .body(AnalyzeResponse.error("No checkpoint found for request: " + requestId).withRequestId(requestId)));
+            return result;
+        }
+
+        return runWorkflow(result, "analyze-resume", watcher -> analyzeService.resume(requestId, watcher));
+    }
 
-        if ((image == null || image.isEmpty()) && (message == null || message.isEmpty())) {
-            log.warn("Request rejected: No image file or message provided");
-            return ResponseEntity.badRequest()
-                    .body(AnalyzeResponse.error("No image file or message provided"));
+    /**
+     * 占用一个并发名额后在虚拟线程上执行工作流，没有空闲名额时返回 503；
+     * 客户端断开连接或响应超时时取消请求，工作流结束后归还名额
+     */
+    private DeferredResult<ResponseEntity<AnalyzeResponse>> runWorkflow(
+            DeferredResult<ResponseEntity<AnalyzeResponse>> result, String threadName,
+            Function<WorkflowListener, AnalyzeResponse> workflow) {
+        if (!analyzeSlots.tryAcquire()) {
+            log.warn("Request rejected: too many concurrent analyze requests");
+            result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(AnalyzeResponse.error(AnalyzeSlots.REJECTION)));
+            return result;
         }
 
-        AnalyzeResponse response = analyzeService.analyze(image, message, profile, learnerId);
+        DisconnectWatcher watcher = new DisconnectWatcher();
+        result.onError(error -> watcher.disconnected("client disconnected"));
+        result.onTimeout(() -> {
+            watcher.disconnected("response timeout");
+            result.setErrorResult(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                    .body(AnalyzeResponse.error("Analysis timed out")));
+        });
+
+        Thread.ofVirtual().name(threadName).start(() -> {
+            try {
+                result.setResult(toEntity(workflow.apply(watcher)));
+            } catch (Exception e) {
+                log.error("Analysis failed", e);
+                result.setResult(ResponseEntity.internalServerError().body(AnalyzeResponse.error(e.getMessage())));
+            } finally {
+                analyzeSlots.release();
+            }
+        });
+        return result;
+    }
 
+    private static ResponseEntity<AnalyzeResponse> toEntity(AnalyzeResponse response) {
         if (response.isSuccess()) {
             return ResponseEntity.ok(response);
         } else {
@@ -51,6 +184,62 @@ public class AnalyzeController {
         }
     }
 
+    /**
+     * 记录请求 ID；客户端在请求开始前后断开都会取消对应的请求
+     */
+    private final class DisconnectWatcher implements WorkflowListener {
+
+        private String requestId;
+        private String disconnectReason;
+
+        @Override
+        public void onStarted(String requestId) {
+            String reason;
+            synchronized (this) {
+                this.requestId = requestId;
+                reason = disconnectReason;
+            }
+            if (reason != null) {
+                analyzeService.cancel(requestId, reason);
+            }
+        }
+
+        void disconnected(String reason) {
+            String id;
+            synchronized (this) {
+                disconnectReason = reason;
+                id = requestId;
+            }
+            if (id != null) {
+                analyzeService.cancel(id, reason);
+            }
+        }
+    }
+
+    /**
+     * 合并单图字段 image 和多图字段 images，忽略空文件
+     */
+    static List<MultipartFile> collectImages(MultipartFile image, List<MultipartFile> images) {
+        List<MultipartFile> all = new ArrayList<>();
+        if (image != null && !image.isEmpty()) {
+            all.add(image);
+        }
+        if (images != null) {
+            images.stream().filter(file -> file != null && !file.isEmpty()).forEach(all::add);
+        }
+        return all;
+    }
+
+    private String validate(List<MultipartFile> images, String message) {
+        if (images.isEmpty() && (message == null || message.isEmpty())) {
+            return "No image file or message provided";
+        }
+        if (images.size() > maxImages) {
+            return "Too many images: at most " + maxImages + " per request";
+        }
+        return null;
+    }
+
     @GetMapping("/health")
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("OK");
@@ -0,0 +1,88 @@
+package com.learning.agent.controller;
+
+import com.learning.agent.dto.web.AnalyzeJobResponse;
+import com.learning.agent.service.AnalyzeJobService;
+import com.learning.agent.service.AnalyzeStreamService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+/**
+ * 异步分析任务控制器
+ * 提交后立即返回任务 ID，客户端轮询任务状态或通过 SSE 订阅进度
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/jobs")
+public class AnalyzeJobController {
+
+    private final AnalyzeJobService jobService;
+    private final AnalyzeStreamService streamService;
+    private final int maxImages;
+
+    public AnalyzeJobController(AnalyzeJobService jobService, AnalyzeStreamService streamService,
+                                @Value("${agent.analyze.max-images:10}") int maxImages) {
+        this.jobService = jobService;
+        this.streamService = streamService;
+        this.maxImages = maxImages;
+    }
+
+    /**
+     * 提交异步分析任务，参数与 /analyze 相同：多页内容可通过多个 images 字段一次上传
+     */
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<AnalyzeJobResponse> submit(
+            @RequestParam(value = "image", required = false) MultipartFile image,
+            @RequestParam(value = "images", required = false) List<MultipartFile> images,
+            @RequestParam(value = "message", required = false) String message,
+            @RequestParam(value = "profile", required = false) String profile,
+            @RequestParam(value = "learnerId", required = false) String learnerId) {
+
+        List<MultipartFile> allImages = AnalyzeController.collectImages(image, images);
+        log.info("Analyze job submitted with {} image(s)", allImages.size());
+
+        if (allImages.isEmpty() && (message == null || message.isEmpty())) {
+            log.warn("Request rejected: No image file or message provided");
+            return ResponseEntity.badRequest()
+                    .body(AnalyzeJobResponse.error("No image file or message provided"));
+        }
+        if (allImages.size() > maxImages) {
+            log.warn("Request rejected: {} images exceed the limit of {}", allImages.size(), maxImages);
+            return ResponseEntity.badRequest()
+                    .body(AnalyzeJobResponse.error("Too many images: at most " + maxImages + " per request"));
+        }
+
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(jobService.submit(allImages, message, profile, learnerId));
+        } catch (AnalyzeJobService.QueueFullException e) {
+            log.warn("Request rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "30")
+                    .body(AnalyzeJobResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<AnalyzeJobResponse> get(@PathVariable String jobId) {
+        return jobService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(AnalyzeJobResponse.error("Job not found: " + jobId)));
+    }
+
+    /**
+     * 通过 SSE 订阅任务进度，任务结束时推送最终结果
+     */
+    @GetMapping(value = "/{jobId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@PathVariable String jobId) {
+        return streamService.subscribeJob(jobId);
+    }
+}
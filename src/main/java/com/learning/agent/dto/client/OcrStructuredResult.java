@@ -5,7 +5,11 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * 整页 OCR 结构化结果
@@ -60,6 +64,66 @@ public class OcrStructuredResult {
                 .build();
     }
 
+    /**
+     * 按顺序合并多张图片的 OCR 结果，用于一次规划多页内容
+     * 每张图片的文本以标题分隔，文本片段的 sourceMeta 中记录图片序号（image，从 1 开始）
+     */
+    public static OcrStructuredResult merge(List<OcrStructuredResult> results) {
+        if (results.size() == 1) {
+            return results.getFirst();
+        }
+
+        StringBuilder plain = new StringBuilder();
+        StringBuilder markdown = new StringBuilder();
+        List<List<String>> tables = new ArrayList<>();
+        List<OcrTextSpan> allSpans = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            OcrStructuredResult result = results.get(i);
+            String image = String.valueOf(i + 1);
+            if (i > 0) {
+                plain.append("\n\n");
+                markdown.append("\n\n");
+            }
+            plain.append("[图片 ").append(image).append("]\n").append(nullToEmpty(result.getPlainText()));
+            markdown.append("## 图片 ").append(image).append("\n\n").append(nullToEmpty(result.getMarkdownText()));
+            if (result.getTableData() != null) {
+                tables.addAll(result.getTableData());
+            }
+            if (result.getSpans() != null) {
+                for (OcrTextSpan span : result.getSpans()) {
+                    Map<String, String> meta = span.getSourceMeta() != null
+                            ? new HashMap<>(span.getSourceMeta())
+                            : new HashMap<>();
+                    meta.put("image", image);
+                    allSpans.add(OcrTextSpan.builder()
+                            .lineId(span.getLineId())
+                            .text(span.getText())
+                            .confidence(span.getConfidence())
+                            .boundingBox(span.getBoundingBox())
+                            .classification(span.getClassification())
+                            .sourceMeta(meta)
+                            .build());
+                }
+            }
+        }
+
+        return OcrStructuredResult.builder()
+                .success(results.stream().allMatch(OcrStructuredResult::isSuccess))
+                .originalPath(results.stream()
+                        .map(OcrStructuredResult::getOriginalPath)
+                        .map(OcrStructuredResult::nullToEmpty)
+                        .collect(Collectors.joining(", ")))
+                .plainText(plain.toString())
+                .markdownText(markdown.toString())
+                .tableData(tables)
+                .spans(allSpans)
+                .build();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
     /**
      * 创建失败的 OCR 结果
      */
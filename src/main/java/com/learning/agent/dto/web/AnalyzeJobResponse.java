@@ -0,0 +1,34 @@
+package com.learning.agent.dto.web;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 异步分析任务响应 DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnalyzeJobResponse {
+    private boolean success;
+    private String jobId;
+    private String status; // QUEUED / RUNNING / SUCCEEDED / FAILED
+    private Integer queuePosition; // 排队中的任务前面还有几个任务
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private AnalyzeResponse result; // 任务结束后的分析结果
+    private String error;
+
+    public static AnalyzeJobResponse error(String errorMessage) {
+        return AnalyzeJobResponse.builder()
+                .success(false)
+                .error(errorMessage)
+                .build();
+    }
+}
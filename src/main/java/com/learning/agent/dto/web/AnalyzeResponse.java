@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 分析响应 DTO
@@ -20,6 +21,8 @@ public class AnalyzeResponse {
     private AnalyzeData data;
     private String error;
     private String message; // 兼容前端错误处理
+    private String requestId; // 请求 ID，可用于从检查点恢复
+    private String cachedFrom; // 命中结果缓存时为原始请求 ID
 
     @Data
     @Builder
@@ -30,6 +33,9 @@ public class AnalyzeResponse {
         private List<NotionCreatedPage> createdPages;
         private List<String> contents;
         private List<Step> steps;
+        private Map<String, Long> timings; // 各阶段耗时（毫秒）
+        private boolean degraded; // 是否触发了时延降级（结果可能不完整）
+        private List<String> degradations; // 降级原因
     }
 
     @Data
@@ -50,6 +56,11 @@ public class AnalyzeResponse {
                 .build();
     }
 
+    public AnalyzeResponse withRequestId(String requestId) {
+        this.requestId = requestId;
+        return this;
+    }
+
     public static AnalyzeResponse error(String errorMessage) {
         return AnalyzeResponse.builder()
                 .success(false)
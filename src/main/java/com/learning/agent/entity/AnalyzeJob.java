@@ -0,0 +1,98 @@
+package com.learning.agent.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 异步分析任务实体
+ * 保存任务的请求参数、状态和最终响应
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("analyze_jobs")
+public class AnalyzeJob {
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_SUCCEEDED = "SUCCEEDED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    /**
+     * 多张图片路径在 image_path 列中的分隔符（单张图片时与原来的格式相同）
+     */
+    private static final String IMAGE_PATH_SEPARATOR = "\n";
+
+    /**
+     * 任务 ID，同时作为工作流的 requestId（检查点 ID）
+     */
+    @Id
+    @Column("job_id")
+    private String jobId;
+
+    /**
+     * 状态：QUEUED / RUNNING / SUCCEEDED / FAILED
+     */
+    private String status;
+
+    private String message;
+
+    @Column("profile_json")
+    private String profileJson;
+
+    @Column("learner_id")
+    private String learnerId;
+
+    /**
+     * 提交时保存的图片路径，多张图片按上传顺序以换行分隔，无图片时为空
+     */
+    @Column("image_path")
+    private String imagePath;
+
+    /**
+     * 最终的 AnalyzeResponse JSON
+     */
+    @Column("result_json")
+    private String resultJson;
+
+    private String error;
+
+    @Column("created_at")
+    private LocalDateTime createdAt;
+
+    @Column("started_at")
+    private LocalDateTime startedAt;
+
+    @Column("finished_at")
+    private LocalDateTime finishedAt;
+
+    public boolean isFinished() {
+        return STATUS_SUCCEEDED.equals(status) || STATUS_FAILED.equals(status);
+    }
+
+    /**
+     * 按上传顺序返回已保存的图片路径
+     */
+    public List<String> imagePaths() {
+        if (imagePath == null || imagePath.isEmpty()) {
+            return List.of();
+        }
+        return List.of(imagePath.split(IMAGE_PATH_SEPARATOR));
+    }
+
+    /**
+     * 将多张图片路径合并为 image_path 列的值，无图片时返回 null
+     */
+    public static String joinImagePaths(List<String> imagePaths) {
+        return imagePaths.isEmpty() ? null : String.join(IMAGE_PATH_SEPARATOR, imagePaths);
+    }
+}
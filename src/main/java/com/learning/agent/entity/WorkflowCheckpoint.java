@@ -0,0 +1,54 @@
+package com.learning.agent.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * 工作流检查点实体
+ * 保存某次分析请求最近一次完成节点后的 AgentState 快照
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("workflow_checkpoints")
+public class WorkflowCheckpoint {
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Id
+    @Column("request_id")
+    private String requestId;
+
+    /**
+     * 最近一次完成的节点（ocr、planning、execution:T1 ...）
+     */
+    @Column("last_node")
+    private String lastNode;
+
+    /**
+     * 状态：RUNNING / COMPLETED / FAILED
+     */
+    private String status;
+
+    /**
+     * AgentState 快照 JSON
+     */
+    @Column("state_json")
+    private String stateJson;
+
+    @Column("created_at")
+    private LocalDateTime createdAt;
+
+    @Column("updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -5,6 +5,9 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 学习任务
  * 表示一次流程要执行的任务单
@@ -44,4 +47,15 @@ public class LearningTask {
      * 预估耗时
      */
     private String estimatedDuration;
+
+    /**
+     * 依赖的前置任务编号（可选），为空表示可与其他任务并行执行
+     */
+    @Builder.Default
+    private List<String> dependsOn = new ArrayList<>();
+
+    /**
+     * 是否延迟写入 Notion：执行时只生成内容，所有任务完成后与其他任务的内容合并写入同一个页面
+     */
+    private boolean deferWrite;
 }
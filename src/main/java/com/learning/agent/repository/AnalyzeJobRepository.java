@@ -0,0 +1,69 @@
+package com.learning.agent.repository;
+
+import com.learning.agent.entity.AnalyzeJob;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 异步分析任务仓库
+ * 使用 Spring Data JDBC + SQLite 持久化存储
+ */
+@Repository
+public interface AnalyzeJobRepository extends CrudRepository<AnalyzeJob, String> {
+
+    /**
+     * 新建排队中的任务
+     */
+    @Modifying
+    @Query("""
+            INSERT INTO analyze_jobs (job_id, status, message, profile_json, learner_id, image_path, created_at)
+            VALUES (:jobId, 'QUEUED', :message, :profileJson, :learnerId, :imagePath, :now)
+            """)
+    void insertQueued(@Param("jobId") String jobId,
+                      @Param("message") String message,
+                      @Param("profileJson") String profileJson,
+                      @Param("learnerId") String learnerId,
+                      @Param("imagePath") String imagePath,
+                      @Param("now") LocalDateTime now);
+
+    /**
+     * 标记任务开始执行
+     */
+    @Modifying
+    @Query("UPDATE analyze_jobs SET status = 'RUNNING', started_at = :now WHERE job_id = :jobId")
+    void markRunning(@Param("jobId") String jobId, @Param("now") LocalDateTime now);
+
+    /**
+     * 标记任务结束并保存结果
+     */
+    @Modifying
+    @Query("""
+            UPDATE analyze_jobs
+            SET status = :status, result_json = :resultJson, error = :error, finished_at = :now
+            WHERE job_id = :jobId
+            """)
+    void markFinished(@Param("jobId") String jobId,
+                      @Param("status") String status,
+                      @Param("resultJson") String resultJson,
+                      @Param("error") String error,
+                      @Param("now") LocalDateTime now);
+
+    /**
+     * 查找未完成的任务（排队中或执行中），按提交时间排序
+     */
+    @Query("SELECT * FROM analyze_jobs WHERE status IN ('QUEUED', 'RUNNING') ORDER BY created_at")
+    List<AnalyzeJob> findUnfinished();
+
+    /**
+     * 删除早于指定时间结束的任务
+     */
+    @Modifying
+    @Query("DELETE FROM analyze_jobs WHERE finished_at IS NOT NULL AND finished_at < :before")
+    int deleteFinishedBefore(@Param("before") LocalDateTime before);
+}
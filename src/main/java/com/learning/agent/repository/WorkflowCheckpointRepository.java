@@ -0,0 +1,53 @@
+package com.learning.agent.repository;
+
+import com.learning.agent.entity.WorkflowCheckpoint;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * 工作流检查点仓库
+ * 使用 Spring Data JDBC + SQLite 持久化存储
+ */
+@Repository
+public interface WorkflowCheckpointRepository extends CrudRepository<WorkflowCheckpoint, String> {
+
+    /**
+     * 插入或更新检查点（SQLite UPSERT）
+     */
+    @Modifying
+    @Query("""
+            INSERT INTO workflow_checkpoints (request_id, last_node, status, state_json, created_at, updated_at)
+            VALUES (:requestId, :lastNode, :status, :stateJson, :now, :now)
+            ON CONFLICT(request_id) DO UPDATE SET
+                last_node = excluded.last_node,
+                status = excluded.status,
+                state_json = excluded.state_json,
+                updated_at = excluded.updated_at
+            """)
+    void upsert(@Param("requestId") String requestId,
+                @Param("lastNode") String lastNode,
+                @Param("status") String status,
+                @Param("stateJson") String stateJson,
+                @Param("now") LocalDateTime now);
+
+    /**
+     * 更新检查点状态，保留最近一次快照
+     */
+    @Modifying
+    @Query("UPDATE workflow_checkpoints SET status = :status, updated_at = :now WHERE request_id = :requestId")
+    void updateStatus(@Param("requestId") String requestId,
+                      @Param("status") String status,
+                      @Param("now") LocalDateTime now);
+
+    /**
+     * 删除早于指定时间的检查点
+     */
+    @Modifying
+    @Query("DELETE FROM workflow_checkpoints WHERE updated_at < :before")
+    int deleteOlderThan(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,398 @@
+package com.learning.agent.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.agent.dto.client.NotionCreatedPage;
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.dto.web.AnalyzeJobResponse;
+import com.learning.agent.dto.web.AnalyzeResponse;
+import com.learning.agent.entity.AnalyzeJob;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.repository.AnalyzeJobRepository;
+import com.learning.agent.workflow.TaskOutcome;
+import com.learning.agent.workflow.WorkflowListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步分析任务服务
+ * 提交请求时只保存图片和参数并立即返回任务 ID，由固定数量的工作线程从队列中取出任务执行工作流；
+ * 任务持久化在 SQLite 中，服务重启后未完成的任务重新入队（已有检查点的任务从检查点继续）
+ */
+@Slf4j
+@Service
+public class AnalyzeJobService {
+
+    private final AnalyzeService analyzeService;
+    private final AnalyzeJobRepository repository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final int workerCount;
+    private final int queueCapacity;
+    private final int retentionHours;
+
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    private final Map<String, JobChannel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public AnalyzeJobService(
+            AnalyzeService analyzeService,
+            AnalyzeJobRepository repository,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${agent.jobs.workers:2}") int workerCount,
+            @Value("${agent.jobs.queue-capacity:100}") int queueCapacity,
+            @Value("${agent.jobs.retention-hours:24}") int retentionHours) {
+        this.analyzeService = analyzeService;
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.workerCount = Math.max(1, workerCount);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.retentionHours = retentionHours;
+
+        Gauge.builder("agent.jobs.queue.depth", queue, BlockingQueue::size)
+                .description("排队中的分析任务数")
+                .register(meterRegistry);
+        Gauge.builder("agent.jobs.workers.active", busyWorkers, AtomicInteger::get)
+                .description("正在执行任务的工作线程数")
+                .register(meterRegistry);
+        Gauge.builder("agent.jobs.workers.utilization", busyWorkers, busy -> (double) busy.get() / this.workerCount)
+                .description("工作线程利用率")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("agent.jobs.queue.wait")
+                .description("任务从提交到开始执行的排队时间")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("agent.jobs.rejected")
+                .description("因队列已满被拒绝的任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 任务订阅者：接收工作流进度和最终结果
+     */
+    public interface JobSubscriber extends WorkflowListener {
+
+        void onFinished(AnalyzeResponse response);
+    }
+
+    /**
+     * 队列已满时抛出
+     */
+    public static class QueueFullException extends RuntimeException {
+
+        public QueueFullException(int capacity) {
+            super("Job queue is full (capacity " + capacity + "), please retry later");
+        }
+    }
+
+    /**
+     * 应用启动后恢复未完成的任务并启动工作线程
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        List<AnalyzeJob> unfinished = repository.findUnfinished();
+        for (AnalyzeJob job : unfinished) {
+            channels.computeIfAbsent(job.getJobId(), id -> new JobChannel());
+            queue.add(job.getJobId());
+        }
+        if (!unfinished.isEmpty()) {
+            log.info("Re-queued {} unfinished analyze job(s)", unfinished.size());
+        }
+
+        synchronized (workers) {
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(Thread.ofVirtual().name("analyze-worker-" + i).start(this::workLoop));
+            }
+        }
+        log.info("Started {} analyze job worker(s), queue capacity {}", workerCount, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        synchronized (workers) {
+            workers.forEach(Thread::interrupt);
+            workers.clear();
+        }
+    }
+
+    /**
+     * 提交分析任务，保存图片和参数后立即返回；多张图片与 /analyze 相同，合并为一次规划
+     *
+     * @param images 上传的图片，按上传顺序保存，忽略空文件
+     * @throws QueueFullException 排队任务数达到上限时
+     */
+    public AnalyzeJobResponse submit(List<MultipartFile> images, String message, String profileJson,
+                                     String learnerId) {
+        // 队列已满时不保存图片；保存期间队列可能被占满，入队时再检查一次
+        synchronized (queue) {
+            rejectIfFull();
+        }
+
+        List<String> imagePaths = new ArrayList<>();
+        String jobId = UUID.randomUUID().toString();
+        boolean queued = false;
+        try {
+            for (MultipartFile image : images) {
+                if (image == null || image.isEmpty()) {
+                    continue;
+                }
+                try {
+                    imagePaths.add(analyzeService.saveUploadedFile(image));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to save uploaded image: " + e.getMessage(), e);
+                }
+            }
+            String imagePath = AnalyzeJob.joinImagePaths(imagePaths);
+
+            synchronized (queue) {
+                rejectIfFull();
+                repository.insertQueued(jobId, message, profileJson, learnerId, imagePath, LocalDateTime.now());
+                channels.put(jobId, new JobChannel());
+                queue.add(jobId);
+            }
+            queued = true;
+        } finally {
+            // 没有入队的任务不会再读取已保存的图片
+            if (!queued) {
+                deleteUploads(imagePaths);
+            }
+        }
+        log.info("Analyze job {} queued (depth {})", jobId, queue.size());
+
+        return getJob(jobId).orElseThrow();
+    }
+
+    private void rejectIfFull() {
+        if (queue.size() >= queueCapacity) {
+            rejectedCounter.increment();
+            throw new QueueFullException(queueCapacity);
+        }
+    }
+
+    private static void deleteUploads(List<String> imagePaths) {
+        for (String imagePath : imagePaths) {
+            try {
+                Files.deleteIfExists(Path.of(imagePath));
+            } catch (IOException e) {
+                log.warn("Failed to delete uploaded image {}: {}", imagePath, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 查询任务状态，任务结束后包含分析结果
+     */
+    public Optional<AnalyzeJobResponse> getJob(String jobId) {
+        return repository.findById(jobId).map(this::toResponse);
+    }
+
+    /**
+     * 订阅任务进度；任务已结束时立即回调最终结果
+     *
+     * @return 任务不存在时返回 false
+     */
+    public boolean subscribe(String jobId, JobSubscriber subscriber) {
+        JobChannel channel = channels.get(jobId);
+        if (channel == null) {
+            Optional<AnalyzeJobResponse> job = getJob(jobId);
+            if (job.isEmpty()) {
+                return false;
+            }
+            if (isFinished(job.get())) {
+                subscriber.onFinished(finalResponse(job.get()));
+                return true;
+            }
+            channel = channels.computeIfAbsent(jobId, id -> new JobChannel());
+            channel.subscribe(subscriber);
+
+            // 任务可能在查询和订阅之间结束，再检查一次
+            Optional<AnalyzeJobResponse> latest = getJob(jobId);
+            if (latest.isPresent() && isFinished(latest.get())) {
+                channels.remove(jobId, channel);
+                channel.finish(finalResponse(latest.get()));
+            }
+            return true;
+        }
+        channel.subscribe(subscriber);
+        return true;
+    }
+
+    private static boolean isFinished(AnalyzeJobResponse job) {
+        return AnalyzeJob.STATUS_SUCCEEDED.equals(job.getStatus()) || AnalyzeJob.STATUS_FAILED.equals(job.getStatus());
+    }
+
+    private static AnalyzeResponse finalResponse(AnalyzeJobResponse job) {
+        return job.getResult() != null
+                ? job.getResult()
+                : AnalyzeResponse.error(job.getError()).withRequestId(job.getJobId());
+    }
+
+    private void workLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            String jobId;
+            try {
+                jobId = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            busyWorkers.incrementAndGet();
+            try {
+                runJob(jobId);
+            } catch (Exception e) {
+                log.error("Analyze job {} crashed", jobId, e);
+            } finally {
+                busyWorkers.decrementAndGet();
+            }
+        }
+    }
+
+    void runJob(String jobId) {
+        AnalyzeJob job = repository.findById(jobId).orElse(null);
+        if (job == null || job.isFinished()) {
+            channels.remove(jobId);
+            return;
+        }
+        if (job.getCreatedAt() != null) {
+            waitTimer.record(Duration.between(job.getCreatedAt(), LocalDateTime.now()));
+        }
+
+        repository.markRunning(jobId, LocalDateTime.now());
+        JobChannel channel = channels.computeIfAbsent(jobId, id -> new JobChannel());
+        log.info("Analyze job {} started", jobId);
+
+        AnalyzeResponse response;
+        try {
+            response = analyzeService.hasCheckpoint(jobId)
+                    ? analyzeService.resume(jobId, channel)
+                    : analyzeService.analyzeStored(jobId, job.imagePaths(), job.getMessage(),
+                    job.getProfileJson(), job.getLearnerId(), channel);
+        } catch (Exception e) {
+            log.error("Analyze job {} failed", jobId, e);
+            response = AnalyzeResponse.error(e.getMessage()).withRequestId(jobId);
+        }
+
+        String status = response.isSuccess() ? AnalyzeJob.STATUS_SUCCEEDED : AnalyzeJob.STATUS_FAILED;
+        try {
+            repository.markFinished(jobId, status, objectMapper.writeValueAsString(response),
+                    response.getError(), LocalDateTime.now());
+            repository.deleteFinishedBefore(LocalDateTime.now().minusHours(retentionHours));
+        } catch (Exception e) {
+            log.error("Failed to save result of analyze job {}", jobId, e);
+        }
+        meterRegistry.counter("agent.jobs.completed", "status", status.toLowerCase(Locale.ROOT)).increment();
+        log.info("Analyze job {} finished: {}", jobId, status);
+
+        channels.remove(jobId);
+        channel.finish(response);
+    }
+
+    private AnalyzeJobResponse toResponse(AnalyzeJob job) {
+        AnalyzeResponse result = null;
+        if (job.getResultJson() != null) {
+            try {
+                result = objectMapper.readValue(job.getResultJson(), AnalyzeResponse.class);
+            } catch (Exception e) {
+                log.warn("Failed to parse result of analyze job {}: {}", job.getJobId(), e.getMessage());
+            }
+        }
+
+        Integer position = null;
+        if (AnalyzeJob.STATUS_QUEUED.equals(job.getStatus())) {
+            int index = new ArrayList<>(queue).indexOf(job.getJobId());
+            position = index >= 0 ? index : null;
+        }
+
+        return AnalyzeJobResponse.builder()
+                .success(!AnalyzeJob.STATUS_FAILED.equals(job.getStatus()))
+                .jobId(job.getJobId())
+                .status(job.getStatus())
+                .queuePosition(position)
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .result(result)
+                .error(job.getError())
+                .build();
+    }
+
+    /**
+     * 单个任务的事件通道，将工作流进度转发给所有订阅者
+     */
+    private static final class JobChannel implements WorkflowListener {
+
+        private final List<JobSubscriber> subscribers = new ArrayList<>();
+        private AnalyzeResponse finished;
+
+        synchronized void subscribe(JobSubscriber subscriber) {
+            if (finished != null) {
+                subscriber.onFinished(finished);
+            } else {
+                subscribers.add(subscriber);
+            }
+        }
+
+        synchronized void finish(AnalyzeResponse response) {
+            if (finished != null) {
+                return;
+            }
+            finished = response;
+            subscribers.forEach(subscriber -> subscriber.onFinished(response));
+            subscribers.clear();
+        }
+
+        @Override
+        public synchronized void onStarted(String requestId) {
+            subscribers.forEach(subscriber -> subscriber.onStarted(requestId));
+        }
+
+        @Override
+        public synchronized void onOcrCompleted(OcrStructuredResult ocrResult) {
+            subscribers.forEach(subscriber -> subscriber.onOcrCompleted(ocrResult));
+        }
+
+        @Override
+        public synchronized void onPlanReady(List<LearningTask> tasks) {
+            subscribers.forEach(subscriber -> subscriber.onPlanReady(tasks));
+        }
+
+        @Override
+        public synchronized void onTaskCompleted(TaskOutcome outcome) {
+            subscribers.forEach(subscriber -> subscriber.onTaskCompleted(outcome));
+        }
+
+        @Override
+        public synchronized void onPageCreated(NotionCreatedPage page) {
+            subscribers.forEach(subscriber -> subscriber.onPageCreated(page));
+        }
+    }
+}
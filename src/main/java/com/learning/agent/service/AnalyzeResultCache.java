@@ -0,0 +1,297 @@
+package com.learning.agent.service;
+
+import com.learning.agent.dto.web.AnalyzeResponse;
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.util.Deadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 分析结果缓存
+ * 相同图片、相同问题、相同画像的重复提交直接返回上一次的结果（包括已创建的 Notion 页面），
+ * 容量有上限并按 TTL 过期；并发的相同请求只执行一次，其余请求等待并共享结果
+ * 等待方只等到自己的截止时间，被取消时立即返回；执行方因自身被取消或超时而没有得到结果时不共享该失败，
+ * 由其中一个等待方重新执行
+ * 会话请求的结果与其会话上下文一起缓存，命中缓存的请求据此更新自己的会话
+ */
+@Slf4j
+@Component
+public class AnalyzeResultCache {
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final Map<String, Entry> entries;
+    private final Map<String, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter sharedCounter;
+
+    public AnalyzeResultCache(
+            MeterRegistry meterRegistry,
+            @Value("${agent.cache.enabled:true}") boolean enabled,
+            @Value("${agent.cache.max-entries:200}") int maxEntries,
+            @Value("${agent.cache.ttl-minutes:30}") long ttlMinutes) {
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(Math.max(0, ttlMinutes));
+        // 按访问顺序排列，超过容量时淘汰最久未使用的结果
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AnalyzeResultCache.this.maxEntries;
+            }
+        };
+
+        this.hitCounter = requests(meterRegistry, "hit");
+        this.missCounter = requests(meterRegistry, "miss");
+        this.sharedCounter = requests(meterRegistry, "shared");
+        Gauge.builder("agent.cache.size", this, AnalyzeResultCache::size)
+                .description("缓存的分析结果数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 计算缓存键：图片内容哈希 + 规范化后的问题 + 画像字段
+     *
+     * @param imageContents 按上传顺序排列的图片内容，无图片时为空列表
+     */
+    public static String key(List<byte[]> imageContents, String message, LearnerProfile profile) {
+        return key(imageContents, message, profile, "");
+    }
+
+    /**
+     * 计算缓存键，并区分请求所在的上下文（例如会话的上一轮请求 ID），同一追问在不同上下文下结果不同
+     */
+    public static String key(List<byte[]> imageContents, String message, LearnerProfile profile, String context) {
+        MessageDigest digest = sha256();
+        String joined = String.join("\u0000",
+                imageHashes(imageContents),
+                normalizeMessage(message),
+                nullToEmpty(profile.getLearnerId()),
+                nullToEmpty(profile.getCompetencyLevel()),
+                nullToEmpty(profile.getLearningGoal()),
+                nullToEmpty(profile.getPreferredStyle()),
+                nullToEmpty(context));
+        return HexFormat.of().formatHex(digest.digest(joined.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 按上传顺序排列的图片内容哈希，无图片时为空字符串
+     */
+    public static String imageHashes(List<byte[]> imageContents) {
+        MessageDigest digest = sha256();
+        return imageContents.stream()
+                .map(content -> HexFormat.of().formatHex(digest.digest(content)))
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * 命中缓存时直接返回之前的结果；否则执行 loader，只缓存成功的结果
+     * 同一个键同时只有一个 loader 在执行，其余调用等待它的结果
+     *
+     * @param requestId 当前请求 ID，写入返回的响应
+     */
+    public AnalyzeResponse getOrCompute(String key, String requestId, Supplier<AnalyzeResponse> loader) {
+        return getOrCompute(key, requestId, null, loader);
+    }
+
+    /**
+     * 同 {@link #getOrCompute(String, String, Supplier)}，等待相同请求的结果时最多等到 deadline
+     *
+     * @param deadline 当前请求的截止时间，为空时一直等待；执行 loader 时据此判断失败是否由当前请求自身的取消或超时导致
+     */
+    public AnalyzeResponse getOrCompute(String key, String requestId, Deadline deadline,
+                                        Supplier<AnalyzeResponse> loader) {
+        return getOrComputeWithSession(key, requestId, deadline, () -> new Result(loader.get(), null)).response();
+    }
+
+    /**
+     * 同 {@link #getOrCompute(String, String, Deadline, Supplier)}，结果附带执行时产生的会话上下文
+     * 命中缓存或共享相同请求的结果时 loader 没有执行，调用方需要用返回的会话上下文更新自己的会话
+     */
+    public Result getOrComputeWithSession(String key, String requestId, Deadline deadline, Supplier<Result> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        while (true) {
+            Result cached = get(key);
+            if (cached != null) {
+                hitCounter.increment();
+                log.info("Result cache hit for request {} (original request {})", requestId,
+                        cached.response().getRequestId());
+                return copyFor(cached, requestId);
+            }
+
+            CompletableFuture<Result> flight = new CompletableFuture<>();
+            CompletableFuture<Result> existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                missCounter.increment();
+                return compute(key, flight, deadline, loader);
+            }
+
+            sharedCounter.increment();
+            log.info("Request {} is waiting for an identical in-flight request", requestId);
+            try {
+                return copyFor(await(existing, deadline), requestId);
+            } catch (LeaderAbandonedException e) {
+                log.info("Identical request was cancelled or timed out, request {} retries", requestId);
+            } catch (Deadline.DeadlineExceededException e) {
+                log.info("Request {} stopped waiting for an identical in-flight request: {}", requestId, e.getMessage());
+                return new Result(AnalyzeResponse.error(e.getMessage()).withRequestId(requestId), null);
+            }
+        }
+    }
+
+    private Result compute(String key, CompletableFuture<Result> flight, Deadline deadline,
+                           Supplier<Result> loader) {
+        try {
+            Result result = loader.get();
+            AnalyzeResponse response = result.response();
+            // 降级的部分结果不缓存，相同请求之后可以得到完整结果
+            if (response.isSuccess() && (response.getData() == null || !response.getData().isDegraded())) {
+                put(key, result);
+            }
+            // 当前请求自身被取消或超时导致的失败不共享给等待方
+            if (!response.isSuccess() && deadline != null && deadline.isExpired()) {
+                flight.completeExceptionally(new LeaderAbandonedException());
+            } else {
+                flight.complete(result);
+            }
+            return result;
+        } catch (Deadline.DeadlineExceededException e) {
+            flight.completeExceptionally(new LeaderAbandonedException());
+            throw e;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * 等待进行中的相同请求；当前请求被取消或超过截止时间时抛出 DeadlineExceededException，不影响执行方
+     */
+    private static Result await(CompletableFuture<Result> flight, Deadline deadline) {
+        // 等待各自的副本，取消副本不会取消执行方的结果
+        CompletableFuture<Result> waiting = flight.copy();
+        Deadline.Registration registration = deadline != null ? deadline.onCancel(() -> waiting.cancel(false)) : () -> {
+        };
+        try (registration) {
+            return deadline != null
+                    ? waiting.get(Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS)
+                    : waiting.get();
+        } catch (TimeoutException | CancellationException e) {
+            throw deadline != null ? deadline.failure("result cache") : new IllegalStateException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待相同请求的结果时被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized Result get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.storedAtNanos() > ttlNanos) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.result();
+    }
+
+    private synchronized void put(String key, Result result) {
+        entries.put(key, new Entry(result, System.nanoTime()));
+    }
+
+    /**
+     * 复用之前的分析数据，替换为当前请求 ID 并标记结果来源
+     */
+    private static Result copyFor(Result original, String requestId) {
+        AnalyzeResponse response = original.response();
+        if (!response.isSuccess()) {
+            return new Result(AnalyzeResponse.error(response.getError()).withRequestId(requestId), null);
+        }
+        AnalyzeResponse copy = AnalyzeResponse.success(response.getData()).withRequestId(requestId);
+        copy.setCachedFrom(response.getCachedFrom() != null ? response.getCachedFrom() : response.getRequestId());
+        return new Result(copy, original.session());
+    }
+
+    private static String normalizeMessage(String message) {
+        return message == null ? "" : message.strip().replaceAll("\\s+", " ");
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("agent.cache.requests")
+                .description("分析结果缓存查询次数（hit 命中 / miss 未命中 / shared 共享进行中的请求）")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 分析结果及其会话上下文
+     *
+     * @param session 执行该请求后的会话上下文，不在会话中或执行失败时为空
+     */
+    public record Result(AnalyzeResponse response, ConversationSessionStore.Session session) {
+    }
+
+    private record Entry(Result result, long storedAtNanos) {
+    }
+
+    /**
+     * 执行方因自身被取消或超时而没有得到结果，等待方应重新执行
+     */
+    private static final class LeaderAbandonedException extends RuntimeException {
+
+        private LeaderAbandonedException() {
+            super("Identical in-flight request was cancelled or timed out", null, false, false);
+        }
+    }
+}
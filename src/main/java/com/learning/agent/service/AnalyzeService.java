@@ -3,14 +3,23 @@ package com.learning.agent.service;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.learning.agent.client.NotionClient;
+import com.learning.agent.dto.client.OcrStructuredResult;
 import com.learning.agent.dto.web.AnalyzeResponse;
 import com.learning.agent.dto.web.AnalyzeResponse.AnalyzeData;
 import com.learning.agent.dto.web.AnalyzeResponse.Step;
 import com.learning.agent.workflow.AgentWorkflow;
 import com.learning.agent.workflow.AgentState;
+import com.learning.agent.workflow.ConversationTurn;
+import com.learning.agent.workflow.Payload;
+import com.learning.agent.workflow.PayloadStore;
+import com.learning.agent.workflow.WorkflowCheckpointer;
+import com.learning.agent.workflow.WorkflowListener;
 import com.learning.agent.model.LearnerProfile;
 import com.learning.agent.model.LearningTask;
+import com.learning.agent.util.ConcurrentBranches;
+import com.learning.agent.util.Deadline;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -19,10 +28,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 分析服务
@@ -35,13 +49,31 @@ public class AnalyzeService {
     private final AgentWorkflow workflow;
     private final NotionClient notionClient;
     private final ObjectMapper objectMapper;
+    private final WorkflowCheckpointer checkpointer;
+    private final AnalyzeResultCache resultCache;
+    private final ConversationSessionStore sessions;
+    private final PayloadStore payloadStore;
+    private final Duration requestTimeout;
+
+    /**
+     * 执行中请求的截止时间（按请求 ID），用于取消
+     */
+    private final Map<String, Deadline> inFlight = new ConcurrentHashMap<>();
 
     private static final String UPLOAD_DIR = "uploads";
 
-    public AnalyzeService(AgentWorkflow workflow, NotionClient notionClient, ObjectMapper objectMapper) {
+    public AnalyzeService(AgentWorkflow workflow, NotionClient notionClient, ObjectMapper objectMapper,
+                          WorkflowCheckpointer checkpointer, AnalyzeResultCache resultCache,
+                          ConversationSessionStore sessions, PayloadStore payloadStore,
+                          @Value("${agent.request.timeout-seconds:300}") long requestTimeoutSeconds) {
         this.workflow = workflow;
         this.notionClient = notionClient;
         this.objectMapper = objectMapper;
+        this.checkpointer = checkpointer;
+        this.resultCache = resultCache;
+        this.sessions = sessions;
+        this.payloadStore = payloadStore;
+        this.requestTimeout = Duration.ofSeconds(Math.max(1, requestTimeoutSeconds));
 
         // 确保上传目录存在
         File uploadDir = new File(UPLOAD_DIR);
@@ -54,63 +86,360 @@ public class AnalyzeService {
      * 分析请求
      */
     public AnalyzeResponse analyze(MultipartFile image, String message, String profileJson, String learnerId) {
+        return analyze(image, message, profileJson, learnerId, WorkflowListener.NOOP);
+    }
+
+    /**
+     * 分析请求，并在各节点完成时通知监听器（用于流式推送进度）
+     */
+    public AnalyzeResponse analyze(MultipartFile image, String message, String profileJson, String learnerId,
+                                   WorkflowListener listener) {
+        return analyzeImages(image != null ? List.of(image) : List.of(), message, profileJson, learnerId, listener);
+    }
+
+    /**
+     * 分析多张图片（例如多页作业）：所有图片并发 OCR，合并为一份上下文后只规划一次，
+     * 生成一组任务和页面
+     */
+    public AnalyzeResponse analyzeImages(List<MultipartFile> images, String message, String profileJson,
+                                         String learnerId, WorkflowListener listener) {
+        return analyzeImages(images, message, profileJson, learnerId, null, listener);
+    }
+
+    /**
+     * 在对话会话中分析：同一会话中不带图片的追问复用上一轮的 OCR 结果、父页面和计划结果，
+     * 跳过 OCR 和父页面查找，只规划和执行本次追问需要的任务
+     *
+     * @param sessionId 会话 ID，为空时不使用会话
+     */
+    public AnalyzeResponse analyzeImages(List<MultipartFile> images, String message, String profileJson,
+                                         String learnerId, String sessionId, WorkflowListener listener) {
+        List<ImageSource> imageSources = images.stream()
+                .filter(image -> image != null && !image.isEmpty())
+                .map(this::uploadedImage)
+                .toList();
+        return analyze(UUID.randomUUID().toString(), imageSources, message, profileJson, learnerId, sessionId,
+                listener);
+    }
+
+    /**
+     * 分析已保存的图片（异步任务在提交时已保存上传文件）
+     *
+     * @param requestId  请求 ID，同时用作检查点 ID
+     * @param imagePaths 已保存的图片路径，按上传顺序排列，无图片时为空列表
+     */
+    public AnalyzeResponse analyzeStored(String requestId, List<String> imagePaths, String message,
+                                         String profileJson, String learnerId, WorkflowListener listener) {
+        List<ImageSource> imageSources = imagePaths.stream()
+                .map(AnalyzeService::storedImage)
+                .toList();
+        return analyze(requestId, imageSources, message, profileJson, learnerId, null, listener);
+    }
+
+    private AnalyzeResponse analyze(String requestId, List<ImageSource> imageSources, String message,
+                                    String profileJson, String learnerId, String sessionId,
+                                    WorkflowListener listener) {
+        // 整个请求共用一个截止时间，OCR、Notion、LLM 调用和重试都只使用剩余的预算；
+        // 在通知 started 之前登记，收到请求 ID 的客户端随时可以取消
+        Deadline deadline = Deadline.after(requestTimeout);
+        inFlight.put(requestId, deadline);
         try {
-            // 1. 保存上传的图片
-            String imagePath = "";
-            if (image != null && !image.isEmpty()) {
-                imagePath = saveUploadedFile(image);
-                log.info("Image saved: {}", imagePath);
+            listener.onStarted(requestId);
+            return analyze(requestId, deadline, imageSources, message, profileJson, learnerId, sessionId, listener);
+        } finally {
+            inFlight.remove(requestId, deadline);
+        }
+    }
+
+    private AnalyzeResponse analyze(String requestId, Deadline deadline, List<ImageSource> imageSources,
+                                    String message, String profileJson, String learnerId, String sessionId,
+                                    WorkflowListener listener) {
+        log.info("Processing request {}", requestId);
+        log.info("User Query: {}", message);
+        log.info("Learner ID: {}", learnerId);
+
+        String cacheKey;
+        String imageHashes;
+        LearnerProfile learnerProfile;
+        Optional<ConversationSessionStore.Session> session;
+        try {
+            learnerProfile = parseLearnerProfile(profileJson, learnerId);
+            List<byte[]> imageContents = new ArrayList<>();
+            for (ImageSource imageSource : imageSources) {
+                imageContents.add(imageSource.content());
             }
+            imageHashes = AnalyzeResultCache.imageHashes(imageContents);
+            // 同一会话中不带图片或重新上传相同图片的请求复用上一轮的上下文；上传了不同的图片时开始新的上下文
+            session = sessions.find(learnerId, sessionId, imageHashes);
+            session.ifPresent(s -> log.info("Continuing session {} after request {}", sessionId, s.lastRequestId()));
+            cacheKey = AnalyzeResultCache.key(imageContents, message, learnerProfile,
+                    session.map(ConversationSessionStore.Session::lastRequestId).orElse(""));
+        } catch (Exception e) {
+            log.error("Analysis failed", e);
+            return AnalyzeResponse.error(e.getMessage()).withRequestId(requestId);
+        }
+
+        // 相同图片、问题和画像的重复提交直接复用之前的结果
+        SessionContext context = new SessionContext(imageHashes, session.orElse(null));
+        AnalyzeResultCache.Result result = resultCache.getOrComputeWithSession(cacheKey, requestId, deadline,
+                () -> runAnalysis(requestId, deadline, imageSources, message, learnerProfile, context, listener));
+
+        // 保存会话上下文，下一次追问从这里继续；命中缓存时使用与结果一起缓存的上下文
+        if (result.session() != null) {
+            sessions.update(learnerId, sessionId, result.session());
+        }
+        return result.response();
+    }
+
+    /**
+     * 请求所在的对话会话
+     *
+     * @param session 可以继续的会话，为空时从头执行
+     */
+    private record SessionContext(String imageHashes, ConversationSessionStore.Session session) {
+    }
+
+    private AnalyzeResultCache.Result runAnalysis(String requestId, Deadline deadline, List<ImageSource> imageSources,
+                                        String message, LearnerProfile learnerProfile, SessionContext context,
+                                        WorkflowListener listener) {
+        ConversationSessionStore.Session session = context.session();
+        PayloadStore.Scope payloads = payloadStore.newScope();
+        try {
+            // 1. 规划前并发阶段：每张图片的保存+OCR、父页面查找互不依赖，同时执行
+            //    关键路径为 max(OCR, Notion) 而不是两者之和；任一分支失败会取消其余分支
+            String imagePath = "";
+            Payload<OcrStructuredResult> ocr = null;
+            String parentPageId;
+            Map<String, Long> timings = new LinkedHashMap<>();
 
-            log.info("Processing request");
-            if (!imagePath.isEmpty()) log.info("Image: {}", imagePath);
-            log.info("User Query: {}", message);
-            log.info("Learner ID: {}", learnerId);
+            long prePlanningStart = System.nanoTime();
+            if (session != null) {
+                // 追问：OCR 结果和父页面直接来自会话，不需要规划前的并发阶段
+                parentPageId = session.parentPageId();
+                imagePath = session.imagePath();
+                ocr = session.ocr();
+            } else {
+                try (ConcurrentBranches branches = new ConcurrentBranches()) {
+                    ConcurrentBranches.Branch<String> parentBranch =
+                            branches.fork("notion-parent", () -> Deadline.callWith(deadline, this::findParentPage));
+                    List<ConcurrentBranches.Branch<ImageOcr>> ocrBranches = new ArrayList<>();
+                    for (int i = 0; i < imageSources.size(); i++) {
+                        ImageSource imageSource = imageSources.get(i);
+                        String name = imageSources.size() == 1 ? "ocr" : "ocr-" + (i + 1);
+                        ocrBranches.add(branches.fork(name,
+                                () -> Deadline.callWith(deadline, () -> saveAndRecognize(imageSource))));
+                    }
 
-            // 2. 解析学习者画像
-            LearnerProfile learnerProfile = parseLearnerProfile(profileJson, learnerId);
+                    branches.join();
+
+                    parentPageId = parentBranch.get();
+                    if (!ocrBranches.isEmpty()) {
+                        // 多张图片的识别结果按上传顺序合并，规划节点只调用一次
+                        List<ImageOcr> images = ocrBranches.stream().map(ConcurrentBranches.Branch::get).toList();
+                        imagePath = images.getFirst().imagePath();
+                        ocr = payloads.ocr(OcrStructuredResult.merge(images.stream().map(ImageOcr::ocrResult).toList()));
+                    }
+                    timings.putAll(branches.timingsMillis());
+                }
+            }
+            timings.put("pre-planning", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - prePlanningStart));
+            log.info("Pre-planning completed: {}", timings);
             log.info("Learner Profile: {}", learnerProfile);
 
-            // 3. 查找父页面
-            String parentPageId = findParentPage();
             if (learnerProfile.getLearnerId() == null || learnerProfile.getLearnerId().isEmpty()) {
                 learnerProfile.setLearnerId(parentPageId);
             }
 
-            // 4. 构建初始状态
+            // 2. 构建初始状态（已有 OCR 结果时，工作流中的 OCR 节点会直接跳过）
             AgentState initialState = AgentState.builder()
+                    .requestId(requestId)
+                    .parentPageId(parentPageId)
                     .imagePath(imagePath)
                     .learnerProfile(learnerProfile)
                     .tasks(new ArrayList<>())
                     .userQuery(message != null ? message : "")
+                    .previousTurn(session != null ? session.lastTurn() : null)
+                    .ocr(ocr)
+                    .payloads(payloads)
                     .currentTaskIndex(0)
-                    .generatedContents(new ArrayList<>())
-                    .createdPageIds(new ArrayList<>())
-                    .createdPages(new ArrayList<>())
+                    .stageTimings(timings)
+                    .deadline(deadline)
                     .build();
 
-            // 5. 执行工作流
-            AgentState finalState = workflow.invoke(initialState);
-
-            // 6. 构建响应
-            List<Step> steps = buildSteps(finalState);
+            // 3. 执行工作流
+            AgentState finalState = workflow.invoke(initialState, listener);
 
-            AnalyzeData data = AnalyzeData.builder()
-                    .pageIds(finalState.getCreatedPageIds())
-                    .createdPages(finalState.getCreatedPages())
-                    .contents(finalState.getGeneratedContents())
-                    .steps(steps)
-                    .build();
+            // 4. 本轮的会话上下文，与结果一起返回
+            String imageHashes = session != null ? session.imageHashes() : context.imageHashes();
+            ConversationSessionStore.Session nextSession = new ConversationSessionStore.Session(requestId,
+                    parentPageId, imagePath, imageHashes, ocr, ConversationTurn.of(finalState));
 
-            return AnalyzeResponse.success(data);
+            // 5. 构建响应
+            return new AnalyzeResultCache.Result(toResponse(requestId, finalState, timings), nextSession);
 
+        } catch (Deadline.RequestCancelledException e) {
+            log.info("Request {} cancelled: {}", requestId, e.getMessage());
+            return new AnalyzeResultCache.Result(AnalyzeResponse.error(e.getMessage()).withRequestId(requestId), null);
         } catch (Exception e) {
             log.error("Analysis failed", e);
-            return AnalyzeResponse.error(e.getMessage());
+            return new AnalyzeResultCache.Result(AnalyzeResponse.error(e.getMessage()).withRequestId(requestId), null);
+        } finally {
+            payloads.record();
+        }
+    }
+
+    /**
+     * 取消执行中的请求：正在进行的 LLM 调用被中断，等待中的 MCP 调用立即结束，尚未开始的节点和任务不再执行
+     * 已完成节点的检查点保留，之后仍可恢复
+     *
+     * @return 请求正在执行并已取消时返回 true
+     */
+    public boolean cancel(String requestId, String reason) {
+        Deadline deadline = inFlight.get(requestId);
+        if (deadline == null) {
+            return false;
+        }
+        if (deadline.cancel(reason)) {
+            log.info("Cancelling request {}: {}", requestId, reason);
         }
+        return true;
     }
 
-    private String saveUploadedFile(MultipartFile file) throws IOException {
+    /**
+     * 判断请求是否存在可恢复的检查点
+     */
+    public boolean hasCheckpoint(String requestId) {
+        return checkpointer.load(requestId).isPresent();
+    }
+
+    /**
+     * 从检查点恢复中断的工作流
+     * 从最近完成的节点继续执行；已完成的请求直接返回保存的结果
+     */
+    public AnalyzeResponse resume(String requestId) {
+        return resume(requestId, WorkflowListener.NOOP);
+    }
+
+    /**
+     * 从检查点恢复中断的工作流，并在各节点完成时通知监听器
+     */
+    public AnalyzeResponse resume(String requestId, WorkflowListener listener) {
+        try {
+            Optional<WorkflowCheckpointer.Checkpoint> checkpoint = checkpointer.load(requestId);
+            if (checkpoint.isEmpty()) {
+                return AnalyzeResponse.error("No checkpoint found for request: " + requestId).withRequestId(requestId);
+            }
+
+            AgentState state = checkpoint.get().state();
+            if (checkpoint.get().isCompleted()) {
+                log.info("Request {} already completed, returning saved result", requestId);
+                return toResponse(requestId, state, Map.of());
+            }
+
+            log.info("Resuming request {} after node '{}'", requestId, checkpoint.get().lastNode());
+            // 截止时间不写入检查点，恢复执行时重新计时
+            Deadline deadline = Deadline.after(requestTimeout);
+            state.setDeadline(deadline);
+            PayloadStore.Scope payloads = payloadStore.newScope();
+            state.setPayloads(payloads);
+            if (inFlight.putIfAbsent(requestId, deadline) != null) {
+                return AnalyzeResponse.error("Request is already running: " + requestId).withRequestId(requestId);
+            }
+            try {
+                // 与新请求一样在登记之后通知 started，监听方据此取消恢复的请求
+                listener.onStarted(requestId);
+                AgentState finalState = workflow.invoke(state, listener);
+                return toResponse(requestId, finalState, Map.of());
+            } finally {
+                inFlight.remove(requestId, deadline);
+                payloads.record();
+            }
+        } catch (Deadline.RequestCancelledException e) {
+            log.info("Resumed request {} cancelled: {}", requestId, e.getMessage());
+            return AnalyzeResponse.error(e.getMessage()).withRequestId(requestId);
+        } catch (Exception e) {
+            log.error("Resume failed for request {}", requestId, e);
+            return AnalyzeResponse.error(e.getMessage()).withRequestId(requestId);
+        }
+    }
+
+    private AnalyzeResponse toResponse(String requestId, AgentState finalState, Map<String, Long> timings) {
+        List<Step> steps = buildSteps(finalState);
+
+        Map<String, Long> allTimings = new LinkedHashMap<>(timings);
+        if (finalState.getStageTimings() != null) {
+            allTimings.putAll(finalState.getStageTimings());
+        }
+
+        AnalyzeData data = AnalyzeData.builder()
+                .pageIds(finalState.getCreatedPageIds())
+                .createdPages(finalState.getCreatedPages())
+                .contents(finalState.getGeneratedContents())
+                .steps(steps)
+                .timings(allTimings)
+                .degraded(finalState.getDegradation() != null && finalState.getDegradation().isDegraded())
+                .degradations(finalState.getDegradation() != null ? finalState.getDegradation().reasons() : List.of())
+                .build();
+
+        return AnalyzeResponse.success(data).withRequestId(requestId);
+    }
+
+    /**
+     * 保存上传的图片并执行 OCR
+     */
+    private ImageOcr saveAndRecognize(ImageSource imageSource) throws IOException {
+        String imagePath = imageSource.resolve();
+        log.info("Image saved: {}", imagePath);
+        return new ImageOcr(imagePath, workflow.runOcr(imagePath));
+    }
+
+    private record ImageOcr(String imagePath, OcrStructuredResult ocrResult) {
+    }
+
+    /**
+     * 图片来源：上传文件需要先保存，已保存的图片直接返回路径
+     */
+    private interface ImageSource {
+        String resolve() throws IOException;
+
+        /**
+         * 图片内容，用于计算结果缓存键
+         */
+        byte[] content() throws IOException;
+    }
+
+    private ImageSource uploadedImage(MultipartFile image) {
+        return new ImageSource() {
+            @Override
+            public String resolve() throws IOException {
+                return saveUploadedFile(image);
+            }
+
+            @Override
+            public byte[] content() throws IOException {
+                return image.getBytes();
+            }
+        };
+    }
+
+    private static ImageSource storedImage(String imagePath) {
+        return new ImageSource() {
+            @Override
+            public String resolve() {
+                return imagePath;
+            }
+
+            @Override
+            public byte[] content() throws IOException {
+                return Files.readAllBytes(Path.of(imagePath));
+            }
+        };
+    }
+
+    /**
+     * 保存上传的文件，返回绝对路径
+     */
+    public String saveUploadedFile(MultipartFile file) throws IOException {
         String filename = System.currentTimeMillis() + "-" + file.getOriginalFilename();
         Path path = Paths.get(UPLOAD_DIR, filename);
         Files.write(path, file.getBytes());
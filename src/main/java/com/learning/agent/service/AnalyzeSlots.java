@@ -0,0 +1,42 @@
+package com.learning.agent.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * 分析工作流的并发名额
+ * /analyze、/analyze/stream 和 /analyze/{requestId}/resume 的工作流都在虚拟线程上执行，不占用 Servlet 线程，
+ * 共用这里的名额限制同时执行的工作流数
+ */
+@Component
+public class AnalyzeSlots {
+
+    /**
+     * 没有空闲名额时返回给客户端的错误信息
+     */
+    public static final String REJECTION = "Too many concurrent analyze requests, please retry later";
+
+    private final Semaphore slots;
+
+    public AnalyzeSlots(@Value("${agent.analyze.max-concurrent-requests:200}") int maxConcurrentRequests) {
+        this.slots = new Semaphore(Math.max(1, maxConcurrentRequests));
+    }
+
+    /**
+     * 尝试占用一个名额，不等待
+     *
+     * @return 没有空闲名额时返回 false
+     */
+    public boolean tryAcquire() {
+        return slots.tryAcquire();
+    }
+
+    /**
+     * 工作流结束后归还名额
+     */
+    public void release() {
+        slots.release();
+    }
+}
@@ -0,0 +1,294 @@
+package com.learning.agent.service;
+
+import com.learning.agent.dto.client.NotionCreatedPage;
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.dto.web.AnalyzeResponse;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.workflow.TaskOutcome;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 流式分析服务
+ * 通过 Server-Sent Events 推送工作流进度：started、ocr、plan、task、page，最后推送 result 或 error；
+ * 空闲期间定时发送心跳注释，避免代理断开长连接；客户端断开连接（发送失败或连接出错）时取消对应的分析请求
+ * 流式分析与 /analyze 共用 {@link AnalyzeSlots} 的并发名额
+ */
+@Slf4j
+@Service
+public class AnalyzeStreamService {
+
+    private final AnalyzeService analyzeService;
+    private final AnalyzeJobService jobService;
+    private final AnalyzeSlots analyzeSlots;
+    private final long timeoutMillis;
+    private final long heartbeatSeconds;
+    private final ScheduledExecutorService heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sse-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AnalyzeStreamService(
+            AnalyzeService analyzeService,
+            AnalyzeJobService jobService,
+            AnalyzeSlots analyzeSlots,
+            @Value("${agent.stream.timeout-ms:600000}") long timeoutMillis,
+            @Value("${agent.stream.heartbeat-seconds:15}") long heartbeatSeconds) {
+        this.analyzeService = analyzeService;
+        this.jobService = jobService;
+        this.analyzeSlots = analyzeSlots;
+        this.timeoutMillis = timeoutMillis;
+        this.heartbeatSeconds = Math.max(1, heartbeatSeconds);
+    }
+
+    /**
+     * 启动流式分析，立即返回 SseEmitter，工作流在虚拟线程上执行；没有空闲的并发名额时直接返回错误事件
+     *
+     * @param sessionId 对话会话 ID，为空时不使用会话
+     */
+    public SseEmitter stream(List<MultipartFile> images, String message, String profileJson, String learnerId,
+                             String sessionId) {
+        if (!analyzeSlots.tryAcquire()) {
+            log.warn("Request rejected: too many concurrent analyze requests");
+            return error(AnalyzeSlots.REJECTION);
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        StreamSession session = open(emitter,
+                requestId -> analyzeService.cancel(requestId, "client disconnected"));
+
+        Thread.ofVirtual().name("analyze-stream").start(() -> {
+            try {
+                session.onFinished(analyzeService.analyzeImages(images, message, profileJson, learnerId, sessionId,
+                        session));
+            } catch (Exception e) {
+                log.error("Streaming analysis failed", e);
+                session.onFinished(AnalyzeResponse.error(e.getMessage()));
+            } finally {
+                analyzeSlots.release();
+            }
+        });
+
+        return emitter;
+    }
+
+    /**
+     * 订阅异步任务的进度：推送之后的工作流事件，任务结束时推送 result 或 error
+     */
+    public SseEmitter subscribeJob(String jobId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        // 异步任务独立于订阅连接运行，订阅方断开时不取消任务
+        StreamSession session = open(emitter, requestId -> {
+        });
+        if (!jobService.subscribe(jobId, session)) {
+            session.onFinished(AnalyzeResponse.error("Job not found: " + jobId));
+        }
+        return emitter;
+    }
+
+    private StreamSession open(SseEmitter emitter, Consumer<String> onDisconnect) {
+        StreamSession session = new StreamSession(emitter, onDisconnect);
+        // 调度线程只负责触发，心跳在虚拟线程上发送，个别慢连接不会拖住其他连接的心跳
+        ScheduledFuture<?> heartbeat = heartbeatScheduler.scheduleAtFixedRate(
+                () -> Thread.ofVirtual().name("sse-heartbeat-send").start(session::heartbeat),
+                heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        session.heartbeat = heartbeat;
+        Runnable cleanup = () -> {
+            session.close();
+            heartbeat.cancel(false);
+        };
+        emitter.onCompletion(cleanup);
+        emitter.onTimeout(cleanup);
+        emitter.onError(error -> cleanup.run());
+        return session;
+    }
+
+    /**
+     * 直接返回错误事件并结束流（例如请求参数校验失败）
+     */
+    public SseEmitter error(String errorMessage) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        StreamSession session = new StreamSession(emitter, requestId -> {
+        });
+        session.send("error", AnalyzeResponse.error(errorMessage));
+        session.complete();
+        return emitter;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeatScheduler.shutdownNow();
+    }
+
+    /**
+     * 单个 SSE 连接，将工作流事件转换为 SSE 事件
+     * 任务可能并行完成，发送操作需要加锁（使用 ReentrantLock，发送阻塞时不占住虚拟线程的载体线程）；
+     * 客户端断开后不再发送，并在结果推送前断开时通知 onDisconnect
+     */
+    static final class StreamSession implements AnalyzeJobService.JobSubscriber {
+
+        private final SseEmitter emitter;
+        private final Consumer<String> onDisconnect;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile ScheduledFuture<?> heartbeat;
+        private boolean closed;
+        private boolean finished;
+        private boolean disconnectNotified;
+        private String requestId;
+
+        StreamSession(SseEmitter emitter, Consumer<String> onDisconnect) {
+            this.emitter = emitter;
+            this.onDisconnect = onDisconnect;
+        }
+
+        @Override
+        public void onStarted(String requestId) {
+            lock.lock();
+            try {
+                this.requestId = requestId;
+                // 连接在请求开始前就已断开
+                notifyIfDisconnected();
+            } finally {
+                lock.unlock();
+            }
+            send("started", Map.of("requestId", requestId));
+        }
+
+        @Override
+        public void onOcrCompleted(OcrStructuredResult ocrResult) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("success", ocrResult != null && ocrResult.isSuccess());
+            if (ocrResult != null) {
+                data.put("plainText", ocrResult.getPlainText());
+                data.put("markdownText", ocrResult.getMarkdownText());
+            }
+            send("ocr", data);
+        }
+
+        @Override
+        public void onPlanReady(List<LearningTask> tasks) {
+            send("plan", tasks);
+        }
+
+        @Override
+        public void onTaskCompleted(TaskOutcome outcome) {
+            send("task", Map.of(
+                    "taskId", outcome.taskId() != null ? outcome.taskId() : "",
+                    "contents", outcome.contents()));
+            for (NotionCreatedPage page : outcome.pages()) {
+                onPageCreated(page);
+            }
+        }
+
+        @Override
+        public void onPageCreated(NotionCreatedPage page) {
+            send("page", page);
+        }
+
+        /**
+         * 推送最终结果并结束流
+         */
+        @Override
+        public void onFinished(AnalyzeResponse response) {
+            lock.lock();
+            try {
+                finished = true;
+            } finally {
+                lock.unlock();
+            }
+            if (heartbeat != null) {
+                heartbeat.cancel(false);
+            }
+            send(response.isSuccess() ? "result" : "error", response);
+            complete();
+        }
+
+        /**
+         * 发送心跳注释；正在推送事件或上一次心跳尚未发送完时跳过本次心跳
+         */
+        void heartbeat() {
+            if (!lock.tryLock()) {
+                return;
+            }
+            try {
+                if (closed) {
+                    return;
+                }
+                try {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (IOException | IllegalStateException e) {
+                    closed = true;
+                }
+                notifyIfDisconnected();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void send(String event, Object data) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                try {
+                    emitter.send(SseEmitter.event().name(event).data(data));
+                } catch (IOException | IllegalStateException e) {
+                    log.debug("SSE client disconnected, dropping '{}' event: {}", event, e.getMessage());
+                    closed = true;
+                }
+                notifyIfDisconnected();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void complete() {
+            lock.lock();
+            try {
+                if (!closed) {
+                    closed = true;
+                    emitter.complete();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                notifyIfDisconnected();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 连接已关闭而结果尚未推送时通知一次 onDisconnect；调用方需持有 lock
+         */
+        private void notifyIfDisconnected() {
+            if (closed && !finished && !disconnectNotified && requestId != null) {
+                disconnectNotified = true;
+                onDisconnect.accept(requestId);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.learning.agent.service;
+
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.workflow.ConversationTurn;
+import com.learning.agent.workflow.Payload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话会话存储
+ * 按学习者和会话 ID 保存上一轮的 OCR 结果、父页面和计划结果；同一会话中不带图片的追问直接复用，
+ * 不再重新上传图片、OCR 和查找父页面。容量有上限并按 TTL 过期
+ */
+@Slf4j
+@Component
+public class ConversationSessionStore {
+
+    private final boolean enabled;
+    private final int maxSessions;
+    private final long ttlNanos;
+
+    private final Map<String, Entry> sessions;
+
+    private final Counter continuedCounter;
+    private final Counter newCounter;
+
+    public ConversationSessionStore(
+            MeterRegistry meterRegistry,
+            @Value("${agent.session.enabled:true}") boolean enabled,
+            @Value("${agent.session.max-sessions:200}") int maxSessions,
+            @Value("${agent.session.ttl-minutes:60}") long ttlMinutes) {
+        this.enabled = enabled;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(Math.max(0, ttlMinutes));
+        // 按访问顺序排列，超过容量时淘汰最久未使用的会话
+        this.sessions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ConversationSessionStore.this.maxSessions;
+            }
+        };
+
+        this.continuedCounter = requests(meterRegistry, "continued");
+        this.newCounter = requests(meterRegistry, "new");
+        Gauge.builder("agent.session.size", this, ConversationSessionStore::size)
+                .description("保存的对话会话数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 查找可以继续的会话；没有会话 ID、会话已过期或本次上传了不同的图片（开始新的上下文）时返回空
+     *
+     * @param imageHashes 本次上传图片的内容哈希，没有图片时为空字符串；重新上传相同的图片时仍继续会话
+     */
+    public Optional<Session> find(String learnerId, String sessionId, String imageHashes) {
+        if (!enabled || sessionId == null || sessionId.isBlank()) {
+            return Optional.empty();
+        }
+        Optional<Session> session = Optional.ofNullable(get(key(learnerId, sessionId)))
+                .filter(s -> imageHashes == null || imageHashes.isEmpty() || imageHashes.equals(s.imageHashes()));
+        (session.isPresent() ? continuedCounter : newCounter).increment();
+        return session;
+    }
+
+    /**
+     * 保存会话最新一轮的上下文
+     */
+    public void update(String learnerId, String sessionId, Session session) {
+        if (!enabled || sessionId == null || sessionId.isBlank()) {
+            return;
+        }
+        put(key(learnerId, sessionId), session);
+        log.debug("Session {} updated by request {}", sessionId, session.lastRequestId());
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    private synchronized Session get(String key) {
+        Entry entry = sessions.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.storedAtNanos() > ttlNanos) {
+            sessions.remove(key);
+            return null;
+        }
+        return entry.session();
+    }
+
+    private synchronized void put(String key, Session session) {
+        sessions.put(key, new Entry(session, System.nanoTime()));
+    }
+
+    private static String key(String learnerId, String sessionId) {
+        return (learnerId != null ? learnerId : "") + "\u0000" + sessionId;
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("agent.session.requests")
+                .description("带会话 ID 的请求数（continued 复用上一轮上下文 / new 新会话或上传了不同的图片）")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 会话中最近一轮的上下文
+     *
+     * @param lastRequestId 最近一轮的请求 ID，用于区分同一问题在不同上下文下的结果缓存
+     * @param parentPageId  新建页面使用的 Notion 父页面 ID
+     * @param imagePath     最近一次上传的图片路径
+     * @param imageHashes   最近一次上传图片的内容哈希
+     * @param ocr           最近一次上传图片的 OCR 结果（较大时已溢出到内存映射文件）
+     * @param lastTurn      最近一轮的计划和结果
+     */
+    public record Session(String lastRequestId, String parentPageId, String imagePath, String imageHashes,
+                          Payload<OcrStructuredResult> ocr, ConversationTurn lastTurn) {
+    }
+
+    private record Entry(Session session, long storedAtNanos) {
+    }
+}
@@ -0,0 +1,167 @@
+package com.learning.agent.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 结构化并发分支
+ * 在虚拟线程上同时执行多个相互独立的分支：任一分支失败时立即取消其余分支并抛出该异常，
+ * 所有分支都在作用域关闭前结束，同时记录每个分支的耗时
+ */
+@Slf4j
+public final class ConcurrentBranches implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Branch<?>> branches = new LinkedHashMap<>();
+    private final BlockingQueue<Branch<?>> completed = new LinkedBlockingQueue<>();
+
+    /**
+     * 启动一个分支
+     *
+     * @param name 分支名称，用于日志和耗时统计
+     * @param task 分支任务
+     */
+    public <T> Branch<T> fork(String name, Callable<T> task) {
+        if (branches.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate branch name: " + name);
+        }
+        Branch<T> branch = new Branch<>(name, task);
+        branches.put(name, branch);
+        executor.execute(branch.future);
+        return branch;
+    }
+
+    /**
+     * 等待所有分支完成；任一分支失败时取消其余分支并抛出其异常
+     */
+    public void join() throws InterruptedException {
+        try {
+            for (int done = 0; done < branches.size(); done++) {
+                Branch<?> branch = completed.take();
+                Throwable failure = branch.failure();
+                if (failure != null) {
+                    log.warn("Branch '{}' failed, cancelling the others: {}", branch.name, failure.getMessage());
+                    cancelAll();
+                    throw propagate(failure);
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelAll();
+            throw e;
+        }
+    }
+
+    /**
+     * 各分支的耗时（毫秒），按启动顺序排列
+     */
+    public Map<String, Long> timingsMillis() {
+        Map<String, Long> timings = new LinkedHashMap<>();
+        branches.forEach((name, branch) -> {
+            if (branch.elapsedMillis >= 0) {
+                timings.put(name, branch.elapsedMillis);
+            }
+        });
+        return timings;
+    }
+
+    private void cancelAll() {
+        for (Branch<?> branch : branches.values()) {
+            branch.future.cancel(true);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable failure) {
+        if (failure instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (failure instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(failure.getMessage(), failure);
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+        executor.close();
+    }
+
+    /**
+     * 单个分支句柄
+     */
+    public final class Branch<T> {
+
+        private final String name;
+        private final FutureTask<T> future;
+        private volatile long elapsedMillis = -1;
+
+        private Branch(String name, Callable<T> task) {
+            this.name = name;
+            this.future = new FutureTask<>(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }
+            }) {
+                @Override
+                protected void done() {
+                    completed.add(Branch.this);
+                }
+            };
+        }
+
+        /**
+         * 等待该分支完成并获取结果，用于按启动顺序逐个处理先完成的结果；分支失败时取消其余分支并抛出其异常
+         */
+        public T await() throws InterruptedException {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                log.warn("Branch '{}' failed, cancelling the others: {}", name, e.getCause().getMessage());
+                cancelAll();
+                throw propagate(e.getCause());
+            } catch (CancellationException e) {
+                cancelAll();
+                throw new IllegalStateException("Branch '" + name + "' was cancelled", e);
+            } catch (InterruptedException e) {
+                cancelAll();
+                throw e;
+            }
+        }
+
+        /**
+         * 获取分支结果，只能在 join() 成功返回后调用
+         */
+        public T get() {
+            if (!future.isDone()) {
+                throw new IllegalStateException("Branch '" + name + "' has not completed");
+            }
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                throw propagate(e.getCause());
+            } catch (InterruptedException | CancellationException e) {
+                throw new IllegalStateException("Branch '" + name + "' was cancelled", e);
+            }
+        }
+
+        private Throwable failure() {
+            if (future.isCancelled()) {
+                return new CancellationException("Branch '" + name + "' was cancelled");
+            }
+            try {
+                future.get();
+                return null;
+            } catch (ExecutionException e) {
+                return e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return e;
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.learning.agent.util;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 请求截止时间
+ * 随 AgentState 在工作流中传递，并绑定到执行线程上，供 LLM 调用、MCP 调用和重试循环读取剩余预算；
+ * 截止时间过后不再发起新的调用，正在等待的调用立即放弃。
+ * 请求被取消（客户端主动取消或断开连接）时截止时间立即到期，并执行等待中的调用注册的取消回调
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long startedAtNanos;
+    private final long expiresAtNanos;
+    private final List<Runnable> cancelHooks = new CopyOnWriteArrayList<>();
+    private volatile String cancelReason;
+
+    private Deadline(long startedAtNanos, long expiresAtNanos) {
+        this.startedAtNanos = startedAtNanos;
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static Deadline after(Duration budget) {
+        long now = System.nanoTime();
+        return new Deadline(now, now + budget.toNanos());
+    }
+
+    /**
+     * 当前线程绑定的截止时间，未绑定时为 null
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime());
+    }
+
+    /**
+     * 从创建截止时间（请求开始）起经过的时间
+     */
+    public long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos);
+    }
+
+    public boolean isExpired() {
+        return cancelReason != null || expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    public boolean isCancelled() {
+        return cancelReason != null;
+    }
+
+    /**
+     * 取消请求：截止时间立即到期，并执行所有已注册的取消回调（中断 LLM 调用、结束等待中的 MCP 请求）
+     *
+     * @return 首次取消时返回 true，重复取消返回 false
+     */
+    public boolean cancel(String reason) {
+        synchronized (this) {
+            if (cancelReason != null) {
+                return false;
+            }
+            cancelReason = reason != null ? reason : "cancelled";
+        }
+        for (Runnable hook : cancelHooks) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                // 回调只负责唤醒等待方，失败不影响其余回调
+            }
+        }
+        cancelHooks.clear();
+        return true;
+    }
+
+    /**
+     * 注册取消回调，调用结束后应关闭返回的 Registration；已取消时立即执行
+     */
+    public Registration onCancel(Runnable hook) {
+        synchronized (this) {
+            if (cancelReason == null) {
+                cancelHooks.add(hook);
+                return () -> cancelHooks.remove(hook);
+            }
+        }
+        hook.run();
+        return () -> {
+        };
+    }
+
+    /**
+     * 在当前线程绑定的截止时间上注册取消回调；未绑定时不注册
+     */
+    public static Registration onCurrentCancel(Runnable hook) {
+        Deadline deadline = current();
+        if (deadline == null) {
+            return () -> {
+            };
+        }
+        return deadline.onCancel(hook);
+    }
+
+    /**
+     * 截止时间已过时抛出 DeadlineExceededException（已取消时为 RequestCancelledException）
+     *
+     * @param operation 即将执行的操作，用于错误信息
+     */
+    public void check(String operation) {
+        if (isExpired()) {
+            throw failure(operation);
+        }
+    }
+
+    /**
+     * 到期原因对应的异常：已取消时为 RequestCancelledException，否则为 DeadlineExceededException
+     */
+    public DeadlineExceededException failure(String operation) {
+        String reason = cancelReason;
+        return reason != null ? new RequestCancelledException(operation, reason) : new DeadlineExceededException(operation);
+    }
+
+    /**
+     * 当前线程绑定的截止时间对应的到期异常
+     */
+    public static DeadlineExceededException currentFailure(String operation) {
+        Deadline deadline = current();
+        return deadline != null ? deadline.failure(operation) : new DeadlineExceededException(operation);
+    }
+
+    /**
+     * 将单次调用的超时限制在剩余预算内；当前线程未绑定截止时间时原样返回
+     *
+     * @param timeoutMillis 调用本身配置的超时
+     */
+    public static long clampMillis(long timeoutMillis, String operation) {
+        Deadline deadline = current();
+        if (deadline == null) {
+            return timeoutMillis;
+        }
+        deadline.check(operation);
+        return Math.max(1, Math.min(timeoutMillis, deadline.remainingMillis()));
+    }
+
+    /**
+     * 当前线程的截止时间是否已过
+     */
+    public static boolean currentExpired() {
+        Deadline deadline = current();
+        return deadline != null && deadline.isExpired();
+    }
+
+    /**
+     * 在当前线程绑定截止时间后执行 task，结束后恢复原来的绑定
+     */
+    public static <T> T callWith(Deadline deadline, Callable<T> task) throws Exception {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(deadline);
+        try {
+            return task.call();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * 在当前线程绑定截止时间后执行不抛出受检异常的 task
+     */
+    public static <T> T supplyWith(Deadline deadline, Supplier<T> task) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(deadline);
+        try {
+            return task.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * 在阶段预算内执行 task：绑定一个不晚于当前截止时间的子截止时间，当前请求被取消时子截止时间随之取消
+     * 阶段预算耗尽时 task 内的调用抛出 DeadlineExceededException，调用方可通过 {@link #currentExpired()}
+     * 区分是阶段超时还是整个请求超时
+     */
+    public static <T> T supplyWithBudget(Duration budget, Supplier<T> task) {
+        Deadline parent = current();
+        long now = System.nanoTime();
+        long expiresAt = now + budget.toNanos();
+        if (parent == null) {
+            return supplyWith(new Deadline(now, expiresAt), task);
+        }
+        Deadline stage = new Deadline(now, Math.min(expiresAt, parent.expiresAtNanos));
+        try (Registration ignored = parent.onCancel(() -> stage.cancel(parent.cancelReason))) {
+            return supplyWith(stage, task);
+        }
+    }
+
+    /**
+     * 在剩余预算内执行阻塞调用（例如 LLM 请求）：超时后中断执行线程并抛出 DeadlineExceededException
+     * 当前线程未绑定截止时间时直接执行
+     */
+    public static <T> T callWithin(String operation, Callable<T> call) {
+        Deadline deadline = current();
+        try {
+            if (deadline == null) {
+                return call.call();
+            }
+            deadline.check(operation);
+
+            FutureTask<T> future = new FutureTask<>(() -> callWith(deadline, call));
+            Thread.ofVirtual().name("deadline-" + operation).start(future);
+            // 取消请求时中断执行线程，正在进行的 HTTP 调用随之中止
+            try (Registration ignored = deadline.onCancel(() -> future.cancel(true))) {
+                return future.get(Math.max(1, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | CancellationException e) {
+                future.cancel(true);
+                throw deadline.failure(operation);
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(operation + " interrupted", e);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 取消回调的注册，关闭时移除回调
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * 请求超过截止时间
+     */
+    public static class DeadlineExceededException extends RuntimeException {
+
+        public DeadlineExceededException(String operation) {
+            this("Request deadline exceeded during " + operation, null);
+        }
+
+        protected DeadlineExceededException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * 请求已被取消；作为 DeadlineExceededException 的子类，沿用截止时间的放弃与传播路径
+     */
+    public static class RequestCancelledException extends DeadlineExceededException {
+
+        public RequestCancelledException(String operation, String reason) {
+            super("Request cancelled (" + reason + ") during " + operation, null);
+        }
+    }
+}
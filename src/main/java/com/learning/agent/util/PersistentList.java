@@ -0,0 +1,118 @@
+package com.learning.agent.util;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * 持久化（结构共享）的只追加列表
+ * 每次 plus 返回新版本，旧版本保持不变；多个版本共享同一个底层数组，
+ * 沿同一条历史追加时不复制已有元素，只有从旧版本分叉追加时才复制一次前缀。
+ * 列表本身不可变，可以在线程间直接传递和读取
+ */
+public final class PersistentList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final int MIN_CAPACITY = 8;
+    private static final PersistentList<?> EMPTY = new PersistentList<>(new Buffer(0), 0);
+
+    private final Buffer buffer;
+    private final int size;
+
+    private PersistentList(Buffer buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentList<E> empty() {
+        return (PersistentList<E>) EMPTY;
+    }
+
+    /**
+     * 转换为持久化列表；已经是持久化列表时直接返回，不复制
+     */
+    public static <E> PersistentList<E> from(Collection<? extends E> source) {
+        if (source instanceof PersistentList<?>) {
+            @SuppressWarnings("unchecked")
+            PersistentList<E> list = (PersistentList<E>) source;
+            return list;
+        }
+        if (source == null || source.isEmpty()) {
+            return empty();
+        }
+        return PersistentList.<E>empty().plusAll(source);
+    }
+
+    /**
+     * 追加一个元素，返回新版本
+     */
+    public PersistentList<E> plus(E element) {
+        synchronized (buffer) {
+            if (buffer.used == size && size < buffer.items.length) {
+                buffer.items[size] = element;
+                buffer.used++;
+                return new PersistentList<>(buffer, size + 1);
+            }
+        }
+        Buffer grown = copyPrefix(size + 1);
+        grown.items[size] = element;
+        grown.used = size + 1;
+        return new PersistentList<>(grown, size + 1);
+    }
+
+    /**
+     * 按顺序追加多个元素，返回新版本
+     */
+    public PersistentList<E> plusAll(Collection<? extends E> elements) {
+        if (elements == null || elements.isEmpty()) {
+            return this;
+        }
+        Object[] added = elements.toArray();
+        int newSize = size + added.length;
+        synchronized (buffer) {
+            if (buffer.used == size && newSize <= buffer.items.length) {
+                System.arraycopy(added, 0, buffer.items, size, added.length);
+                buffer.used = newSize;
+                return new PersistentList<>(buffer, newSize);
+            }
+        }
+        Buffer grown = copyPrefix(newSize);
+        System.arraycopy(added, 0, grown.items, size, added.length);
+        grown.used = newSize;
+        return new PersistentList<>(grown, newSize);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        return (E) buffer.items[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 复制当前版本的元素到新的底层数组，容量翻倍以摊薄后续追加的成本
+     */
+    private Buffer copyPrefix(int required) {
+        Buffer grown = new Buffer(Math.max(MIN_CAPACITY, Math.max(required, size * 2)));
+        System.arraycopy(buffer.items, 0, grown.items, 0, size);
+        return grown;
+    }
+
+    /**
+     * 底层数组；used 之前的元素写入后不再修改，只有持有 used 末尾版本的列表可以原地追加
+     */
+    private static final class Buffer {
+        private final Object[] items;
+        private int used;
+
+        private Buffer(int capacity) {
+            this.items = new Object[capacity];
+        }
+    }
+}
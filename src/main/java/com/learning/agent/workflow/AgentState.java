@@ -4,26 +4,65 @@ import com.learning.agent.dto.client.NotionCreatedPage;
 import com.learning.agent.dto.client.OcrStructuredResult;
 import com.learning.agent.model.LearnerProfile;
 import com.learning.agent.model.LearningTask;
+import com.learning.agent.util.Deadline;
+import com.learning.agent.util.PersistentList;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Agent 状态
  * 智能体在工作流中的完整状态
+ * 输出列表是结构共享的持久化列表：追加时替换为新版本而不是原地修改，
+ * 因此快照和 toBuilder 派生的副本只需共享引用，并行分支各自追加互不影响
+ * OCR 结果和生成内容以 {@link Payload} 句柄保存，超过阈值时溢出到内存映射文件（见 {@link PayloadStore}）
+ * <p>
+ * 不可变的只有上述输出列表；其余字段（计划、任务索引、OCR 句柄、合并页面等）仍是普通的可变属性，
+ * 由当前执行节点的线程独占修改。并行任务不共享这些字段，而是各自在 {@link #forkForTask} 派生的副本上执行，
+ * 再通过 {@link #deltaSince} 和 {@link #merge} 合并输出；跨分支共享的只有线程安全的 taskOutcomes、
+ * taskResults、reusedTasks 和 {@link Degradation}
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class AgentState {
 
     // --- Inputs (输入) ---
 
+    /**
+     * 请求 ID，用于检查点持久化与恢复
+     */
+    private String requestId;
+
+    /**
+     * 请求截止时间，LLM 与 MCP 调用只使用剩余预算（不写入检查点，恢复时重新计算）
+     */
+    private Deadline deadline;
+
+    /**
+     * 本请求的大负载作用域（不写入检查点），为空时负载全部保存在堆中
+     */
+    private PayloadStore.Scope payloads;
+
+    /**
+     * 新建页面使用的 Notion 父页面 ID（规划前查找，可能为空）
+     */
+    private String parentPageId;
+
+    /**
+     * 延迟写入任务合并后创建的 Notion 页面，写入完成前为空
+     */
+    private NotionCreatedPage consolidatedPage;
+
     /**
      * 输入图片的路径
      */
@@ -40,17 +79,27 @@ public class AgentState {
     @Builder.Default
     private List<LearningTask> tasks = new ArrayList<>();
 
+    /**
+     * 计划是否仍在流式生成中（tasks 可能只包含前面一部分任务）
+     */
+    private boolean planStreaming;
+
     /**
      * 用户输入的查询 (可选)
      */
     private String userQuery;
 
+    /**
+     * 同一会话上一轮的计划和结果，追问时由会话提供 (可选)
+     */
+    private ConversationTurn previousTurn;
+
     // --- Internal State (内部状态) ---
 
     /**
-     * OCR 识别结果 (由 ocrNode 填充)
+     * OCR 识别结果的句柄 (由 ocrNode 填充)，通过 {@link #getOcrResult()} 读取
      */
-    private OcrStructuredResult ocrResult;
+    private Payload<OcrStructuredResult> ocr;
 
     /**
      * 当前正在处理的任务索引
@@ -58,25 +107,70 @@ public class AgentState {
     @Builder.Default
     private int currentTaskIndex = 0;
 
+    /**
+     * 已完成任务的执行结果（按 taskId），并行执行时用于检查点与恢复，合并进输出后清空
+     */
+    @Builder.Default
+    private Map<String, TaskOutcome> taskOutcomes = new ConcurrentHashMap<>();
+
+    /**
+     * 本次请求中每个任务的结果（按 taskId，执行完成后保留），会话的下一轮据此复用没有变化的任务，
+     * 合并写入 Notion 时据此取各任务的章节内容（不写入检查点，恢复时由检查点中的 taskOutcomes 补齐）
+     */
+    @Builder.Default
+    private Map<String, TaskOutcome> taskResults = new ConcurrentHashMap<>();
+
+    /**
+     * 本次请求中复用了会话上一轮结果（不再执行）的任务 ID，只属于本次请求，不修改计划中的任务
+     */
+    @Builder.Default
+    private Set<String> reusedTasks = ConcurrentHashMap.newKeySet();
+
     // --- Outputs (输出) ---
 
     /**
      * 针对每个任务生成的 Markdown 内容
      */
     @Builder.Default
-    private List<String> generatedContents = new ArrayList<>();
+    private List<String> generatedContents = PayloadList.empty();
 
     /**
      * 在 Notion 中创建的页面 ID 列表
      */
     @Builder.Default
-    private List<String> createdPageIds = new ArrayList<>();
+    private List<String> createdPageIds = PersistentList.empty();
 
     /**
      * 在 Notion 中创建的页面列表（包含可选 URL），用于在前端展示可点击链接
      */
     @Builder.Default
-    private List<NotionCreatedPage> createdPages = new ArrayList<>();
+    private List<NotionCreatedPage> createdPages = PersistentList.empty();
+
+    /**
+     * 时延降级记录，并行任务分支共享同一个实例
+     */
+    @Builder.Default
+    private Degradation degradation = new Degradation();
+
+    /**
+     * 各阶段耗时（毫秒），例如规划前并发阶段中每个分支的耗时
+     */
+    @Builder.Default
+    private Map<String, Long> stageTimings = new LinkedHashMap<>();
+
+    /**
+     * OCR 识别结果，已溢出时从映射文件解码
+     */
+    public OcrStructuredResult getOcrResult() {
+        return ocr != null ? ocr.get() : null;
+    }
+
+    /**
+     * 设置 OCR 识别结果，超过阈值时溢出到映射文件
+     */
+    public void setOcrResult(OcrStructuredResult ocrResult) {
+        this.ocr = ocrResult == null ? null : payloads != null ? payloads.ocr(ocrResult) : Payload.inMemory(ocrResult);
+    }
 
     /**
      * 检查是否还有更多任务需要执行
@@ -95,6 +189,20 @@ public class AgentState {
         return null;
     }
 
+    /**
+     * 任务在本次请求中是否延迟写入：计划中标记的，或因时延降级改为只生成内容的
+     */
+    public boolean isDeferWrite(LearningTask task) {
+        return task.isDeferWrite() || (degradation != null && degradation.isDeferred(task.getTaskId()));
+    }
+
+    /**
+     * 任务在本次请求中是否复用了会话上一轮的结果
+     */
+    public boolean isReused(LearningTask task) {
+        return task.getTaskId() != null && reusedTasks.contains(task.getTaskId());
+    }
+
     /**
      * 移动到下一个任务
      */
@@ -106,23 +214,64 @@ public class AgentState {
      * 添加生成的内容
      */
     public void addGeneratedContent(String content) {
-        if (generatedContents == null) {
-            generatedContents = new ArrayList<>();
-        }
-        generatedContents.add(content);
+        generatedContents = PayloadList.from(generatedContents)
+                .plus(payloads != null ? payloads.text(content) : Payload.inMemory(content));
     }
 
     /**
      * 添加创建的页面
      */
     public void addCreatedPage(String pageId, String url) {
-        if (createdPageIds == null) {
-            createdPageIds = new ArrayList<>();
-        }
-        if (createdPages == null) {
-            createdPages = new ArrayList<>();
+        createdPageIds = PersistentList.from(createdPageIds).plus(pageId);
+        createdPages = PersistentList.from(createdPages).plus(NotionCreatedPage.builder().id(pageId).url(url).build());
+    }
+
+    /**
+     * 合并一个任务的执行结果（增量），按顺序追加其内容和页面
+     */
+    public void merge(TaskOutcome delta) {
+        generatedContents = PayloadList.from(generatedContents).plusAll(delta.contents());
+        List<String> pageIds = delta.pages().stream().map(NotionCreatedPage::getId).toList();
+        createdPageIds = PersistentList.from(createdPageIds).plusAll(pageIds);
+        createdPages = PersistentList.from(createdPages).plusAll(delta.pages());
+    }
+
+    /**
+     * 派生一个执行单个任务的分支状态：共享输入和计划，输出只包含给定的前序结果，
+     * 分支执行完成后通过 {@link #deltaSince} 取出增量再 merge 回主状态
+     */
+    public AgentState forkForTask(int taskIndex, List<String> visibleContents) {
+        return toBuilder()
+                .currentTaskIndex(taskIndex)
+                .planStreaming(false)
+                .taskOutcomes(new ConcurrentHashMap<>())
+                .taskResults(new ConcurrentHashMap<>())
+                .generatedContents(PayloadList.from(visibleContents))
+                .createdPageIds(PersistentList.empty())
+                .createdPages(PersistentList.empty())
+                .stageTimings(new LinkedHashMap<>())
+                .build();
+    }
+
+    /**
+     * 分支状态相对于派生时的增量：派生后追加的内容和创建的页面
+     */
+    public TaskOutcome deltaSince(String taskId, int visibleContentCount) {
+        PayloadList contents = PayloadList.from(generatedContents == null ? List.of() : generatedContents);
+        int from = Math.min(visibleContentCount, contents.size());
+        return new TaskOutcome(taskId,
+                contents.subList(from, contents.size()),
+                createdPages == null ? List.of() : PersistentList.from(createdPages));
+    }
+
+    /**
+     * 构建器：ocrResult 作为堆内负载保存，需要溢出时使用 ocr(payload)
+     */
+    public static class AgentStateBuilder {
+
+        public AgentStateBuilder ocrResult(OcrStructuredResult ocrResult) {
+            this.ocr = ocrResult != null ? Payload.inMemory(ocrResult) : null;
+            return this;
         }
-        createdPageIds.add(pageId);
-        createdPages.add(NotionCreatedPage.builder().id(pageId).url(url).build());
     }
 }
@@ -0,0 +1,106 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.dto.client.NotionCreatedPage;
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.util.PersistentList;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AgentState 的精简快照
+ * 只保留恢复执行所需的字段；OCR 结果只保留文本部分，不保存逐行片段和表格。
+ * 输出列表是不可变的持久化列表，直接共享引用而不复制
+ */
+public record AgentStateSnapshot(
+        String requestId,
+        String parentPageId,
+        NotionCreatedPage consolidatedPage,
+        String imagePath,
+        LearnerProfile learnerProfile,
+        String userQuery,
+        ConversationTurn previousTurn,
+        OcrStructuredResult ocrResult,
+        List<LearningTask> tasks,
+        boolean planStreaming,
+        int currentTaskIndex,
+        Map<String, TaskOutcome> taskOutcomes,
+        List<String> generatedContents,
+        List<NotionCreatedPage> createdPages,
+        Map<String, Long> stageTimings,
+        List<String> degradations,
+        List<String> deferredTasks,
+        List<String> reusedTasks
+) {
+
+    /**
+     * 从当前状态生成快照
+     */
+    public static AgentStateSnapshot of(AgentState state) {
+        OcrStructuredResult ocr = state.getOcrResult();
+        OcrStructuredResult compactOcr = ocr == null ? null : OcrStructuredResult.builder()
+                .success(ocr.isSuccess())
+                .originalPath(ocr.getOriginalPath())
+                .plainText(ocr.getPlainText())
+                .markdownText(ocr.getMarkdownText())
+                .tableData(List.of())
+                .spans(List.of())
+                .build();
+
+        return new AgentStateSnapshot(
+                state.getRequestId(),
+                state.getParentPageId(),
+                state.getConsolidatedPage(),
+                state.getImagePath(),
+                state.getLearnerProfile(),
+                state.getUserQuery(),
+                state.getPreviousTurn(),
+                compactOcr,
+                new ArrayList<>(state.getTasks()),
+                state.isPlanStreaming(),
+                state.getCurrentTaskIndex(),
+                new LinkedHashMap<>(state.getTaskOutcomes()),
+                PayloadList.from(state.getGeneratedContents()),
+                PersistentList.from(state.getCreatedPages()),
+                new LinkedHashMap<>(state.getStageTimings()),
+                state.getDegradation() != null ? state.getDegradation().reasons() : List.of(),
+                state.getDegradation() != null ? state.getDegradation().deferredTasks() : List.of(),
+                new ArrayList<>(state.getReusedTasks()));
+    }
+
+    /**
+     * 从快照恢复状态
+     */
+    public AgentState toState() {
+        AgentState state = AgentState.builder()
+                .requestId(requestId)
+                .parentPageId(parentPageId)
+                .consolidatedPage(consolidatedPage)
+                .imagePath(imagePath)
+                .learnerProfile(learnerProfile)
+                .userQuery(userQuery)
+                .previousTurn(previousTurn)
+                .ocrResult(ocrResult)
+                .tasks(tasks != null ? new ArrayList<>(tasks) : new ArrayList<>())
+                .planStreaming(planStreaming)
+                .currentTaskIndex(currentTaskIndex)
+                .generatedContents(PayloadList.from(generatedContents))
+                .stageTimings(stageTimings != null ? new LinkedHashMap<>(stageTimings) : new LinkedHashMap<>())
+                .degradation(Degradation.restore(degradations, deferredTasks))
+                .build();
+        if (taskOutcomes != null) {
+            state.getTaskOutcomes().putAll(taskOutcomes);
+        }
+        if (reusedTasks != null) {
+            state.getReusedTasks().addAll(reusedTasks);
+        }
+        if (createdPages != null) {
+            state.merge(new TaskOutcome(null, List.of(), createdPages));
+        }
+        return state;
+    }
+}
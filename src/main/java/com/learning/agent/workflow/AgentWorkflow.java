@@ -1,43 +1,155 @@
 package com.learning.agent.workflow;
 
+import com.learning.agent.dto.client.NotionCreatedPage;
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.util.Deadline;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * 工作流执行器
- * 类似 LangGraph 的工作流编排，按顺序执行节点
+ * 类似 LangGraph 的工作流编排：节点和条件边在启动时编译为 WorkflowGraph，每次请求只沿图执行
  */
 @Slf4j
 @Component
 public class AgentWorkflow {
 
-    private final WorkflowNodes nodes;
+    static final String NODE_PARALLEL_EXECUTION = "parallel-execution";
+    static final String NODE_STREAMING_PLANNING = "streaming-planning";
+    static final String NODE_NOTION_WRITE = "notion-write";
+
+    private final WorkflowCheckpointer checkpointer;
+    private final WorkflowNode ocrNode;
+    private final WorkflowGraph graph;
+
+    public AgentWorkflow(WorkflowNodes nodes, ParallelTaskExecutor taskExecutor, WorkflowCheckpointer checkpointer,
+                         WorkflowMetrics metrics, FairTaskScheduler scheduler, NotionWriteConsolidator consolidator,
+                         LatencySlo slo, PlanningFastPath fastPath, PlanDiff planDiff) {
+        this.checkpointer = checkpointer;
+        this.ocrNode = withDeadline(WorkflowMetrics.NODE_OCR,
+                metrics.instrument(WorkflowMetrics.NODE_OCR, nodes.createOcrNode()));
+
+        // 每个任务执行前向全局调度器申请名额，按优先级和学习者公平排队；落后于时延目标时限制剩余任务
+        WorkflowNode executionNode = withDeadline(WorkflowMetrics.NODE_EXECUTION, slo.execution(scheduler.gate(
+                metrics.instrument(WorkflowMetrics.NODE_EXECUTION, nodes.createExecutionNode()))));
+
+        // 简单请求直接生成单任务计划；规划超出预算时降级为启发式计划；规划后标记可以合并写入 Notion 的任务，
+        // 并复用会话上一轮中没有变化的任务；从规划中途的检查点恢复时，只复用与检查点中一致的已完成任务
+        WorkflowNode planningNode = withDeadline(WorkflowMetrics.NODE_PLANNING, metrics.instrument(
+                WorkflowMetrics.NODE_PLANNING, fastPath.planning(slo.planning(nodes.createPlanningNode()))));
+        WorkflowNode consolidatingPlanning = state -> {
+            CheckpointedPlan checkpointed = CheckpointedPlan.take(state);
+            AgentState result = planningNode.process(state);
+            checkpointed.restore(result);
+            result.getTasks().forEach(consolidator::mark);
+            planDiff.reuse(result);
+            return result;
+        };
 
-    public AgentWorkflow(WorkflowNodes nodes) {
-        this.nodes = nodes;
+        // START -> [OCR] -> Planning -> Execution (循环) / Parallel Execution -> [Notion Write] -> END
+        // 流式规划时：START -> [OCR] -> Streaming Planning（边规划边执行） -> [Notion Write] -> END
+        WorkflowGraph.Router afterExecution = state -> consolidator.hasPendingWrite(state)
+                ? NODE_NOTION_WRITE
+                : WorkflowGraph.END;
+        // 走快速通道的请求不需要流式规划
+        WorkflowGraph.Router planningRoute = state -> nodes.isStreamingPlanning()
+                && (state.getTasks().isEmpty() || state.isPlanStreaming())
+                && !fastPath.applies(state)
+                ? NODE_STREAMING_PLANNING
+                : WorkflowMetrics.NODE_PLANNING;
+        this.graph = WorkflowGraph.builder()
+                .node(WorkflowMetrics.NODE_OCR, ocrNode)
+                .node(WorkflowMetrics.NODE_PLANNING, consolidatingPlanning)
+                .node(WorkflowMetrics.NODE_EXECUTION, sequentialTask(executionNode))
+                .node(NODE_PARALLEL_EXECUTION, (state, observer) -> taskExecutor.executeAll(state, executionNode,
+                        outcome -> observer.onTaskCompleted(state, outcome)))
+                .node(NODE_STREAMING_PLANNING,
+                        streamingPlanning(nodes, taskExecutor, executionNode, metrics, consolidator, slo, fastPath,
+                                planDiff))
+                .node(NODE_NOTION_WRITE, withDeadline(NODE_NOTION_WRITE, planDiff.notionWrite(consolidator::write)))
+                // 没有图片时跳过 OCR
+                .conditionalEdge(WorkflowGraph.START,
+                        state -> hasImage(state) ? WorkflowMetrics.NODE_OCR : planningRoute.route(state),
+                        WorkflowMetrics.NODE_OCR, WorkflowMetrics.NODE_PLANNING, NODE_STREAMING_PLANNING)
+                .conditionalEdge(WorkflowMetrics.NODE_OCR, planningRoute,
+                        WorkflowMetrics.NODE_PLANNING, NODE_STREAMING_PLANNING)
+                // 无依赖的任务并行执行，有依赖的任务等待前置任务完成；只剩一个任务或并发数为 1 时逐个执行
+                .conditionalEdge(WorkflowMetrics.NODE_PLANNING, state -> {
+                            if (!state.hasMoreTasks()) {
+                                return afterExecution.route(state);
+                            }
+                            boolean parallel = taskExecutor.getMaxParallelTasks() > 1
+                                    && state.getTasks().size() - state.getCurrentTaskIndex() > 1;
+                            return parallel ? NODE_PARALLEL_EXECUTION : WorkflowMetrics.NODE_EXECUTION;
+                        },
+                        WorkflowMetrics.NODE_EXECUTION, NODE_PARALLEL_EXECUTION, NODE_NOTION_WRITE, WorkflowGraph.END)
+                .conditionalEdge(WorkflowMetrics.NODE_EXECUTION,
+                        state -> state.hasMoreTasks() ? WorkflowMetrics.NODE_EXECUTION : afterExecution.route(state),
+                        WorkflowMetrics.NODE_EXECUTION, NODE_NOTION_WRITE, WorkflowGraph.END)
+                .conditionalEdge(NODE_PARALLEL_EXECUTION, afterExecution, NODE_NOTION_WRITE, WorkflowGraph.END)
+                .conditionalEdge(NODE_STREAMING_PLANNING, afterExecution, NODE_NOTION_WRITE, WorkflowGraph.END)
+                .edge(NODE_NOTION_WRITE, WorkflowGraph.END)
+                .compile(metrics);
     }
 
     /**
      * 执行完整的工作流
-     * OCR -> Planning -> Execution (循环直到所有任务完成)
+     * OCR -> Planning -> Execution (按依赖关系并行执行，直到所有任务完成)
+     * 每个节点完成后保存检查点；传入从检查点恢复的状态时，已完成的节点和任务会被跳过
      */
     public AgentState invoke(AgentState initialState) {
+        return invoke(initialState, WorkflowListener.NOOP);
+    }
+
+    /**
+     * 执行完整的工作流，并在每个节点完成时通知监听器
+     */
+    public AgentState invoke(AgentState initialState, WorkflowListener listener) {
         log.info("=== Starting Agent Workflow ===");
 
         AgentState state = initialState;
 
-        // 1. OCR Node
-        state = nodes.createOcrNode().process(state);
+        try {
+            state = graph.run(initialState, new WorkflowGraph.Observer() {
+                @Override
+                public void onNodeCompleted(String node, AgentState current) {
+                    if (WorkflowMetrics.NODE_OCR.equals(node)) {
+                        checkpointer.save(current, "ocr");
+                        OcrStructuredResult ocrResult = current.getOcrResult();
+                        fireEvent("ocr", () -> listener.onOcrCompleted(ocrResult));
+                    } else if (WorkflowMetrics.NODE_PLANNING.equals(node)) {
+                        checkpointer.save(current, "planning");
+                        List<LearningTask> tasks = current.getTasks() != null
+                                ? List.copyOf(current.getTasks())
+                                : List.of();
+                        fireEvent("plan", () -> listener.onPlanReady(tasks));
+                    } else if (NODE_NOTION_WRITE.equals(node)) {
+                        checkpointer.save(current, NODE_NOTION_WRITE);
+                        NotionCreatedPage page = current.getConsolidatedPage();
+                        if (page != null) {
+                            fireEvent("page", () -> listener.onPageCreated(page));
+                        }
+                    }
+                }
 
-        // 2. Planning Node
-        state = nodes.createPlanningNode().process(state);
+                @Override
+                public void onTaskCompleted(AgentState current, TaskOutcome outcome) {
+                    if (outcome.taskId() != null) {
+                        current.getTaskResults().put(outcome.taskId(), outcome);
+                    }
+                    checkpointer.save(current, "execution:" + outcome.taskId());
+                    fireEvent("task", () -> listener.onTaskCompleted(outcome));
+                }
+            });
 
-        // 3. Execution Node (循环执行直到所有任务完成)
-        if (state.hasMoreTasks()) {
-            WorkflowNode executionNode = nodes.createExecutionNode();
-            while (state.hasMoreTasks()) {
-                state = executionNode.process(state);
-            }
+            checkpointer.complete(state);
+        } catch (RuntimeException e) {
+            checkpointer.fail(state);
+            throw e;
         }
 
         log.info("=== Workflow Completed ===");
@@ -46,4 +158,109 @@ public class AgentWorkflow {
 
         return state;
     }
+
+    /**
+     * 单独执行 OCR 节点
+     * 供规划前的并发阶段提前识别图片，invoke 时 OCR 节点会复用该结果
+     */
+    public OcrStructuredResult runOcr(String imagePath) {
+        AgentState state = AgentState.builder().imagePath(imagePath).build();
+        return ocrNode.process(state).getOcrResult();
+    }
+
+    /**
+     * 逐个执行任务，执行后报告该任务新增的内容和页面；taskOutcomes 中已有结果的任务直接合并，不再执行
+     */
+    private static WorkflowGraph.GraphNode sequentialTask(WorkflowNode executionNode) {
+        return (state, observer) -> {
+            String taskId = state.getCurrentTask().getTaskId();
+            TaskOutcome previous = taskId != null ? state.getTaskOutcomes().remove(taskId) : null;
+            if (previous != null) {
+                log.info("Task {} already completed, reusing its result", taskId);
+                state.getTaskResults().put(taskId, previous);
+                state.merge(previous);
+                state.moveToNextTask();
+                return state;
+            }
+            int contentsBefore = state.getGeneratedContents().size();
+            int pagesBefore = state.getCreatedPages().size();
+            AgentState result = executionNode.process(state);
+            observer.onTaskCompleted(result, new TaskOutcome(taskId,
+                    addedSince(result.getGeneratedContents(), contentsBefore),
+                    addedSince(result.getCreatedPages(), pagesBefore)));
+            return result;
+        };
+    }
+
+    /**
+     * 流式规划：每解析出一个任务就交给并行执行器调度，规划尾部与前面任务的执行重叠
+     * 计划输出完整时保存规划检查点并推送计划，此时前面的任务可能已经完成；
+     * 规划超出预算时保留已产出的任务，一个任务都没有时改为启发式任务；
+     * 从规划中途的检查点恢复时，新产出的任务与检查点中一致才复用其结果
+     */
+    private static WorkflowGraph.GraphNode streamingPlanning(WorkflowNodes nodes, ParallelTaskExecutor taskExecutor,
+                                                             WorkflowNode executionNode, WorkflowMetrics metrics,
+                                                             NotionWriteConsolidator consolidator, LatencySlo slo,
+                                                             PlanningFastPath fastPath, PlanDiff planDiff) {
+        return (state, observer) -> {
+            CheckpointedPlan checkpointed = CheckpointedPlan.take(state);
+            return taskExecutor.executeStreaming(state, executionNode, sink -> {
+                fastPath.recordMiss();
+                AtomicInteger planned = new AtomicInteger();
+                WorkflowNode planner = withDeadline(WorkflowMetrics.NODE_PLANNING,
+                        metrics.instrument(WorkflowMetrics.NODE_PLANNING, current -> slo.withinPlanningBudget(current, () -> {
+                            nodes.streamPlan(current, task -> {
+                                consolidator.mark(task);
+                                List<LearningTask> earlierTasks = List.copyOf(current.getTasks());
+                                checkpointed.restore(current, task, earlierTasks);
+                                planDiff.reuse(current, task, earlierTasks);
+                                planned.incrementAndGet();
+                                sink.accept(task);
+                            });
+                            return current;
+                        }, () -> {
+                            if (planned.get() == 0) {
+                                sink.accept(LatencySlo.fallbackTask(current));
+                            }
+                            return current;
+                        })));
+                planner.process(state);
+                state.setPlanStreaming(false);
+                observer.onNodeCompleted(WorkflowMetrics.NODE_PLANNING, state);
+            }, outcome -> observer.onTaskCompleted(state, outcome));
+        };
+    }
+
+    /**
+     * 节点执行前检查请求截止时间，并将截止时间绑定到执行线程，供 LLM 与 MCP 调用读取剩余预算
+     */
+    private static WorkflowNode withDeadline(String node, WorkflowNode delegate) {
+        return state -> {
+            Deadline deadline = state.getDeadline();
+            if (deadline == null) {
+                return delegate.process(state);
+            }
+            deadline.check(node);
+            return Deadline.supplyWith(deadline, () -> delegate.process(state));
+        };
+    }
+
+    private static boolean hasImage(AgentState state) {
+        return state.getImagePath() != null && !state.getImagePath().isEmpty();
+    }
+
+    private static <T> List<T> addedSince(List<T> list, int sizeBefore) {
+        return List.copyOf(list.subList(Math.min(sizeBefore, list.size()), list.size()));
+    }
+
+    /**
+     * 通知监听器，监听器异常不影响工作流执行
+     */
+    private static void fireEvent(String event, Runnable callback) {
+        try {
+            callback.run();
+        } catch (Exception e) {
+            log.warn("Workflow listener failed on '{}' event: {}", event, e.getMessage());
+        }
+    }
 }
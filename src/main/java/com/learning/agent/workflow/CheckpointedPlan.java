@@ -0,0 +1,96 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearningTask;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 规划中途保存的检查点中已完成任务的结果
+ * 从这样的检查点恢复时会重新规划，新计划中同一个任务 ID 可能对应不同的任务：
+ * 只有任务指纹（任务类型、规范化后的描述、前置任务和输入材料）与检查点中的任务一致时才复用结果
+ */
+@Slf4j
+final class CheckpointedPlan {
+
+    private static final CheckpointedPlan EMPTY = new CheckpointedPlan("", Map.of(), Map.of(), Set.of());
+
+    private final String context;
+    private final Map<String, String> fingerprints;
+    private final Map<String, TaskOutcome> outcomes;
+    private final Set<String> reused;
+
+    private CheckpointedPlan(String context, Map<String, String> fingerprints, Map<String, TaskOutcome> outcomes,
+                             Set<String> reused) {
+        this.context = context;
+        this.fingerprints = fingerprints;
+        this.outcomes = outcomes;
+        this.reused = reused;
+    }
+
+    /**
+     * 重新规划前取出检查点中部分计划的任务结果，taskOutcomes 中不再保留；计划已完整时不取出
+     */
+    static CheckpointedPlan take(AgentState state) {
+        if (!state.isPlanStreaming() || state.getTaskOutcomes().isEmpty()) {
+            return EMPTY;
+        }
+        String context = PlanDiff.context(state);
+        List<LearningTask> tasks = state.getTasks();
+        List<String> planFingerprints = PlanDiff.fingerprints(context, tasks);
+        Map<String, String> fingerprints = new HashMap<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.get(i).getTaskId() != null) {
+                fingerprints.putIfAbsent(tasks.get(i).getTaskId(), planFingerprints.get(i));
+            }
+        }
+
+        Map<String, TaskOutcome> outcomes = new LinkedHashMap<>(state.getTaskOutcomes());
+        Set<String> reused = new HashSet<>(state.getReusedTasks());
+        reused.retainAll(outcomes.keySet());
+        state.getTaskOutcomes().clear();
+        state.getReusedTasks().removeAll(outcomes.keySet());
+        return new CheckpointedPlan(context, fingerprints, outcomes, reused);
+    }
+
+    /**
+     * 为新计划中的全部任务放回一致的结果
+     */
+    void restore(AgentState state) {
+        List<LearningTask> tasks = state.getTasks();
+        for (int i = 0; i < tasks.size(); i++) {
+            restore(state, tasks.get(i), tasks.subList(0, i));
+        }
+    }
+
+    /**
+     * 新计划中的任务与检查点中同 ID 的任务一致时，把检查点中的结果放回 taskOutcomes，执行器不再执行该任务
+     *
+     * @param earlierTasks 新计划中排在该任务前面的任务
+     * @return 放回了结果时返回 true
+     */
+    boolean restore(AgentState state, LearningTask task, List<LearningTask> earlierTasks) {
+        String taskId = task.getTaskId();
+        TaskOutcome outcome = taskId != null ? outcomes.get(taskId) : null;
+        if (outcome == null) {
+            return false;
+        }
+        List<LearningTask> plan = new ArrayList<>(earlierTasks);
+        plan.add(task);
+        if (!PlanDiff.fingerprints(context, plan).getLast().equals(fingerprints.get(taskId))) {
+            log.info("Task {} changed after re-planning, discarding its checkpointed result", taskId);
+            return false;
+        }
+        state.getTaskOutcomes().put(taskId, outcome);
+        if (reused.contains(taskId)) {
+            state.getReusedTasks().add(taskId);
+        }
+        return true;
+    }
+}
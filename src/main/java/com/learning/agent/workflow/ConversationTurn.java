@@ -0,0 +1,39 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.dto.client.NotionCreatedPage;
+import com.learning.agent.model.LearningTask;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 同一会话中上一轮对话的计划和结果
+ * 追问（例如“再精简一些”）时随状态传给规划和执行节点，只规划本次新增的工作；
+ * 修改问题后重新提交时，新计划中没有变化的任务直接复用 reusable 中的结果
+ *
+ * @param userQuery        上一轮的用户请求
+ * @param tasks            上一轮执行的任务
+ * @param contents         上一轮生成的 Markdown 内容
+ * @param pages            上一轮创建的 Notion 页面
+ * @param reusable         上一轮成功完成的任务结果（按任务指纹，见 {@link PlanDiff}）
+ * @param consolidatedPage 上一轮延迟写入任务合并创建的页面，可能为空
+ */
+public record ConversationTurn(String userQuery, List<LearningTask> tasks, List<String> contents,
+                               List<NotionCreatedPage> pages, Map<String, TaskOutcome> reusable,
+                               NotionCreatedPage consolidatedPage) {
+
+    public ConversationTurn {
+        tasks = tasks != null ? List.copyOf(tasks) : List.of();
+        contents = PayloadList.from(contents);
+        pages = pages != null ? List.copyOf(pages) : List.of();
+        reusable = reusable != null ? Map.copyOf(reusable) : Map.of();
+    }
+
+    /**
+     * 从一轮执行完成后的状态生成
+     */
+    public static ConversationTurn of(AgentState state) {
+        return new ConversationTurn(state.getUserQuery(), state.getTasks(), state.getGeneratedContents(),
+                state.getCreatedPages(), PlanDiff.reusableOutcomes(state), state.getConsolidatedPage());
+    }
+}
@@ -0,0 +1,79 @@
+package com.learning.agent.workflow;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 请求的降级记录
+ * 同一请求的所有任务分支共享同一个实例（线程安全），记录触发的降级原因、落后于时延目标后已放行的任务数，
+ * 以及因降级改为延迟写入的任务（只属于本次请求，不修改计划中的任务）
+ */
+public final class Degradation {
+
+    private final Set<String> reasons = new LinkedHashSet<>();
+    private final Set<String> deferredTasks = new LinkedHashSet<>();
+    private final AtomicInteger admittedWhileBehind = new AtomicInteger();
+
+    public Degradation() {
+    }
+
+    /**
+     * 从检查点恢复已记录的降级原因和改为延迟写入的任务
+     */
+    public static Degradation restore(List<String> reasons, List<String> deferredTasks) {
+        Degradation degradation = new Degradation();
+        if (reasons != null) {
+            reasons.forEach(degradation::add);
+        }
+        if (deferredTasks != null) {
+            deferredTasks.forEach(degradation::deferWrite);
+        }
+        return degradation;
+    }
+
+    /**
+     * 记录降级原因，相同原因只记录一次
+     *
+     * @return 首次记录该原因时返回 true
+     */
+    public synchronized boolean add(String reason) {
+        return reasons.add(reason);
+    }
+
+    public synchronized boolean isDegraded() {
+        return !reasons.isEmpty();
+    }
+
+    public synchronized List<String> reasons() {
+        return new ArrayList<>(reasons);
+    }
+
+    /**
+     * 本次请求中该任务改为只生成内容，由合并写入节点写入 Notion
+     */
+    public synchronized void deferWrite(String taskId) {
+        if (taskId != null) {
+            deferredTasks.add(taskId);
+        }
+    }
+
+    public synchronized boolean isDeferred(String taskId) {
+        return deferredTasks.contains(taskId);
+    }
+
+    public synchronized List<String> deferredTasks() {
+        return new ArrayList<>(deferredTasks);
+    }
+
+    /**
+     * 落后于时延目标后申请执行一个任务
+     *
+     * @return 放行数未超过上限时返回 true
+     */
+    boolean admitWhileBehind(int maxTasks) {
+        return admittedWhileBehind.incrementAndGet() <= maxTasks;
+    }
+}
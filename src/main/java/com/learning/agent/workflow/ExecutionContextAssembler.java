@@ -0,0 +1,305 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.util.TokenEstimator;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 执行提示词组装器
+ * 按 token 预算组装每个任务的执行提示词：任务、学习者画像、固定提示和用户问题完整保留；
+ * 之前的执行结果压缩为摘要，OCR 内容只保留与当前任务相关的片段，使提示词大小不随任务数增长
+ */
+@Slf4j
+@Component
+public class ExecutionContextAssembler {
+
+    public static final String PROMPT_TOKENS = "agent.execution.prompt.tokens";
+
+    static final String SECTION_TASK = "task";
+    static final String SECTION_HISTORY = "history";
+    static final String SECTION_LEARNER = "learner";
+    static final String SECTION_INSTRUCTIONS = "instructions";
+    static final String SECTION_QUERY = "query";
+    static final String SECTION_OCR = "ocr";
+    static final String SECTION_TOTAL = "total";
+
+    /**
+     * 每条之前结果摘要的最小预算，预算不足时省略较早的结果
+     */
+    private static final int MIN_RESULT_TOKENS = 40;
+
+    /**
+     * OCR 片段的最大长度，超过时按行拆分
+     */
+    private static final int MAX_SLICE_TOKENS = 300;
+
+    private static final String INSTRUCTIONS = """
+            重要提示：
+            1. **Mandatory Search**: 使用 notionSearch 工具搜索 'sophie'，获取父页面 ID
+            2. **Mandatory Create**: 使用 notionCreatePage 工具创建页面（parentPageId 从步骤1获取）
+            3. **No Simulation**: 严禁输出 JSON 模拟，必须真正调用工具
+            4. **Action Required**: 本任务必须调用工具，不能仅返回文字说明
+
+            """;
+
+    private static final String DEFERRED_WRITE_INSTRUCTIONS = """
+            重要提示：
+            1. 直接输出本任务的完整 Markdown 内容，标题从三级标题（###）开始
+            2. 不要调用任何工具，也不要输出 JSON；内容会在所有任务完成后合并写入同一个 Notion 页面
+
+            """;
+
+    private static final String LINKS_MARKER = "> **相关链接**";
+    private static final Pattern LATIN_WORD = Pattern.compile("[A-Za-z0-9]{2,}");
+
+    private final int maxTokens;
+    private final int historyTokens;
+    private final int ocrTokens;
+    private final Map<String, DistributionSummary> sectionSummaries = new HashMap<>();
+
+    public ExecutionContextAssembler(
+            MeterRegistry meterRegistry,
+            @Value("${agent.context.max-tokens:6000}") int maxTokens,
+            @Value("${agent.context.history-tokens:1200}") int historyTokens,
+            @Value("${agent.context.ocr-tokens:3000}") int ocrTokens) {
+        this.maxTokens = Math.max(1, maxTokens);
+        this.historyTokens = Math.max(0, historyTokens);
+        this.ocrTokens = Math.max(0, ocrTokens);
+        for (String section : List.of(SECTION_TASK, SECTION_HISTORY, SECTION_LEARNER, SECTION_INSTRUCTIONS,
+                SECTION_QUERY, SECTION_OCR, SECTION_TOTAL)) {
+            sectionSummaries.put(section, DistributionSummary.builder(PROMPT_TOKENS)
+                    .description("执行提示词的估算 token 数（section=total 为整个提示词）")
+                    .baseUnit("tokens")
+                    .tag("section", section)
+                    .publishPercentiles(0.5, 0.95)
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * 组装当前任务的执行提示词
+     */
+    public String assemble(AgentState state, LearningTask task) {
+        Map<String, Integer> usage = new LinkedHashMap<>();
+        StringBuilder sb = new StringBuilder();
+
+        String taskBlock = "当前任务:\n<task>\n"
+                + "类型: " + task.getType().getValue() + "\n"
+                + "描述: " + task.getDescription() + "\n"
+                + "优先级: " + task.getPriority() + "\n"
+                + "截止: " + (task.getDueDate() != null ? task.getDueDate() : "未设定") + "\n"
+                + "</task>\n\n";
+        append(sb, usage, SECTION_TASK, taskBlock);
+
+        append(sb, usage, SECTION_HISTORY,
+                summarizePreviousTurn(state.getPreviousTurn()) + summarizeResults(state.getGeneratedContents()));
+        append(sb, usage, SECTION_LEARNER, "上下文信息:\n" + learnerBlock(state.getLearnerProfile()));
+        append(sb, usage, SECTION_INSTRUCTIONS, state.isDeferWrite(task) ? DEFERRED_WRITE_INSTRUCTIONS : INSTRUCTIONS);
+
+        if (state.getUserQuery() != null && !state.getUserQuery().isEmpty()) {
+            append(sb, usage, SECTION_QUERY, "<user-query>\n" + state.getUserQuery() + "\n</user-query>\n\n");
+        }
+
+        if (state.getOcrResult() != null) {
+            int used = usage.values().stream().mapToInt(Integer::intValue).sum();
+            int budget = Math.min(ocrTokens, Math.max(0, maxTokens - used));
+            append(sb, usage, SECTION_OCR, ocrBlock(state.getOcrResult(), task, state.getUserQuery(), budget));
+        }
+
+        sb.append("\n请执行该任务。");
+
+        int total = TokenEstimator.estimate(sb.toString());
+        usage.forEach((section, tokens) -> sectionSummaries.get(section).record(tokens));
+        sectionSummaries.get(SECTION_TOTAL).record(total);
+        log.debug("Execution prompt for task {}: {} tokens {}", task.getTaskId(), total, usage);
+        return sb.toString();
+    }
+
+    /**
+     * 之前的执行结果：在历史预算内平均分配，每条保留开头内容和页面链接；预算不足时省略较早的结果
+     */
+    String summarizeResults(List<String> contents) {
+        return summarizeResults("之前的执行结果:\n", "[Task %d Result]", contents);
+    }
+
+    /**
+     * 同一会话上一轮的结果：追问（例如“再精简一些”）需要引用上一轮的内容和页面，与本轮结果使用相同的历史预算
+     */
+    String summarizePreviousTurn(ConversationTurn turn) {
+        if (turn == null) {
+            return "";
+        }
+        String title = "上一轮对话的结果"
+                + (turn.userQuery() != null && !turn.userQuery().isBlank() ? "（请求: " + turn.userQuery().strip() + "）" : "")
+                + ":\n";
+        return summarizeResults(title, "[Previous Result %d]", turn.contents());
+    }
+
+    private String summarizeResults(String title, String label, List<String> contents) {
+        if (contents == null || contents.isEmpty() || historyTokens == 0) {
+            return "";
+        }
+        int kept = Math.min(contents.size(), Math.max(1, historyTokens / MIN_RESULT_TOKENS));
+        int perResult = historyTokens / kept;
+        int omitted = contents.size() - kept;
+
+        StringBuilder sb = new StringBuilder(title);
+        if (omitted > 0) {
+            sb.append(String.format("（已省略较早的 %d 个结果）\n", omitted));
+        }
+        for (int i = omitted; i < contents.size(); i++) {
+            sb.append(String.format(label + ": %s\n---\n", i + 1, summarize(contents.get(i), perResult)));
+        }
+        return sb.append("\n").toString();
+    }
+
+    /**
+     * OCR 内容：在预算内完整保留；超出预算时按与任务描述和用户问题的相关性选择片段，按原文顺序输出
+     */
+    String ocrBlock(OcrStructuredResult ocr, LearningTask task, String userQuery, int budget) {
+        boolean markdown = ocr.getMarkdownText() != null && !ocr.getMarkdownText().isBlank();
+        String text = markdown ? ocr.getMarkdownText() : ocr.getPlainText();
+        if (text == null || text.isBlank()) {
+            return "";
+        }
+        String tag = markdown ? "ocr-markdown" : "ocr-plain";
+        if (TokenEstimator.estimate(text) <= budget) {
+            return "<" + tag + ">\n" + text + "\n</" + tag + ">\n";
+        }
+
+        List<String> slices = slice(text);
+        Set<String> terms = terms(task.getDescription() + " " + (userQuery != null ? userQuery : ""));
+        Integer[] order = new Integer[slices.size()];
+        int[] scores = new int[slices.size()];
+        for (int i = 0; i < slices.size(); i++) {
+            order[i] = i;
+            scores[i] = score(slices.get(i), terms);
+        }
+        // 相关性高的优先，相同时保留靠前的片段（通常是标题和题干）
+        Arrays.sort(order, Comparator.comparingInt((Integer i) -> -scores[i]).thenComparingInt(i -> i));
+
+        TreeSet<Integer> selected = new TreeSet<>();
+        int used = 0;
+        for (int index : order) {
+            int tokens = TokenEstimator.estimate(slices.get(index));
+            if (used + tokens <= budget) {
+                selected.add(index);
+                used += tokens;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder("<" + tag + ">\n");
+        sb.append(String.format("（按与当前任务的相关性节选 %d/%d 段）\n", selected.size(), slices.size()));
+        int previous = -1;
+        for (int index : selected) {
+            if (previous >= 0 && index != previous + 1) {
+                sb.append("...\n");
+            }
+            sb.append(slices.get(index)).append("\n");
+            previous = index;
+        }
+        return sb.append("</").append(tag).append(">\n").toString();
+    }
+
+    private static void append(StringBuilder sb, Map<String, Integer> usage, String section, String block) {
+        if (block.isEmpty()) {
+            return;
+        }
+        sb.append(block);
+        usage.put(section, TokenEstimator.estimate(block));
+    }
+
+    private static String learnerBlock(LearnerProfile profile) {
+        return "<learner>\n"
+                + "ID: " + profile.getLearnerId() + "\n"
+                + "水平: " + profile.getCompetencyLevel() + "\n"
+                + "目标: " + profile.getLearningGoal() + "\n"
+                + "偏好: " + profile.getPreferredStyle() + "\n"
+                + "</learner>\n\n";
+    }
+
+    /**
+     * 单条结果摘要：去掉空行压缩正文，页面链接单独保留，供后续任务引用已创建的页面
+     */
+    private static String summarize(String content, int maxTokens) {
+        if (content == null) {
+            return "";
+        }
+        String body = content;
+        String links = "";
+        int linksAt = content.lastIndexOf(LINKS_MARKER);
+        if (linksAt >= 0) {
+            body = content.substring(0, linksAt);
+            links = " " + content.substring(linksAt).strip();
+        }
+        String compact = body.strip().replaceAll("\\s*\\n\\s*", " / ");
+        int bodyBudget = Math.max(MIN_RESULT_TOKENS / 2, maxTokens - TokenEstimator.estimate(links));
+        return TokenEstimator.truncate(compact, bodyBudget) + links;
+    }
+
+    /**
+     * 按空行拆分段落，过长的段落再按行拆分
+     */
+    private static List<String> slice(String text) {
+        List<String> slices = new ArrayList<>();
+        for (String paragraph : text.split("\\n\\s*\\n")) {
+            String trimmed = paragraph.strip();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (TokenEstimator.estimate(trimmed) <= MAX_SLICE_TOKENS) {
+                slices.add(trimmed);
+                continue;
+            }
+            for (String line : trimmed.split("\\n")) {
+                if (!line.isBlank()) {
+                    slices.add(TokenEstimator.truncate(line.strip(), MAX_SLICE_TOKENS));
+                }
+            }
+        }
+        return slices;
+    }
+
+    /**
+     * 检索词：中文取相邻两字，英文和数字取整词
+     */
+    static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        Matcher matcher = LATIN_WORD.matcher(text);
+        while (matcher.find()) {
+            terms.add(matcher.group().toLowerCase(Locale.ROOT));
+        }
+        int[] codePoints = text.codePoints().toArray();
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            if (Character.UnicodeScript.of(codePoints[i]) == Character.UnicodeScript.HAN
+                    && Character.UnicodeScript.of(codePoints[i + 1]) == Character.UnicodeScript.HAN) {
+                terms.add(new String(codePoints, i, 2));
+            }
+        }
+        return terms;
+    }
+
+    private static int score(String slice, Set<String> terms) {
+        String lower = slice.toLowerCase(Locale.ROOT);
+        int score = 0;
+        for (String term : terms) {
+            if (lower.contains(term)) {
+                score++;
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,339 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.util.Deadline;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 全局任务调度器
+ * 所有进行中的工作流共享同一组执行名额：同一学习者的任务按优先级（数值越大越先执行）和截止日期排序，
+ * 不同学习者之间按加权公平排队（Start-time Fair Queuing）分配名额，避免大请求占满 LLM 容量
+ * 排队最多等到请求的截止时间；请求被取消或超时时立即退出队列，不占用名额，也不推进该学习者的虚拟时间
+ * 默认名额数等于 /analyze 的并发请求上限 × 单个请求的并行任务数，正常负载下任务不需要排队；
+ * 模型服务的速率限制更低时应按其限制调小，超出部分在这里公平排队而不是被模型服务拒绝
+ */
+@Slf4j
+@Component
+public class FairTaskScheduler {
+
+    static final String ANONYMOUS = "anonymous";
+
+    /**
+     * 默认名额数：agent.analyze.max-concurrent-requests (200) × agent.execution.max-parallel-tasks (3)
+     */
+    static final int DEFAULT_MAX_CONCURRENT_TASKS = 600;
+
+    private static final Comparator<Ticket> TASK_ORDER = Comparator
+            .comparingInt((Ticket ticket) -> -ticket.priority)
+            .thenComparing(ticket -> ticket.dueDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparingLong(ticket -> ticket.sequence);
+
+    private final int maxConcurrentTasks;
+    private final Map<String, Double> weights;
+    private final Map<String, LearnerQueue> learners = new HashMap<>();
+    private final MultiGauge queueDepthGauge;
+    private final Timer waitTimer;
+
+    private double virtualTime;
+    private int running;
+    private long sequence;
+
+    public FairTaskScheduler(
+            MeterRegistry meterRegistry,
+            @Value("${agent.scheduler.max-concurrent-tasks:600}") int maxConcurrentTasks,
+            @Value("${agent.scheduler.learner-weights:}") String learnerWeights) {
+        this.maxConcurrentTasks = Math.max(1, maxConcurrentTasks);
+        this.weights = parseWeights(learnerWeights);
+
+        this.queueDepthGauge = MultiGauge.builder("agent.scheduler.queue.depth")
+                .description("每个学习者排队等待执行的任务数")
+                .register(meterRegistry);
+        Gauge.builder("agent.scheduler.running", this, FairTaskScheduler::running)
+                .description("正在执行的任务数")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("agent.scheduler.wait")
+                .description("任务等待执行名额的时间")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 包装节点：执行前获取名额，执行后释放
+     */
+    public WorkflowNode gate(WorkflowNode node) {
+        return state -> {
+            Deadline deadline = state.getDeadline() != null ? state.getDeadline() : Deadline.current();
+            Permit permit = acquire(learnerOf(state), state.getCurrentTask(), deadline);
+            try {
+                return node.process(state);
+            } finally {
+                permit.release();
+            }
+        };
+    }
+
+    /**
+     * 排队并阻塞直到获得执行名额
+     */
+    public Permit acquire(String learnerId, LearningTask task) {
+        return acquire(learnerId, task, Deadline.current());
+    }
+
+    /**
+     * 排队并阻塞直到获得执行名额，最多等到截止时间
+     *
+     * @throws Deadline.DeadlineExceededException 截止时间已过或请求被取消（此时已退出队列）
+     */
+    public Permit acquire(String learnerId, LearningTask task, Deadline deadline) {
+        if (deadline != null) {
+            deadline.check("scheduler");
+        }
+        Permit permit = enqueue(learnerId, task);
+        permit.await(deadline);
+        return permit;
+    }
+
+    /**
+     * 各学习者排队中的任务数
+     */
+    public synchronized Map<String, Integer> queueDepths() {
+        Map<String, Integer> depths = new TreeMap<>();
+        learners.forEach((learnerId, queue) -> depths.put(learnerId, queue.waiting.size()));
+        return depths;
+    }
+
+    public synchronized int running() {
+        return running;
+    }
+
+    /**
+     * 排队，不阻塞；名额分配后 Permit 变为已授予
+     */
+    synchronized Permit enqueue(String learnerId, LearningTask task) {
+        String learner = learnerId == null || learnerId.isBlank() ? ANONYMOUS : learnerId;
+        Ticket ticket = new Ticket(learner,
+                task != null ? task.getPriority() : 0,
+                task != null ? parseDueDate(task.getDueDate()) : null,
+                sequence++);
+        learners.computeIfAbsent(learner, id -> new LearnerQueue(weights.getOrDefault(id, 1.0)))
+                .waiting.add(ticket);
+        dispatch();
+        return new Permit(ticket);
+    }
+
+    /**
+     * 在空闲名额内按公平顺序授予排队的任务
+     * 每个学习者的虚拟开始时间 = max(系统虚拟时间, 该学习者上一个任务的虚拟结束时间)，选择最小者；
+     * 权重越大，每个任务推进的虚拟时间越少，获得的名额越多
+     */
+    private void dispatch() {
+        while (running < maxConcurrentTasks) {
+            String selected = null;
+            double selectedStart = 0;
+            for (Map.Entry<String, LearnerQueue> entry : learners.entrySet()) {
+                LearnerQueue queue = entry.getValue();
+                if (queue.waiting.isEmpty()) {
+                    continue;
+                }
+                double start = Math.max(virtualTime, queue.lastFinish);
+                if (selected == null || start < selectedStart
+                        || (start == selectedStart
+                        && TASK_ORDER.compare(queue.waiting.peek(), learners.get(selected).waiting.peek()) < 0)) {
+                    selected = entry.getKey();
+                    selectedStart = start;
+                }
+            }
+            if (selected == null) {
+                break;
+            }
+
+            LearnerQueue queue = learners.get(selected);
+            Ticket ticket = queue.waiting.poll();
+            queue.lastFinish = selectedStart + 1.0 / queue.weight;
+            virtualTime = selectedStart;
+            running++;
+            waitTimer.record(System.nanoTime() - ticket.enqueuedNanos, TimeUnit.NANOSECONDS);
+            ticket.granted.complete(null);
+        }
+        // 没有排队任务且没有剩余虚拟时间的学习者不再保留状态
+        learners.values().removeIf(queue -> queue.waiting.isEmpty() && queue.lastFinish <= virtualTime);
+        publishQueueDepths();
+    }
+
+    private synchronized void releaseSlot() {
+        running--;
+        dispatch();
+    }
+
+    private synchronized void cancel(Ticket ticket) {
+        LearnerQueue queue = learners.get(ticket.learnerId);
+        if (queue != null && queue.waiting.remove(ticket)) {
+            publishQueueDepths();
+        }
+    }
+
+    private void publishQueueDepths() {
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        learners.forEach((learnerId, queue) ->
+                rows.add(MultiGauge.Row.of(Tags.of("learner", learnerId), queue.waiting.size())));
+        queueDepthGauge.register(rows, true);
+    }
+
+    private static String learnerOf(AgentState state) {
+        if (state.getLearnerProfile() == null) {
+            return ANONYMOUS;
+        }
+        return state.getLearnerProfile().getLearnerId();
+    }
+
+    private static Instant parseDueDate(String dueDate) {
+        if (dueDate == null || dueDate.isBlank()) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(dueDate).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, Double> parseWeights(String learnerWeights) {
+        Map<String, Double> parsed = new HashMap<>();
+        if (learnerWeights == null || learnerWeights.isBlank()) {
+            return parsed;
+        }
+        for (String entry : learnerWeights.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                double weight = Double.parseDouble(parts[1].trim());
+                if (weight > 0) {
+                    parsed.put(parts[0].trim(), weight);
+                }
+            } catch (NumberFormatException e) {
+                log.warn("Invalid learner weight '{}', ignoring", entry);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * 执行名额
+     */
+    public final class Permit {
+
+        private final Ticket ticket;
+        private boolean released;
+
+        private Permit(Ticket ticket) {
+            this.ticket = ticket;
+        }
+
+        boolean isGranted() {
+            return ticket.granted.isDone() && !ticket.granted.isCancelled();
+        }
+
+        /**
+         * 等待名额；截止时间为空时一直等待。超时、取消或中断时释放名额或退出队列后再抛出异常
+         */
+        void await(Deadline deadline) {
+            Deadline.Registration registration = deadline != null ? deadline.onCancel(this::abandon) : () -> {
+            };
+            try (registration) {
+                awaitGranted(deadline != null ? Math.max(0, deadline.remainingMillis()) : Long.MAX_VALUE);
+            } catch (TimeoutException | CancellationException e) {
+                release();
+                throw deadline != null ? deadline.failure("scheduler") : new IllegalStateException("等待执行名额时被取消", e);
+            }
+        }
+
+        private void awaitGranted(long timeoutMillis) throws TimeoutException {
+            try {
+                ticket.granted.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                release();
+                throw new IllegalStateException("等待执行名额时被中断", e);
+            } catch (ExecutionException e) {
+                release();
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        /**
+         * 请求取消时的回调：尚未获得名额时退出队列并唤醒等待方，已获得名额时由执行方照常释放
+         */
+        private void abandon() {
+            synchronized (FairTaskScheduler.this) {
+                if (!ticket.granted.isDone()) {
+                    release();
+                }
+            }
+        }
+
+        /**
+         * 释放名额；尚未获得名额时取消排队
+         */
+        public void release() {
+            synchronized (FairTaskScheduler.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                if (ticket.granted.isDone() && !ticket.granted.isCancelled()) {
+                    releaseSlot();
+                } else {
+                    ticket.granted.cancel(false);
+                    cancel(ticket);
+                }
+            }
+        }
+    }
+
+    private static final class Ticket {
+
+        private final String learnerId;
+        private final int priority;
+        private final Instant dueDate;
+        private final long sequence;
+        private final long enqueuedNanos = System.nanoTime();
+        private final CompletableFuture<Void> granted = new CompletableFuture<>();
+
+        private Ticket(String learnerId, int priority, Instant dueDate, long sequence) {
+            this.learnerId = learnerId;
+            this.priority = priority;
+            this.dueDate = dueDate;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class LearnerQueue {
+
+        private final PriorityQueue<Ticket> waiting = new PriorityQueue<>(TASK_ORDER);
+        private final double weight;
+        private double lastFinish;
+
+        private LearnerQueue(double weight) {
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import com.learning.agent.util.Deadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 工作流时延目标（SLO）与降级阶梯
+ * 规划超出预算时改为一个启发式任务；执行落后于目标时限制剩余任务数，放行的任务只生成内容（合并写入 Notion），
+ * 其余任务跳过；任务超出请求剩余预算时记为失败。降级原因记录在 AgentState 中，随结果返回部分内容而不是整个请求失败
+ */
+@Slf4j
+@Component
+public class LatencySlo {
+
+    public static final String DEGRADATIONS = "agent.slo.degradations";
+
+    static final String STAGE_PLANNING = "planning";
+    static final String STAGE_EXECUTION = "execution";
+
+    static final String FALLBACK_TASK_ID = "T1";
+
+    private static final String OUT_OF_TIME = "请求剩余时间不足，未完成的任务已跳过";
+
+    private final boolean enabled;
+    private final Duration planningBudget;
+    private final long executionTargetMillis;
+    private final int degradedMaxTasks;
+    private final long finishReserveMillis;
+    private final Counter planningDegradations;
+    private final Counter executionDegradations;
+
+    public LatencySlo(
+            MeterRegistry meterRegistry,
+            @Value("${agent.slo.enabled:true}") boolean enabled,
+            @Value("${agent.slo.planning-seconds:120}") long planningSeconds,
+            @Value("${agent.slo.execution-seconds:200}") long executionSeconds,
+            @Value("${agent.slo.degraded-max-tasks:1}") int degradedMaxTasks,
+            @Value("${agent.slo.finish-reserve-seconds:20}") long finishReserveSeconds) {
+        this.enabled = enabled;
+        this.planningBudget = Duration.ofSeconds(Math.max(1, planningSeconds));
+        this.executionTargetMillis = Duration.ofSeconds(Math.max(1, executionSeconds)).toMillis();
+        this.degradedMaxTasks = Math.max(0, degradedMaxTasks);
+        this.finishReserveMillis = Duration.ofSeconds(Math.max(0, finishReserveSeconds)).toMillis();
+        this.planningDegradations = counter(meterRegistry, STAGE_PLANNING);
+        this.executionDegradations = counter(meterRegistry, STAGE_EXECUTION);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String stage) {
+        return Counter.builder(DEGRADATIONS)
+                .description("触发时延降级的次数")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 为规划节点加上规划预算：超出预算时以单个启发式任务代替模型生成的计划
+     */
+    public WorkflowNode planning(WorkflowNode planningNode) {
+        return state -> withinPlanningBudget(state, () -> planningNode.process(state), () -> {
+            state.setTasks(new ArrayList<>(List.of(fallbackTask(state))));
+            state.setPlanStreaming(false);
+            state.setCurrentTaskIndex(0);
+            return state;
+        });
+    }
+
+    /**
+     * 在规划预算内执行 planning；只有规划阶段超时（而不是整个请求超时或被取消）时才降级为 fallback
+     */
+    public <T> T withinPlanningBudget(AgentState state, Supplier<T> planning, Supplier<T> fallback) {
+        if (!enabled) {
+            return planning.get();
+        }
+        try {
+            return Deadline.supplyWithBudget(planningBudget, planning);
+        } catch (Deadline.DeadlineExceededException e) {
+            if (e instanceof Deadline.RequestCancelledException || Deadline.currentExpired()) {
+                throw e;
+            }
+            log.warn("Planning exceeded its {}s budget, degrading: {}", planningBudget.toSeconds(), e.getMessage());
+            degrade(state, STAGE_PLANNING, "规划超出 " + planningBudget.toSeconds() + "s 时延目标，已改用已生成的部分计划或启发式计划");
+            return fallback.get();
+        }
+    }
+
+    /**
+     * 为单个任务的执行节点加上执行目标：
+     * 请求已用时间超过执行目标后，最多再放行 degradedMaxTasks 个任务（只生成内容，不单独写入 Notion），其余任务跳过；
+     * 每个任务只能使用到请求截止时间前预留收尾时间为止的预算，超出时该任务记为失败
+     * 需要位于 withDeadline 之内，以读取当前线程绑定的请求截止时间
+     */
+    public WorkflowNode execution(WorkflowNode executionNode) {
+        return state -> {
+            Deadline deadline = state.getDeadline();
+            LearningTask task = state.getCurrentTask();
+            if (!enabled || deadline == null || task == null) {
+                return executionNode.process(state);
+            }
+
+            if (deadline.elapsedMillis() > executionTargetMillis) {
+                Degradation degradation = state.getDegradation();
+                degrade(state, STAGE_EXECUTION, "执行超出 " + executionTargetMillis / 1000 + "s 时延目标，剩余任务最多执行 "
+                        + degradedMaxTasks + " 个且只生成内容");
+                if (degradation == null || !degradation.admitWhileBehind(degradedMaxTasks)) {
+                    log.warn("Skipping task {}: execution is behind its latency target", task.getTaskId());
+                    return skip(state, "已跳过：执行超出时延目标");
+                }
+                // 放行的任务不再逐个调用 Notion 工具，内容在最后合并写入；只记录在本次请求中，不修改计划中的任务
+                degradation.deferWrite(task.getTaskId());
+            }
+
+            long budget = deadline.remainingMillis() - finishReserveMillis;
+            if (budget <= 0) {
+                degrade(state, STAGE_EXECUTION, OUT_OF_TIME);
+                return skip(state, "已跳过：请求剩余时间不足");
+            }
+            try {
+                return Deadline.supplyWithBudget(Duration.ofMillis(budget), () -> executionNode.process(state));
+            } catch (Deadline.DeadlineExceededException e) {
+                if (e instanceof Deadline.RequestCancelledException || Deadline.currentExpired()) {
+                    throw e;
+                }
+                log.warn("Task {} exceeded the remaining request budget: {}", task.getTaskId(), e.getMessage());
+                degrade(state, STAGE_EXECUTION, OUT_OF_TIME);
+                return skip(state, "超出请求剩余时间");
+            }
+        };
+    }
+
+    /**
+     * 规划超时时使用的启发式任务：根据用户问题和识别内容整理一篇学习笔记
+     */
+    static LearningTask fallbackTask(AgentState state) {
+        String query = state.getUserQuery() != null && !state.getUserQuery().isBlank()
+                ? state.getUserQuery().strip()
+                : "识别内容";
+        return LearningTask.builder()
+                .taskId(FALLBACK_TASK_ID)
+                .type(LearningTaskType.ORGANIZATION)
+                .description("根据用户问题和识别内容整理一篇结构化学习笔记：" + query)
+                .priority(5)
+                .deferWrite(true)
+                .build();
+    }
+
+    /**
+     * 跳过当前任务：保持每个任务一条内容，以便与计划顺序对应
+     */
+    private static AgentState skip(AgentState state, String reason) {
+        state.addGeneratedContent(WorkflowNodes.TASK_FAILURE_PREFIX + reason);
+        state.moveToNextTask();
+        return state;
+    }
+
+    private void degrade(AgentState state, String stage, String reason) {
+        Degradation degradation = state.getDegradation();
+        if (degradation != null && degradation.add(stage + ": " + reason)) {
+            (STAGE_PLANNING.equals(stage) ? planningDegradations : executionDegradations).increment();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.client.NotionClient;
+import com.learning.agent.dto.client.NotionCreatedPage;
+import com.learning.agent.dto.client.NotionWritePayload;
+import com.learning.agent.model.LearningTask;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Notion 写入合并
+ * 规划后的优化：只需要新建页面的任务改为延迟写入，执行时只生成内容；
+ * 所有任务完成后，这些任务的内容作为各个章节合并到同一父页面下的一个页面中，一次写入，
+ * 替代每个任务各自的“搜索父页面 + 创建页面 + 追加内容”
+ */
+@Slf4j
+@Component
+public class NotionWriteConsolidator {
+
+    /**
+     * 任务描述中出现这些词时，任务需要修改已有内容，仍由执行节点直接调用 Notion 工具
+     * 只按是否写入已有内容判断；搜索父页面这类查找由合并写入自己完成，不影响延迟写入
+     */
+    private static final List<String> DIRECT_WRITE_KEYWORDS = List.of(
+            "追加", "已有", "现有", "更新", "修改", "删除", "归档", "数据库", "评论", "提醒",
+            "append", "update", "delete", "archive", "database", "comment");
+
+    /**
+     * 未查找到父页面时使用的搜索词，与执行提示中的约定一致
+     */
+    private static final String FALLBACK_PARENT_QUERY = "sophie";
+
+    private static final int MAX_TITLE_LENGTH = 40;
+
+    private final NotionClient notionClient;
+    private final boolean enabled;
+    private final Counter consolidatedTasks;
+
+    public NotionWriteConsolidator(
+            NotionClient notionClient,
+            MeterRegistry meterRegistry,
+            @Value("${agent.notion.consolidate-writes:true}") boolean enabled) {
+        this.notionClient = notionClient;
+        this.enabled = enabled;
+        this.consolidatedTasks = Counter.builder("agent.notion.consolidated.tasks")
+                .description("内容合并写入同一个 Notion 页面的任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 标记可以延迟写入的任务；流式规划时每个任务产出后立即调用
+     */
+    public void mark(LearningTask task) {
+        if (enabled && isDeferrable(task)) {
+            task.setDeferWrite(true);
+        }
+    }
+
+    /**
+     * 是否还有延迟写入的内容尚未写入 Notion
+     */
+    public boolean hasPendingWrite(AgentState state) {
+        return state.getConsolidatedPage() == null
+                && state.getTasks() != null
+                && state.getTasks().stream().anyMatch(state::isDeferWrite);
+    }
+
+    /**
+     * 将延迟写入任务的内容按计划顺序合并为一个页面，每个任务一个章节
+     * 执行失败的任务不写入；写入失败时记录失败内容，不影响已生成的结果
+     */
+    public AgentState write(AgentState state) {
+        log.info("--- Node: Notion Write ---");
+        if (state.getConsolidatedPage() != null) {
+            log.info("Consolidated page already created, skipping.");
+            return state;
+        }
+
+        List<LearningTask> tasks = state.getTasks();
+        StringBuilder markdown = new StringBuilder();
+        int sections = 0;
+        // 按计划顺序取每个任务自己的执行结果（按 taskId），不依赖输出列表中的位置
+        for (LearningTask task : tasks) {
+            Optional<String> content = state.isDeferWrite(task) && task.getTaskId() != null
+                    ? content(state.getTaskResults().get(task.getTaskId()))
+                    : Optional.empty();
+            if (content.isEmpty()) {
+                continue;
+            }
+            sections++;
+            markdown.append("## ").append(sections).append(". ").append(task.getDescription()).append("\n\n")
+                    .append(content.get()).append("\n\n");
+        }
+        if (sections == 0) {
+            log.info("No deferred content to write.");
+            return state;
+        }
+
+        try {
+            String parentPageId = resolveParent(state);
+            NotionCreatedPage page = notionClient.createPage(NotionWritePayload.builder()
+                    .parentPageId(parentPageId)
+                    .title(title(state, tasks))
+                    .markdownContent(markdown.toString())
+                    .properties(new HashMap<>())
+                    .build());
+            state.setConsolidatedPage(page);
+            state.addCreatedPage(page.getId(), page.getUrl());
+            consolidatedTasks.increment(sections);
+            log.info("Wrote {} task sections to Notion page {}", sections, page.getId());
+        } catch (RuntimeException e) {
+            log.error("Consolidated Notion write failed: {}", e.getMessage(), e);
+            state.addGeneratedContent(WorkflowNodes.TASK_FAILURE_PREFIX + "写入 Notion 失败: " + e.getMessage());
+        }
+        return state;
+    }
+
+    /**
+     * 任务的章节内容；任务没有结果、没有内容或执行失败时为空
+     */
+    private static Optional<String> content(TaskOutcome outcome) {
+        if (outcome == null || outcome.contents().isEmpty() || outcome.contents().stream()
+                .anyMatch(content -> content == null || content.startsWith(WorkflowNodes.TASK_FAILURE_PREFIX))) {
+            return Optional.empty();
+        }
+        String joined = outcome.contents().stream().map(String::strip).collect(Collectors.joining("\n\n"));
+        return joined.isEmpty() ? Optional.empty() : Optional.of(joined);
+    }
+
+    static boolean isDeferrable(LearningTask task) {
+        if (task.getDescription() == null) {
+            return false;
+        }
+        String description = task.getDescription().toLowerCase(Locale.ROOT);
+        return DIRECT_WRITE_KEYWORDS.stream().noneMatch(description::contains);
+    }
+
+    private String resolveParent(AgentState state) {
+        if (state.getParentPageId() != null && !state.getParentPageId().isBlank()) {
+            return state.getParentPageId();
+        }
+        Optional<NotionClient.SearchResult> parent = notionClient.searchPage(FALLBACK_PARENT_QUERY);
+        return parent.map(NotionClient.SearchResult::id)
+                .orElseThrow(() -> new IllegalStateException("未找到 Notion 父页面"));
+    }
+
+    private static String title(AgentState state, List<LearningTask> tasks) {
+        String source = state.getUserQuery() != null && !state.getUserQuery().isBlank()
+                ? state.getUserQuery()
+                : tasks.stream().filter(state::isDeferWrite).findFirst().map(LearningTask::getDescription).orElse("");
+        String title = source.strip().replaceAll("\\s+", " ");
+        if (title.length() > MAX_TITLE_LENGTH) {
+            title = title.substring(0, MAX_TITLE_LENGTH) + "...";
+        }
+        return "学习笔记：" + title;
+    }
+}
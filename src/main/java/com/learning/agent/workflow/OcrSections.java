@@ -0,0 +1,241 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.dto.client.OcrTextSpan;
+import com.learning.agent.util.TokenEstimator;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * OCR 分段
+ * 多栏试卷等 OCR 内容很长时，按版面把内容切成若干段分别规划：文本片段按图片分组，
+ * 通栏的片段（标题、大题说明）把页面分成上下几块，每块内按坐标分栏，栏内从上到下排列；
+ * 没有坐标时按片段顺序，没有片段时按段落切分，最后按 token 预算把相邻的块合并为段
+ */
+@Slf4j
+@Component
+public class OcrSections {
+
+    public static final String SECTIONS = "agent.planning.sections";
+
+    /**
+     * 宽度超过页面宽度这一比例的片段视为通栏
+     */
+    private static final double FULL_WIDTH_RATIO = 0.6;
+
+    private final boolean enabled;
+    private final int thresholdTokens;
+    private final int sectionTokens;
+    private final int maxSections;
+    private final DistributionSummary sectionSummary;
+
+    public OcrSections(
+            MeterRegistry meterRegistry,
+            @Value("${agent.planning.chunked.enabled:true}") boolean enabled,
+            @Value("${agent.planning.chunked.threshold-tokens:3000}") int thresholdTokens,
+            @Value("${agent.planning.chunked.section-tokens:1500}") int sectionTokens,
+            @Value("${agent.planning.chunked.max-sections:6}") int maxSections) {
+        this.enabled = enabled;
+        this.thresholdTokens = thresholdTokens;
+        this.sectionTokens = Math.max(1, sectionTokens);
+        this.maxSections = Math.max(2, maxSections);
+        this.sectionSummary = DistributionSummary.builder(SECTIONS)
+                .description("分段规划时 OCR 内容切分出的段数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 把 OCR 内容切分为分段规划的各段，按阅读顺序排列
+     *
+     * @return 未启用、内容不超过阈值或切分后不足两段时返回空列表，按原方式一次规划
+     */
+    public List<String> split(OcrStructuredResult ocr) {
+        if (!enabled || ocr == null) {
+            return List.of();
+        }
+        String plain = nullToEmpty(ocr.getPlainText());
+        String markdown = nullToEmpty(ocr.getMarkdownText());
+        if (TokenEstimator.estimate(plain) + TokenEstimator.estimate(markdown) <= thresholdTokens) {
+            return List.of();
+        }
+
+        List<String> blocks = layoutBlocks(ocr.getSpans());
+        if (blocks.isEmpty()) {
+            blocks = paragraphs(markdown.isBlank() ? plain : markdown);
+        }
+        int total = blocks.stream().mapToInt(TokenEstimator::estimate).sum();
+        int budget = Math.max(sectionTokens, (total + maxSections - 1) / maxSections);
+        List<String> sections = pack(blocks, budget);
+        while (sections.size() > maxSections) {
+            budget += Math.max(1, budget / 4);
+            sections = pack(blocks, budget);
+        }
+        if (sections.size() < 2) {
+            return List.of();
+        }
+        sectionSummary.record(sections.size());
+        log.info("OCR content too long for one planning call, split into {} sections", sections.size());
+        return sections;
+    }
+
+    /**
+     * 按版面得到的文本块（一栏或一个通栏片段为一块），按阅读顺序排列；片段为空时返回空列表
+     */
+    static List<String> layoutBlocks(List<OcrTextSpan> spans) {
+        if (spans == null) {
+            return List.of();
+        }
+        // 多张图片合并后按图片分组，保持图片顺序
+        Map<String, List<OcrTextSpan>> images = new LinkedHashMap<>();
+        for (OcrTextSpan span : spans) {
+            if (span.getText() != null && !span.getText().isBlank()) {
+                String image = span.getSourceMeta() != null ? span.getSourceMeta().getOrDefault("image", "") : "";
+                images.computeIfAbsent(image, k -> new ArrayList<>()).add(span);
+            }
+        }
+
+        List<String> blocks = new ArrayList<>();
+        for (List<OcrTextSpan> imageSpans : images.values()) {
+            if (imageSpans.stream().allMatch(span -> Box.of(span) != null)) {
+                blocks.addAll(columns(imageSpans));
+            } else {
+                blocks.add(join(imageSpans));
+            }
+        }
+        return blocks;
+    }
+
+    private static List<String> columns(List<OcrTextSpan> spans) {
+        double left = spans.stream().mapToDouble(span -> Box.of(span).x1()).min().orElse(0);
+        double right = spans.stream().mapToDouble(span -> Box.of(span).x2()).max().orElse(0);
+        double fullWidth = (right - left) * FULL_WIDTH_RATIO;
+
+        List<OcrTextSpan> ordered = new ArrayList<>(spans);
+        ordered.sort(Comparator.comparingDouble(span -> Box.of(span).y1()));
+
+        List<String> blocks = new ArrayList<>();
+        List<OcrTextSpan> band = new ArrayList<>();
+        for (OcrTextSpan span : ordered) {
+            Box box = Box.of(span);
+            if (box.x2() - box.x1() >= fullWidth) {
+                blocks.addAll(bandColumns(band));
+                band.clear();
+                blocks.add(span.getText().strip());
+            } else {
+                band.add(span);
+            }
+        }
+        blocks.addAll(bandColumns(band));
+        return blocks;
+    }
+
+    /**
+     * 两个通栏片段之间的区域：横向区间相互重叠的片段归为同一栏，栏从左到右、栏内从上到下排列
+     */
+    private static List<String> bandColumns(List<OcrTextSpan> band) {
+        List<OcrTextSpan> byLeft = new ArrayList<>(band);
+        byLeft.sort(Comparator.comparingDouble(span -> Box.of(span).x1()));
+
+        List<List<OcrTextSpan>> columns = new ArrayList<>();
+        double columnRight = Double.NEGATIVE_INFINITY;
+        for (OcrTextSpan span : byLeft) {
+            Box box = Box.of(span);
+            if (columns.isEmpty() || box.x1() >= columnRight) {
+                columns.add(new ArrayList<>());
+                columnRight = box.x2();
+            } else {
+                columnRight = Math.max(columnRight, box.x2());
+            }
+            columns.getLast().add(span);
+        }
+
+        List<String> blocks = new ArrayList<>();
+        for (List<OcrTextSpan> column : columns) {
+            column.sort(Comparator.comparingDouble(span -> Box.of(span).y1()));
+            blocks.add(join(column));
+        }
+        return blocks;
+    }
+
+    private static List<String> paragraphs(String text) {
+        List<String> blocks = new ArrayList<>();
+        for (String paragraph : text.split("\\n\\s*\\n")) {
+            if (!paragraph.isBlank()) {
+                blocks.add(paragraph.strip());
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * 按顺序把相邻的块合并为不超过预算的段；单个块超过预算时按行拆开
+     */
+    static List<String> pack(List<String> blocks, int budget) {
+        List<String> sections = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int currentTokens = 0;
+        for (String block : blocks) {
+            List<String> pieces = TokenEstimator.estimate(block) > budget
+                    ? Arrays.stream(block.split("\\n")).filter(line -> !line.isBlank()).toList()
+                    : List.of(block);
+            for (String piece : pieces) {
+                int tokens = TokenEstimator.estimate(piece);
+                if (currentTokens > 0 && currentTokens + tokens > budget) {
+                    sections.add(current.toString());
+                    current.setLength(0);
+                    currentTokens = 0;
+                }
+                if (currentTokens > 0) {
+                    current.append("\n\n");
+                }
+                current.append(piece);
+                currentTokens += tokens;
+            }
+        }
+        if (currentTokens > 0) {
+            sections.add(current.toString());
+        }
+        return sections;
+    }
+
+    private static String join(List<OcrTextSpan> spans) {
+        StringBuilder sb = new StringBuilder();
+        for (OcrTextSpan span : spans) {
+            if (!sb.isEmpty()) {
+                sb.append('\n');
+            }
+            sb.append(span.getText().strip());
+        }
+        return sb.toString();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * 片段的外接矩形；坐标可能是 [x1,y1,x2,y2] 或多边形顶点 [x1,y1,x2,y2,x3,y3,...]
+     */
+    private record Box(double x1, double y1, double x2, double y2) {
+
+        static Box of(OcrTextSpan span) {
+            List<Double> coords = span.getBoundingBox();
+            if (coords == null || coords.size() < 4 || coords.size() % 2 != 0) {
+                return null;
+            }
+            double x1 = Double.MAX_VALUE, y1 = Double.MAX_VALUE, x2 = -Double.MAX_VALUE, y2 = -Double.MAX_VALUE;
+            for (int i = 0; i < coords.size(); i += 2) {
+                x1 = Math.min(x1, coords.get(i));
+                x2 = Math.max(x2, coords.get(i));
+                y1 = Math.min(y1, coords.get(i + 1));
+                y2 = Math.max(y2, coords.get(i + 1));
+            }
+            return new Box(x1, y1, x2, y2);
+        }
+    }
+}
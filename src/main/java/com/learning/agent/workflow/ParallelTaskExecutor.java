@@ -0,0 +1,296 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.util.Deadline;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 任务并行执行器
+ * 根据任务的 dependsOn 依赖关系，在虚拟线程上并发执行互不依赖的任务，
+ * 每个任务在派生出的分支状态上执行，只产出自己的增量（TaskOutcome），
+ * 再按计划顺序合并回 AgentState，不需要加锁，输出顺序确定
+ */
+@Slf4j
+@Component
+public class ParallelTaskExecutor {
+
+    /**
+     * 未声明 dependsOn 的任务描述中出现这些说法时，视为引用了前面任务的结果
+     * 只匹配明确指向“任务 / 结果”的说法；“以上”“above”这类泛指词常出现在独立任务中，不作为依据
+     */
+    private static final Pattern EARLIER_RESULT_REFERENCE = Pattern.compile(
+            "(上一个?|前一个?|前面的?|之前的?|上述|前序)(任务|步骤|结果)"
+                    + "|(previous|preceding|earlier|prior)\\s+(task|step|result)s?",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 任务描述中对任务编号（例如 T1）的引用
+     */
+    private static final Pattern TASK_ID_REFERENCE = Pattern.compile("(?<![A-Za-z0-9])(T\\d+)(?![0-9])");
+
+    private final int maxParallelTasks;
+
+    public ParallelTaskExecutor(@Value("${agent.execution.max-parallel-tasks:3}") int maxParallelTasks) {
+        this.maxParallelTasks = Math.max(1, maxParallelTasks);
+    }
+
+    public int getMaxParallelTasks() {
+        return maxParallelTasks;
+    }
+
+    /**
+     * 执行状态中从 currentTaskIndex 开始的所有任务，并将结果按计划顺序合并回状态
+     */
+    public AgentState executeAll(AgentState state, WorkflowNode executionNode) {
+        return executeAll(state, executionNode, outcome -> {
+        });
+    }
+
+    /**
+     * 执行状态中从 currentTaskIndex 开始的所有任务，并将结果按计划顺序合并回状态
+     * taskOutcomes 中已有结果的任务（例如从检查点恢复）不会重新执行；
+     * 每个任务完成后先记录到 taskOutcomes，再通知 onTaskCompleted
+     */
+    public AgentState executeAll(AgentState state, WorkflowNode executionNode, Consumer<TaskOutcome> onTaskCompleted) {
+        List<LearningTask> tasks = state.getTasks();
+        int startIndex = state.getCurrentTaskIndex();
+
+        try (Run run = new Run(state, executionNode, startIndex, onTaskCompleted)) {
+            for (int i = startIndex; i < tasks.size(); i++) {
+                run.submit(tasks.get(i));
+            }
+            List<TaskOutcome> outcomes = run.awaitAll();
+            outcomes.forEach(state::merge);
+        }
+
+        state.getTaskOutcomes().clear();
+        state.setCurrentTaskIndex(tasks.size());
+        return state;
+    }
+
+    /**
+     * 边规划边执行：source 每产出一个任务就立即按依赖关系调度，规划输出结束后等待所有任务完成
+     * 已有结果的任务（例如从未完成的流式规划检查点恢复）按 taskId 复用，不会重新执行
+     */
+    public AgentState executeStreaming(AgentState state, WorkflowNode executionNode, TaskSource source,
+                                       Consumer<TaskOutcome> onTaskCompleted) {
+        // 执行中的任务通过 getCurrentTask 读取计划，规划回调线程同时追加任务
+        List<LearningTask> tasks = new CopyOnWriteArrayList<>();
+        state.setTasks(tasks);
+        state.setCurrentTaskIndex(0);
+        state.setPlanStreaming(true);
+
+        try (Run run = new Run(state, executionNode, 0, onTaskCompleted)) {
+            source.stream(task -> {
+                tasks.add(task);
+                run.submit(task);
+            });
+            List<TaskOutcome> outcomes = run.awaitAll();
+            outcomes.forEach(state::merge);
+        }
+
+        state.setTasks(new ArrayList<>(tasks));
+        state.setPlanStreaming(false);
+        state.getTaskOutcomes().clear();
+        state.setCurrentTaskIndex(tasks.size());
+        return state;
+    }
+
+    /**
+     * 流式产出任务的来源，阻塞直到所有任务产出完毕
+     */
+    @FunctionalInterface
+    public interface TaskSource {
+        void stream(Consumer<LearningTask> sink);
+    }
+
+    /**
+     * 计算任务在已提交任务列表中的依赖下标
+     * 只允许依赖排在前面的任务，从而天然避免环；以计划中声明的 dependsOn 为准，
+     * 未声明依赖但描述中明确引用了前面的任务编号或任务结果时，保持原有的顺序语义（依赖全部前序任务）
+     */
+    static List<Integer> resolveDependencies(List<LearningTask> earlierTasks, LearningTask task) {
+        Map<String, Integer> indexById = new HashMap<>();
+        for (int i = 0; i < earlierTasks.size(); i++) {
+            String id = earlierTasks.get(i).getTaskId();
+            if (id != null) {
+                indexById.putIfAbsent(id, i);
+            }
+        }
+
+        List<String> declared = task.getDependsOn();
+        if (declared != null && !declared.isEmpty()) {
+            SortedSet<Integer> deps = new TreeSet<>();
+            for (String dependency : declared) {
+                Integer index = indexById.get(dependency);
+                if (index == null) {
+                    log.warn("Task {} depends on unknown or later task {}, ignoring", task.getTaskId(), dependency);
+                } else {
+                    deps.add(index);
+                }
+            }
+            return new ArrayList<>(deps);
+        }
+
+        if (referencesEarlierResults(earlierTasks, task)) {
+            List<Integer> all = new ArrayList<>();
+            for (int i = 0; i < earlierTasks.size(); i++) {
+                all.add(i);
+            }
+            return all;
+        }
+        return List.of();
+    }
+
+    private static boolean referencesEarlierResults(List<LearningTask> earlierTasks, LearningTask task) {
+        if (earlierTasks.isEmpty() || task.getDescription() == null) {
+            return false;
+        }
+        String description = task.getDescription();
+        if (EARLIER_RESULT_REFERENCE.matcher(description).find()) {
+            return true;
+        }
+        Matcher reference = TASK_ID_REFERENCE.matcher(description);
+        while (reference.find()) {
+            String id = reference.group(1);
+            if (earlierTasks.stream().anyMatch(earlier -> id.equals(earlier.getTaskId()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一次工作流内的任务执行过程
+     * 任务按计划顺序提交，依赖满足后在虚拟线程上执行，并发数受 maxParallelTasks 限制
+     */
+    private final class Run implements AutoCloseable {
+
+        private final AgentState baseState;
+        private final WorkflowNode executionNode;
+        private final int indexOffset;
+        private final Consumer<TaskOutcome> onTaskCompleted;
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        private final Semaphore permits = new Semaphore(maxParallelTasks);
+        private final List<LearningTask> submitted = new ArrayList<>();
+        private final List<CompletableFuture<TaskOutcome>> futures = new ArrayList<>();
+        private boolean sealed;
+
+        private Run(AgentState baseState, WorkflowNode executionNode, int indexOffset,
+                    Consumer<TaskOutcome> onTaskCompleted) {
+            this.baseState = baseState;
+            this.executionNode = executionNode;
+            this.indexOffset = indexOffset;
+            this.onTaskCompleted = onTaskCompleted;
+        }
+
+        synchronized void submit(LearningTask task) {
+            if (sealed) {
+                log.warn("Task {} arrived after the plan was closed, ignoring", task.getTaskId());
+                return;
+            }
+            List<Integer> deps = resolveDependencies(submitted, task);
+            List<CompletableFuture<TaskOutcome>> depFutures = deps.stream().map(futures::get).toList();
+            int taskIndex = indexOffset + submitted.size();
+
+            TaskOutcome previous = task.getTaskId() != null ? baseState.getTaskOutcomes().get(task.getTaskId()) : null;
+            if (previous != null) {
+                log.info("Task {} already completed, reusing its result", task.getTaskId());
+                baseState.getTaskResults().put(task.getTaskId(), previous);
+                submitted.add(task);
+                futures.add(CompletableFuture.completedFuture(previous));
+                return;
+            }
+
+            log.info("Scheduling task {} (index {}) after {}", task.getTaskId(), taskIndex,
+                    deps.stream().map(i -> submitted.get(i).getTaskId()).toList());
+
+            CompletableFuture<TaskOutcome> future = CompletableFuture
+                    .allOf(depFutures.toArray(CompletableFuture[]::new))
+                    .handleAsync((ignored, error) -> runTask(task, taskIndex, depFutures), executor)
+                    .thenApply(this::complete);
+
+            submitted.add(task);
+            futures.add(future);
+        }
+
+        /**
+         * 等待所有任务完成；请求超过截止时间时抛出 DeadlineExceededException，尚未开始的任务不再执行
+         */
+        List<TaskOutcome> awaitAll() {
+            List<CompletableFuture<TaskOutcome>> all;
+            synchronized (this) {
+                sealed = true;
+                all = List.copyOf(futures);
+            }
+            try {
+                CompletableFuture.allOf(all.toArray(CompletableFuture[]::new)).join();
+            } catch (CompletionException e) {
+                for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                    if (cause instanceof Deadline.DeadlineExceededException deadlineExceeded) {
+                        throw deadlineExceeded;
+                    }
+                }
+                throw e;
+            }
+            return all.stream().map(CompletableFuture::join).toList();
+        }
+
+        private TaskOutcome complete(TaskOutcome outcome) {
+            if (outcome.taskId() != null) {
+                baseState.getTaskOutcomes().put(outcome.taskId(), outcome);
+            }
+            try {
+                onTaskCompleted.accept(outcome);
+            } catch (Exception e) {
+                log.warn("Task completion callback failed for {}: {}", outcome.taskId(), e.getMessage());
+            }
+            return outcome;
+        }
+
+        private TaskOutcome runTask(LearningTask task, int taskIndex, List<CompletableFuture<TaskOutcome>> depFutures) {
+            PayloadList dependencyContents = PayloadList.empty();
+            for (CompletableFuture<TaskOutcome> dep : depFutures) {
+                dependencyContents = dependencyContents.plusAll(dep.join().contents());
+            }
+
+            AgentState fork = baseState.forkForTask(taskIndex, dependencyContents);
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new TaskOutcome(task.getTaskId(), List.of(WorkflowNodes.TASK_FAILURE_PREFIX + "已中断"), List.of());
+            }
+
+            try {
+                AgentState result = executionNode.process(fork);
+                return result.deltaSince(task.getTaskId(), dependencyContents.size());
+            } catch (Deadline.DeadlineExceededException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("Task {} failed: {}", task.getTaskId(), e.getMessage(), e);
+                return new TaskOutcome(task.getTaskId(), List.of(WorkflowNodes.TASK_FAILURE_PREFIX + e.getMessage()), List.of());
+            } finally {
+                permits.release();
+            }
+        }
+
+        @Override
+        public void close() {
+            executor.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.learning.agent.workflow;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+/**
+ * 大负载句柄
+ * 小于阈值的负载直接保存在堆中；超过阈值的负载由 {@link PayloadStore} 序列化后写入临时文件并内存映射，
+ * 堆中只保留映射，读取时再解码。解码结果用弱引用缓存：同一次处理中的重复读取不会重复解码，
+ * 也不会因为缓存而长期占用老年代
+ */
+public final class Payload<T> {
+
+    private final T value;
+    private final ByteBuffer mapped;
+    private final Function<ByteBuffer, T> decoder;
+    private volatile WeakReference<T> decoded;
+
+    private Payload(T value, ByteBuffer mapped, Function<ByteBuffer, T> decoder) {
+        this.value = value;
+        this.mapped = mapped;
+        this.decoder = decoder;
+    }
+
+    /**
+     * 保存在堆中的负载
+     */
+    public static <T> Payload<T> inMemory(T value) {
+        return new Payload<>(value, null, null);
+    }
+
+    /**
+     * 已溢出到内存映射文件的负载
+     */
+    static <T> Payload<T> spilled(ByteBuffer mapped, Function<ByteBuffer, T> decoder) {
+        return new Payload<>(null, mapped.asReadOnlyBuffer(), decoder);
+    }
+
+    public T get() {
+        if (mapped == null) {
+            return value;
+        }
+        WeakReference<T> cache = decoded;
+        T result = cache != null ? cache.get() : null;
+        if (result == null) {
+            result = decoder.apply(mapped.duplicate());
+            decoded = new WeakReference<>(result);
+        }
+        return result;
+    }
+
+    public boolean isSpilled() {
+        return mapped != null;
+    }
+
+    /**
+     * 溢出到文件的字节数，保存在堆中时为 0
+     */
+    public int spilledBytes() {
+        return mapped != null ? mapped.capacity() : 0;
+    }
+}
@@ -0,0 +1,82 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.util.PersistentList;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 由负载句柄组成的只追加字符串列表
+ * 元素以 {@link Payload} 保存，已溢出的内容在读取元素时才解码；与 PersistentList 一样不可变、结构共享，
+ * 追加、截取和转换都只传递句柄，不解码内容
+ */
+public final class PayloadList extends AbstractList<String> implements RandomAccess {
+
+    private static final PayloadList EMPTY = new PayloadList(PersistentList.empty());
+
+    private final PersistentList<Payload<String>> payloads;
+
+    private PayloadList(PersistentList<Payload<String>> payloads) {
+        this.payloads = payloads;
+    }
+
+    public static PayloadList empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 转换为句柄列表；已经是句柄列表时直接返回，否则每个元素作为堆内负载保存
+     */
+    public static PayloadList from(Collection<String> source) {
+        if (source instanceof PayloadList list) {
+            return list;
+        }
+        return EMPTY.plusAll(source);
+    }
+
+    /**
+     * 追加一个句柄，返回新版本
+     */
+    public PayloadList plus(Payload<String> payload) {
+        return new PayloadList(payloads.plus(payload));
+    }
+
+    /**
+     * 按顺序追加多个元素，返回新版本；参数是句柄列表时直接共享其句柄
+     */
+    public PayloadList plusAll(Collection<String> elements) {
+        if (elements == null || elements.isEmpty()) {
+            return this;
+        }
+        if (elements instanceof PayloadList list) {
+            return new PayloadList(payloads.plusAll(list.payloads));
+        }
+        List<Payload<String>> added = new ArrayList<>(elements.size());
+        for (String element : elements) {
+            added.add(Payload.inMemory(element));
+        }
+        return new PayloadList(payloads.plusAll(added));
+    }
+
+    Payload<String> payload(int index) {
+        return payloads.get(index);
+    }
+
+    @Override
+    public String get(int index) {
+        return payloads.get(index).get();
+    }
+
+    @Override
+    public int size() {
+        return payloads.size();
+    }
+
+    @Override
+    public PayloadList subList(int fromIndex, int toIndex) {
+        return new PayloadList(PersistentList.from(payloads.subList(fromIndex, toIndex)));
+    }
+}
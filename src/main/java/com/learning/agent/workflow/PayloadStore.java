@@ -0,0 +1,197 @@
+package com.learning.agent.workflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.agent.dto.client.OcrStructuredResult;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 状态大负载存储
+ * 请求的 OCR 结果和生成内容在工作流、结果缓存和会话中可能保存数分钟；超过阈值的负载写入临时文件并内存映射，
+ * 堆中只保留句柄。映射建立后文件立即删除，句柄被回收时映射随之释放，不需要额外清理
+ * 每个请求通过 {@link Scope} 统计保存在堆中和溢出到文件的字节数
+ */
+@Slf4j
+@Component
+public class PayloadStore {
+
+    public static final String PAYLOAD_BYTES = "agent.state.payload.bytes";
+    public static final String SPILLED_BYTES = "agent.state.spilled.bytes";
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int thresholdBytes;
+    private final Path directory;
+
+    private final AtomicLong liveSpilledBytes = new AtomicLong();
+    private final DistributionSummary heapSummary;
+    private final DistributionSummary spilledSummary;
+
+    public PayloadStore(
+            MeterRegistry meterRegistry,
+            ObjectMapper objectMapper,
+            @Value("${agent.state.spill.enabled:true}") boolean enabled,
+            @Value("${agent.state.spill.threshold-bytes:32768}") int thresholdBytes,
+            @Value("${agent.state.spill.dir:}") String directory) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.thresholdBytes = Math.max(1, thresholdBytes);
+        this.directory = directory == null || directory.isBlank() ? null : Path.of(directory);
+        this.heapSummary = payloadBytes(meterRegistry, "heap");
+        this.spilledSummary = payloadBytes(meterRegistry, "spilled");
+        Gauge.builder(SPILLED_BYTES, liveSpilledBytes, AtomicLong::get)
+                .description("当前溢出到内存映射文件、仍被句柄引用的负载字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static DistributionSummary payloadBytes(MeterRegistry meterRegistry, String location) {
+        return DistributionSummary.builder(PAYLOAD_BYTES)
+                .description("每个请求的大负载字节数（location=heap 保存在堆中 / spilled 溢出到内存映射文件）")
+                .baseUnit("bytes")
+                .tag("location", location)
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 为一个请求创建负载作用域
+     */
+    public Scope newScope() {
+        return new Scope();
+    }
+
+    public long liveSpilledBytes() {
+        return liveSpilledBytes.get();
+    }
+
+    private <T> Payload<T> spill(byte[] bytes, Function<ByteBuffer, T> decoder) {
+        try {
+            Path file = directory != null
+                    ? Files.createTempFile(Files.createDirectories(directory), "agent-state-", ".spill")
+                    : Files.createTempFile("agent-state-", ".spill");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer source = ByteBuffer.wrap(bytes);
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+                Payload<T> payload = Payload.spilled(channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes.length), decoder);
+                int size = bytes.length;
+                liveSpilledBytes.addAndGet(size);
+                CLEANER.register(payload, () -> liveSpilledBytes.addAndGet(-size));
+                return payload;
+            } finally {
+                // 映射在文件删除后仍然有效；不支持删除已映射文件的系统上退出时再删除
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    file.toFile().deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to spill {} bytes to disk, keeping in memory: {}", bytes.length, e.getMessage());
+            return null;
+        }
+    }
+
+    private OcrStructuredResult readOcr(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        try {
+            return objectMapper.readValue(bytes, OcrStructuredResult.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read spilled OCR result: " + e.getMessage(), e);
+        }
+    }
+
+    private static String readText(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    /**
+     * 单个请求的负载作用域：按阈值决定负载保存在堆中还是溢出，并统计本请求的字节数
+     */
+    public final class Scope {
+
+        private final AtomicLong heapBytes = new AtomicLong();
+        private final AtomicLong spilledBytes = new AtomicLong();
+
+        private Scope() {
+        }
+
+        /**
+         * 保存生成的文本内容；堆中大小按每字符 2 字节估算
+         */
+        public Payload<String> text(String text) {
+            if (text == null || !enabled || text.length() * 2L < thresholdBytes) {
+                heapBytes.addAndGet(text != null ? text.length() * 2L : 0);
+                return Payload.inMemory(text);
+            }
+            return hold(text, text.getBytes(StandardCharsets.UTF_8), PayloadStore::readText);
+        }
+
+        /**
+         * 保存 OCR 结果（包括逐行片段和坐标）；大小按序列化后的字节数计
+         */
+        public Payload<OcrStructuredResult> ocr(OcrStructuredResult ocr) {
+            if (ocr == null) {
+                return null;
+            }
+            byte[] bytes;
+            try {
+                bytes = objectMapper.writeValueAsBytes(ocr);
+            } catch (IOException e) {
+                log.warn("Failed to serialize OCR result, keeping in memory: {}", e.getMessage());
+                return Payload.inMemory(ocr);
+            }
+            if (!enabled || bytes.length < thresholdBytes) {
+                heapBytes.addAndGet(bytes.length);
+                return Payload.inMemory(ocr);
+            }
+            return hold(ocr, bytes, PayloadStore.this::readOcr);
+        }
+
+        private <T> Payload<T> hold(T value, byte[] bytes, Function<ByteBuffer, T> decoder) {
+            Payload<T> payload = spill(bytes, decoder);
+            if (payload == null) {
+                heapBytes.addAndGet(bytes.length);
+                return Payload.inMemory(value);
+            }
+            spilledBytes.addAndGet(bytes.length);
+            return payload;
+        }
+
+        public long heapBytes() {
+            return heapBytes.get();
+        }
+
+        public long spilledBytes() {
+            return spilledBytes.get();
+        }
+
+        /**
+         * 请求结束时记录本请求的负载字节数
+         */
+        public void record() {
+            heapSummary.record(heapBytes.get());
+            spilledSummary.record(spilledBytes.get());
+        }
+    }
+}
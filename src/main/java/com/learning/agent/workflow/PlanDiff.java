@@ -0,0 +1,190 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.dto.client.NotionCreatedPage;
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.model.LearningTask;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 计划差异
+ * 修改问题后重新提交时，新计划与同一会话上一轮执行过的计划比较：任务类型、描述、前置任务和输入材料
+ * （OCR 内容、学习者画像）都没有变化的任务直接复用上一轮的内容和 Notion 页面，只执行变化或新增的任务
+ * 复用的结果通过 taskOutcomes 交给执行器，与从检查点恢复时跳过已完成任务的方式相同
+ */
+@Slf4j
+@Component
+public class PlanDiff {
+
+    public static final String TASKS = "agent.plan.diff.tasks";
+
+    private final boolean enabled;
+    private final Counter reusedTasks;
+    private final Counter executedTasks;
+
+    public PlanDiff(
+            MeterRegistry meterRegistry,
+            @Value("${agent.plan.diff.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        this.reusedTasks = tasks(meterRegistry, "reused");
+        this.executedTasks = tasks(meterRegistry, "executed");
+    }
+
+    private static Counter tasks(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(TASKS)
+                .description("与上一轮计划比较后的任务数（reused 复用上一轮结果 / executed 变化或新增需要执行）")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 为完整计划中尚未执行的任务查找可复用的结果
+     */
+    public void reuse(AgentState state) {
+        List<LearningTask> tasks = state.getTasks();
+        for (int i = state.getCurrentTaskIndex(); i < tasks.size(); i++) {
+            reuse(state, tasks.get(i), tasks.subList(0, i));
+        }
+    }
+
+    /**
+     * 查找单个任务可复用的结果，找到时写入 taskOutcomes，执行器不再执行该任务；流式规划时每个任务产出后调用
+     *
+     * @param earlierTasks 计划中排在该任务前面的任务
+     * @return 复用了上一轮的结果时返回 true
+     */
+    public boolean reuse(AgentState state, LearningTask task, List<LearningTask> earlierTasks) {
+        ConversationTurn previous = state.getPreviousTurn();
+        if (!enabled || previous == null || previous.reusable().isEmpty() || task.getTaskId() == null
+                || state.getTaskOutcomes().containsKey(task.getTaskId())) {
+            return false;
+        }
+
+        List<LearningTask> plan = new ArrayList<>(earlierTasks);
+        plan.add(task);
+        TaskOutcome outcome = previous.reusable().get(fingerprints(context(state), plan).getLast());
+        if (outcome == null) {
+            executedTasks.increment();
+            return false;
+        }
+
+        TaskOutcome reused = new TaskOutcome(task.getTaskId(), outcome.contents(), outcome.pages());
+        state.getReusedTasks().add(task.getTaskId());
+        state.getTaskResults().put(task.getTaskId(), reused);
+        state.getTaskOutcomes().put(task.getTaskId(), reused);
+        reusedTasks.increment();
+        log.info("Task {} is unchanged since the previous turn, reusing its result", task.getTaskId());
+        return true;
+    }
+
+    /**
+     * 为 Notion 写入节点加上复用：延迟写入的任务与上一轮完全相同并全部复用时，沿用上一轮的合并页面，不再新建
+     */
+    public WorkflowNode notionWrite(WorkflowNode writeNode) {
+        return state -> {
+            ConversationTurn previous = state.getPreviousTurn();
+            if (enabled && previous != null && previous.consolidatedPage() != null
+                    && state.getConsolidatedPage() == null) {
+                List<LearningTask> deferred = state.getTasks().stream().filter(state::isDeferWrite).toList();
+                long previousDeferred = previous.tasks().stream().filter(LearningTask::isDeferWrite).count();
+                if (!deferred.isEmpty() && deferred.size() == previousDeferred
+                        && deferred.stream().allMatch(state::isReused)) {
+                    NotionCreatedPage page = previous.consolidatedPage();
+                    log.info("All deferred tasks reused, keeping consolidated page {}", page.getId());
+                    state.setConsolidatedPage(page);
+                    state.addCreatedPage(page.getId(), page.getUrl());
+                    return state;
+                }
+            }
+            return writeNode.process(state);
+        };
+    }
+
+    /**
+     * 本轮可供下一轮复用的任务结果（按任务指纹），执行失败或被跳过的任务不复用
+     */
+    static Map<String, TaskOutcome> reusableOutcomes(AgentState state) {
+        Map<String, TaskOutcome> reusable = new LinkedHashMap<>();
+        List<LearningTask> tasks = state.getTasks();
+        if (tasks == null || tasks.isEmpty()) {
+            return reusable;
+        }
+        List<String> fingerprints = fingerprints(context(state), tasks);
+        for (int i = 0; i < tasks.size(); i++) {
+            String taskId = tasks.get(i).getTaskId();
+            TaskOutcome outcome = taskId != null ? state.getTaskResults().get(taskId) : null;
+            if (outcome != null && succeeded(outcome)) {
+                reusable.putIfAbsent(fingerprints.get(i), outcome);
+            }
+        }
+        return reusable;
+    }
+
+    private static boolean succeeded(TaskOutcome outcome) {
+        return !outcome.contents().isEmpty() && outcome.contents().stream()
+                .noneMatch(content -> content == null || content.startsWith(WorkflowNodes.TASK_FAILURE_PREFIX));
+    }
+
+    /**
+     * 计划中每个任务的指纹：输入材料、任务类型、规范化后的描述，以及前置任务的指纹
+     * 前置任务变化时，依赖它的任务也视为变化
+     */
+    static List<String> fingerprints(String context, List<LearningTask> tasks) {
+        List<String> fingerprints = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            LearningTask task = tasks.get(i);
+            StringBuilder sb = new StringBuilder(context).append('\u0000')
+                    .append(task.getType() != null ? task.getType().getValue() : "").append('\u0000')
+                    .append(normalize(task.getDescription()));
+            for (int dependency : ParallelTaskExecutor.resolveDependencies(tasks.subList(0, i), task)) {
+                sb.append('\u0000').append(fingerprints.get(dependency));
+            }
+            fingerprints.add(sha256(sb.toString()));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * 任务的输入材料：OCR 内容和学习者画像
+     */
+    static String context(AgentState state) {
+        OcrStructuredResult ocr = state.getOcrResult();
+        LearnerProfile profile = state.getLearnerProfile();
+        return sha256(String.join("\u0000",
+                ocr != null ? nullToEmpty(ocr.getPlainText()) : "",
+                ocr != null ? nullToEmpty(ocr.getMarkdownText()) : "",
+                profile != null ? nullToEmpty(profile.getCompetencyLevel()) : "",
+                profile != null ? nullToEmpty(profile.getLearningGoal()) : "",
+                profile != null ? nullToEmpty(profile.getPreferredStyle()) : ""));
+    }
+
+    private static String normalize(String description) {
+        return description == null ? "" : description.strip().replaceAll("\\s+", " ");
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearningTask;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分段规划的合并步骤
+ * 按段的顺序合并各段的任务清单：去掉与前面各段已接受任务重复的任务（类型相同，描述相同，
+ * 或检索词高度重合且描述中的数字完全一致，避免"第 1 题""第 2 题"这类逐题任务被当成重复），
+ * 同一段内规划出的任务视为模型有意拆分，不做去重；
+ * 按 T1..Tn 重新编号，并把段内的前置任务引用改写为新编号（依赖被去掉的重复任务时改为依赖保留的任务）
+ * 合并在本地完成，不再调用模型
+ */
+final class PlanReducer {
+
+    /**
+     * 两个任务描述的检索词重合度（交集 / 并集）达到该值时视为重复
+     */
+    static final double DUPLICATE_OVERLAP = 0.8;
+
+    private static final Pattern TASK_REF = Pattern.compile("\\bT\\d+\\b");
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    private final List<LearningTask> accepted = new ArrayList<>();
+    private final List<Set<String>> acceptedTerms = new ArrayList<>();
+    private final List<Set<String>> acceptedNumbers = new ArrayList<>();
+    private final List<Integer> acceptedSections = new ArrayList<>();
+    private int sections;
+
+    /**
+     * 合并一段的任务清单
+     *
+     * @return 本段新接受的任务（已重新编号），重复的任务不包含在内
+     */
+    synchronized List<LearningTask> add(List<LearningTask> sectionTasks) {
+        // 段内编号 -> 合并后的编号
+        Map<String, String> ids = new HashMap<>();
+        List<LearningTask> added = new ArrayList<>();
+        int section = sections++;
+        for (LearningTask task : sectionTasks) {
+            String description = normalize(task.getDescription());
+            Set<String> terms = ExecutionContextAssembler.terms(description);
+            Set<String> numbers = numbers(description);
+            int duplicate = findDuplicate(task, section, description, terms, numbers);
+            if (duplicate >= 0) {
+                if (task.getTaskId() != null) {
+                    ids.putIfAbsent(task.getTaskId(), accepted.get(duplicate).getTaskId());
+                }
+                continue;
+            }
+
+            String id = "T" + (accepted.size() + 1);
+            List<String> dependsOn = new ArrayList<>();
+            if (task.getDependsOn() != null) {
+                for (String dependency : task.getDependsOn()) {
+                    String mapped = ids.get(dependency);
+                    if (mapped != null && !dependsOn.contains(mapped)) {
+                        dependsOn.add(mapped);
+                    }
+                }
+            }
+            task.setDescription(renumber(task.getDescription(), ids));
+            if (task.getTaskId() != null) {
+                ids.putIfAbsent(task.getTaskId(), id);
+            }
+            task.setTaskId(id);
+            task.setDependsOn(dependsOn);
+            accepted.add(task);
+            acceptedTerms.add(terms);
+            acceptedNumbers.add(numbers);
+            acceptedSections.add(section);
+            added.add(task);
+        }
+        return added;
+    }
+
+    /**
+     * 已合并的完整计划
+     */
+    synchronized List<LearningTask> tasks() {
+        return List.copyOf(accepted);
+    }
+
+    private int findDuplicate(LearningTask task, int section, String description,
+                              Set<String> terms, Set<String> numbers) {
+        for (int i = 0; i < accepted.size(); i++) {
+            LearningTask existing = accepted.get(i);
+            if (acceptedSections.get(i) == section || existing.getType() != task.getType()) {
+                continue;
+            }
+            if (normalize(existing.getDescription()).equals(description)
+                    || (acceptedNumbers.get(i).equals(numbers)
+                    && overlap(acceptedTerms.get(i), terms) >= DUPLICATE_OVERLAP)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 描述中出现的数字（题号、页码等），检索词不含单个数字，需要单独比较
+     */
+    private static Set<String> numbers(String description) {
+        Set<String> numbers = new HashSet<>();
+        Matcher matcher = NUMBER.matcher(description);
+        while (matcher.find()) {
+            numbers.add(matcher.group().replaceFirst("^0+(?=\\d)", ""));
+        }
+        return numbers;
+    }
+
+    private static double overlap(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        Set<String> union = new HashSet<>(a);
+        union.addAll(b);
+        int common = a.size() + b.size() - union.size();
+        return (double) common / union.size();
+    }
+
+    /**
+     * 描述中引用的段内任务编号改写为合并后的编号
+     */
+    private static String renumber(String description, Map<String, String> ids) {
+        if (description == null || ids.isEmpty()) {
+            return description;
+        }
+        Matcher matcher = TASK_REF.matcher(description);
+        StringBuilder sb = new StringBuilder();
+        while (matcher.find()) {
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(ids.getOrDefault(matcher.group(), matcher.group())));
+        }
+        return matcher.appendTail(sb).toString();
+    }
+
+    private static String normalize(String description) {
+        return description == null ? "" : description.strip().replaceAll("\\s+", " ");
+    }
+}
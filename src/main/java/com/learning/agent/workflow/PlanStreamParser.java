@@ -0,0 +1,77 @@
+package com.learning.agent.workflow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量 JSON 数组解析器
+ * 逐段接收流式输出的规划结果（任务对象数组），每当一个顶层对象完整时立即返回它的 JSON 文本，
+ * 数组之前的内容（例如 ```json 代码块标记）会被忽略；只做括号和字符串边界的扫描，对象本身由调用方解析
+ */
+class PlanStreamParser {
+
+    private final StringBuilder current = new StringBuilder();
+    private boolean started;
+    private boolean finished;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+
+    /**
+     * 输入一段新的输出
+     *
+     * @return 本段输出中完成的顶层对象，按出现顺序排列
+     */
+    List<String> feed(String chunk) {
+        List<String> completed = new ArrayList<>();
+        if (chunk == null) {
+            return completed;
+        }
+        for (int i = 0; i < chunk.length() && !finished; i++) {
+            char c = chunk.charAt(i);
+            if (!started) {
+                started = c == '[';
+                continue;
+            }
+            if (depth == 0) {
+                // 对象之间的逗号和空白
+                if (c == '{') {
+                    depth = 1;
+                    current.append(c);
+                } else if (c == ']') {
+                    finished = true;
+                }
+                continue;
+            }
+
+            current.append(c);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) {
+                    completed.add(current.toString());
+                    current.setLength(0);
+                }
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * 是否已读到数组的结束括号
+     */
+    boolean isFinished() {
+        return finished;
+    }
+}
@@ -0,0 +1,158 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 规划快速通道
+ * 规划提示要求简单请求只生成一个 execution 任务；对没有图片、问题简短且只有单一意图的请求，
+ * 本地规则直接生成这一个任务，省去一次规划模型调用
+ */
+@Slf4j
+@Component
+public class PlanningFastPath {
+
+    public static final String REQUESTS = "agent.planning.fast-path";
+
+    static final String TASK_ID = "T1";
+
+    /**
+     * 出现这些词时请求包含多个步骤或需要制定计划，交给规划模型拆解
+     */
+    private static final List<String> COMPLEX_KEYWORDS = List.of(
+            "计划", "安排", "每天", "每周", "每日", "周期", "步骤", "分别", "然后", "之后", "接着", "并且", "同时",
+            "以及", "多个", "所有", "一系列", "拆分", "对比", "比较", "阶段",
+            "plan", "schedule", "step", "then", "each", "compare");
+
+    /**
+     * 单一意图的动作词，请求至少包含其中一个才走快速通道
+     */
+    private static final List<String> INTENT_KEYWORDS = List.of(
+            "整理", "总结", "归纳", "解释", "讲解", "介绍", "说明", "笔记", "记录", "写", "生成", "新建", "创建",
+            "出题", "练习", "翻译", "推导", "证明", "求解", "解答",
+            "explain", "summar", "note", "write", "create", "translate", "solve");
+
+    /**
+     * 句末标点或分号超过一个，或出现编号列表时视为多个请求
+     */
+    private static final Pattern SENTENCE_END = Pattern.compile("[。！？!?；;]");
+    private static final Pattern NUMBERED_ITEM = Pattern.compile("(^|\\s)(\\d+[.、)）]|[①②③④⑤])");
+
+    private final boolean enabled;
+    private final int maxQueryLength;
+    private final Counter hits;
+    private final Counter misses;
+
+    public PlanningFastPath(
+            MeterRegistry meterRegistry,
+            @Value("${agent.planning.fast-path.enabled:true}") boolean enabled,
+            @Value("${agent.planning.fast-path.max-query-length:60}") int maxQueryLength) {
+        this.enabled = enabled;
+        this.maxQueryLength = maxQueryLength;
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(REQUESTS)
+                .description("规划快速通道判断次数（hit 直接生成单任务计划 / miss 调用规划模型）")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 为规划节点加上快速通道：命中时直接生成单任务计划，否则调用原规划节点
+     */
+    public WorkflowNode planning(WorkflowNode planningNode) {
+        return state -> plan(state) ? state : planningNode.process(state);
+    }
+
+    /**
+     * 判断请求是否走快速通道并记录命中指标；命中时将单任务计划写入状态
+     *
+     * @return 命中时返回 true
+     */
+    public boolean plan(AgentState state) {
+        if (!enabled || !needsPlan(state)) {
+            return false;
+        }
+        if (!applies(state)) {
+            misses.increment();
+            return false;
+        }
+        hits.increment();
+        log.info("Simple request, using fast-path plan instead of the planning model");
+        state.setTasks(new ArrayList<>(List.of(task(state.getUserQuery().strip()))));
+        state.setPlanStreaming(false);
+        state.setCurrentTaskIndex(0);
+        return true;
+    }
+
+    /**
+     * 记录一次未命中（流式规划路径，路由已排除命中快速通道的请求）
+     */
+    void recordMiss() {
+        if (enabled) {
+            misses.increment();
+        }
+    }
+
+    /**
+     * 请求是否满足快速通道的条件（不记录指标，供路由判断）
+     */
+    public boolean applies(AgentState state) {
+        if (!enabled || !needsPlan(state) || hasImage(state) || WorkflowNodes.hasOcrContent(state)) {
+            return false;
+        }
+        return isSimpleQuery(state.getUserQuery(), maxQueryLength);
+    }
+
+    static boolean isSimpleQuery(String query, int maxQueryLength) {
+        if (query == null) {
+            return false;
+        }
+        String text = query.strip();
+        if (text.length() < 2 || text.length() > maxQueryLength || text.contains("\n")) {
+            return false;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (COMPLEX_KEYWORDS.stream().anyMatch(lower::contains)) {
+            return false;
+        }
+        // 末尾的一个句号/问号不算多句
+        String body = SENTENCE_END.matcher(text.substring(text.length() - 1)).matches()
+                ? text.substring(0, text.length() - 1)
+                : text;
+        if (SENTENCE_END.matcher(body).find() || NUMBERED_ITEM.matcher(body).find()) {
+            return false;
+        }
+        return INTENT_KEYWORDS.stream().anyMatch(lower::contains);
+    }
+
+    private static LearningTask task(String query) {
+        return LearningTask.builder()
+                .taskId(TASK_ID)
+                .type(LearningTaskType.EXECUTION)
+                .description("根据用户请求完成：" + query + "。结合学习者画像输出结构化的 Markdown 学习内容，并写入 Notion 笔记页面")
+                .priority(3)
+                .build();
+    }
+
+    private static boolean needsPlan(AgentState state) {
+        return state.getTasks() == null || state.getTasks().isEmpty() || state.isPlanStreaming();
+    }
+
+    private static boolean hasImage(AgentState state) {
+        return state.getImagePath() != null && !state.getImagePath().isEmpty();
+    }
+}
@@ -1,15 +1,21 @@
 package com.learning.agent.workflow;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.learning.agent.client.NotionTools;
+import com.learning.agent.util.ConcurrentBranches;
+import com.learning.agent.util.Deadline;
 import dev.langchain4j.data.message.AiMessage;
-import dev.langchain4j.data.message.SystemMessage;
-import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
@@ -22,6 +28,9 @@ import java.util.regex.Pattern;
  * <p>
  * ReAct = Reasoning + Acting
  * LLM 生成 JSON 格式的操作指令，系统解析并执行
+ * <p>
+ * 每轮请求使用固定的系统提示和任务开头，之后依次追加模型输出和观察结果，便于服务商复用前缀缓存
+ * 一轮中可以输出多个相互独立的操作（JSON 数组），这些操作并发执行，观察结果按操作顺序合并为一条消息
  */
 @Slf4j
 @Component
@@ -30,9 +39,26 @@ public class ReactExecutor {
     private final ChatLanguageModel chatModel;
     private final NotionTools notionTools;
     private final ObjectMapper objectMapper;
+    private final int historyMaxTokens;
+    private final int recentTurns;
+    private final int observationTokens;
+    private final DistributionSummary promptTokens;
+    private final DistributionSummary prefixTokens;
+    private final DistributionSummary toolCalls;
+
+    public static final String PROMPT_TOKENS = "agent.react.prompt.tokens";
+    public static final String PREFIX_TOKENS = "agent.react.prefix.tokens";
+    public static final String TOOL_CALLS = "agent.react.tool.calls";
 
     private static final int MAX_ITERATIONS = 5;
 
+    /**
+     * 每轮最多执行的操作数，超出的操作不执行
+     */
+    private static final int MAX_TOOL_CALLS_PER_TURN = 5;
+
+    private static final Pattern JSON_BLOCK = Pattern.compile("```json\\s*\\n(.*?)\\n```", Pattern.DOTALL);
+
     /**
      * ReAct 执行结果
      */
@@ -55,8 +81,9 @@ public class ReactExecutor {
             
             ### 重要规则
             1. 你必须使用 JSON 格式输出操作指令
-            2. 每次只能输出一个操作
-            3. 等待操作结果后再决定下一步
+            2. 每轮可以输出一个操作；多个相互独立的操作（例如同时搜索两个页面）可以放在一个 JSON 数组中一起输出，
+               它们会同时执行，观察结果按数组顺序返回
+            3. 依赖前一个操作结果的操作（例如需要先搜索得到页面 ID 再创建页面）必须等待观察结果后在下一轮输出
             
             ### 输出格式
             使用以下格式输出你的思考和行动：
@@ -74,6 +101,14 @@ public class ReactExecutor {
             }
             ```
             
+            多个独立操作的 JSON 格式示例：
+            ```json
+            [
+              {"tool": "notionSearch", "parameters": {"query": "sophie"}},
+              {"tool": "notionSearch", "parameters": {"query": "物理笔记"}}
+            ]
+            ```
+            
             或者当任务完成时：
             **Thought**: [总结]
             **Final Answer**: [最终结果描述]
@@ -119,10 +154,31 @@ public class ReactExecutor {
     public ReactExecutor(
             @Qualifier("executionChatModel") ChatLanguageModel chatModel,
             NotionTools notionTools,
-            ObjectMapper objectMapper) {
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${agent.react.history.max-tokens:12000}") int historyMaxTokens,
+            @Value("${agent.react.history.recent-turns:2}") int recentTurns,
+            @Value("${agent.react.observation-tokens:1500}") int observationTokens) {
         this.chatModel = chatModel;
         this.notionTools = notionTools;
         this.objectMapper = objectMapper;
+        this.historyMaxTokens = historyMaxTokens;
+        this.recentTurns = recentTurns;
+        this.observationTokens = observationTokens;
+        this.promptTokens = DistributionSummary.builder(PROMPT_TOKENS)
+                .description("ReAct 每轮提示词的估算 token 数")
+                .baseUnit("tokens")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+        this.prefixTokens = DistributionSummary.builder(PREFIX_TOKENS)
+                .description("ReAct 每轮请求中与上一轮相同、可被前缀缓存复用的估算 token 数（本地估算，不是服务商报告的命中数）")
+                .baseUnit("tokens")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+        this.toolCalls = DistributionSummary.builder(TOOL_CALLS)
+                .description("ReAct 每轮执行的操作数")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
     }
 
     /**
@@ -131,8 +187,8 @@ public class ReactExecutor {
     public ReactResult execute(String task) {
         log.info("🔄 Starting ReAct execution for task");
 
-        List<String> conversationHistory = new ArrayList<>();
-        conversationHistory.add("Task: " + task);
+        ReactHistory history = new ReactHistory(objectMapper, REACT_SYSTEM_PROMPT, task, recentTurns, historyMaxTokens,
+                observationTokens);
 
         // 追踪创建的页面
         List<CreatedPageInfo> createdPages = new ArrayList<>();
@@ -140,13 +196,13 @@ public class ReactExecutor {
         for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
             log.info("🔄 ReAct Iteration {}/{}", iteration + 1, MAX_ITERATIONS);
 
-            // 构建提示
-            String prompt = buildPrompt(conversationHistory);
+            // 构建消息（较早的轮次已压缩，总长度不超过上限；新的轮次只追加在末尾）
+            List<ChatMessage> messages = history.messages();
+            promptTokens.record(history.tokens());
+            prefixTokens.record(history.reusedPrefixTokens());
 
-            // 调用 LLM
-            Response<AiMessage> response = chatModel.generate(
-                    SystemMessage.from(REACT_SYSTEM_PROMPT),
-                    UserMessage.from(prompt));
+            // 调用 LLM（只使用请求剩余的时间预算）
+            Response<AiMessage> response = Deadline.callWithin("react", () -> chatModel.generate(messages));
 
             String llmOutput = response.content().text();
             log.debug("LLM Output:\n{}", llmOutput);
@@ -159,26 +215,23 @@ public class ReactExecutor {
                 return new ReactResult(finalAnswer, createdPages);
             }
 
-            // 提取并执行操作
-            Optional<ToolCall> toolCall = extractToolCall(llmOutput);
-            if (toolCall.isPresent()) {
-                ToolCall call = toolCall.get();
-                log.info("🛠️ Executing tool: {}", call.tool);
-
-                String observation = executeToolCall(call);
-                log.info("👁️ Observation: {}", observation);
+            // 提取并执行操作（同一轮的多个操作并发执行）
+            List<ToolCall> calls = extractToolCalls(llmOutput);
+            if (!calls.isEmpty()) {
+                toolCalls.record(calls.size());
+                List<String> observations = executeToolCalls(calls);
 
                 // 捕获页面创建信息
-                if ("notionCreatePage".equals(call.tool)) {
-                    extractPageInfoFromObservation(observation, createdPages);
+                for (int i = 0; i < calls.size(); i++) {
+                    if ("notionCreatePage".equals(calls.get(i).tool)) {
+                        extractPageInfoFromObservation(observations.get(i), createdPages);
+                    }
                 }
 
-                conversationHistory.add(llmOutput);
-                conversationHistory.add("Observation: " + observation);
+                history.add(llmOutput, calls.size() == 1 ? observations.getFirst() : combineObservations(observations));
             } else {
                 log.warn("⚠️ No valid tool call found in LLM output");
-                conversationHistory.add(llmOutput);
-                conversationHistory.add("Observation: 未能识别有效的工具调用，请使用正确的 JSON 格式");
+                history.add(llmOutput, "未能识别有效的工具调用，请使用正确的 JSON 格式");
             }
         }
 
@@ -207,43 +260,93 @@ public class ReactExecutor {
         }
     }
 
-    private String buildPrompt(List<String> history) {
-        StringBuilder sb = new StringBuilder();
-        for (String entry : history) {
-            sb.append(entry).append("\n\n");
+    /**
+     * 提取本轮的操作：JSON 代码块可以是单个操作对象，也可以是操作数组；无法识别的数组元素跳过
+     */
+    private List<ToolCall> extractToolCalls(String text) {
+        // 提取 JSON 代码块
+        Matcher matcher = JSON_BLOCK.matcher(text);
+        if (!matcher.find()) {
+            return List.of();
         }
-        sb.append("请继续执行任务（输出 Thought 和 Action 或 Final Answer）：");
-        return sb.toString();
-    }
 
-    private Optional<ToolCall> extractToolCall(String text) {
-        // 提取 JSON 代码块
-        Pattern jsonPattern = Pattern.compile("```json\\s*\\n(.*?)\\n```", Pattern.DOTALL);
-        Matcher matcher = jsonPattern.matcher(text);
+        String json = matcher.group(1).trim();
+        try {
+            JsonNode parsed = objectMapper.readTree(json);
+            List<ToolCall> calls = new ArrayList<>();
+            for (JsonNode node : parsed.isArray() ? parsed : List.of(parsed)) {
+                JsonNode tool = node.get("tool");
+                JsonNode parameters = node.get("parameters");
+                if (tool != null && tool.isTextual() && parameters != null && parameters.isObject()) {
+                    calls.add(new ToolCall(tool.asText(), objectMapper.convertValue(parameters, new TypeReference<>() {
+                    })));
+                }
+            }
+            return calls;
+        } catch (Exception e) {
+            log.error("Failed to parse tool call JSON: {}", json, e);
+            return List.of();
+        }
+    }
 
-        if (matcher.find()) {
-            String json = matcher.group(1).trim();
-            try {
-                Map<String, Object> parsed = objectMapper.readValue(json, new TypeReference<>() {
-                });
-                String tool = (String) parsed.get("tool");
-                @SuppressWarnings("unchecked")
-                Map<String, Object> parameters = (Map<String, Object>) parsed.get("parameters");
+    /**
+     * 执行本轮的操作，返回与操作顺序一致的观察结果；多个操作在虚拟线程上并发执行，共享请求的截止时间
+     */
+    private List<String> executeToolCalls(List<ToolCall> calls) {
+        if (calls.size() == 1) {
+            log.info("🛠️ Executing tool: {}", calls.getFirst().tool);
+            String observation = executeToolCall(calls.getFirst());
+            log.info("👁️ Observation: {}", observation);
+            return List.of(observation);
+        }
 
-                if (tool != null && parameters != null) {
-                    return Optional.of(new ToolCall(tool, parameters));
+        log.info("🛠️ Executing {} tools concurrently", calls.size());
+        List<String> observations = new ArrayList<>();
+        Deadline deadline = Deadline.current();
+        try (ConcurrentBranches branches = new ConcurrentBranches()) {
+            List<ConcurrentBranches.Branch<String>> results = new ArrayList<>();
+            for (int i = 0; i < calls.size(); i++) {
+                ToolCall call = calls.get(i);
+                if (i >= MAX_TOOL_CALLS_PER_TURN) {
+                    results.add(null);
+                    continue;
                 }
-            } catch (Exception e) {
-                log.error("Failed to parse tool call JSON: {}", json, e);
+                results.add(branches.fork("react-tool-" + (i + 1) + "-" + call.tool,
+                        () -> Deadline.callWith(deadline, () -> executeToolCall(call))));
+            }
+            for (ConcurrentBranches.Branch<String> result : results) {
+                observations.add(result != null
+                        ? result.await()
+                        : "{\"error\": \"每轮最多执行 " + MAX_TOOL_CALLS_PER_TURN + " 个操作，该操作未执行\"}");
             }
+            log.info("👁️ Observations: {} (timings: {})", observations, branches.timingsMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("react tools interrupted", e);
         }
+        return observations;
+    }
 
-        return Optional.empty();
+    /**
+     * 把多个观察结果按操作顺序合并为一个 JSON 数组；不是 JSON 的观察结果作为字符串元素
+     */
+    private String combineObservations(List<String> observations) {
+        ArrayNode combined = objectMapper.createArrayNode();
+        for (String observation : observations) {
+            try {
+                combined.add(objectMapper.readTree(observation));
+            } catch (Exception e) {
+                combined.add(observation);
+            }
+        }
+        return combined.toString();
     }
 
     private String executeToolCall(ToolCall call) {
         try {
             return notionTools.executeTool(call.tool, call.parameters);
+        } catch (Deadline.DeadlineExceededException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Tool execution failed", e);
             return String.format("{\"error\": \"%s\"}", e.getMessage());
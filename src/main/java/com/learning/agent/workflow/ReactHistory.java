@@ -0,0 +1,284 @@
+package com.learning.agent.workflow;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.learning.agent.util.TokenEstimator;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ReAct 对话历史
+ * 每轮加入时按原文保存（观察结果按 token 上限截断），同时一次性算出它的压缩形式：Thought、精简后的 Action
+ * 和观察结果中的关键字段（id、标题、url、成功标志、错误）
+ * <p>
+ * 消息按固定前缀排列：系统提示、任务、压缩块、原文轮次，新的一轮只追加在末尾，已发送的轮次文本不再变化，
+ * 支持前缀缓存的服务商可以复用上一次请求的全部消息
+ * 只有总长度超过上限时才整体重建一次压缩块：除最近几轮外的原文轮次换成压缩形式，仍然超出时从最早的轮次开始省略，
+ * 省略说明位于压缩块开头，随压缩块一起变化；最近一轮始终保留。压缩之后新的轮次仍然只追加在末尾
+ */
+final class ReactHistory {
+
+    /**
+     * 压缩观察结果时保留的字段
+     */
+    private static final List<String> KEY_FIELDS = List.of(
+            "id", "title", "name", "url", "success", "found", "error", "message", "status", "object", "has_more");
+
+    /**
+     * 压缩后 Action 参数和非 JSON 观察结果保留的 token 数
+     */
+    private static final int COMPRESSED_VALUE_TOKENS = 40;
+
+    private static final int MAX_COMPRESSED_RESULTS = 5;
+
+    private static final String INSTRUCTION = "请执行任务（每轮输出 Thought 和 Action 或 Final Answer）：";
+
+    private static final Pattern THOUGHT = Pattern.compile("\\*\\*Thought\\*\\*:?\\s*(.+)");
+    private static final Pattern ACTION_JSON = Pattern.compile("```json\\s*\\n(.*?)\\n```", Pattern.DOTALL);
+
+    private final ObjectMapper objectMapper;
+    private final String systemPrompt;
+    private final String task;
+    private final int taskTokens;
+    private final int recentTurns;
+    private final int maxTokens;
+    private final int observationTokens;
+
+    /**
+     * 压缩块：上次压缩时换成压缩形式的轮次，直到下次压缩前不再变化
+     */
+    private final Deque<Entry> compressed = new ArrayDeque<>();
+    /**
+     * 上次压缩之后（或压缩时保留的最近几轮）按原文发送的轮次
+     */
+    private final Deque<Turn> recent = new ArrayDeque<>();
+    private int compressedTokens;
+    private int recentTokens;
+    private int omittedTurns;
+
+    private List<ChatMessage> lastSent = List.of();
+    private int reusedPrefixTokens;
+
+    ReactHistory(ObjectMapper objectMapper, String systemPrompt, String task, int recentTurns, int maxTokens,
+                 int observationTokens) {
+        this.objectMapper = objectMapper;
+        this.systemPrompt = systemPrompt;
+        this.task = "Task: " + task + "\n\n" + INSTRUCTION;
+        this.taskTokens = TokenEstimator.estimate(this.task);
+        this.recentTurns = Math.max(1, recentTurns);
+        this.maxTokens = maxTokens;
+        this.observationTokens = observationTokens;
+    }
+
+    /**
+     * 加入一轮：模型输出和工具的观察结果；原文和压缩形式都在这里算好，之后不再改写
+     */
+    void add(String llmOutput, String observation) {
+        Turn turn = Turn.of(llmOutput, "Observation: " + TokenEstimator.truncate(observation, observationTokens),
+                Entry.of(compressOutput(llmOutput), "Observation: " + compressObservation(observation)));
+        recent.addLast(turn);
+        recentTokens += turn.tokens();
+        if (tokens() > maxTokens) {
+            compact();
+        }
+    }
+
+    /**
+     * 重建压缩块：除最近几轮外的原文轮次换成压缩形式，仍然超过上限时先省略最早的压缩轮次，再继续压缩较早的原文轮次
+     */
+    private void compact() {
+        while (recent.size() > recentTurns) {
+            compressOldest();
+        }
+        while (tokens() > maxTokens && (!compressed.isEmpty() || recent.size() > 1)) {
+            if (compressed.isEmpty()) {
+                compressOldest();
+            }
+            compressedTokens -= compressed.removeFirst().tokens();
+            omittedTurns++;
+        }
+    }
+
+    /**
+     * 当前提示词的估算 token 数（不含系统提示）
+     */
+    int tokens() {
+        return taskTokens + compressedTokens + recentTokens;
+    }
+
+    /**
+     * 上一次 {@link #messages()} 返回的消息中，与再上一次相同的前缀的估算 token 数（可被前缀缓存复用）
+     */
+    int reusedPrefixTokens() {
+        return reusedPrefixTokens;
+    }
+
+    int omittedTurns() {
+        return omittedTurns;
+    }
+
+    /**
+     * 构建本轮请求的消息列表：系统提示、任务，之后是交替的模型输出和观察结果
+     */
+    List<ChatMessage> messages() {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(SystemMessage.from(systemPrompt));
+        messages.add(UserMessage.from(task));
+        if (omittedTurns > 0) {
+            messages.add(UserMessage.from("（已省略更早的 " + omittedTurns + " 轮操作）"));
+        }
+        for (Entry entry : compressed) {
+            messages.add(AiMessage.from(entry.output()));
+            messages.add(UserMessage.from(entry.observationText()));
+        }
+        for (Turn turn : recent) {
+            messages.add(AiMessage.from(turn.output()));
+            messages.add(UserMessage.from(turn.observationText()));
+        }
+
+        reusedPrefixTokens = 0;
+        for (int i = 0; i < Math.min(messages.size(), lastSent.size()) && messages.get(i).equals(lastSent.get(i)); i++) {
+            reusedPrefixTokens += TokenEstimator.estimate(text(messages.get(i)));
+        }
+        lastSent = messages;
+        return messages;
+    }
+
+    private static String text(ChatMessage message) {
+        return switch (message) {
+            case SystemMessage system -> system.text();
+            case UserMessage user -> user.singleText();
+            case AiMessage ai -> ai.text();
+            default -> "";
+        };
+    }
+
+    private void compressOldest() {
+        Turn oldest = recent.removeFirst();
+        recentTokens -= oldest.tokens();
+        compressed.addLast(oldest.compressed());
+        compressedTokens += oldest.compressed().tokens();
+    }
+
+    /**
+     * 模型输出只保留 Thought 和 Action，Action 参数中较长的字符串（例如页面内容）截断
+     */
+    String compressOutput(String output) {
+        StringBuilder sb = new StringBuilder();
+        Matcher thought = THOUGHT.matcher(output);
+        if (thought.find()) {
+            sb.append("Thought: ").append(TokenEstimator.truncate(thought.group(1).strip(), COMPRESSED_VALUE_TOKENS));
+        }
+        Matcher action = ACTION_JSON.matcher(output);
+        if (action.find()) {
+            try {
+                JsonNode node = objectMapper.readTree(action.group(1).trim());
+                if (!sb.isEmpty()) {
+                    sb.append('\n');
+                }
+                sb.append("Action: ").append(objectMapper.writeValueAsString(truncateValues(node)));
+            } catch (Exception e) {
+                // 无法解析的 Action 只保留 Thought
+            }
+        }
+        return sb.isEmpty() ? TokenEstimator.truncate(output.strip(), COMPRESSED_VALUE_TOKENS) : sb.toString();
+    }
+
+    /**
+     * 观察结果只保留关键字段；搜索结果列表保留数量和前几项的关键字段
+     */
+    String compressObservation(String observation) {
+        if (observation == null) {
+            return "";
+        }
+        try {
+            JsonNode node = objectMapper.readTree(observation);
+            if (node != null && (node.isObject() || node.isArray())) {
+                return objectMapper.writeValueAsString(keyFields(node));
+            }
+        } catch (Exception e) {
+            // 不是 JSON 时按文本截断
+        }
+        return TokenEstimator.truncate(observation.strip(), COMPRESSED_VALUE_TOKENS);
+    }
+
+    private JsonNode keyFields(JsonNode node) {
+        if (node.isArray()) {
+            ArrayNode array = objectMapper.createArrayNode();
+            for (int i = 0; i < Math.min(node.size(), MAX_COMPRESSED_RESULTS); i++) {
+                array.add(keyFields(node.get(i)));
+            }
+            return array;
+        }
+        if (!node.isObject()) {
+            return node;
+        }
+        ObjectNode compact = objectMapper.createObjectNode();
+        for (String field : KEY_FIELDS) {
+            JsonNode value = node.get(field);
+            if (value != null && value.isValueNode()) {
+                compact.set(field, value.isTextual()
+                        ? compact.textNode(TokenEstimator.truncate(value.asText(), COMPRESSED_VALUE_TOKENS))
+                        : value);
+            }
+        }
+        for (Map.Entry<String, JsonNode> field : node.properties()) {
+            if (field.getValue().isArray()) {
+                compact.put(field.getKey() + "_count", field.getValue().size());
+                compact.set(field.getKey(), keyFields(field.getValue()));
+            }
+        }
+        return compact;
+    }
+
+    private JsonNode truncateValues(JsonNode node) {
+        if (node.isTextual()) {
+            return objectMapper.getNodeFactory().textNode(TokenEstimator.truncate(node.asText(), COMPRESSED_VALUE_TOKENS));
+        }
+        if (node.isObject()) {
+            ObjectNode copy = objectMapper.createObjectNode();
+            node.properties().forEach(field -> copy.set(field.getKey(), truncateValues(field.getValue())));
+            return copy;
+        }
+        if (node.isArray()) {
+            ArrayNode copy = objectMapper.createArrayNode();
+            node.forEach(item -> copy.add(truncateValues(item)));
+            return copy;
+        }
+        return node;
+    }
+
+    /**
+     * 原文保留的一轮，以及加入时算好的压缩形式
+     */
+    private record Turn(String output, String observationText, Entry compressed, int tokens) {
+
+        static Turn of(String output, String observationText, Entry compressed) {
+            return new Turn(output, observationText, compressed,
+                    TokenEstimator.estimate(output) + TokenEstimator.estimate(observationText));
+        }
+    }
+
+    /**
+     * 压缩后的一轮
+     */
+    private record Entry(String output, String observationText, int tokens) {
+
+        static Entry of(String output, String observationText) {
+            return new Entry(output, observationText,
+                    TokenEstimator.estimate(output) + TokenEstimator.estimate(observationText));
+        }
+    }
+}
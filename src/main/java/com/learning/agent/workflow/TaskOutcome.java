@@ -0,0 +1,15 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.dto.client.NotionCreatedPage;
+
+import java.util.List;
+
+/**
+ * 单个任务的执行结果
+ *
+ * @param taskId   任务编号
+ * @param contents 任务生成的 Markdown 内容
+ * @param pages    任务在 Notion 中创建的页面
+ */
+public record TaskOutcome(String taskId, List<String> contents, List<NotionCreatedPage> pages) {
+}
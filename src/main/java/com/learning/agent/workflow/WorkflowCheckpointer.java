@@ -0,0 +1,166 @@
+package com.learning.agent.workflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.agent.entity.WorkflowCheckpoint;
+import com.learning.agent.repository.WorkflowCheckpointRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 工作流检查点管理器
+ * 每个节点完成后将 AgentState 快照写入 SQLite，工作流中断后可从最近完成的节点继续执行，
+ * 避免重复 OCR、重复规划以及重复创建 Notion 页面
+ * 同一请求的并行任务可能同时保存快照：按请求 ID 分段加锁，序列化在锁外进行，
+ * 较早生成的快照晚于较新的快照写入时直接丢弃；不同请求之间互不等待
+ */
+@Slf4j
+@Component
+public class WorkflowCheckpointer {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final WorkflowCheckpointRepository repository;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int retentionHours;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * 每个执行中的请求最近写入的快照版本，请求完成或失败后移除
+     */
+    private final Map<String, Long> writtenVersions = new ConcurrentHashMap<>();
+
+    public WorkflowCheckpointer(
+            WorkflowCheckpointRepository repository,
+            ObjectMapper objectMapper,
+            @Value("${agent.checkpoint.enabled:true}") boolean enabled,
+            @Value("${agent.checkpoint.retention-hours:24}") int retentionHours) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.retentionHours = retentionHours;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 恢复得到的检查点
+     *
+     * @param state    恢复后的状态
+     * @param lastNode 最近一次完成的节点
+     * @param status   检查点状态
+     */
+    public record Checkpoint(AgentState state, String lastNode, String status) {
+
+        public boolean isCompleted() {
+            return WorkflowCheckpoint.STATUS_COMPLETED.equals(status);
+        }
+    }
+
+    /**
+     * 保存节点完成后的状态快照
+     * 写入失败只记录日志，不影响工作流执行
+     */
+    public void save(AgentState state, String node) {
+        write(state, node, WorkflowCheckpoint.STATUS_RUNNING);
+    }
+
+    /**
+     * 标记工作流已完成，并清理过期检查点
+     */
+    public void complete(AgentState state) {
+        write(state, "completed", WorkflowCheckpoint.STATUS_COMPLETED);
+        if (state.getRequestId() != null) {
+            writtenVersions.remove(state.getRequestId());
+        }
+        if (enabled) {
+            try {
+                int removed = repository.deleteOlderThan(LocalDateTime.now().minusHours(retentionHours));
+                if (removed > 0) {
+                    log.debug("Removed {} expired checkpoint(s)", removed);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to clean up expired checkpoints: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 标记工作流失败，保留最近一次快照以便恢复
+     */
+    public void fail(AgentState state) {
+        if (!enabled || state == null || state.getRequestId() == null) {
+            return;
+        }
+        writtenVersions.remove(state.getRequestId());
+        try {
+            repository.updateStatus(state.getRequestId(), WorkflowCheckpoint.STATUS_FAILED, LocalDateTime.now());
+        } catch (Exception e) {
+            log.warn("Failed to mark checkpoint {} as failed: {}", state.getRequestId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 加载检查点
+     */
+    public Optional<Checkpoint> load(String requestId) {
+        if (requestId == null || requestId.isBlank()) {
+            return Optional.empty();
+        }
+        return repository.findById(requestId).map(entity -> {
+            try {
+                AgentStateSnapshot snapshot = objectMapper.readValue(entity.getStateJson(), AgentStateSnapshot.class);
+                return new Checkpoint(snapshot.toState(), entity.getLastNode(), entity.getStatus());
+            } catch (Exception e) {
+                throw new IllegalStateException("检查点数据损坏: " + requestId, e);
+            }
+        });
+    }
+
+    private void write(AgentState state, String node, String status) {
+        String requestId = state.getRequestId();
+        if (!enabled || requestId == null) {
+            return;
+        }
+        ReentrantLock lock = locks[Math.floorMod(requestId.hashCode(), locks.length)];
+        try {
+            // 版本号与快照在同一把锁内生成，版本号越大的快照越新
+            long version;
+            AgentStateSnapshot snapshot;
+            lock.lock();
+            try {
+                version = versions.incrementAndGet();
+                snapshot = AgentStateSnapshot.of(state);
+            } finally {
+                lock.unlock();
+            }
+
+            String json = objectMapper.writeValueAsString(snapshot);
+            lock.lock();
+            try {
+                Long written = writtenVersions.get(requestId);
+                if (written != null && written > version) {
+                    log.debug("Newer checkpoint already saved for request {}, skipping node {}", requestId, node);
+                    return;
+                }
+                repository.upsert(requestId, node, status, json, LocalDateTime.now());
+                writtenVersions.put(requestId, version);
+            } finally {
+                lock.unlock();
+            }
+            log.debug("Checkpoint saved: request={}, node={}, size={} chars", requestId, node, json.length());
+        } catch (Exception e) {
+            log.warn("Failed to save checkpoint for request {} at node {}: {}", requestId, node, e.getMessage());
+        }
+    }
+}
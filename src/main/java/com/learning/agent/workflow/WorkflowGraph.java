@@ -0,0 +1,202 @@
+package com.learning.agent.workflow;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 编译后的工作流图
+ * 节点和（条件）边在启动时声明一次，编译为不可变的可执行图：支持跳过节点、分支和循环，
+ * 每条边的经过次数计入 agent.workflow.edge.transitions；执行时只做路由和计数，不再创建节点
+ */
+public final class WorkflowGraph {
+
+    public static final String START = "__start__";
+    public static final String END = "__end__";
+
+    private final CompiledNode start;
+    private final CompiledNode end;
+    private final int maxSteps;
+
+    private WorkflowGraph(CompiledNode start, CompiledNode end, int maxSteps) {
+        this.start = start;
+        this.end = end;
+        this.maxSteps = maxSteps;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 从 START 开始沿边执行，直到到达 END
+     *
+     * @param observer 本次执行的节点完成回调
+     */
+    public AgentState run(AgentState state, Observer observer) {
+        CompiledNode current = start.next(state);
+        int steps = 0;
+        while (current != end) {
+            if (++steps > maxSteps) {
+                throw new IllegalStateException("Workflow exceeded " + maxSteps + " steps at node '" + current.name + "'");
+            }
+            state = current.node.process(state, observer);
+            observer.onNodeCompleted(current.name, state);
+            current = current.next(state);
+        }
+        return state;
+    }
+
+    /**
+     * 图节点：可在执行过程中向本次执行的观察者报告进度（例如逐个报告并行完成的任务）
+     */
+    @FunctionalInterface
+    public interface GraphNode {
+        AgentState process(AgentState state, Observer observer);
+    }
+
+    /**
+     * 条件边的路由函数，返回下一个节点名称（或 END）
+     */
+    @FunctionalInterface
+    public interface Router {
+        String route(AgentState state);
+    }
+
+    /**
+     * 执行观察者，每次执行一个实例
+     */
+    public interface Observer {
+
+        Observer NOOP = new Observer() {
+        };
+
+        /**
+         * 节点执行完成
+         */
+        default void onNodeCompleted(String node, AgentState state) {
+        }
+
+        /**
+         * 执行节点完成了一个任务
+         */
+        default void onTaskCompleted(AgentState state, TaskOutcome outcome) {
+        }
+    }
+
+    public static final class Builder {
+
+        private final Map<String, GraphNode> nodes = new LinkedHashMap<>();
+        private final Map<String, Router> routers = new HashMap<>();
+        private final Map<String, Set<String>> targets = new HashMap<>();
+        private int maxSteps = 1000;
+
+        private Builder() {
+        }
+
+        public Builder node(String name, WorkflowNode node) {
+            return node(name, (GraphNode) (state, observer) -> node.process(state));
+        }
+
+        public Builder node(String name, GraphNode node) {
+            if (START.equals(name) || END.equals(name) || nodes.putIfAbsent(name, node) != null) {
+                throw new IllegalArgumentException("Duplicate or reserved node name: " + name);
+            }
+            return this;
+        }
+
+        /**
+         * 固定边
+         */
+        public Builder edge(String from, String to) {
+            return conditionalEdge(from, state -> to, to);
+        }
+
+        /**
+         * 条件边：router 只能返回声明过的目标节点
+         */
+        public Builder conditionalEdge(String from, Router router, String... to) {
+            if (routers.putIfAbsent(from, router) != null) {
+                throw new IllegalArgumentException("Node '" + from + "' already has outgoing edges");
+            }
+            targets.put(from, new LinkedHashSet<>(Arrays.asList(to)));
+            return this;
+        }
+
+        /**
+         * 单次执行的最大节点数，防止循环无法结束
+         */
+        public Builder maxSteps(int maxSteps) {
+            this.maxSteps = maxSteps;
+            return this;
+        }
+
+        /**
+         * 校验图结构并预先注册每条边的计数器
+         */
+        public WorkflowGraph compile(WorkflowMetrics metrics) {
+            Map<String, CompiledNode> compiled = new HashMap<>();
+            compiled.put(START, new CompiledNode(START, null, routers.get(START)));
+            compiled.put(END, new CompiledNode(END, null, null));
+            nodes.forEach((name, node) -> compiled.put(name, new CompiledNode(name, node, routers.get(name))));
+
+            for (CompiledNode node : compiled.values()) {
+                if (END.equals(node.name)) {
+                    continue;
+                }
+                if (node.router == null) {
+                    throw new IllegalStateException("Node '" + node.name + "' has no outgoing edge");
+                }
+                Map<String, Transition> transitions = new HashMap<>();
+                for (String target : targets.get(node.name)) {
+                    CompiledNode targetNode = compiled.get(target);
+                    if (targetNode == null || START.equals(target)) {
+                        throw new IllegalStateException("Edge '" + node.name + "' -> '" + target + "' targets an unknown node");
+                    }
+                    transitions.put(target, new Transition(targetNode, metrics.edgeCounter(node.name, target)));
+                }
+                node.transitions = Map.copyOf(transitions);
+            }
+            for (String from : routers.keySet()) {
+                if (!compiled.containsKey(from)) {
+                    throw new IllegalStateException("Edge declared from unknown node '" + from + "'");
+                }
+            }
+            return new WorkflowGraph(compiled.get(START), compiled.get(END), maxSteps);
+        }
+    }
+
+    private static final class CompiledNode {
+
+        private final String name;
+        private final GraphNode node;
+        private final Router router;
+        private Map<String, Transition> transitions = Map.of();
+
+        private CompiledNode(String name, GraphNode node, Router router) {
+            this.name = name;
+            this.node = node;
+            this.router = router;
+        }
+
+        private CompiledNode next(AgentState state) {
+            String target = router.route(state);
+            Transition transition = transitions.get(target);
+            if (transition == null) {
+                throw new IllegalStateException("Node '" + name + "' routed to undeclared target '" + target
+                        + "', declared: " + List.copyOf(transitions.keySet()));
+            }
+            transition.counter.increment();
+            return transition.target;
+        }
+    }
+
+    private record Transition(CompiledNode target, Counter counter) {
+    }
+}
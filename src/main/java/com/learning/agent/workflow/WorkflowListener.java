@@ -0,0 +1,51 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.dto.client.NotionCreatedPage;
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.model.LearningTask;
+
+import java.util.List;
+
+/**
+ * 工作流进度监听器
+ * 工作流在各节点完成时回调，用于向客户端推送中间结果；
+ * 回调可能来自并行执行任务的线程，实现需要保证线程安全
+ */
+public interface WorkflowListener {
+
+    /**
+     * 不做任何处理的监听器
+     */
+    WorkflowListener NOOP = new WorkflowListener() {
+    };
+
+    /**
+     * 请求开始处理
+     */
+    default void onStarted(String requestId) {
+    }
+
+    /**
+     * OCR 完成（无图片时为空结果）
+     */
+    default void onOcrCompleted(OcrStructuredResult ocrResult) {
+    }
+
+    /**
+     * 规划完成，得到任务列表
+     */
+    default void onPlanReady(List<LearningTask> tasks) {
+    }
+
+    /**
+     * 单个任务执行完成，包含生成的内容和创建的页面
+     */
+    default void onTaskCompleted(TaskOutcome outcome) {
+    }
+
+    /**
+     * 延迟写入任务的内容合并写入 Notion 后得到的页面（各任务自己创建的页面随 onTaskCompleted 报告）
+     */
+    default void onPageCreated(NotionCreatedPage page) {
+    }
+}
@@ -0,0 +1,153 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearningTask;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工作流指标
+ * 为每次 WorkflowNode.process 调用记录耗时和结果，
+ * 按节点、任务类型、执行模式和结果打标签，通过 /actuator/metrics 和 /actuator/prometheus 暴露
+ */
+@Component
+public class WorkflowMetrics {
+
+    public static final String NODE_TIMER = "agent.workflow.node.duration";
+    public static final String PAGES_COUNTER = "agent.workflow.pages.created";
+    public static final String EDGE_COUNTER = "agent.workflow.edge.transitions";
+
+    public static final String NODE_OCR = "ocr";
+    public static final String NODE_PLANNING = "planning";
+    public static final String NODE_EXECUTION = "execution";
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_SKIPPED = "skipped";
+    public static final String OUTCOME_FAILED = "failed";
+    public static final String OUTCOME_ERROR = "error";
+
+    private static final String NONE = "none";
+
+    private final MeterRegistry registry;
+    private final String executionMode;
+
+    public WorkflowMetrics(
+            MeterRegistry registry,
+            @Value("${agent.execution.use-react-mode:true}") boolean useReactMode) {
+        this.registry = registry;
+        this.executionMode = useReactMode ? "react" : "function_calling";
+    }
+
+    /**
+     * 包装节点，使每次 process 调用都被计时
+     *
+     * @param node     节点名称（ocr / planning / execution）
+     * @param delegate 被包装的节点
+     */
+    public WorkflowNode instrument(String node, WorkflowNode delegate) {
+        return state -> {
+            if (precomputed(node, state)) {
+                // 该样本已在提前执行时记录（AgentWorkflow.runOcr），这里不再重复记录
+                return delegate.process(state);
+            }
+            LearningTask task = NODE_EXECUTION.equals(node) ? state.getCurrentTask() : null;
+            boolean skipping = willSkip(node, state);
+            int pagesBefore = state.getCreatedPages() != null ? state.getCreatedPages().size() : 0;
+
+            long start = System.nanoTime();
+            String outcome = OUTCOME_ERROR;
+            try {
+                AgentState result = delegate.process(state);
+                outcome = skipping ? OUTCOME_SKIPPED : outcomeOf(node, result);
+                if (task != null) {
+                    countPages(task, result, pagesBefore);
+                }
+                return result;
+            } finally {
+                record(node, task, outcome, System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * 工作流图中一条边的经过次数，编译图时为每条声明的边注册一次
+     */
+    public Counter edgeCounter(String from, String to) {
+        return Counter.builder(EDGE_COUNTER)
+                .description("工作流图中边的经过次数")
+                .tag("from", from)
+                .tag("to", to)
+                .register(registry);
+    }
+
+    private void record(String node, LearningTask task, String outcome, long elapsedNanos) {
+        Timer.builder(NODE_TIMER)
+                .description("工作流节点耗时")
+                .tags(tags(node, task))
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void countPages(LearningTask task, AgentState result, int pagesBefore) {
+        int created = result.getCreatedPages() != null ? result.getCreatedPages().size() - pagesBefore : 0;
+        if (created > 0) {
+            Counter.builder(PAGES_COUNTER)
+                    .description("执行节点创建的 Notion 页面数")
+                    .tags(tags(NODE_EXECUTION, task))
+                    .register(registry)
+                    .increment(created);
+        }
+    }
+
+    private Tags tags(String node, LearningTask task) {
+        boolean execution = NODE_EXECUTION.equals(node);
+        String taskType = task != null && task.getType() != null
+                ? task.getType().name().toLowerCase(Locale.ROOT)
+                : NONE;
+        return Tags.of(
+                "node", node,
+                "task.type", taskType,
+                "mode", execution ? executionMode : NONE);
+    }
+
+    /**
+     * OCR 结果已存在时，识别已在规划前的并发阶段通过同一个被包装的节点完成并计时
+     */
+    private static boolean precomputed(String node, AgentState state) {
+        return NODE_OCR.equals(node) && state.getOcrResult() != null;
+    }
+
+    /**
+     * 节点在已有结果时会直接跳过（例如从检查点恢复的计划）
+     */
+    private static boolean willSkip(String node, AgentState state) {
+        return switch (node) {
+            case NODE_PLANNING -> state.getTasks() != null && !state.getTasks().isEmpty();
+            default -> false;
+        };
+    }
+
+    /**
+     * 执行节点会捕获异常并生成失败内容，需根据内容区分成功和失败
+     */
+    private static String outcomeOf(String node, AgentState result) {
+        if (NODE_EXECUTION.equals(node)) {
+            List<String> contents = result.getGeneratedContents();
+            if (contents != null && !contents.isEmpty()
+                    && contents.getLast().startsWith(WorkflowNodes.TASK_FAILURE_PREFIX)) {
+                return OUTCOME_FAILED;
+            }
+        }
+        return OUTCOME_SUCCESS;
+    }
+}
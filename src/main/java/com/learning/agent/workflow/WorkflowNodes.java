@@ -8,8 +8,13 @@ import com.learning.agent.config.client.ToolFunctionsConfig;
 import com.learning.agent.dto.client.NotionCreatedPage;
 import com.learning.agent.dto.client.OcrStructuredResult;
 import com.learning.agent.model.*;
+import com.learning.agent.util.ConcurrentBranches;
+import com.learning.agent.util.Deadline;
+import com.learning.agent.util.TokenEstimator;
 import dev.langchain4j.data.message.*;
+import dev.langchain4j.model.StreamingResponseHandler;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.output.Response;
 import dev.langchain4j.service.AiServices;
 import lombok.extern.slf4j.Slf4j;
@@ -17,6 +22,11 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,14 +41,29 @@ public class WorkflowNodes {
 
     private final PaddleOcrClient ocrClient;
     private final ChatLanguageModel planningChatModel;
+    private final StreamingChatLanguageModel planningStreamingChatModel;
     private final ChatLanguageModel executionChatModel;
     private final ToolFunctionsConfig.NotionToolService notionToolService;
     private final ReactExecutor reactExecutor;
     private final ObjectMapper objectMapper;
+    private final ExecutionContextAssembler contextAssembler;
+    private final OcrSections ocrSections;
 
     // 是否使用 ReAct 模式（文心一言不支持标准 function calling）
     private final boolean useReactMode;
 
+    // 是否流式规划：每解析出一个任务立即开始执行
+    private final boolean streamingPlanning;
+
+    // 流式规划等待完整输出的最长时间，与规划模型的 HTTP 超时一致
+    private static final long PLANNING_STREAM_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(120);
+
+    // 规划输入中上一轮每条结果保留的 token 数
+    private static final int PREVIOUS_RESULT_TOKENS = 200;
+
+    // 任务执行失败时生成内容的前缀
+    static final String TASK_FAILURE_PREFIX = "任务执行失败: ";
+
     // System prompts
     private static final String PLANNING_SYSTEM_PROMPT = """
             你是一名规划师。你的任务是根据可选的用户请求、OCR 识别的学习材料，以及学习者画像，制定一份详尽、可执行、结构化的智能体执行的任务清单。
@@ -47,6 +72,7 @@ public class WorkflowNodes {
             - `用户请求`：用户希望达成的学习目标或解决的问题。
             - `OCR内容`：从图片中提取的原始文本（ocr-plain）和结构化内容（ocr-markdown），包括文本、表格、公式等信息。
             - `学习者画像`：学习者的ID、当前水平、学习目标和学习偏好。
+            - `上一轮对话`：同一会话中上一轮的请求、任务、创建的页面和结果摘要（仅追问时提供）。
             
             请严格按照以下步骤进行分析与任务拆解，并输出一个结构化的 JSON 任务数组。
             
@@ -54,6 +80,7 @@ public class WorkflowNodes {
             - `<ocr-plain>`: 图片中识别出的纯文本内容（如果为空或提示"未上传图片"，说明没有图片输入）
             - `<ocr-markdown>`: 结构化的 Markdown 格式内容，包含标题、列表、表格等（可能为空）
             - **重要**: 请优先使用 ocr-markdown 中的结构化内容，如果为空则使用 ocr-plain
+            - `<ocr-section>`: OCR 内容较长时分段规划，输入中只提供其中一段（标明第几段、共几段）代替 ocr-plain 和 ocr-markdown；请只为本段的内容规划任务，taskId 从 T1 开始编号，系统会合并各段的计划并重新编号
             
             ## 输出格式规范
             请严格按照以下格式输出 JSON 数组，每个任务为一个对象：
@@ -63,7 +90,8 @@ public class WorkflowNodes {
                 "description": "详细描述，包含明确步骤和工具调用指令（如果有 OCR 内容，请明确引用）",
                 "priority": 5,
                 "dueDate": "2025-11-25T10:00:00Z",
-                "estimatedDuration": "30min"
+                "estimatedDuration": "30min",
+                "dependsOn": []
             }
             
             ## 关键规则
@@ -71,6 +99,14 @@ public class WorkflowNodes {
             2. 若 OCR 内容为空，完全基于用户请求生成任务
             3. 简单请求生成单个 execution 类型任务
             4. 只输出 JSON 数组，不要添加 Markdown 代码块标记
+            5. 若任务需要使用其他任务的结果，在 `dependsOn` 中列出这些前置任务的 taskId（只能引用排在它前面的任务）；相互独立的任务请保留空数组，以便并行执行
+            6. 若提供了 `<previous-turn>`：用户请求是对上一轮结果的追问时，只规划本次需要新增或修改的任务，需要修改上一轮的页面时在描述中引用页面 ID；用户请求是修改后重新提交的完整请求时，按完整请求规划，与上一轮相同的任务请保持 taskId、类型和描述与上一轮完全一致（系统会直接复用这些任务的结果）
+            """;
+
+    private static final String CONTENT_SYSTEM_PROMPT = """
+            你是一名专注 K12/高校学习的教师以及笔记爱好者。
+            你的职责是执行规划智能体制定的任务，直接输出高质量的 Markdown 学习内容。
+            本任务的内容会在所有任务完成后由系统统一写入 Notion，不需要也不能调用任何工具。
             """;
 
     private static final String EXECUTION_SYSTEM_PROMPT = """
@@ -108,18 +144,30 @@ public class WorkflowNodes {
     public WorkflowNodes(
             PaddleOcrClient ocrClient,
             @Qualifier("planningChatModel") ChatLanguageModel planningChatModel,
+            @Qualifier("planningStreamingChatModel") StreamingChatLanguageModel planningStreamingChatModel,
             @Qualifier("executionChatModel") ChatLanguageModel executionChatModel,
             ToolFunctionsConfig.NotionToolService notionToolService,
             ReactExecutor reactExecutor,
             ObjectMapper objectMapper,
-            @org.springframework.beans.factory.annotation.Value("${agent.execution.use-react-mode:true}") boolean useReactMode) {
+            ExecutionContextAssembler contextAssembler,
+            OcrSections ocrSections,
+            @org.springframework.beans.factory.annotation.Value("${agent.execution.use-react-mode:true}") boolean useReactMode,
+            @org.springframework.beans.factory.annotation.Value("${agent.planning.streaming:true}") boolean streamingPlanning) {
         this.ocrClient = ocrClient;
         this.planningChatModel = planningChatModel;
+        this.planningStreamingChatModel = planningStreamingChatModel;
         this.executionChatModel = executionChatModel;
         this.notionToolService = notionToolService;
         this.reactExecutor = reactExecutor;
         this.objectMapper = objectMapper;
+        this.contextAssembler = contextAssembler;
+        this.ocrSections = ocrSections;
         this.useReactMode = useReactMode;
+        this.streamingPlanning = streamingPlanning;
+    }
+
+    public boolean isStreamingPlanning() {
+        return streamingPlanning;
     }
 
     /**
@@ -169,25 +217,28 @@ public class WorkflowNodes {
         return state -> {
             log.info("--- Node: Planning ---");
 
-            boolean hasOcrContent = state.getOcrResult() != null
-                    && state.getOcrResult().getPlainText() != null
-                    && !state.getOcrResult().getPlainText().trim().isEmpty();
+            if (state.getTasks() != null && !state.getTasks().isEmpty() && !state.isPlanStreaming()) {
+                log.info("Plan already exists, skipping.");
+                return state;
+            }
 
-            String planningInput = buildPlanningInput(state, hasOcrContent);
+            List<String> sections = hasOcrContent(state) ? ocrSections.split(state.getOcrResult()) : List.of();
 
             try {
-                // 使用 LangChain4j 调用模型
-                Response<AiMessage> response = planningChatModel.generate(
-                        SystemMessage.from(PLANNING_SYSTEM_PROMPT),
-                        UserMessage.from(planningInput));
-
-                String content = response.content().text();
-                log.debug("Planning response: {}", content);
-
-                List<LearningTask> tasks = parseTasksFromJson(content);
+                List<LearningTask> tasks;
+                if (!sections.isEmpty()) {
+                    tasks = planSections(state, sections, task -> {
+                    });
+                } else {
+                    // 使用 LangChain4j 调用模型
+                    tasks = planOnce(buildPlanningInput(state, hasOcrContent(state)));
+                }
                 log.info("Generated Plan: {}", objectMapper.writeValueAsString(tasks));
 
                 state.setTasks(new ArrayList<>(tasks));
+                state.setPlanStreaming(false);
+            } catch (Deadline.DeadlineExceededException e) {
+                throw e;
             } catch (Exception e) {
                 log.error("Planning failed: {}", e.getMessage(), e);
                 throw new IllegalStateException("规划执行失败: " + e.getMessage(), e);
@@ -197,6 +248,142 @@ public class WorkflowNodes {
         };
     }
 
+    /**
+     * 流式规划 - 逐段接收规划输出，每个任务对象完整后立即交给 onTask，无需等待整个计划
+     * 阻塞直到输出结束，返回完整的任务列表；onTask 在模型客户端的回调线程上调用
+     */
+    public List<LearningTask> streamPlan(AgentState state, Consumer<LearningTask> onTask) {
+        List<String> sections = hasOcrContent(state) ? ocrSections.split(state.getOcrResult()) : List.of();
+        if (!sections.isEmpty()) {
+            try {
+                return planSections(state, sections, onTask);
+            } catch (Deadline.DeadlineExceededException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("Planning failed: {}", e.getMessage(), e);
+                throw new IllegalStateException("规划执行失败: " + e.getMessage(), e);
+            }
+        }
+
+        log.info("--- Node: Planning (streaming) ---");
+
+        String planningInput = buildPlanningInput(state, hasOcrContent(state));
+        PlanStreamParser parser = new PlanStreamParser();
+        List<LearningTask> tasks = new ArrayList<>();
+        CompletableFuture<String> completion = new CompletableFuture<>();
+
+        // 请求被取消时立即结束等待，之后到达的输出被丢弃
+        Deadline deadline = Deadline.current();
+        try (Deadline.Registration ignored = Deadline.onCurrentCancel(
+                () -> completion.completeExceptionally(deadline.failure("planning")))) {
+            long timeoutMillis = Deadline.clampMillis(PLANNING_STREAM_TIMEOUT_MS, "planning");
+            planningStreamingChatModel.generate(
+                    List.of(SystemMessage.from(PLANNING_SYSTEM_PROMPT), UserMessage.from(planningInput)),
+                    new StreamingResponseHandler<>() {
+                        @Override
+                        public void onNext(String token) {
+                            // 超时或出错后到达的输出直接丢弃
+                            if (completion.isDone()) {
+                                return;
+                            }
+                            try {
+                                for (String json : parser.feed(token)) {
+                                    LearningTask task = toTask(objectMapper.readValue(json, new TypeReference<>() {
+                                    }));
+                                    log.info("Planned task {} (streaming)", task.getTaskId());
+                                    tasks.add(task);
+                                    onTask.accept(task);
+                                }
+                            } catch (Exception e) {
+                                completion.completeExceptionally(e);
+                            }
+                        }
+
+                        @Override
+                        public void onComplete(Response<AiMessage> response) {
+                            completion.complete(response.content() != null ? response.content().text() : null);
+                        }
+
+                        @Override
+                        public void onError(Throwable error) {
+                            completion.completeExceptionally(error);
+                        }
+                    });
+
+            String content = completion.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            log.debug("Planning response: {}", content);
+
+            // 输出不是任务数组（例如解析器没有识别出的格式）时，回退为完整解析
+            if (tasks.isEmpty()) {
+                for (LearningTask task : parseTasksFromJson(content)) {
+                    tasks.add(task);
+                    onTask.accept(task);
+                }
+            }
+            log.info("Generated Plan: {}", objectMapper.writeValueAsString(tasks));
+            return tasks;
+        } catch (TimeoutException e) {
+            completion.cancel(false);
+            if (Deadline.currentExpired()) {
+                throw Deadline.currentFailure("planning");
+            }
+            throw new IllegalStateException("规划执行失败: 流式输出超时", e);
+        } catch (Deadline.DeadlineExceededException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            completion.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("规划执行失败: 已中断", e);
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof Deadline.DeadlineExceededException deadlineExceeded) {
+                throw deadlineExceeded;
+            }
+            log.error("Planning failed: {}", cause.getMessage(), cause);
+            throw new IllegalStateException("规划执行失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 分段规划 - OCR 内容过长时各段并行调用规划模型，再按段的顺序合并去重
+     * 前面的段都完成后，立即把该段新接受的任务交给 onTask，无需等待所有段
+     */
+    private List<LearningTask> planSections(AgentState state, List<String> sections, Consumer<LearningTask> onTask)
+            throws InterruptedException {
+        log.info("--- Node: Planning ({} sections) ---", sections.size());
+
+        Deadline deadline = Deadline.current();
+        PlanReducer reducer = new PlanReducer();
+        try (ConcurrentBranches branches = new ConcurrentBranches()) {
+            List<ConcurrentBranches.Branch<List<LearningTask>>> sectionPlans = new ArrayList<>();
+            for (int i = 0; i < sections.size(); i++) {
+                String planningInput = buildSectionPlanningInput(state, sections, i);
+                sectionPlans.add(branches.fork("planning-section-" + (i + 1),
+                        () -> Deadline.callWith(deadline, () -> planOnce(planningInput))));
+            }
+            for (ConcurrentBranches.Branch<List<LearningTask>> sectionPlan : sectionPlans) {
+                for (LearningTask task : reducer.add(sectionPlan.await())) {
+                    onTask.accept(task);
+                }
+            }
+            log.info("Section planning completed: {}", branches.timingsMillis());
+        }
+
+        List<LearningTask> tasks = reducer.tasks();
+        log.info("Merged {} section plans into {} tasks", sections.size(), tasks.size());
+        return tasks;
+    }
+
+    private List<LearningTask> planOnce(String planningInput) throws JsonProcessingException {
+        Response<AiMessage> response = Deadline.callWithin("planning", () -> planningChatModel.generate(
+                SystemMessage.from(PLANNING_SYSTEM_PROMPT),
+                UserMessage.from(planningInput)));
+
+        String content = response.content().text();
+        log.debug("Planning response: {}", content);
+        return parseTasksFromJson(content);
+    }
+
     /**
      * 执行节点 - 执行单个任务
      */
@@ -209,7 +396,8 @@ public class WorkflowNodes {
                 throw new RuntimeException("No task found for current index");
             }
 
-            String userPrompt = buildExecutionPrompt(state, task);
+            // 按 token 预算组装提示词：只包含相关的 OCR 片段和之前结果的摘要
+            String userPrompt = contextAssembler.assemble(state, task);
 
             List<String> newCreatedPageIds = new ArrayList<>();
             List<NotionCreatedPage> newCreatedPages = new ArrayList<>();
@@ -219,7 +407,14 @@ public class WorkflowNodes {
             try {
                 log.debug("=== Execution Prompt ===\n{}", userPrompt);
 
-                if (useReactMode) {
+                if (state.isDeferWrite(task)) {
+                    // 延迟写入的任务只生成内容，由 Notion 写入节点合并写入同一个页面
+                    log.info("Generating content only, Notion write is deferred");
+                    Response<AiMessage> response = Deadline.callWithin("execution", () -> executionChatModel.generate(
+                            SystemMessage.from(CONTENT_SYSTEM_PROMPT),
+                            UserMessage.from(userPrompt)));
+                    finalContent = response.content().text();
+                } else if (useReactMode) {
                     // 使用 ReAct 模式（适用于不支持标准 function calling 的模型）
                     log.info("Using ReAct mode for execution");
                     ReactExecutor.ReactResult result = reactExecutor.execute(userPrompt);
@@ -240,7 +435,7 @@ public class WorkflowNodes {
                             .tools(notionToolService)
                             .build();
 
-                    String result = executor.executeTask(userPrompt);
+                    String result = Deadline.callWithin("execution", () -> executor.executeTask(userPrompt));
                     finalContent = result != null ? result : "任务执行完成";
                 }
 
@@ -252,9 +447,11 @@ public class WorkflowNodes {
                 // 从输出中提取页面信息
                 extractPageInfoFromString(finalContent, newCreatedPageIds, newCreatedPages);
 
+            } catch (Deadline.DeadlineExceededException e) {
+                throw e;
             } catch (Exception e) {
                 log.error("Task execution failed: {}", e.getMessage(), e);
-                finalContent = "任务执行失败: " + e.getMessage();
+                finalContent = TASK_FAILURE_PREFIX + e.getMessage();
             }
 
             // 添加页面链接到输出
@@ -282,22 +479,14 @@ public class WorkflowNodes {
 
     // --- Helper Methods ---
 
-    private String buildPlanningInput(AgentState state, boolean hasOcrContent) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("当前上下文信息：\n\n");
-
-        sb.append("<learner>\n");
-        sb.append("ID: ").append(state.getLearnerProfile().getLearnerId()).append("\n");
-        sb.append("水平: ").append(state.getLearnerProfile().getCompetencyLevel()).append("\n");
-        sb.append("目标: ").append(state.getLearnerProfile().getLearningGoal()).append("\n");
-        sb.append("偏好: ").append(state.getLearnerProfile().getPreferredStyle()).append("\n");
-        sb.append("</learner>\n\n");
+    static boolean hasOcrContent(AgentState state) {
+        return state.getOcrResult() != null
+                && state.getOcrResult().getPlainText() != null
+                && !state.getOcrResult().getPlainText().trim().isEmpty();
+    }
 
-        if (state.getUserQuery() != null && !state.getUserQuery().isEmpty()) {
-            sb.append("<user-query>\n").append(state.getUserQuery()).append("\n</user-query>\n\n");
-        } else {
-            sb.append("<user-query>（用户未输入文字）</user-query>\n\n");
-        }
+    private String buildPlanningInput(AgentState state, boolean hasOcrContent) {
+        StringBuilder sb = planningContext(state);
 
         if (hasOcrContent) {
             sb.append("<ocr-plain>\n").append(state.getOcrResult().getPlainText()).append("\n</ocr-plain>\n");
@@ -310,29 +499,20 @@ public class WorkflowNodes {
         return sb.toString();
     }
 
-    private String buildExecutionPrompt(AgentState state, LearningTask task) {
-        StringBuilder sb = new StringBuilder();
+    /**
+     * 分段规划的输入：上下文与完整规划相同，OCR 内容只包含第 index 段
+     */
+    private String buildSectionPlanningInput(AgentState state, List<String> sections, int index) {
+        return planningContext(state)
+                .append("<ocr-section index=\"").append(index + 1).append("\" total=\"").append(sections.size())
+                .append("\">\n").append(sections.get(index)).append("\n</ocr-section>\n")
+                .toString();
+    }
 
-        sb.append("当前任务:\n");
-        sb.append("<task>\n");
-        sb.append("类型: ").append(task.getType().getValue()).append("\n");
-        sb.append("描述: ").append(task.getDescription()).append("\n");
-        sb.append("优先级: ").append(task.getPriority()).append("\n");
-        sb.append("截止: ").append(task.getDueDate() != null ? task.getDueDate() : "未设定").append("\n");
-        sb.append("</task>\n\n");
-
-        // 之前的执行结果
-        if (!state.getGeneratedContents().isEmpty()) {
-            sb.append("之前的执行结果:\n");
-            for (int i = 0; i < state.getGeneratedContents().size(); i++) {
-                String content = state.getGeneratedContents().get(i);
-                String preview = content.length() > 500 ? content.substring(0, 500) + "..." : content;
-                sb.append(String.format("[Task %d Result]: %s\n---\n", i + 1, preview));
-            }
-            sb.append("\n");
-        }
+    private StringBuilder planningContext(AgentState state) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("当前上下文信息：\n\n");
 
-        sb.append("上下文信息:\n");
         sb.append("<learner>\n");
         sb.append("ID: ").append(state.getLearnerProfile().getLearnerId()).append("\n");
         sb.append("水平: ").append(state.getLearnerProfile().getCompetencyLevel()).append("\n");
@@ -340,24 +520,41 @@ public class WorkflowNodes {
         sb.append("偏好: ").append(state.getLearnerProfile().getPreferredStyle()).append("\n");
         sb.append("</learner>\n\n");
 
-        sb.append("重要提示：\n");
-        sb.append("1. **Mandatory Search**: 使用 notionSearch 工具搜索 'sophie'，获取父页面 ID\n");
-        sb.append("2. **Mandatory Create**: 使用 notionCreatePage 工具创建页面（parentPageId 从步骤1获取）\n");
-        sb.append("3. **No Simulation**: 严禁输出 JSON 模拟，必须真正调用工具\n");
-        sb.append("4. **Action Required**: 本任务必须调用工具，不能仅返回文字说明\n\n");
-
         if (state.getUserQuery() != null && !state.getUserQuery().isEmpty()) {
             sb.append("<user-query>\n").append(state.getUserQuery()).append("\n</user-query>\n\n");
+        } else {
+            sb.append("<user-query>（用户未输入文字）</user-query>\n\n");
         }
 
-        if (state.getOcrResult() != null) {
-            sb.append("<ocr-plain>\n").append(state.getOcrResult().getPlainText()).append("\n</ocr-plain>\n");
-            sb.append("<ocr-markdown>\n").append(state.getOcrResult().getMarkdownText()).append("\n</ocr-markdown>\n");
+        if (state.getPreviousTurn() != null) {
+            sb.append(previousTurnBlock(state.getPreviousTurn()));
         }
+        return sb;
+    }
 
-        sb.append("\n请执行该任务。");
-
-        return sb.toString();
+    /**
+     * 上一轮对话：请求、任务、页面和每条结果的开头部分，追问时规划只需要知道之前做了什么
+     */
+    private static String previousTurnBlock(ConversationTurn turn) {
+        StringBuilder sb = new StringBuilder("<previous-turn>\n");
+        if (turn.userQuery() != null && !turn.userQuery().isBlank()) {
+            sb.append("上一轮请求: ").append(turn.userQuery().strip()).append("\n");
+        }
+        for (LearningTask task : turn.tasks()) {
+            sb.append("- 任务 ").append(task.getTaskId()).append(" [")
+                    .append(task.getType() != null ? task.getType().getValue() : "").append("]: ")
+                    .append(task.getDescription()).append("\n");
+        }
+        for (NotionCreatedPage page : turn.pages()) {
+            sb.append("- 已创建页面 ").append(page.getId())
+                    .append(page.getUrl() != null ? " " + page.getUrl() : "").append("\n");
+        }
+        for (int i = 0; i < turn.contents().size(); i++) {
+            String compact = turn.contents().get(i).strip().replaceAll("\\s*\\n\\s*", " / ");
+            sb.append("- 结果 ").append(i + 1).append(": ")
+                    .append(TokenEstimator.truncate(compact, PREVIOUS_RESULT_TOKENS)).append("\n");
+        }
+        return sb.append("</previous-turn>\n\n").toString();
     }
 
     private List<LearningTask> parseTasksFromJson(String json) throws JsonProcessingException {
@@ -384,19 +581,37 @@ public class WorkflowNodes {
 
         List<LearningTask> tasks = new ArrayList<>();
         for (Map<String, Object> rawTask : rawTasks) {
-            LearningTask task = LearningTask.builder()
-                    .taskId((String) rawTask.get("taskId"))
-                    .type(LearningTaskType.fromValue((String) rawTask.get("type")))
-                    .description((String) rawTask.get("description"))
-                    .priority(rawTask.get("priority") instanceof Number n ? n.intValue() : 3)
-                    .dueDate((String) rawTask.get("dueDate"))
-                    .estimatedDuration((String) rawTask.get("estimatedDuration"))
-                    .build();
-            tasks.add(task);
+            tasks.add(toTask(rawTask));
         }
         return tasks;
     }
 
+    private LearningTask toTask(Map<String, Object> rawTask) {
+        return LearningTask.builder()
+                .taskId((String) rawTask.get("taskId"))
+                .type(LearningTaskType.fromValue((String) rawTask.get("type")))
+                .description((String) rawTask.get("description"))
+                .priority(rawTask.get("priority") instanceof Number n ? n.intValue() : 3)
+                .dueDate((String) rawTask.get("dueDate"))
+                .estimatedDuration((String) rawTask.get("estimatedDuration"))
+                .dependsOn(parseDependsOn(rawTask.get("dependsOn")))
+                .build();
+    }
+
+    private List<String> parseDependsOn(Object raw) {
+        List<String> dependsOn = new ArrayList<>();
+        if (raw instanceof List<?> list) {
+            for (Object item : list) {
+                if (item != null && !item.toString().isBlank()) {
+                    dependsOn.add(item.toString().trim());
+                }
+            }
+        } else if (raw instanceof String single && !single.isBlank()) {
+            dependsOn.add(single.trim());
+        }
+        return dependsOn;
+    }
+
     private void extractPageInfoFromString(String output, List<String> pageIds, List<NotionCreatedPage> pages) {
         // 尝试 JSON 解析
         try {
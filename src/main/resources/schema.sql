@@ -14,3 +14,34 @@ CREATE INDEX IF NOT EXISTS idx_users_email ON users(email);
 
 -- 创建 learner_id 索引
 CREATE INDEX IF NOT EXISTS idx_users_learner_id ON users(learner_id);
+
+-- 工作流检查点表：每次节点完成后保存 AgentState 的精简快照，用于崩溃或超时后恢复
+CREATE TABLE IF NOT EXISTS workflow_checkpoints (
+    request_id TEXT PRIMARY KEY,
+    last_node TEXT NOT NULL,
+    status TEXT NOT NULL,
+    state_json TEXT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- 创建更新时间索引，用于清理过期检查点
+CREATE INDEX IF NOT EXISTS idx_workflow_checkpoints_updated_at ON workflow_checkpoints(updated_at);
+
+-- 异步分析任务表：持久化任务队列，服务重启后未完成的任务会重新入队
+CREATE TABLE IF NOT EXISTS analyze_jobs (
+    job_id TEXT PRIMARY KEY,
+    status TEXT NOT NULL,
+    message TEXT,
+    profile_json TEXT,
+    learner_id TEXT,
+    image_path TEXT,
+    result_json TEXT,
+    error TEXT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP
+);
+
+-- 创建状态索引，用于恢复未完成的任务
+CREATE INDEX IF NOT EXISTS idx_analyze_jobs_status ON analyze_jobs(status, created_at);
@@ -0,0 +1,188 @@
+package com.learning.agent.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 测试用的 stdio MCP 进程
+ * 从标准输入逐行读取 JSON-RPC 请求：initialize 立即响应，tools/call 在各自的线程中等待 callDelay 后响应，
+ * 并记录同时处理中的工具调用数的峰值
+ */
+final class FakeMcpProcess extends Process {
+
+    private static final byte[] EOF = new byte[0];
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Duration callDelay;
+    private final Function<JsonNode, JsonNode> toolResult;
+    private final LineInputStream stdout = new LineInputStream();
+    private final LineOutputStream stdin = new LineOutputStream();
+    private final AtomicInteger inFlightCalls = new AtomicInteger();
+    private final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+    private volatile boolean alive = true;
+
+    /**
+     * @param toolResult 根据 tools/call 的 params 生成 result
+     */
+    FakeMcpProcess(Duration callDelay, Function<JsonNode, JsonNode> toolResult) {
+        this.callDelay = callDelay;
+        this.toolResult = toolResult;
+    }
+
+    /**
+     * 同时处理中的工具调用数的峰值
+     */
+    int maxConcurrentCalls() {
+        return maxConcurrentCalls.get();
+    }
+
+    private void handle(String line) throws IOException {
+        JsonNode request = objectMapper.readTree(line);
+        if (!request.has("id")) {
+            return; // 通知不需要响应
+        }
+        int id = request.get("id").asInt();
+        if (!"tools/call".equals(request.path("method").asText())) {
+            respond(id, objectMapper.createObjectNode());
+            return;
+        }
+        Thread.ofVirtual().start(() -> {
+            int calls = inFlightCalls.incrementAndGet();
+            maxConcurrentCalls.accumulateAndGet(calls, Math::max);
+            try {
+                Thread.sleep(callDelay.toMillis());
+                inFlightCalls.decrementAndGet();
+                respond(id, toolResult.apply(request.get("params")));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private void respond(int id, JsonNode result) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.set("result", result);
+        stdout.offer(response.toString());
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return stdin;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return stdout;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() {
+        return 0;
+    }
+
+    @Override
+    public int exitValue() {
+        if (alive) {
+            throw new IllegalThreadStateException("process is still running");
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return alive;
+    }
+
+    @Override
+    public void destroy() {
+        alive = false;
+        stdout.close();
+    }
+
+    /**
+     * 标准输入：按行交给 handle
+     */
+    private final class LineOutputStream extends OutputStream {
+
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (b == '\n') {
+                String line = pending.toString(StandardCharsets.UTF_8);
+                pending.reset();
+                handle(line);
+            } else {
+                pending.write(b);
+            }
+        }
+    }
+
+    /**
+     * 标准输出：每次读取只返回已写入的数据，没有数据时阻塞
+     */
+    private static final class LineInputStream extends InputStream {
+
+        private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+        private byte[] current = new byte[0];
+        private int position;
+
+        void offer(String line) {
+            chunks.add((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+            chunks.add(EOF);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position >= current.length) {
+                if (current == EOF) {
+                    return -1;
+                }
+                try {
+                    current = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                position = 0;
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.learning.agent.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.learning.agent.config.AppConfigProperties;
+import com.learning.agent.util.McpConfigLoader;
+import com.learning.agent.util.McpConfigLoader.McpServerConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * NotionMcpClient 并发单元测试
+ * 使用模拟的 MCP 进程测试多个工具调用共用一个进程时能同时等待结果
+ */
+class NotionMcpClientConcurrencyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private FakeMcpProcess process;
+    private NotionMcpClient client;
+
+    @BeforeEach
+    void setUp() {
+        McpConfigLoader configLoader = mock(McpConfigLoader.class);
+        when(configLoader.getServerConfig("notion"))
+                .thenReturn(new McpServerConfig(null, "notion-mcp-server", List.of(), Map.of(), null, null));
+        AppConfigProperties appConfig = mock(AppConfigProperties.class);
+        when(appConfig.isNotionConfigured()).thenReturn(true);
+        when(appConfig.getNotionMcpToken()).thenReturn("ntn_test");
+
+        process = new FakeMcpProcess(Duration.ofMillis(500), this::databaseResult);
+        client = new NotionMcpClient(objectMapper, configLoader, appConfig) {
+            @Override
+            Process startProcess(ProcessBuilder pb) {
+                return process;
+            }
+        };
+    }
+
+    @Test
+    void testCallTool_TwoSlowCalls_ShouldOverlap() throws Exception {
+        // Given: 每次工具调用需要 500ms
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        // When: 同时读取两个数据库
+        long start = System.nanoTime();
+        CompletableFuture<Object> first =
+                CompletableFuture.supplyAsync(() -> client.retrieveDatabase("db-1"), executor);
+        CompletableFuture<Object> second =
+                CompletableFuture.supplyAsync(() -> client.retrieveDatabase("db-2"), executor);
+        JsonNode firstResult = (JsonNode) first.get(5, TimeUnit.SECONDS);
+        JsonNode secondResult = (JsonNode) second.get(5, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdown();
+
+        // Then: 两次调用在进程中同时进行，各自拿到自己的结果
+        assertEquals(2, process.maxConcurrentCalls());
+        assertTrue(elapsedMs < 1000, "两次调用应该重叠，实际耗时 " + elapsedMs + "ms");
+        assertEquals("db-1", firstResult.get("id").asText());
+        assertEquals("db-2", secondResult.get("id").asText());
+    }
+
+    /**
+     * 模拟 Notion MCP 输出：text 内容为数据库对象的 JSON
+     */
+    private JsonNode databaseResult(JsonNode params) {
+        String databaseId = params.path("arguments").path("database_id").asText();
+        ObjectNode result = objectMapper.createObjectNode();
+        result.putArray("content").addObject()
+                .put("type", "text")
+                .put("text", "{\"object\":\"database\",\"id\":\"" + databaseId + "\"}");
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+package com.learning.agent.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.learning.agent.config.AppConfigProperties;
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.util.McpConfigLoader;
+import com.learning.agent.util.McpConfigLoader.McpServerConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * PaddleOcrMcpClient 单元测试
+ * 使用模拟的 MCP 进程测试多个识别请求共用一个进程时能同时等待结果
+ */
+class PaddleOcrMcpClientTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private FakeMcpProcess process;
+    private PaddleOcrMcpClient client;
+
+    @BeforeEach
+    void setUp() {
+        McpConfigLoader configLoader = mock(McpConfigLoader.class);
+        when(configLoader.getServerConfig("paddleocr"))
+                .thenReturn(new McpServerConfig(null, "paddleocr_mcp", List.of(), Map.of(), null, null));
+        AppConfigProperties appConfig = mock(AppConfigProperties.class);
+        when(appConfig.getPaddleOcrMcpServer()).thenReturn("paddleocr");
+        when(appConfig.getPaddleOcrRequestRetries()).thenReturn(1);
+        when(appConfig.getPaddleOcrRequestTimeoutMs()).thenReturn(5000);
+        when(appConfig.getPaddleOcrMcpInitTimeoutSec()).thenReturn(5);
+
+        process = new FakeMcpProcess(Duration.ofMillis(500), this::ocrResult);
+        client = new PaddleOcrMcpClient(objectMapper, configLoader, appConfig) {
+            @Override
+            Process startProcess(ProcessBuilder pb) {
+                return process;
+            }
+        };
+    }
+
+    @Test
+    void testRunStructuredOcr_TwoSlowCalls_ShouldOverlap() throws Exception {
+        // Given: 每次识别需要 500ms
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        // When: 两张图片同时识别
+        long start = System.nanoTime();
+        CompletableFuture<OcrStructuredResult> first =
+                CompletableFuture.supplyAsync(() -> client.runStructuredOcr("first.png"), executor);
+        CompletableFuture<OcrStructuredResult> second =
+                CompletableFuture.supplyAsync(() -> client.runStructuredOcr("second.png"), executor);
+        OcrStructuredResult firstResult = first.get(5, TimeUnit.SECONDS);
+        OcrStructuredResult secondResult = second.get(5, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdown();
+
+        // Then: 两次调用在进程中同时进行，各自拿到自己图片的结果
+        assertEquals(2, process.maxConcurrentCalls());
+        assertTrue(elapsedMs < 1000, "两次识别应该重叠，实际耗时 " + elapsedMs + "ms");
+        assertTrue(firstResult.isSuccess());
+        assertTrue(secondResult.isSuccess());
+        assertEquals(Paths.get("first.png").toAbsolutePath().toString(), firstResult.getOriginalPath());
+        assertTrue(firstResult.getMarkdownText().contains("first.png"));
+        assertTrue(secondResult.getMarkdownText().contains("second.png"));
+    }
+
+    /**
+     * 模拟 detailed 输出：第一段为纯文本，第二段为 JSON 结构
+     */
+    private JsonNode ocrResult(JsonNode params) {
+        String input = params.path("arguments").path("input_data").asText();
+        ObjectNode result = objectMapper.createObjectNode();
+        ArrayNode content = result.putArray("content");
+        content.addObject().put("type", "text").put("text", "识别 " + input);
+        content.addObject().put("type", "text").put("text", "{\"text_lines\":[]}");
+        return result;
+    }
+}
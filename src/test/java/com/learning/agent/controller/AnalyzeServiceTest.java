@@ -3,13 +3,21 @@ package com.learning.agent.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.learning.agent.workflow.AgentState;
 import com.learning.agent.client.NotionClient;
+import com.learning.agent.dto.client.OcrStructuredResult;
 import com.learning.agent.dto.web.AnalyzeResponse;
 import com.learning.agent.workflow.AgentWorkflow;
+import com.learning.agent.workflow.PayloadStore;
+import com.learning.agent.workflow.WorkflowCheckpointer;
+import com.learning.agent.workflow.WorkflowListener;
 import com.learning.agent.model.*;
+import com.learning.agent.service.AnalyzeResultCache;
 import com.learning.agent.service.AnalyzeService;
+import com.learning.agent.service.ConversationSessionStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.web.multipart.MultipartFile;
@@ -18,6 +26,8 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -39,12 +49,18 @@ class AnalyzeServiceTest {
     @Mock
     private MultipartFile mockImageFile;
 
+    @Mock
+    private WorkflowCheckpointer checkpointer;
+
     private AnalyzeService analyzeService;
 
     @BeforeEach
     void setUp() {
         ObjectMapper objectMapper = new ObjectMapper();
-        analyzeService = new AnalyzeService(workflow, notionClient, objectMapper);
+        analyzeService = new AnalyzeService(workflow, notionClient, objectMapper, checkpointer,
+                new AnalyzeResultCache(new SimpleMeterRegistry(), true, 16, 30),
+                new ConversationSessionStore(new SimpleMeterRegistry(), true, 16, 60),
+                new PayloadStore(new SimpleMeterRegistry(), objectMapper, true, 32768, ""), 300);
 
         // 确保上传目录存在
         File uploadDir = new File("uploads");
@@ -72,7 +88,7 @@ class AnalyzeServiceTest {
         when(notionClient.searchPage("")).thenReturn(Optional.of(searchResult));
 
         AgentState finalState = createFinalState();
-        when(workflow.invoke(any(AgentState.class))).thenReturn(finalState);
+        when(workflow.invoke(any(AgentState.class), any(WorkflowListener.class))).thenReturn(finalState);
 
         // When
         AnalyzeResponse response = analyzeService.analyze(null, message, profileJson, learnerId);
@@ -82,7 +98,7 @@ class AnalyzeServiceTest {
         assertTrue(response.isSuccess());
         assertNotNull(response.getData());
         assertEquals(2, response.getData().getSteps().size());
-        verify(workflow, times(1)).invoke(any(AgentState.class));
+        verify(workflow, times(1)).invoke(any(AgentState.class), any(WorkflowListener.class));
         verify(notionClient, times(2)).searchPage(anyString());
     }
 
@@ -109,8 +125,14 @@ class AnalyzeServiceTest {
                 .thenReturn(Optional.empty())
                 .thenReturn(Optional.of(searchResult));
 
+        when(workflow.runOcr(anyString())).thenReturn(OcrStructuredResult.builder()
+                .success(true)
+                .plainText("F=ma")
+                .markdownText("- F=ma")
+                .build());
+
         AgentState finalState = createFinalState();
-        when(workflow.invoke(any(AgentState.class))).thenReturn(finalState);
+        when(workflow.invoke(any(AgentState.class), any(WorkflowListener.class))).thenReturn(finalState);
 
         // When
         AnalyzeResponse response = analyzeService.analyze(mockImageFile, message, profileJson, learnerId);
@@ -119,7 +141,49 @@ class AnalyzeServiceTest {
         assertNotNull(response);
         assertTrue(response.isSuccess());
         verify(mockImageFile, atLeastOnce()).isEmpty();
-        verify(workflow, times(1)).invoke(any(AgentState.class));
+        verify(workflow, times(1)).runOcr(anyString());
+
+        ArgumentCaptor<AgentState> stateCaptor = ArgumentCaptor.forClass(AgentState.class);
+        verify(workflow, times(1)).invoke(stateCaptor.capture(), any(WorkflowListener.class));
+        assertEquals("F=ma", stateCaptor.getValue().getOcrResult().getPlainText());
+        assertTrue(response.getData().getTimings().containsKey("ocr"));
+        assertTrue(response.getData().getTimings().containsKey("notion-parent"));
+    }
+
+    @Test
+    void testAnalyze_ParentLookupFails_ShouldCancelOcr() throws Exception {
+        // Given
+        when(mockImageFile.isEmpty()).thenReturn(false);
+        when(mockImageFile.getOriginalFilename()).thenReturn("test.jpg");
+        when(mockImageFile.getBytes()).thenReturn(new byte[]{1, 2, 3});
+        // 父页面查找在 OCR 开始后才失败，确保取消的是正在执行的 OCR
+        CountDownLatch ocrStarted = new CountDownLatch(1);
+        when(notionClient.searchPage(anyString())).thenAnswer(invocation -> {
+            ocrStarted.await(5, TimeUnit.SECONDS);
+            return Optional.empty();
+        });
+
+        CountDownLatch ocrInterrupted = new CountDownLatch(1);
+        when(workflow.runOcr(anyString())).thenAnswer(invocation -> {
+            ocrStarted.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                ocrInterrupted.countDown();
+                throw e;
+            }
+            return OcrStructuredResult.empty();
+        });
+
+        // When
+        long start = System.currentTimeMillis();
+        AnalyzeResponse response = analyzeService.analyze(mockImageFile, "分析", "{}", "test-id");
+
+        // Then
+        assertFalse(response.isSuccess());
+        assertTrue(System.currentTimeMillis() - start < 5_000, "OCR branch should be cancelled");
+        assertTrue(ocrInterrupted.await(5, TimeUnit.SECONDS));
+        verify(workflow, never()).invoke(any(AgentState.class), any(WorkflowListener.class));
     }
 
     @Test
@@ -134,7 +198,7 @@ class AnalyzeServiceTest {
                 .thenReturn(Optional.of(searchResult));
 
         AgentState finalState = createFinalState();
-        when(workflow.invoke(any(AgentState.class))).thenReturn(finalState);
+        when(workflow.invoke(any(AgentState.class), any(WorkflowListener.class))).thenReturn(finalState);
 
         // When
         AnalyzeResponse response = analyzeService.analyze(null, message, "", learnerId);
@@ -142,7 +206,7 @@ class AnalyzeServiceTest {
         // Then
         assertNotNull(response);
         assertTrue(response.isSuccess());
-        verify(workflow, times(1)).invoke(any(AgentState.class));
+        verify(workflow, times(1)).invoke(any(AgentState.class), any(WorkflowListener.class));
     }
 
     @Test
@@ -156,7 +220,7 @@ class AnalyzeServiceTest {
         when(notionClient.searchPage(anyString())).thenReturn(Optional.of(searchResult));
 
         AgentState finalState = createFinalStateWithPages();
-        when(workflow.invoke(any(AgentState.class))).thenReturn(finalState);
+        when(workflow.invoke(any(AgentState.class), any(WorkflowListener.class))).thenReturn(finalState);
 
         // When
         AnalyzeResponse response = analyzeService.analyze(null, message, profileJson, learnerId);
@@ -169,6 +233,246 @@ class AnalyzeServiceTest {
         assertEquals(2, response.getData().getCreatedPages().size());
     }
 
+    @Test
+    void testAnalyzeImages_MultiplePages_ShouldOcrConcurrentlyAndPlanOnce() throws Exception {
+        // Given: 两页作业，两张图片的 OCR 互相等待，只有并发执行才能完成
+        MultipartFile page1 = mock(MultipartFile.class);
+        MultipartFile page2 = mock(MultipartFile.class);
+        when(page1.getOriginalFilename()).thenReturn("page1.jpg");
+        when(page1.getBytes()).thenReturn(new byte[]{1});
+        when(page2.getOriginalFilename()).thenReturn("page2.jpg");
+        when(page2.getBytes()).thenReturn(new byte[]{2});
+        when(notionClient.searchPage(anyString()))
+                .thenReturn(Optional.of(new NotionClient.SearchResult("parent-id", "Parent")));
+
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        when(workflow.runOcr(anyString())).thenAnswer(invocation -> {
+            bothStarted.countDown();
+            assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+            String path = invocation.getArgument(0);
+            return OcrStructuredResult.builder()
+                    .success(true)
+                    .originalPath(path)
+                    .plainText(path.endsWith("page1.jpg") ? "第一题" : "第二题")
+                    .markdownText("")
+                    .build();
+        });
+        when(workflow.invoke(any(AgentState.class), any(WorkflowListener.class))).thenReturn(createFinalState());
+
+        // When
+        AnalyzeResponse response = analyzeService.analyzeImages(List.of(page1, page2), "批改作业", "{}", "test-id",
+                WorkflowListener.NOOP);
+
+        // Then
+        assertTrue(response.isSuccess());
+        ArgumentCaptor<AgentState> stateCaptor = ArgumentCaptor.forClass(AgentState.class);
+        verify(workflow, times(1)).invoke(stateCaptor.capture(), any(WorkflowListener.class));
+        String plainText = stateCaptor.getValue().getOcrResult().getPlainText();
+        assertTrue(plainText.indexOf("第一题") < plainText.indexOf("第二题"));
+        assertTrue(response.getData().getTimings().containsKey("ocr-1"));
+        assertTrue(response.getData().getTimings().containsKey("ocr-2"));
+        verify(notionClient, times(1)).searchPage(anyString());
+    }
+
+    @Test
+    void testAnalyze_IdenticalResubmission_ShouldReturnCachedPages() throws Exception {
+        // Given
+        when(mockImageFile.isEmpty()).thenReturn(false);
+        when(mockImageFile.getOriginalFilename()).thenReturn("test.jpg");
+        when(mockImageFile.getBytes()).thenReturn(new byte[]{1, 2, 3});
+        when(notionClient.searchPage(anyString()))
+                .thenReturn(Optional.of(new NotionClient.SearchResult("parent-id", "Parent")));
+        when(workflow.runOcr(anyString())).thenReturn(OcrStructuredResult.empty());
+        when(workflow.invoke(any(AgentState.class), any(WorkflowListener.class))).thenReturn(createFinalStateWithPages());
+
+        AnalyzeResponse first = analyzeService.analyze(mockImageFile, "创建笔记", "{}", "test-id");
+
+        // When: 网络中断后重新提交相同的图片和问题（仅空白不同）
+        AnalyzeResponse second = analyzeService.analyze(mockImageFile, "  创建笔记 ", "{}", "test-id");
+
+        // Then
+        assertTrue(second.isSuccess());
+        assertNotEquals(first.getRequestId(), second.getRequestId());
+        assertEquals(first.getRequestId(), second.getCachedFrom());
+        assertEquals(List.of("page-id-1", "page-id-2"), second.getData().getPageIds());
+        assertEquals("https://notion.so/page1", second.getData().getCreatedPages().getFirst().getUrl());
+        verify(workflow, times(1)).runOcr(anyString());
+        verify(workflow, times(1)).invoke(any(AgentState.class), any(WorkflowListener.class));
+    }
+
+    @Test
+    void testResume_CompletedCheckpoint_ShouldReturnSavedResult() {
+        // Given
+        AgentState saved = createFinalStateWithPages();
+        when(checkpointer.load("req-1"))
+                .thenReturn(Optional.of(new WorkflowCheckpointer.Checkpoint(saved, "completed", "COMPLETED")));
+
+        // When
+        AnalyzeResponse response = analyzeService.resume("req-1");
+
+        // Then
+        assertTrue(response.isSuccess());
+        assertEquals("req-1", response.getRequestId());
+        assertEquals(2, response.getData().getPageIds().size());
+        verify(workflow, never()).invoke(any(AgentState.class), any(WorkflowListener.class));
+    }
+
+    @Test
+    void testResume_RunningCheckpoint_ShouldContinueWorkflow() {
+        // Given
+        AgentState saved = createFinalState();
+        saved.setCurrentTaskIndex(1);
+        when(checkpointer.load("req-2"))
+                .thenReturn(Optional.of(new WorkflowCheckpointer.Checkpoint(saved, "execution:T1", "RUNNING")));
+        when(workflow.invoke(saved, WorkflowListener.NOOP)).thenReturn(createFinalState());
+
+        // When
+        AnalyzeResponse response = analyzeService.resume("req-2");
+
+        // Then
+        assertTrue(response.isSuccess());
+        assertEquals(2, response.getData().getContents().size());
+        verify(workflow, times(1)).invoke(saved, WorkflowListener.NOOP);
+    }
+
+    @Test
+    void testResume_NoCheckpoint_ShouldReturnError() {
+        // Given
+        when(checkpointer.load("missing")).thenReturn(Optional.empty());
+
+        // When
+        AnalyzeResponse response = analyzeService.resume("missing");
+
+        // Then
+        assertFalse(response.isSuccess());
+        assertEquals("missing", response.getRequestId());
+        verify(workflow, never()).invoke(any(AgentState.class), any(WorkflowListener.class));
+    }
+
+    @Test
+    void testCancel_RunningRequest_ShouldAbortWorkflow() throws Exception {
+        // Given: 工作流一直运行到请求被取消
+        when(notionClient.searchPage(anyString()))
+                .thenReturn(Optional.of(new NotionClient.SearchResult("parent-page-id", "sophie")));
+        when(workflow.invoke(any(AgentState.class), any(WorkflowListener.class))).thenAnswer(invocation -> {
+            AgentState state = invocation.getArgument(0);
+            long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (System.nanoTime() < waitUntil) {
+                state.getDeadline().check("execution");
+                Thread.sleep(10);
+            }
+            return createFinalState();
+        });
+        CountDownLatch started = new CountDownLatch(1);
+        String[] requestId = new String[1];
+        WorkflowListener listener = new WorkflowListener() {
+            @Override
+            public void onStarted(String id) {
+                requestId[0] = id;
+                started.countDown();
+            }
+        };
+        Thread.ofVirtual().start(() -> {
+            try {
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            assertTrue(analyzeService.cancel(requestId[0], "cancelled by client"));
+        });
+
+        // When
+        long start = System.nanoTime();
+        AnalyzeResponse response = analyzeService.analyzeImages(List.of(), "整理笔记", null, "learner-1", listener);
+
+        // Then: 请求提前结束，结束后不能再取消
+        assertFalse(response.isSuccess());
+        assertTrue(response.getError().contains("cancelled"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 4_000);
+        assertFalse(analyzeService.cancel(requestId[0], "cancelled by client"));
+    }
+
+    @Test
+    void testAnalyzeImages_FollowUpInSession_ShouldReuseOcrAndPreviousTurn() throws Exception {
+        // Given: 会话第一轮上传图片
+        when(mockImageFile.isEmpty()).thenReturn(false);
+        when(mockImageFile.getOriginalFilename()).thenReturn("test.jpg");
+        when(mockImageFile.getBytes()).thenReturn(new byte[]{1, 2, 3});
+        when(notionClient.searchPage("Learning Dashboard"))
+                .thenReturn(Optional.of(new NotionClient.SearchResult("parent-page-id", "Learning Dashboard")));
+        when(workflow.runOcr(anyString())).thenReturn(OcrStructuredResult.builder()
+                .success(true)
+                .plainText("F=ma")
+                .markdownText("- F=ma")
+                .build());
+        when(workflow.invoke(any(AgentState.class), any(WorkflowListener.class))).thenAnswer(invocation -> {
+            AgentState state = invocation.getArgument(0);
+            AgentState finalState = createFinalState();
+            finalState.setUserQuery(state.getUserQuery());
+            return finalState;
+        });
+        analyzeService.analyzeImages(List.of(mockImageFile), "整理笔记", null, "learner-1", "session-1",
+                WorkflowListener.NOOP);
+
+        // When: 同一会话中不带图片的追问
+        AnalyzeResponse response = analyzeService.analyzeImages(List.of(), "再精简一些", null, "learner-1",
+                "session-1", WorkflowListener.NOOP);
+
+        // Then: 不再 OCR 和查找父页面，上一轮的识别结果和计划随状态传给工作流
+        assertTrue(response.isSuccess());
+        verify(workflow, times(1)).runOcr(anyString());
+        verify(notionClient, times(1)).searchPage(anyString());
+        ArgumentCaptor<AgentState> stateCaptor = ArgumentCaptor.forClass(AgentState.class);
+        verify(workflow, times(2)).invoke(stateCaptor.capture(), any(WorkflowListener.class));
+        AgentState followUp = stateCaptor.getAllValues().get(1);
+        assertEquals("F=ma", followUp.getOcrResult().getPlainText());
+        assertEquals("parent-page-id", followUp.getParentPageId());
+        assertEquals("整理笔记", followUp.getPreviousTurn().userQuery());
+        assertEquals(List.of("任务1完成", "任务2完成"), followUp.getPreviousTurn().contents());
+        assertNull(stateCaptor.getAllValues().getFirst().getPreviousTurn());
+    }
+
+    @Test
+    void testAnalyzeImages_NewSessionHitsCache_ShouldSaveSessionContext() throws Exception {
+        // Given: 不带会话的请求已缓存了相同图片和问题的结果
+        when(mockImageFile.isEmpty()).thenReturn(false);
+        when(mockImageFile.getOriginalFilename()).thenReturn("test.jpg");
+        when(mockImageFile.getBytes()).thenReturn(new byte[]{1, 2, 3});
+        when(notionClient.searchPage("Learning Dashboard"))
+                .thenReturn(Optional.of(new NotionClient.SearchResult("parent-page-id", "Learning Dashboard")));
+        when(workflow.runOcr(anyString())).thenReturn(OcrStructuredResult.builder()
+                .success(true)
+                .plainText("F=ma")
+                .markdownText("- F=ma")
+                .build());
+        when(workflow.invoke(any(AgentState.class), any(WorkflowListener.class))).thenAnswer(invocation -> {
+            AgentState state = invocation.getArgument(0);
+            AgentState finalState = createFinalState();
+            finalState.setUserQuery(state.getUserQuery());
+            return finalState;
+        });
+        AnalyzeResponse first = analyzeService.analyzeImages(List.of(mockImageFile), "整理笔记", null, "learner-1",
+                WorkflowListener.NOOP);
+
+        // When: 新会话的第一条消息命中缓存，随后追问
+        AnalyzeResponse cached = analyzeService.analyzeImages(List.of(mockImageFile), "整理笔记", null, "learner-1",
+                "session-2", WorkflowListener.NOOP);
+        AnalyzeResponse response = analyzeService.analyzeImages(List.of(), "再精简一些", null, "learner-1",
+                "session-2", WorkflowListener.NOOP);
+
+        // Then: 命中缓存时也保存了会话上下文，追问复用原请求的识别结果和计划
+        assertEquals(first.getRequestId(), cached.getCachedFrom());
+        assertTrue(response.isSuccess());
+        verify(workflow, times(1)).runOcr(anyString());
+        verify(notionClient, times(1)).searchPage(anyString());
+        ArgumentCaptor<AgentState> stateCaptor = ArgumentCaptor.forClass(AgentState.class);
+        verify(workflow, times(2)).invoke(stateCaptor.capture(), any(WorkflowListener.class));
+        AgentState followUp = stateCaptor.getAllValues().get(1);
+        assertEquals("F=ma", followUp.getOcrResult().getPlainText());
+        assertEquals("整理笔记", followUp.getPreviousTurn().userQuery());
+    }
+
     // Helper methods
 
     private AgentState createFinalState() {
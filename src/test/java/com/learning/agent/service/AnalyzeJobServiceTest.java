@@ -0,0 +1,179 @@
+package com.learning.agent.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.agent.dto.web.AnalyzeResponse;
+import com.learning.agent.entity.AnalyzeJob;
+import com.learning.agent.repository.AnalyzeJobRepository;
+import com.learning.agent.workflow.WorkflowListener;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * AnalyzeJobService 单元测试
+ * 测试任务排队、多图提交、执行、恢复和订阅
+ */
+@ExtendWith(MockitoExtension.class)
+class AnalyzeJobServiceTest {
+
+    @Mock
+    private AnalyzeService analyzeService;
+
+    @Mock
+    private AnalyzeJobRepository repository;
+
+    private SimpleMeterRegistry registry;
+    private AnalyzeJobService jobService;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        jobService = new AnalyzeJobService(analyzeService, repository, new ObjectMapper().findAndRegisterModules(),
+                registry, 1, 1, 24);
+    }
+
+    @Test
+    void testSubmit_QueueFull_ShouldReject() {
+        // Given: 未启动工作线程，队列容量为 1
+        when(repository.findById(anyString())).thenAnswer(invocation -> Optional.of(queuedJob(invocation.getArgument(0))));
+        jobService.submit(List.of(), "第一个请求", null, "learner-1");
+
+        // When / Then
+        assertThrows(AnalyzeJobService.QueueFullException.class,
+                () -> jobService.submit(List.of(), "第二个请求", null, "learner-1"));
+        assertEquals(1.0, registry.get("agent.jobs.queue.depth").gauge().value());
+        assertEquals(1.0, registry.get("agent.jobs.rejected").counter().count());
+        verify(repository, times(1)).insertQueued(anyString(), anyString(), isNull(), anyString(), isNull(), any());
+    }
+
+    @Test
+    void testSubmit_QueueFull_ShouldNotSaveImages() throws Exception {
+        // Given
+        when(repository.findById(anyString())).thenAnswer(invocation -> Optional.of(queuedJob(invocation.getArgument(0))));
+        jobService.submit(List.of(), "第一个请求", null, "learner-1");
+        MockMultipartFile image = new MockMultipartFile("images", "page1.jpg", "image/jpeg", new byte[]{1});
+
+        // When / Then: 被拒绝的任务不在上传目录中留下图片
+        assertThrows(AnalyzeJobService.QueueFullException.class,
+                () -> jobService.submit(List.of(image), "第二个请求", null, "learner-1"));
+        verify(analyzeService, never()).saveUploadedFile(any());
+    }
+
+    @Test
+    void testSubmit_InsertFails_ShouldDeleteSavedImages() throws Exception {
+        // Given
+        Path saved = Files.createTempFile("upload-", ".jpg");
+        MockMultipartFile image = new MockMultipartFile("images", "page1.jpg", "image/jpeg", new byte[]{1});
+        when(analyzeService.saveUploadedFile(image)).thenReturn(saved.toString());
+        doThrow(new IllegalStateException("database is locked")).when(repository)
+                .insertQueued(anyString(), anyString(), isNull(), anyString(), anyString(), any());
+
+        // When / Then
+        assertThrows(IllegalStateException.class,
+                () -> jobService.submit(List.of(image), "整理作业", null, "learner-1"));
+        assertFalse(Files.exists(saved));
+    }
+
+    @Test
+    void testSubmit_MultipleImages_ShouldAnalyzeAllImagesInOneJob() throws Exception {
+        // Given
+        MockMultipartFile page1 = new MockMultipartFile("images", "page1.jpg", "image/jpeg", new byte[]{1});
+        MockMultipartFile page2 = new MockMultipartFile("images", "page2.jpg", "image/jpeg", new byte[]{2});
+        when(analyzeService.saveUploadedFile(page1)).thenReturn("/uploads/page1.jpg");
+        when(analyzeService.saveUploadedFile(page2)).thenReturn("/uploads/page2.jpg");
+        when(repository.findById(anyString())).thenAnswer(invocation -> Optional.of(queuedJob(invocation.getArgument(0))));
+        jobService.submit(List.of(page1, page2), "整理作业", null, "learner-1");
+
+        ArgumentCaptor<String> jobId = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> imagePath = ArgumentCaptor.forClass(String.class);
+        verify(repository).insertQueued(jobId.capture(), eq("整理作业"), isNull(), eq("learner-1"),
+                imagePath.capture(), any());
+        AnalyzeJob job = queuedJob(jobId.getValue());
+        job.setImagePath(imagePath.getValue());
+        when(repository.findById(jobId.getValue())).thenReturn(Optional.of(job));
+        when(analyzeService.analyzeStored(any(), any(), any(), any(), any(), any()))
+                .thenReturn(AnalyzeResponse.error("失败").withRequestId(jobId.getValue()));
+
+        // When
+        jobService.runJob(jobId.getValue());
+
+        // Then: 两张图片按上传顺序交给同一次分析
+        verify(analyzeService).analyzeStored(eq(jobId.getValue()),
+                eq(List.of("/uploads/page1.jpg", "/uploads/page2.jpg")), eq("请求"), isNull(), eq("learner-1"), any());
+    }
+
+    @Test
+    void testRunJob_ShouldRunWorkflowAndNotifySubscribers() {
+        // Given
+        AnalyzeJob job = queuedJob("job-1");
+        when(repository.findById("job-1")).thenReturn(Optional.of(job));
+        when(analyzeService.hasCheckpoint("job-1")).thenReturn(false);
+        when(analyzeService.analyzeStored(eq("job-1"), eq(List.of()), eq("请求"), isNull(), eq("learner-1"), any()))
+                .thenReturn(AnalyzeResponse.success(AnalyzeResponse.AnalyzeData.builder().contents(List.of("完成")).build())
+                        .withRequestId("job-1"));
+
+        List<AnalyzeResponse> finished = new ArrayList<>();
+        assertTrue(jobService.subscribe("job-1", finished::add));
+
+        // When
+        jobService.runJob("job-1");
+
+        // Then
+        verify(repository).markRunning(eq("job-1"), any(LocalDateTime.class));
+        verify(repository).markFinished(eq("job-1"), eq(AnalyzeJob.STATUS_SUCCEEDED), anyString(), isNull(),
+                any(LocalDateTime.class));
+        assertEquals(1, finished.size());
+        assertTrue(finished.getFirst().isSuccess());
+        assertEquals(1, registry.get("agent.jobs.queue.wait").timer().count());
+    }
+
+    @Test
+    void testRunJob_WithCheckpoint_ShouldResume() {
+        // Given: 服务重启前任务已执行到一半
+        AnalyzeJob job = queuedJob("job-2");
+        job.setStatus(AnalyzeJob.STATUS_RUNNING);
+        when(repository.findById("job-2")).thenReturn(Optional.of(job));
+        when(analyzeService.hasCheckpoint("job-2")).thenReturn(true);
+        when(analyzeService.resume(eq("job-2"), any(WorkflowListener.class)))
+                .thenReturn(AnalyzeResponse.error("规划执行失败").withRequestId("job-2"));
+
+        // When
+        jobService.runJob("job-2");
+
+        // Then
+        verify(analyzeService, never()).analyzeStored(any(), any(), any(), any(), any(), any());
+        verify(repository).markFinished(eq("job-2"), eq(AnalyzeJob.STATUS_FAILED), anyString(), eq("规划执行失败"),
+                any(LocalDateTime.class));
+    }
+
+    // Helper methods
+
+    private static AnalyzeJob queuedJob(String jobId) {
+        return AnalyzeJob.builder()
+                .jobId(jobId)
+                .status(AnalyzeJob.STATUS_QUEUED)
+                .message("请求")
+                .learnerId("learner-1")
+                .createdAt(LocalDateTime.now().minusSeconds(1))
+                .build();
+    }
+}
@@ -0,0 +1,223 @@
+package com.learning.agent.service;
+
+import com.learning.agent.dto.web.AnalyzeResponse;
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.util.Deadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AnalyzeResultCache 单元测试
+ * 测试缓存键、命中、容量淘汰、并发请求去重，以及等待方和执行方被取消的情况
+ */
+class AnalyzeResultCacheTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testKey_ShouldDependOnImageMessageAndProfile() {
+        // Given
+        LearnerProfile profile = LearnerProfile.defaultProfile("learner-1");
+        byte[] image = {1, 2, 3};
+
+        // When
+        String key = AnalyzeResultCache.key(List.of(image), "分析  物理公式", profile);
+
+        // Then
+        assertEquals(key, AnalyzeResultCache.key(List.of(new byte[]{1, 2, 3}), " 分析 物理公式\n", profile));
+        assertNotEquals(key, AnalyzeResultCache.key(List.of(new byte[]{1, 2, 4}), "分析 物理公式", profile));
+        assertNotEquals(key, AnalyzeResultCache.key(List.of(image), "分析 化学公式", profile));
+        assertNotEquals(AnalyzeResultCache.key(List.of(image, new byte[]{9}), "分析", profile),
+                AnalyzeResultCache.key(List.of(new byte[]{9}, image), "分析", profile));
+        LearnerProfile beginner = LearnerProfile.defaultProfile("learner-1");
+        beginner.setCompetencyLevel("初学");
+        assertNotEquals(key, AnalyzeResultCache.key(List.of(image), "分析 物理公式", beginner));
+    }
+
+    @Test
+    void testGetOrCompute_OnlySuccessfulResultsAreCached() {
+        // Given
+        AnalyzeResultCache cache = new AnalyzeResultCache(registry, true, 16, 30);
+        AtomicInteger loads = new AtomicInteger();
+
+        // When
+        cache.getOrCompute("failed", "r1", () -> {
+            loads.incrementAndGet();
+            return AnalyzeResponse.error("规划执行失败").withRequestId("r1");
+        });
+        cache.getOrCompute("failed", "r2", () -> {
+            loads.incrementAndGet();
+            return success("r2");
+        });
+        AnalyzeResponse hit = cache.getOrCompute("failed", "r3", () -> {
+            loads.incrementAndGet();
+            return success("r3");
+        });
+
+        // Then
+        assertEquals(2, loads.get());
+        assertEquals("r3", hit.getRequestId());
+        assertEquals("r2", hit.getCachedFrom());
+        assertEquals(1.0, registry.get("agent.cache.requests").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void testGetOrCompute_OverCapacity_ShouldEvictLeastRecentlyUsed() {
+        // Given
+        AnalyzeResultCache cache = new AnalyzeResultCache(registry, true, 2, 30);
+        cache.getOrCompute("a", "r1", () -> success("r1"));
+        cache.getOrCompute("b", "r2", () -> success("r2"));
+        cache.getOrCompute("a", "r3", () -> success("r3")); // 访问 a，b 成为最久未使用
+
+        // When
+        cache.getOrCompute("c", "r4", () -> success("r4"));
+
+        // Then
+        assertEquals(2, cache.size());
+        assertEquals("r1", cache.getOrCompute("a", "r5", () -> success("r5")).getCachedFrom());
+        assertNull(cache.getOrCompute("b", "r6", () -> success("r6")).getCachedFrom());
+    }
+
+    @Test
+    void testGetOrCompute_ConcurrentIdenticalRequests_ShouldShareOneExecution() throws Exception {
+        // Given
+        AnalyzeResultCache cache = new AnalyzeResultCache(registry, true, 16, 30);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<AnalyzeResponse> leader = executor.submit(() -> cache.getOrCompute("same", "r1", () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                await(release);
+                return success("r1");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // When
+            Future<AnalyzeResponse> follower = executor.submit(() -> cache.getOrCompute("same", "r2", () -> {
+                loads.incrementAndGet();
+                return success("r2");
+            }));
+            while (registry.get("agent.cache.requests").tag("result", "shared").counter().count() < 1) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            // Then
+            assertEquals("r1", leader.get(5, TimeUnit.SECONDS).getRequestId());
+            AnalyzeResponse shared = follower.get(5, TimeUnit.SECONDS);
+            assertEquals("r2", shared.getRequestId());
+            assertEquals("r1", shared.getCachedFrom());
+            assertEquals(1, loads.get());
+        }
+    }
+
+    @Test
+    void testGetOrCompute_FollowerCancelled_ShouldStopWaitingWithoutAffectingLeader() throws Exception {
+        // Given
+        AnalyzeResultCache cache = new AnalyzeResultCache(registry, true, 16, 30);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Deadline followerDeadline = Deadline.after(Duration.ofMinutes(1));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<AnalyzeResponse> leader = executor.submit(() -> cache.getOrCompute("same", "r1", () -> {
+                started.countDown();
+                await(release);
+                return success("r1");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<AnalyzeResponse> follower = executor.submit(() ->
+                    cache.getOrCompute("same", "r2", followerDeadline, () -> success("r2")));
+            while (registry.get("agent.cache.requests").tag("result", "shared").counter().count() < 1) {
+                Thread.sleep(10);
+            }
+
+            // When
+            followerDeadline.cancel("client cancelled");
+
+            // Then: 等待方立即返回取消结果，执行方照常完成
+            AnalyzeResponse cancelled = follower.get(5, TimeUnit.SECONDS);
+            assertFalse(cancelled.isSuccess());
+            assertEquals("r2", cancelled.getRequestId());
+            release.countDown();
+            assertTrue(leader.get(5, TimeUnit.SECONDS).isSuccess());
+        }
+    }
+
+    @Test
+    void testGetOrCompute_LeaderCancelled_ShouldLetFollowerRecompute() throws Exception {
+        // Given
+        AnalyzeResultCache cache = new AnalyzeResultCache(registry, true, 16, 30);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Deadline leaderDeadline = Deadline.after(Duration.ofMinutes(1));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<AnalyzeResponse> leader = executor.submit(() -> cache.getOrCompute("same", "r1", leaderDeadline, () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                await(release);
+                return AnalyzeResponse.error("Request cancelled (client cancelled)").withRequestId("r1");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<AnalyzeResponse> follower = executor.submit(() ->
+                    cache.getOrCompute("same", "r2", Deadline.after(Duration.ofMinutes(1)), () -> {
+                        loads.incrementAndGet();
+                        return success("r2");
+                    }));
+            while (registry.get("agent.cache.requests").tag("result", "shared").counter().count() < 1) {
+                Thread.sleep(10);
+            }
+
+            // When
+            leaderDeadline.cancel("client cancelled");
+            release.countDown();
+
+            // Then: 执行方的取消不共享给等待方，等待方自己重新执行
+            assertFalse(leader.get(5, TimeUnit.SECONDS).isSuccess());
+            AnalyzeResponse recomputed = follower.get(5, TimeUnit.SECONDS);
+            assertTrue(recomputed.isSuccess());
+            assertEquals("r2", recomputed.getRequestId());
+            assertNull(recomputed.getCachedFrom());
+            assertEquals(2, loads.get());
+        }
+    }
+
+    // Helper methods
+
+    private static AnalyzeResponse success(String requestId) {
+        return AnalyzeResponse.success(AnalyzeResponse.AnalyzeData.builder()
+                        .pageIds(List.of("page-" + requestId))
+                        .build())
+                .withRequestId(requestId);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.learning.agent.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Deadline 单元测试
+ * 测试剩余预算的计算、超时中断和线程绑定
+ */
+class DeadlineTest {
+
+    @Test
+    void testCallWithin_SlowCall_ShouldAbandonAndInterrupt() throws Exception {
+        // Given
+        Deadline deadline = Deadline.after(Duration.ofMillis(100));
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        // When
+        long start = System.nanoTime();
+        Deadline.DeadlineExceededException error = assertThrows(Deadline.DeadlineExceededException.class,
+                () -> Deadline.callWith(deadline, () -> Deadline.callWithin("planning", () -> {
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return "late";
+                })));
+
+        // Then
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000);
+        assertTrue(error.getMessage().contains("planning"));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testClampMillis_ShouldLimitTimeoutToRemainingBudget() throws Exception {
+        // Given
+        Deadline deadline = Deadline.after(Duration.ofSeconds(2));
+
+        // When
+        long clamped = Deadline.callWith(deadline, () -> Deadline.clampMillis(60_000, "notion"));
+
+        // Then: 未绑定截止时间时原样返回
+        assertTrue(clamped <= 2_000);
+        assertEquals(60_000, Deadline.clampMillis(60_000, "notion"));
+        assertNull(Deadline.current());
+    }
+
+    @Test
+    void testClampMillis_ExpiredDeadline_ShouldNotStartCall() {
+        // Given
+        Deadline expired = Deadline.after(Duration.ZERO);
+
+        // When / Then
+        assertTrue(expired.isExpired());
+        assertThrows(Deadline.DeadlineExceededException.class,
+                () -> Deadline.supplyWith(expired, () -> Deadline.clampMillis(1_000, "ocr")));
+    }
+
+    @Test
+    void testCancel_ShouldInterruptRunningCallAndFailFurtherChecks() throws Exception {
+        // Given: 预算充足的调用正在执行
+        Deadline deadline = Deadline.after(Duration.ofMinutes(5));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Thread.ofVirtual().start(() -> {
+            try {
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            deadline.cancel("client disconnected");
+        });
+
+        // When
+        long start = System.nanoTime();
+        Deadline.DeadlineExceededException error = assertThrows(Deadline.RequestCancelledException.class,
+                () -> Deadline.callWith(deadline, () -> Deadline.callWithin("execution", () -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep(60_000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return "late";
+                })));
+
+        // Then
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000);
+        assertTrue(error.getMessage().contains("client disconnected"));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(deadline.isExpired());
+        assertFalse(deadline.cancel("again"));
+        assertThrows(Deadline.RequestCancelledException.class, () -> deadline.check("notion"));
+    }
+}
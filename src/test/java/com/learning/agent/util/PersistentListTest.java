@@ -0,0 +1,62 @@
+package com.learning.agent.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PersistentList 单元测试
+ * 测试版本不可变、分叉追加互不影响和转换时的共享
+ */
+class PersistentListTest {
+
+    @Test
+    void testPlus_ShouldKeepPreviousVersionUnchanged() {
+        // Given
+        PersistentList<String> base = PersistentList.<String>empty().plus("a").plus("b");
+
+        // When
+        PersistentList<String> next = base.plus("c");
+
+        // Then
+        assertEquals(List.of("a", "b"), base);
+        assertEquals(List.of("a", "b", "c"), next);
+        assertThrows(UnsupportedOperationException.class, () -> next.add("d"));
+    }
+
+    @Test
+    void testPlus_BranchesFromSameVersion_ShouldNotInterfere() {
+        // Given: 两个分支从同一个版本分别追加
+        PersistentList<String> base = PersistentList.from(List.of("shared"));
+
+        // When
+        PersistentList<String> left = base.plus("left").plusAll(List.of("l2", "l3"));
+        PersistentList<String> right = base.plus("right");
+        PersistentList<String> leftAgain = left.plus("l4");
+
+        // Then
+        assertEquals(List.of("shared"), base);
+        assertEquals(List.of("shared", "left", "l2", "l3"), left);
+        assertEquals(List.of("shared", "right"), right);
+        assertEquals(List.of("shared", "left", "l2", "l3", "l4"), leftAgain);
+    }
+
+    @Test
+    void testFrom_ShouldShareExistingListAndCopyMutableOnes() {
+        // Given
+        PersistentList<Integer> persistent = PersistentList.from(List.of(1, 2));
+        List<Integer> mutable = new ArrayList<>(List.of(1, 2));
+
+        // When
+        PersistentList<Integer> copied = PersistentList.from(mutable);
+        mutable.add(3);
+
+        // Then
+        assertSame(persistent, PersistentList.from(persistent));
+        assertEquals(List.of(1, 2), copied);
+        assertTrue(PersistentList.from(null).isEmpty());
+    }
+}
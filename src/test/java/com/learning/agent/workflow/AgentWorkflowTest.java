@@ -1,19 +1,27 @@
 package com.learning.agent.workflow;
 
+import com.learning.agent.client.NotionClient;
+import com.learning.agent.dto.client.NotionCreatedPage;
+import com.learning.agent.dto.client.NotionWritePayload;
 import com.learning.agent.model.LearnerProfile;
 import com.learning.agent.model.LearningTask;
 import com.learning.agent.model.LearningTaskType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -35,41 +43,55 @@ class AgentWorkflowTest {
     @Mock
     private WorkflowNode executionNode;
 
+    @Mock
+    private WorkflowCheckpointer checkpointer;
+
+    @Mock
+    private NotionClient notionClient;
+
+    private SimpleMeterRegistry registry;
     private AgentWorkflow agentWorkflow;
 
     @BeforeEach
     void setUp() {
-        agentWorkflow = new AgentWorkflow(workflowNodes);
+        // 节点在构造时创建一次并编译为工作流图
+        when(workflowNodes.createOcrNode()).thenReturn(ocrNode);
+        when(workflowNodes.createPlanningNode()).thenReturn(planningNode);
+        when(workflowNodes.createExecutionNode()).thenReturn(executionNode);
+        registry = new SimpleMeterRegistry();
+        agentWorkflow = createWorkflow(false);
     }
 
     @Test
     void testWorkflow_CompleteExecution_NoTasks() {
-        // Given
+        // Given: 没有图片
         AgentState initialState = createInitialState();
 
         AgentState afterPlanning = createInitialState();
         afterPlanning.setTasks(new ArrayList<>()); // 空任务列表
 
-        when(workflowNodes.createOcrNode()).thenReturn(ocrNode);
-        when(workflowNodes.createPlanningNode()).thenReturn(planningNode);
-        when(ocrNode.process(any())).thenReturn(initialState);
         when(planningNode.process(any())).thenReturn(afterPlanning);
 
         // When
         AgentState result = agentWorkflow.invoke(initialState);
 
-        // Then
+        // Then: 跳过 OCR，规划后没有任务直接结束
         assertNotNull(result);
         assertEquals(0, result.getTasks().size());
-        verify(ocrNode, times(1)).process(any());
+        verify(ocrNode, never()).process(any());
         verify(planningNode, times(1)).process(any());
-        verify(workflowNodes, never()).createExecutionNode();
+        verify(executionNode, never()).process(any());
+        assertEquals(1.0, registry.get(WorkflowMetrics.EDGE_COUNTER)
+                .tags("from", WorkflowGraph.START, "to", WorkflowMetrics.NODE_PLANNING).counter().count());
+        assertEquals(1.0, registry.get(WorkflowMetrics.EDGE_COUNTER)
+                .tags("from", WorkflowMetrics.NODE_PLANNING, "to", WorkflowGraph.END).counter().count());
     }
 
     @Test
     void testWorkflow_CompleteExecution_WithTasks() {
         // Given
         AgentState initialState = createInitialState();
+        initialState.setImagePath("uploads/test.jpg");
 
         AgentState afterOcr = createInitialState();
 
@@ -86,9 +108,6 @@ class AgentWorkflowTest {
         afterSecondExecution.setTasks(tasks);
         afterSecondExecution.setCurrentTaskIndex(2);
 
-        when(workflowNodes.createOcrNode()).thenReturn(ocrNode);
-        when(workflowNodes.createPlanningNode()).thenReturn(planningNode);
-        when(workflowNodes.createExecutionNode()).thenReturn(executionNode);
 
         when(ocrNode.process(any())).thenReturn(afterOcr);
         when(planningNode.process(any())).thenReturn(afterPlanning);
@@ -113,8 +132,6 @@ class AgentWorkflowTest {
         // Given
         AgentState initialState = createInitialState();
 
-        AgentState afterOcr = createInitialState();
-
         List<LearningTask> tasks = createTestTasks(1);
         AgentState afterPlanning = createInitialState();
         afterPlanning.setTasks(tasks);
@@ -124,11 +141,7 @@ class AgentWorkflowTest {
         afterExecution.setTasks(tasks);
         afterExecution.setCurrentTaskIndex(1);
 
-        when(workflowNodes.createOcrNode()).thenReturn(ocrNode);
-        when(workflowNodes.createPlanningNode()).thenReturn(planningNode);
-        when(workflowNodes.createExecutionNode()).thenReturn(executionNode);
 
-        when(ocrNode.process(any())).thenReturn(afterOcr);
         when(planningNode.process(any())).thenReturn(afterPlanning);
         when(executionNode.process(any())).thenReturn(afterExecution);
 
@@ -140,10 +153,167 @@ class AgentWorkflowTest {
         assertEquals(1, result.getTasks().size());
         assertEquals(1, result.getCurrentTaskIndex());
         verify(executionNode, times(1)).process(any());
+        assertEquals(1.0, registry.get(WorkflowMetrics.EDGE_COUNTER)
+                .tags("from", WorkflowMetrics.NODE_EXECUTION, "to", WorkflowGraph.END).counter().count());
+    }
+
+    @Test
+    void testWorkflow_ResumeFromCheckpoint_ShouldSkipCompletedTasks() {
+        // Given: 从检查点恢复的状态，T1 已完成
+        List<LearningTask> tasks = createTestTasks(2);
+        AgentState resumed = createInitialState();
+        resumed.setRequestId("req-1");
+        resumed.setTasks(tasks);
+        resumed.getTaskOutcomes().put("T1", new TaskOutcome("T1", List.of("任务1完成"), List.of()));
+
+        when(planningNode.process(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(executionNode.process(any())).thenAnswer(invocation -> {
+            AgentState state = invocation.getArgument(0);
+            state.addGeneratedContent("任务2完成");
+            return state;
+        });
+
+        // When
+        AgentState result = agentWorkflow.invoke(resumed);
+
+        // Then
+        assertEquals(List.of("任务1完成", "任务2完成"), result.getGeneratedContents());
+        verify(executionNode, times(1)).process(any());
+        verify(checkpointer).save(any(), eq("planning"));
+        verify(checkpointer).save(any(), eq("execution:T2"));
+        verify(checkpointer).complete(result);
+    }
+
+    @Test
+    void testWorkflow_ResumeMidStreamCheckpoint_ShouldReuseOnlyUnchangedTasks() {
+        // Given: 规划中途保存的检查点，T1、T2 已完成；恢复后重新规划，T2 的描述变了
+        List<LearningTask> checkpointed = createTestTasks(2);
+        AgentState resumed = createInitialState();
+        resumed.setRequestId("req-1");
+        resumed.setTasks(new ArrayList<>(checkpointed));
+        resumed.setPlanStreaming(true);
+        resumed.getTaskOutcomes().put("T1", new TaskOutcome("T1", List.of("任务1完成"), List.of()));
+        resumed.getTaskOutcomes().put("T2", new TaskOutcome("T2", List.of("任务2完成"), List.of()));
+
+        List<LearningTask> replanned = createTestTasks(2);
+        replanned.get(1).setDescription("任务 2：改为练习题");
+        when(workflowNodes.isStreamingPlanning()).thenReturn(true);
+        when(workflowNodes.streamPlan(any(), any())).thenAnswer(invocation -> {
+            Consumer<LearningTask> onTask = invocation.getArgument(1);
+            replanned.forEach(onTask);
+            return replanned;
+        });
+        when(executionNode.process(any())).thenAnswer(invocation -> {
+            AgentState state = invocation.getArgument(0);
+            state.addGeneratedContent(state.getCurrentTask().getTaskId() + " 重新执行");
+            return state;
+        });
+
+        // When
+        AgentState result = agentWorkflow.invoke(resumed);
+
+        // Then: T1 与检查点中一致，直接复用；T2 与检查点中同 ID 的任务不同，重新执行
+        assertEquals(List.of("任务1完成", "T2 重新执行"), result.getGeneratedContents());
+        verify(executionNode, times(1)).process(any());
+    }
+
+    @Test
+    void testWorkflow_WithListener_ShouldReportPlanAndEachTask() {
+        // Given
+        List<LearningTask> tasks = createTestTasks(2);
+        AgentState afterPlanning = createInitialState();
+        afterPlanning.setTasks(tasks);
+
+        when(planningNode.process(any())).thenReturn(afterPlanning);
+        when(executionNode.process(any())).thenAnswer(invocation -> {
+            AgentState state = invocation.getArgument(0);
+            String taskId = state.getCurrentTask().getTaskId();
+            state.addGeneratedContent(taskId + " 完成");
+            state.addCreatedPage("page-" + taskId, null);
+            return state;
+        });
+
+        List<List<LearningTask>> plans = new ArrayList<>();
+        List<TaskOutcome> outcomes = Collections.synchronizedList(new ArrayList<>());
+        WorkflowListener listener = new WorkflowListener() {
+            @Override
+            public void onPlanReady(List<LearningTask> plan) {
+                plans.add(plan);
+            }
+
+            @Override
+            public void onTaskCompleted(TaskOutcome outcome) {
+                outcomes.add(outcome);
+            }
+        };
+
+        // When
+        agentWorkflow.invoke(createInitialState(), listener);
+
+        // Then
+        assertEquals(List.of(tasks), plans);
+        assertEquals(2, outcomes.size());
+        for (TaskOutcome outcome : outcomes) {
+            assertEquals(List.of(outcome.taskId() + " 完成"), outcome.contents());
+            assertEquals("page-" + outcome.taskId(), outcome.pages().getFirst().getId());
+        }
+    }
+
+    @Test
+    void testWorkflow_ConsolidatedWrites_ShouldCreateOnePageForAllTasks() {
+        // Given: 三个只需新建页面的任务，一个需要追加到已有页面的任务
+        AgentWorkflow consolidating = createWorkflow(true);
+        List<LearningTask> tasks = createTestTasks(4);
+        tasks.get(3).setDescription("将总结追加到已有的错题本页面");
+        AgentState afterPlanning = createInitialState();
+        afterPlanning.setParentPageId("parent-1");
+        afterPlanning.setTasks(tasks);
+
+        when(planningNode.process(any())).thenReturn(afterPlanning);
+        when(executionNode.process(any())).thenAnswer(invocation -> {
+            AgentState state = invocation.getArgument(0);
+            state.addGeneratedContent(state.getCurrentTask().getTaskId() + " 内容");
+            return state;
+        });
+        when(notionClient.createPage(any())).thenReturn(NotionCreatedPage.builder().id("page-1").url("u").build());
+        List<NotionCreatedPage> pages = new ArrayList<>();
+        WorkflowListener listener = new WorkflowListener() {
+            @Override
+            public void onPageCreated(NotionCreatedPage page) {
+                pages.add(page);
+            }
+        };
+
+        // When
+        AgentState result = consolidating.invoke(createInitialState(), listener);
+
+        // Then
+        ArgumentCaptor<NotionWritePayload> payload = ArgumentCaptor.forClass(NotionWritePayload.class);
+        verify(notionClient, times(1)).createPage(payload.capture());
+        assertEquals("parent-1", payload.getValue().getParentPageId());
+        assertTrue(payload.getValue().getMarkdownContent().contains("## 1. 任务 1\n\nT1 内容"));
+        assertTrue(payload.getValue().getMarkdownContent().contains("## 3. 任务 3\n\nT3 内容"));
+        assertFalse(payload.getValue().getMarkdownContent().contains("T4 内容"));
+        assertFalse(tasks.get(3).isDeferWrite());
+        assertEquals(List.of("page-1"), result.getCreatedPageIds());
+        assertEquals(List.of("page-1"), pages.stream().map(NotionCreatedPage::getId).toList());
+        verify(checkpointer).save(any(), eq(AgentWorkflow.NODE_NOTION_WRITE));
+        assertEquals(1.0, registry.get(WorkflowMetrics.EDGE_COUNTER)
+                .tags("from", AgentWorkflow.NODE_PARALLEL_EXECUTION, "to", AgentWorkflow.NODE_NOTION_WRITE)
+                .counter().count());
     }
 
     // Helper methods
 
+    private AgentWorkflow createWorkflow(boolean consolidateWrites) {
+        return new AgentWorkflow(workflowNodes, new ParallelTaskExecutor(3), checkpointer,
+                new WorkflowMetrics(registry, true),
+                new FairTaskScheduler(new SimpleMeterRegistry(), 4, ""),
+                new NotionWriteConsolidator(notionClient, registry, consolidateWrites),
+                new LatencySlo(registry, true, 60, 200, 1, 20), new PlanningFastPath(registry, false, 60),
+                new PlanDiff(registry, true));
+    }
+
     private AgentState createInitialState() {
         LearnerProfile profile = LearnerProfile.builder()
                 .learnerId("test-learner-id")
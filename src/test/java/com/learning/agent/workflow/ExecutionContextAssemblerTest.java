@@ -0,0 +1,109 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ExecutionContextAssembler 单元测试
+ * 测试 OCR 片段选择、历史结果摘要和 token 指标
+ */
+class ExecutionContextAssemblerTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testAssemble_LargeOcr_ShouldKeepOnlyRelevantSlices() {
+        // Given: OCR 中只有一段与任务相关，预算容纳不下全部内容
+        ExecutionContextAssembler assembler = new ExecutionContextAssembler(registry, 6000, 1200, 200);
+        StringBuilder markdown = new StringBuilder("# 第三章 习题\n\n");
+        for (int i = 1; i <= 20; i++) {
+            markdown.append("第").append(i).append("段 关于化学反应速率的说明，包含大量与本任务无关的文字内容。\n\n");
+        }
+        markdown.append("牛顿第二定律：物体加速度与所受合力成正比。\n\n");
+        AgentState state = createState(markdown.toString(), new ArrayList<>());
+
+        // When
+        String prompt = assembler.assemble(state, task("整理牛顿第二定律的错题笔记"));
+
+        // Then
+        assertTrue(prompt.contains("牛顿第二定律：物体加速度"));
+        assertTrue(prompt.contains("节选"));
+        assertFalse(prompt.contains("第20段"));
+        assertFalse(prompt.contains("<ocr-plain>"));
+    }
+
+    @Test
+    void testAssemble_ManyPreviousResults_ShouldStayWithinHistoryBudget() {
+        // Given: 10 个较长的历史结果，历史预算只够容纳其中一部分
+        ExecutionContextAssembler assembler = new ExecutionContextAssembler(registry, 6000, 200, 3000);
+        List<String> contents = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            contents.add("结果" + i + "：" + "详细内容".repeat(200)
+                    + "\n\n> **相关链接**：[📄 查看 Notion 页面](https://notion.so/page-" + i + ")  ");
+        }
+        AgentState state = createState("", contents);
+
+        // When
+        String history = assembler.summarizeResults(state.getGeneratedContents());
+
+        // Then: 保留最近的结果和页面链接，省略较早的结果
+        assertTrue(history.contains("已省略较早的 5 个结果"));
+        assertTrue(history.contains("[Task 10 Result]"));
+        assertTrue(history.contains("https://notion.so/page-10"));
+        assertFalse(history.contains("[Task 1 Result]"));
+        assertTrue(history.length() < 2000);
+    }
+
+    @Test
+    void testAssemble_ShouldRecordTokenMetrics() {
+        // Given
+        ExecutionContextAssembler assembler = new ExecutionContextAssembler(registry, 6000, 1200, 3000);
+        AgentState state = createState("牛顿第二定律", new ArrayList<>());
+
+        // When
+        assembler.assemble(state, task("整理笔记"));
+
+        // Then
+        assertEquals(1, registry.get(ExecutionContextAssembler.PROMPT_TOKENS).tag("section", "total").summary().count());
+        assertTrue(registry.get(ExecutionContextAssembler.PROMPT_TOKENS).tag("section", "ocr").summary().totalAmount() > 0);
+    }
+
+    // Helper methods
+
+    private static AgentState createState(String markdown, List<String> contents) {
+        return AgentState.builder()
+                .learnerProfile(LearnerProfile.builder().learnerId("test-learner").build())
+                .userQuery("")
+                .ocrResult(OcrStructuredResult.builder()
+                        .success(true)
+                        .plainText(markdown)
+                        .markdownText(markdown)
+                        .build())
+                .generatedContents(contents)
+                .build();
+    }
+
+    private static LearningTask task(String description) {
+        return LearningTask.builder()
+                .taskId("task-1")
+                .type(LearningTaskType.ORGANIZATION)
+                .description(description)
+                .priority(3)
+                .build();
+    }
+}
@@ -0,0 +1,215 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import com.learning.agent.util.Deadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FairTaskScheduler 单元测试
+ * 测试学习者之间的公平调度、同一学习者内的优先级排序和取消或超时的排队请求退出队列
+ */
+class FairTaskSchedulerTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testDispatch_HeavyLearner_ShouldNotStarveLightLearner() {
+        // Given: 只有一个名额，被其他任务占用；A 先排入 3 个任务，B 随后排入 1 个
+        FairTaskScheduler scheduler = new FairTaskScheduler(registry, 1, "");
+        FairTaskScheduler.Permit holder = scheduler.enqueue("other", task("X", 3, null));
+        List<FairTaskScheduler.Permit> a = List.of(
+                scheduler.enqueue("A", task("A1", 3, null)),
+                scheduler.enqueue("A", task("A2", 3, null)),
+                scheduler.enqueue("A", task("A3", 3, null)));
+        FairTaskScheduler.Permit b = scheduler.enqueue("B", task("B1", 3, null));
+
+        // When
+        List<String> order = drain(holder, Map.of("A1", a.get(0), "A2", a.get(1), "A3", a.get(2), "B1", b));
+
+        // Then
+        assertEquals(List.of("A1", "B1", "A2", "A3"), order);
+    }
+
+    @Test
+    void testDispatch_SameLearner_ShouldOrderByPriorityThenDueDate() {
+        // Given
+        FairTaskScheduler scheduler = new FairTaskScheduler(registry, 1, "");
+        FairTaskScheduler.Permit holder = scheduler.enqueue("A", task("X", 3, null));
+        FairTaskScheduler.Permit low = scheduler.enqueue("A", task("LOW", 1, null));
+        FairTaskScheduler.Permit later = scheduler.enqueue("A", task("LATER", 5, "2025-12-01T00:00:00Z"));
+        FairTaskScheduler.Permit sooner = scheduler.enqueue("A", task("SOONER", 5, "2025-11-20T00:00:00Z"));
+
+        // When
+        List<String> order = drain(holder, Map.of("LOW", low, "LATER", later, "SOONER", sooner));
+
+        // Then
+        assertEquals(List.of("SOONER", "LATER", "LOW"), order);
+    }
+
+    @Test
+    void testDispatch_WeightedLearner_ShouldGetMoreSlots() {
+        // Given: A 的权重是 B 的两倍
+        FairTaskScheduler scheduler = new FairTaskScheduler(registry, 1, "A:2");
+        FairTaskScheduler.Permit holder = scheduler.enqueue("other", task("X", 3, null));
+        Map<String, FairTaskScheduler.Permit> permits = new LinkedHashMap<>();
+        for (int i = 1; i <= 4; i++) {
+            permits.put("A" + i, scheduler.enqueue("A", task("A" + i, 3, null)));
+        }
+        for (int i = 1; i <= 2; i++) {
+            permits.put("B" + i, scheduler.enqueue("B", task("B" + i, 3, null)));
+        }
+
+        // When
+        List<String> order = drain(holder, permits);
+
+        // Then: 前三个名额中 A 得到两个
+        assertEquals(2, order.subList(0, 3).stream().filter(id -> id.startsWith("A")).count());
+    }
+
+    @Test
+    void testQueueDepths_ShouldReportPerLearnerAndReleaseCancelled() {
+        // Given
+        FairTaskScheduler scheduler = new FairTaskScheduler(registry, 1, "");
+        FairTaskScheduler.Permit holder = scheduler.enqueue("A", task("X", 3, null));
+        FairTaskScheduler.Permit waiting = scheduler.enqueue("A", task("A1", 3, null));
+        scheduler.enqueue("B", task("B1", 3, null));
+
+        // When / Then
+        assertTrue(holder.isGranted());
+        assertEquals(Map.of("A", 1, "B", 1), scheduler.queueDepths());
+        assertEquals(1.0, registry.get("agent.scheduler.queue.depth").tag("learner", "B").gauge().value());
+
+        waiting.release(); // 取消排队
+        assertEquals(0, scheduler.queueDepths().get("A"));
+        assertEquals(1, scheduler.running());
+    }
+
+    @Test
+    void testAcquire_RequestCancelledWhileQueued_ShouldLeaveQueueWithoutTakingSlot() throws Exception {
+        // Given: 唯一的名额被占用，A 的请求排队等待
+        FairTaskScheduler scheduler = new FairTaskScheduler(registry, 1, "");
+        FairTaskScheduler.Permit holder = scheduler.enqueue("other", task("X", 3, null));
+        Deadline deadline = Deadline.after(Duration.ofMinutes(1));
+        CompletableFuture<FairTaskScheduler.Permit> queued = CompletableFuture.supplyAsync(
+                () -> scheduler.acquire("A", task("A1", 3, null), deadline));
+        while (scheduler.queueDepths().getOrDefault("A", 0) == 0) {
+            Thread.sleep(5);
+        }
+
+        // When
+        deadline.cancel("client cancelled");
+
+        // Then: 等待方立即结束，退出队列；释放占用的名额后没有任务在执行
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(Deadline.RequestCancelledException.class, failure.getCause());
+        assertEquals(0, scheduler.queueDepths().getOrDefault("A", 0));
+        holder.release();
+        assertEquals(0, scheduler.running());
+    }
+
+    @Test
+    void testAcquire_DeadlineExpiresWhileQueued_ShouldThrowAndDequeue() {
+        // Given
+        FairTaskScheduler scheduler = new FairTaskScheduler(registry, 1, "");
+        scheduler.enqueue("other", task("X", 3, null));
+
+        // When / Then
+        assertThrows(Deadline.DeadlineExceededException.class,
+                () -> scheduler.acquire("A", task("A1", 3, null), Deadline.after(Duration.ofMillis(50))));
+        assertEquals(0, scheduler.queueDepths().getOrDefault("A", 0));
+        assertEquals(1, scheduler.running());
+    }
+
+    @Test
+    void testAcquire_SeveralLearnersAtDefaultCapacity_ShouldNotQueue() throws Exception {
+        // Given: 默认名额下，10 个学习者的请求各自并行执行 3 个任务
+        FairTaskScheduler scheduler = new FairTaskScheduler(registry,
+                FairTaskScheduler.DEFAULT_MAX_CONCURRENT_TASKS, "");
+        int learners = 10;
+        int tasksPerLearner = 3;
+        CountDownLatch acquired = new CountDownLatch(learners * tasksPerLearner);
+        CountDownLatch finish = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        // When: 所有任务同时申请名额，并在执行期间一直持有
+        for (int l = 0; l < learners; l++) {
+            String learner = "learner-" + l;
+            for (int t = 1; t <= tasksPerLearner; t++) {
+                LearningTask task = task(learner + "-T" + t, 3, null);
+                threads.add(Thread.ofVirtual().start(() -> {
+                    FairTaskScheduler.Permit permit = scheduler.acquire(learner, task,
+                            Deadline.after(Duration.ofSeconds(5)));
+                    try {
+                        acquired.countDown();
+                        finish.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        permit.release();
+                    }
+                }));
+            }
+        }
+
+        // Then: 没有任务排队等待其他学习者的任务完成
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(learners * tasksPerLearner, scheduler.running());
+        assertTrue(scheduler.queueDepths().values().stream().allMatch(depth -> depth == 0));
+        finish.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, scheduler.running());
+    }
+
+    // Helper methods
+
+    /**
+     * 依次释放当前持有的名额，记录名额授予的顺序
+     */
+    private static List<String> drain(FairTaskScheduler.Permit holder, Map<String, FairTaskScheduler.Permit> permits) {
+        List<String> order = new ArrayList<>();
+        FairTaskScheduler.Permit current = holder;
+        while (order.size() < permits.size()) {
+            current.release();
+            String next = permits.entrySet().stream()
+                    .filter(entry -> entry.getValue().isGranted() && !order.contains(entry.getKey()))
+                    .map(Map.Entry::getKey)
+                    .findFirst()
+                    .orElseThrow();
+            order.add(next);
+            current = permits.get(next);
+        }
+        return order;
+    }
+
+    private static LearningTask task(String id, int priority, String dueDate) {
+        return LearningTask.builder()
+                .taskId(id)
+                .type(LearningTaskType.EXECUTION)
+                .description("任务 " + id)
+                .priority(priority)
+                .dueDate(dueDate)
+                .build();
+    }
+}
@@ -0,0 +1,127 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import com.learning.agent.util.Deadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LatencySlo 单元测试
+ * 测试规划超时降级、执行落后时限制剩余任务和降级指标
+ */
+class LatencySloTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testPlanning_OverBudget_ShouldFallBackToHeuristicTask() {
+        // Given: 规划预算 1s，模型调用需要 10s，请求本身还有 5 分钟
+        LatencySlo slo = new LatencySlo(registry, true, 1, 200, 1, 20);
+        WorkflowNode slowPlanning = state -> Deadline.callWithin("planning", () -> {
+            Thread.sleep(10_000);
+            return state;
+        });
+        AgentState state = createState(List.of());
+        state.setUserQuery("整理牛顿定律笔记");
+
+        // When
+        long start = System.nanoTime();
+        AgentState result = Deadline.supplyWith(state.getDeadline(), () -> slo.planning(slowPlanning).process(state));
+
+        // Then
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000);
+        assertEquals(1, result.getTasks().size());
+        LearningTask fallback = result.getTasks().getFirst();
+        assertEquals(LatencySlo.FALLBACK_TASK_ID, fallback.getTaskId());
+        assertTrue(fallback.getDescription().contains("整理牛顿定律笔记"));
+        assertTrue(fallback.isDeferWrite());
+        assertTrue(result.getDegradation().isDegraded());
+        assertEquals(1.0, registry.get(LatencySlo.DEGRADATIONS).tag("stage", "planning").counter().count());
+    }
+
+    @Test
+    void testExecution_BehindTarget_ShouldCapRemainingTasks() throws Exception {
+        // Given: 执行目标 1s 已经过去，落后后只放行 1 个任务
+        LatencySlo slo = new LatencySlo(registry, true, 60, 1, 1, 0);
+        WorkflowNode node = slo.execution(state -> {
+            state.addGeneratedContent("content " + state.getCurrentTask().getTaskId());
+            state.moveToNextTask();
+            return state;
+        });
+        List<LearningTask> tasks = List.of(task("T1"), task("T2"), task("T3"));
+        AgentState state = createState(tasks);
+        Thread.sleep(1_100);
+
+        // When
+        while (state.hasMoreTasks()) {
+            AgentState current = state;
+            state = Deadline.supplyWith(state.getDeadline(), () -> node.process(current));
+        }
+
+        // Then: 放行的任务只生成内容，其余任务跳过，每个任务仍对应一条内容
+        assertEquals(3, state.getGeneratedContents().size());
+        assertEquals("content T1", state.getGeneratedContents().getFirst());
+        assertTrue(state.isDeferWrite(tasks.getFirst()));
+        assertFalse(tasks.getFirst().isDeferWrite()); // 计划中的任务不被修改
+        assertTrue(state.getGeneratedContents().get(1).startsWith(WorkflowNodes.TASK_FAILURE_PREFIX));
+        assertTrue(state.getGeneratedContents().get(2).startsWith(WorkflowNodes.TASK_FAILURE_PREFIX));
+        assertEquals(1, state.getDegradation().reasons().size());
+        assertTrue(state.getDegradation().reasons().getFirst().startsWith("execution"));
+    }
+
+    @Test
+    void testExecution_WithinTarget_ShouldRunNormally() {
+        // Given
+        LatencySlo slo = new LatencySlo(registry, true, 60, 200, 1, 20);
+        WorkflowNode node = slo.execution(state -> {
+            state.addGeneratedContent("content");
+            state.moveToNextTask();
+            return state;
+        });
+        List<LearningTask> tasks = List.of(task("T1"));
+        AgentState state = createState(tasks);
+
+        // When
+        AgentState result = Deadline.supplyWith(state.getDeadline(), () -> node.process(state));
+
+        // Then
+        assertEquals(List.of("content"), result.getGeneratedContents());
+        assertFalse(tasks.getFirst().isDeferWrite());
+        assertFalse(result.getDegradation().isDegraded());
+    }
+
+    // Helper methods
+
+    private static AgentState createState(List<LearningTask> tasks) {
+        return AgentState.builder()
+                .learnerProfile(LearnerProfile.defaultProfile("test-learner-id"))
+                .tasks(new ArrayList<>(tasks))
+                .userQuery("")
+                .deadline(Deadline.after(Duration.ofMinutes(5)))
+                .build();
+    }
+
+    private static LearningTask task(String id) {
+        return LearningTask.builder()
+                .taskId(id)
+                .type(LearningTaskType.EXECUTION)
+                .description("任务 " + id)
+                .priority(3)
+                .build();
+    }
+}
@@ -0,0 +1,100 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.client.NotionClient;
+import com.learning.agent.dto.client.NotionCreatedPage;
+import com.learning.agent.dto.client.NotionWritePayload;
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * NotionWriteConsolidator 单元测试
+ * 测试延迟写入的判断和按 taskId 组织章节内容
+ */
+@ExtendWith(MockitoExtension.class)
+class NotionWriteConsolidatorTest {
+
+    @Mock
+    private NotionClient notionClient;
+
+    private NotionWriteConsolidator consolidator;
+
+    @BeforeEach
+    void setUp() {
+        consolidator = new NotionWriteConsolidator(notionClient, new SimpleMeterRegistry(), true);
+    }
+
+    @Test
+    void testMark_SearchThenCreateTask_ShouldDefer() {
+        // Given
+        LearningTask search = createTask("T1", "搜索 sophie 并创建笔记");
+        LearningTask append = createTask("T2", "将总结追加到已有的错题本页面");
+
+        // When
+        consolidator.mark(search);
+        consolidator.mark(append);
+
+        // Then
+        assertTrue(search.isDeferWrite());
+        assertFalse(append.isDeferWrite());
+    }
+
+    @Test
+    void testWrite_ContentsNotAlignedWithTasks_ShouldUseEachTasksOwnResult() {
+        // Given: 输出列表中有一条与任务位置不对应的失败内容，T2 执行失败
+        List<LearningTask> tasks = new ArrayList<>(List.of(
+                createTask("T1", "整理牛顿定律"), createTask("T2", "整理动量守恒"), createTask("T3", "整理能量守恒")));
+        tasks.forEach(consolidator::mark);
+        AgentState state = AgentState.builder()
+                .learnerProfile(LearnerProfile.defaultProfile("test-learner-id"))
+                .userQuery("复习力学")
+                .parentPageId("parent-1")
+                .tasks(tasks)
+                .build();
+        state.addGeneratedContent(WorkflowNodes.TASK_FAILURE_PREFIX + "检查点恢复前的失败");
+        record(state, new TaskOutcome("T3", List.of("能量守恒内容"), List.of()));
+        record(state, new TaskOutcome("T1", List.of("牛顿定律内容"), List.of()));
+        record(state, new TaskOutcome("T2", List.of(WorkflowNodes.TASK_FAILURE_PREFIX + "超时"), List.of()));
+        when(notionClient.createPage(any())).thenReturn(NotionCreatedPage.builder().id("page-1").url("u").build());
+
+        // When
+        consolidator.write(state);
+
+        // Then
+        ArgumentCaptor<NotionWritePayload> payload = ArgumentCaptor.forClass(NotionWritePayload.class);
+        verify(notionClient).createPage(payload.capture());
+        assertEquals("## 1. 整理牛顿定律\n\n牛顿定律内容\n\n## 2. 整理能量守恒\n\n能量守恒内容\n\n",
+                payload.getValue().getMarkdownContent());
+        assertEquals("page-1", state.getConsolidatedPage().getId());
+    }
+
+    // Helper methods
+
+    private static void record(AgentState state, TaskOutcome outcome) {
+        state.merge(outcome);
+        state.getTaskResults().put(outcome.taskId(), outcome);
+    }
+
+    private static LearningTask createTask(String taskId, String description) {
+        return LearningTask.builder()
+                .taskId(taskId)
+                .type(LearningTaskType.EXECUTION)
+                .description(description)
+                .priority(1)
+                .build();
+    }
+}
@@ -0,0 +1,93 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.dto.client.OcrTextSpan;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OcrSections 单元测试
+ * 测试多栏试卷按版面切分的阅读顺序、短内容不切分和段数指标
+ */
+class OcrSectionsTest {
+
+    private SimpleMeterRegistry registry;
+    private OcrSections ocrSections;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        ocrSections = new OcrSections(registry, true, 100, 60, 6);
+    }
+
+    @Test
+    void testSplit_TwoColumnPage_ShouldFollowColumnReadingOrder() {
+        // Given: 通栏标题下分左右两栏，OCR 按行交错返回（第1题、第3题、第2题、第4题）
+        String q1 = question(1);
+        String q2 = question(2);
+        String q3 = question(3);
+        String q4 = question(4);
+        List<OcrTextSpan> spans = List.of(
+                span("期末试卷", 0, 0, 1000, 40),
+                span(q1, 0, 100, 450, 180),
+                span(q3, 550, 100, 1000, 180),
+                span(q2, 0, 200, 450, 280),
+                span(q4, 550, 200, 1000, 280));
+
+        // When
+        List<String> sections = ocrSections.split(ocr(spans));
+
+        // Then: 先读完左栏再读右栏
+        assertEquals(4, sections.size());
+        assertTrue(sections.getFirst().startsWith("期末试卷"));
+        assertTrue(sections.getFirst().contains(q1));
+        assertEquals(q2, sections.get(1));
+        assertEquals(q3, sections.get(2));
+        assertEquals(q4, sections.get(3));
+        assertEquals(1, registry.get(OcrSections.SECTIONS).summary().count());
+    }
+
+    @Test
+    void testSplit_ShortContentOrDisabled_ShouldPlanInOneCall() {
+        // Given
+        OcrStructuredResult shortOcr = ocr(List.of(span("牛顿第二定律 F=ma", 0, 0, 400, 40)));
+        OcrStructuredResult longOcr = ocr(List.of(span(question(1), 0, 0, 450, 80), span(question(2), 550, 0, 1000, 80),
+                span(question(3), 0, 100, 450, 180)));
+        OcrSections disabled = new OcrSections(new SimpleMeterRegistry(), false, 100, 60, 6);
+
+        // When & Then
+        assertTrue(ocrSections.split(shortOcr).isEmpty());
+        assertTrue(disabled.split(longOcr).isEmpty());
+        assertTrue(ocrSections.split(OcrStructuredResult.empty()).isEmpty());
+        assertEquals(0, registry.get(OcrSections.SECTIONS).summary().count());
+    }
+
+    // Helper methods
+
+    private static String question(int number) {
+        return "第" + number + "题：" + "求解物体的加速度".repeat(6);
+    }
+
+    private static OcrTextSpan span(String text, double x1, double y1, double x2, double y2) {
+        return OcrTextSpan.builder()
+                .text(text)
+                .boundingBox(List.of(x1, y1, x2, y2))
+                .build();
+    }
+
+    private static OcrStructuredResult ocr(List<OcrTextSpan> spans) {
+        String text = spans.stream().map(OcrTextSpan::getText).collect(Collectors.joining("\n"));
+        return OcrStructuredResult.builder()
+                .success(true)
+                .plainText(text)
+                .markdownText("")
+                .spans(spans)
+                .build();
+    }
+}
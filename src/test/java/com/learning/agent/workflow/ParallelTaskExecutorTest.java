@@ -0,0 +1,221 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ParallelTaskExecutor 单元测试
+ * 测试依赖解析、并行执行和结果的确定性合并
+ */
+class ParallelTaskExecutorTest {
+
+    @Test
+    void testExecuteAll_IndependentTasks_ShouldRunConcurrently() {
+        // Given: 两个任务互相等待，只有并发执行才能完成
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        WorkflowNode node = state -> {
+            bothStarted.countDown();
+            try {
+                assertTrue(bothStarted.await(5, TimeUnit.SECONDS), "tasks should run concurrently");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            state.addGeneratedContent("done " + state.getCurrentTask().getTaskId());
+            state.moveToNextTask();
+            return state;
+        };
+        AgentState state = createState(List.of(task("T1"), task("T2")));
+
+        // When
+        AgentState result = new ParallelTaskExecutor(2).executeAll(state, node);
+
+        // Then
+        assertEquals(List.of("done T1", "done T2"), result.getGeneratedContents());
+        assertEquals(2, result.getCurrentTaskIndex());
+    }
+
+    @Test
+    void testExecuteAll_ShouldMergeInPlanOrder() {
+        // Given: T1 比 T2 完成得更晚
+        WorkflowNode node = state -> {
+            LearningTask task = state.getCurrentTask();
+            if ("T1".equals(task.getTaskId())) {
+                sleep(200);
+            }
+            state.addGeneratedContent("content " + task.getTaskId());
+            state.addCreatedPage("page-" + task.getTaskId(), null);
+            return state;
+        };
+        AgentState state = createState(List.of(task("T1"), task("T2"), task("T3")));
+
+        // When
+        AgentState result = new ParallelTaskExecutor(3).executeAll(state, node);
+
+        // Then
+        assertEquals(List.of("content T1", "content T2", "content T3"), result.getGeneratedContents());
+        assertEquals(List.of("page-T1", "page-T2", "page-T3"), result.getCreatedPageIds());
+    }
+
+    @Test
+    void testExecuteAll_DependentTask_ShouldReceiveDependencyResults() {
+        // Given
+        List<List<String>> seenPreviousResults = new ArrayList<>();
+        WorkflowNode node = state -> {
+            LearningTask task = state.getCurrentTask();
+            if ("T3".equals(task.getTaskId())) {
+                synchronized (seenPreviousResults) {
+                    seenPreviousResults.add(new ArrayList<>(state.getGeneratedContents()));
+                }
+            }
+            state.addGeneratedContent("content " + task.getTaskId());
+            return state;
+        };
+        LearningTask t3 = task("T3");
+        t3.setDependsOn(List.of("T2"));
+        AgentState state = createState(List.of(task("T1"), task("T2"), t3));
+
+        // When
+        AgentState result = new ParallelTaskExecutor(3).executeAll(state, node);
+
+        // Then
+        assertEquals(List.of(List.of("content T2")), seenPreviousResults);
+        assertEquals(3, result.getGeneratedContents().size());
+    }
+
+    @Test
+    void testExecuteStreaming_FirstTask_ShouldStartBeforePlanCompletes() {
+        // Given: 规划在产出 T1 后等待 T1 开始执行，再产出 T2
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        WorkflowNode node = state -> {
+            firstStarted.countDown();
+            state.addGeneratedContent("content " + state.getCurrentTask().getTaskId());
+            return state;
+        };
+        AgentState state = createState(new ArrayList<>());
+
+        // When
+        AgentState result = new ParallelTaskExecutor(2).executeStreaming(state, node, sink -> {
+            sink.accept(task("T1"));
+            try {
+                assertTrue(firstStarted.await(5, TimeUnit.SECONDS), "T1 should start while planning continues");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sink.accept(task("T2"));
+        }, outcome -> {
+        });
+
+        // Then
+        assertEquals(List.of("content T1", "content T2"), result.getGeneratedContents());
+        assertEquals(List.of("T1", "T2"), result.getTasks().stream().map(LearningTask::getTaskId).toList());
+        assertEquals(2, result.getCurrentTaskIndex());
+        assertFalse(result.isPlanStreaming());
+    }
+
+    @Test
+    void testResolveDependencies_UndeclaredReference_ShouldKeepSequentialSemantics() {
+        // Given
+        List<LearningTask> earlier = List.of(task("T1"), task("T2"));
+        LearningTask referencing = task("T3");
+        referencing.setDescription("根据 T1 的分析结果整理笔记");
+        LearningTask independent = task("T4");
+        independent.setDescription("制定下周复习计划");
+
+        // When / Then
+        assertEquals(List.of(0, 1), ParallelTaskExecutor.resolveDependencies(earlier, referencing));
+        assertEquals(List.of(), ParallelTaskExecutor.resolveDependencies(earlier, independent));
+    }
+
+    @Test
+    void testResolveDependencies_GenericWordsWithoutDeclaredDependency_ShouldStayIndependent() {
+        // Given
+        List<LearningTask> earlier = List.of(task("T1"), task("T2"));
+        LearningTask generic = task("T3");
+        generic.setDescription("复习以上知识点，并整理 above 提到的公式");
+        LearningTask previousResult = task("T4");
+        previousResult.setDescription("根据上一个任务的结果生成练习题");
+        LearningTask declared = task("T5");
+        declared.setDescription("根据前面的任务总结错题");
+        declared.setDependsOn(List.of("T2"));
+
+        // When / Then: 泛指词不产生依赖，明确引用任务结果时依赖全部前序任务，声明的 dependsOn 优先
+        assertEquals(List.of(), ParallelTaskExecutor.resolveDependencies(earlier, generic));
+        assertEquals(List.of(0, 1), ParallelTaskExecutor.resolveDependencies(earlier, previousResult));
+        assertEquals(List.of(1), ParallelTaskExecutor.resolveDependencies(earlier, declared));
+    }
+
+    @Test
+    void testResolveDependencies_UnknownDependency_ShouldBeIgnored() {
+        // Given
+        LearningTask task = task("T2");
+        task.setDependsOn(List.of("T1", "T9"));
+
+        // When
+        List<Integer> deps = ParallelTaskExecutor.resolveDependencies(List.of(task("T1")), task);
+
+        // Then
+        assertEquals(List.of(0), deps);
+    }
+
+    @Test
+    void testForkForTask_ShouldProduceDeltaWithoutTouchingBaseState() {
+        // Given: 主状态已有一条结果，分支只能看到依赖任务的结果
+        AgentState base = createState(List.of(task("T1"), task("T2")));
+        base.addGeneratedContent("content T1");
+
+        // When
+        AgentState fork = base.forkForTask(1, List.of("content T1"));
+        fork.addGeneratedContent("content T2");
+        fork.addCreatedPage("page-T2", null);
+        TaskOutcome delta = fork.deltaSince("T2", 1);
+
+        // Then: 分支的追加不影响主状态，合并增量后才可见
+        assertEquals(List.of("content T1"), base.getGeneratedContents());
+        assertTrue(base.getCreatedPageIds().isEmpty());
+        assertEquals(List.of("content T2"), delta.contents());
+        base.merge(delta);
+        assertEquals(List.of("content T1", "content T2"), base.getGeneratedContents());
+        assertEquals(List.of("page-T2"), base.getCreatedPageIds());
+    }
+
+    // Helper methods
+
+    private static LearningTask task(String id) {
+        return LearningTask.builder()
+                .taskId(id)
+                .type(LearningTaskType.EXECUTION)
+                .description("任务 " + id)
+                .priority(3)
+                .build();
+    }
+
+    private static AgentState createState(List<LearningTask> tasks) {
+        return AgentState.builder()
+                .imagePath("")
+                .learnerProfile(LearnerProfile.defaultProfile("test-learner-id"))
+                .tasks(new ArrayList<>(tasks))
+                .userQuery("测试")
+                .currentTaskIndex(0)
+                .generatedContents(new ArrayList<>())
+                .createdPageIds(new ArrayList<>())
+                .createdPages(new ArrayList<>())
+                .build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
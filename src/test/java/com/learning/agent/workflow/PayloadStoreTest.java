@@ -0,0 +1,106 @@
+package com.learning.agent.workflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.dto.client.OcrTextSpan;
+import com.learning.agent.model.LearnerProfile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PayloadStore 单元测试
+ * 测试超过阈值的负载溢出到映射文件、状态中的内容在分支间只传递句柄和每个请求的字节统计
+ */
+class PayloadStoreTest {
+
+    private SimpleMeterRegistry registry;
+    private PayloadStore store;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        store = new PayloadStore(registry, new ObjectMapper(), true, 1024, "");
+    }
+
+    @Test
+    void testText_AboveThreshold_ShouldSpillAndRecordPerRequest() {
+        // Given
+        PayloadStore.Scope scope = store.newScope();
+        String large = "# 牛顿第二定律\n" + "F=ma，加速度与合外力成正比。\n".repeat(100);
+
+        // When
+        Payload<String> small = scope.text("简短的结果");
+        Payload<String> spilled = scope.text(large);
+        scope.record();
+
+        // Then
+        assertFalse(small.isSpilled());
+        assertTrue(spilled.isSpilled());
+        assertEquals(large, spilled.get());
+        assertEquals(10, scope.heapBytes());
+        assertEquals(spilled.spilledBytes(), scope.spilledBytes());
+        assertTrue(store.liveSpilledBytes() >= spilled.spilledBytes());
+        assertEquals(spilled.spilledBytes(),
+                registry.get(PayloadStore.PAYLOAD_BYTES).tag("location", "spilled").summary().totalAmount());
+    }
+
+    @Test
+    void testSetOcrResult_LargeResult_ShouldRoundTripSpansFromMappedFile() {
+        // Given
+        AgentState state = createState(store.newScope());
+        List<OcrTextSpan> spans = List.of(OcrTextSpan.builder()
+                .lineId("line-0")
+                .text("第1题")
+                .boundingBox(List.of(0.0, 0.0, 450.0, 80.0))
+                .build());
+        OcrStructuredResult ocr = OcrStructuredResult.builder()
+                .success(true)
+                .plainText("物理试卷".repeat(200))
+                .markdownText("")
+                .spans(spans)
+                .build();
+
+        // When
+        state.setOcrResult(ocr);
+
+        // Then
+        assertTrue(state.getOcr().isSpilled());
+        assertEquals(ocr.getPlainText(), state.getOcrResult().getPlainText());
+        assertEquals(List.of(0.0, 0.0, 450.0, 80.0), state.getOcrResult().getSpans().getFirst().getBoundingBox());
+    }
+
+    @Test
+    void testForkAndMerge_ShouldShareSpilledHandles() {
+        // Given
+        AgentState state = createState(store.newScope());
+        state.addGeneratedContent("前序结果");
+        AgentState fork = state.forkForTask(0, state.getGeneratedContents());
+        String large = "练习题解析。".repeat(200);
+
+        // When
+        fork.addGeneratedContent(large);
+        TaskOutcome delta = fork.deltaSince("T1", 1);
+        state.merge(delta);
+
+        // Then: 增量和合并后的内容引用同一个已溢出的句柄
+        PayloadList contents = (PayloadList) state.getGeneratedContents();
+        assertEquals(List.of("前序结果", large), contents);
+        assertTrue(contents.payload(1).isSpilled());
+        assertSame(((PayloadList) delta.contents()).payload(0), contents.payload(1));
+    }
+
+    // Helper methods
+
+    private static AgentState createState(PayloadStore.Scope scope) {
+        return AgentState.builder()
+                .learnerProfile(LearnerProfile.defaultProfile("test-learner-id"))
+                .userQuery("整理牛顿定律")
+                .payloads(scope)
+                .build();
+    }
+}
@@ -0,0 +1,149 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.dto.client.NotionCreatedPage;
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PlanDiff 单元测试
+ * 测试修改问题后重新提交时只执行变化的任务、依赖变化的传递和合并页面的沿用
+ */
+class PlanDiffTest {
+
+    private SimpleMeterRegistry registry;
+    private PlanDiff planDiff;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        planDiff = new PlanDiff(registry, true);
+    }
+
+    @Test
+    void testReuse_EditedPlan_ShouldOnlyExecuteChangedTasks() {
+        // Given: 上一轮 T1 整理笔记、T2 出三道题、T3 依赖 T2
+        AgentState previous = createState(List.of(task("T1", "整理牛顿定律笔记"), task("T2", "出三道练习题"),
+                task("T3", "为 T2 的练习题写解析", "T2")));
+        previous.getTaskResults().put("T1", new TaskOutcome("T1", List.of("笔记"), List.of(page("page-1"))));
+        previous.getTaskResults().put("T2", new TaskOutcome("T2", List.of("三道题"), List.of()));
+        previous.getTaskResults().put("T3", new TaskOutcome("T3", List.of("解析"), List.of()));
+
+        // 修改后的计划：T1 不变，T2 改为五道题，T3 描述不变但依赖的 T2 变了
+        AgentState state = createState(List.of(task("T1", "整理牛顿定律笔记"), task("T2", "出五道练习题"),
+                task("T3", "为 T2 的练习题写解析", "T2")));
+        state.setPreviousTurn(ConversationTurn.of(previous));
+        AtomicInteger executed = new AtomicInteger();
+        WorkflowNode executionNode = current -> {
+            executed.incrementAndGet();
+            current.addGeneratedContent("新的 " + current.getCurrentTask().getTaskId());
+            current.moveToNextTask();
+            return current;
+        };
+
+        // When
+        planDiff.reuse(state);
+        AgentState result = new ParallelTaskExecutor(3).executeAll(state, executionNode);
+
+        // Then: 只执行 T2 和 T3，复用的 T1 保留原内容和页面，结果按计划顺序合并
+        assertEquals(2, executed.get());
+        assertTrue(result.isReused(result.getTasks().getFirst()));
+        assertFalse(result.isReused(result.getTasks().get(2)));
+        assertEquals(Set.of("T1"), result.getReusedTasks());
+        assertEquals(List.of("笔记", "新的 T2", "新的 T3"), result.getGeneratedContents());
+        assertEquals(List.of("page-1"), result.getCreatedPageIds());
+        assertEquals(1.0, registry.get(PlanDiff.TASKS).tag("result", "reused").counter().count());
+        assertEquals(2.0, registry.get(PlanDiff.TASKS).tag("result", "executed").counter().count());
+    }
+
+    @Test
+    void testNotionWrite_AllDeferredTasksReused_ShouldKeepPreviousPage() {
+        // Given
+        LearningTask previousTask = task("T1", "整理牛顿定律笔记");
+        previousTask.setDeferWrite(true);
+        AgentState previous = createState(List.of(previousTask));
+        previous.getTaskResults().put("T1", new TaskOutcome("T1", List.of("笔记"), List.of()));
+        previous.setConsolidatedPage(page("consolidated-page"));
+
+        LearningTask task = task("T1", "整理牛顿定律笔记");
+        task.setDeferWrite(true);
+        AgentState state = createState(List.of(task));
+        state.setPreviousTurn(ConversationTurn.of(previous));
+        AtomicInteger writes = new AtomicInteger();
+
+        // When
+        planDiff.reuse(state);
+        AgentState result = planDiff.notionWrite(current -> {
+            writes.incrementAndGet();
+            return current;
+        }).process(state);
+
+        // Then
+        assertEquals(0, writes.get());
+        assertEquals("consolidated-page", result.getConsolidatedPage().getId());
+        assertEquals(List.of("consolidated-page"), result.getCreatedPageIds());
+    }
+
+    @Test
+    void testNotionWrite_NewDegradationDeferredTask_ShouldWriteNewPage() {
+        // Given: 上一轮只有 T1 延迟写入
+        LearningTask previousTask = task("T1", "整理牛顿定律笔记");
+        previousTask.setDeferWrite(true);
+        AgentState previous = createState(List.of(previousTask));
+        previous.getTaskResults().put("T1", new TaskOutcome("T1", List.of("笔记"), List.of()));
+        previous.setConsolidatedPage(page("consolidated-page"));
+
+        // 本轮 T1 复用，新增的 T2 因时延降级改为延迟写入
+        LearningTask task = task("T1", "整理牛顿定律笔记");
+        task.setDeferWrite(true);
+        AgentState state = createState(List.of(task, task("T2", "出三道练习题")));
+        state.setPreviousTurn(ConversationTurn.of(previous));
+        state.getDegradation().deferWrite("T2");
+        AtomicInteger writes = new AtomicInteger();
+
+        // When
+        planDiff.reuse(state);
+        planDiff.notionWrite(current -> {
+            writes.incrementAndGet();
+            return current;
+        }).process(state);
+
+        // Then: T2 的新内容需要写入，不能沿用上一轮的页面
+        assertEquals(1, writes.get());
+        assertNull(state.getConsolidatedPage());
+    }
+
+    // Helper methods
+
+    private static AgentState createState(List<LearningTask> tasks) {
+        return AgentState.builder()
+                .learnerProfile(LearnerProfile.defaultProfile("test-learner-id"))
+                .tasks(new ArrayList<>(tasks))
+                .userQuery("整理牛顿定律")
+                .build();
+    }
+
+    private static LearningTask task(String id, String description, String... dependsOn) {
+        return LearningTask.builder()
+                .taskId(id)
+                .type(LearningTaskType.EXECUTION)
+                .description(description)
+                .priority(3)
+                .dependsOn(new ArrayList<>(List.of(dependsOn)))
+                .build();
+    }
+
+    private static NotionCreatedPage page(String id) {
+        return NotionCreatedPage.builder().id(id).url("https://notion.so/" + id).build();
+    }
+}
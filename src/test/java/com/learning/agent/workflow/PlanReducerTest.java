@@ -0,0 +1,104 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PlanReducer 单元测试
+ * 测试分段计划合并时的去重、重新编号和前置任务改写
+ */
+class PlanReducerTest {
+
+    @Test
+    void testAdd_OverlappingSections_ShouldDedupeAndRenumber() {
+        // Given
+        PlanReducer reducer = new PlanReducer();
+        reducer.add(List.of(task("T1", "整理第一栏题目的笔记"), task("T2", "汇总全部题目的易错点")));
+
+        // When: 第二段重复规划了汇总任务，T3 依赖这个重复的任务
+        List<LearningTask> added = reducer.add(List.of(
+                task("T1", "汇总全部题目的易错点"),
+                task("T2", "整理第二栏题目的笔记"),
+                task("T3", "根据 T1 的易错点出三道练习题", "T1")));
+
+        // Then: 重复任务被去掉，依赖改为保留的 T2，编号在整个计划内连续
+        assertEquals(List.of("T3", "T4"), added.stream().map(LearningTask::getTaskId).toList());
+        List<LearningTask> tasks = reducer.tasks();
+        assertEquals(4, tasks.size());
+        assertEquals("整理第二栏题目的笔记", tasks.get(2).getDescription());
+        assertEquals("根据 T2 的易错点出三道练习题", tasks.get(3).getDescription());
+        assertEquals(List.of("T2"), tasks.get(3).getDependsOn());
+    }
+
+    @Test
+    void testAdd_SimilarDescriptionDifferentType_ShouldKeepBoth() {
+        // Given
+        PlanReducer reducer = new PlanReducer();
+        LearningTask analysis = task("T1", "整理牛顿定律笔记");
+        analysis.setType(LearningTaskType.ANALYSIS);
+
+        // When
+        reducer.add(List.of(task("T1", "整理牛顿定律笔记")));
+        List<LearningTask> added = reducer.add(List.of(analysis, task("T2", " 整理牛顿定律笔记 ")));
+
+        // Then
+        assertEquals(1, added.size());
+        assertEquals("T2", added.getFirst().getTaskId());
+        assertEquals(LearningTaskType.ANALYSIS, added.getFirst().getType());
+    }
+
+    @Test
+    void testAdd_PerQuestionTasks_ShouldKeepEachQuestion() {
+        // Given
+        PlanReducer reducer = new PlanReducer();
+        List<LearningTask> section = List.of(
+                task("T1", "根据 OCR 内容讲解第 1 题的解题思路，并指出常见错误"),
+                task("T2", "根据 OCR 内容讲解第 2 题的解题思路，并指出常见错误"),
+                task("T3", "根据 OCR 内容讲解第 3 题的解题思路，并指出常见错误"));
+
+        // When: 下一段又规划了第 3、4 题
+        List<LearningTask> first = reducer.add(section);
+        List<LearningTask> second = reducer.add(List.of(
+                task("T1", "根据 OCR 内容讲解第 3 题的解题思路，并指出常见错误"),
+                task("T2", "根据 OCR 内容讲解第 4 题的解题思路，并指出常见错误")));
+
+        // Then: 逐题任务都保留，只有跨段重复的第 3 题被去掉
+        assertEquals(List.of("T1", "T2", "T3"), first.stream().map(LearningTask::getTaskId).toList());
+        assertEquals(1, second.size());
+        assertEquals("T4", second.getFirst().getTaskId());
+        assertTrue(second.getFirst().getDescription().contains("第 4 题"));
+    }
+
+    @Test
+    void testAdd_SameSectionDuplicates_ShouldKeepBoth() {
+        // Given
+        PlanReducer reducer = new PlanReducer();
+
+        // When: 同一段内的两个相同任务是模型有意拆分的
+        List<LearningTask> added = reducer.add(List.of(
+                task("T1", "整理牛顿定律笔记"),
+                task("T2", "整理牛顿定律笔记")));
+
+        // Then
+        assertEquals(2, added.size());
+        assertEquals(2, reducer.tasks().size());
+    }
+
+    // Helper methods
+
+    private static LearningTask task(String id, String description, String... dependsOn) {
+        return LearningTask.builder()
+                .taskId(id)
+                .type(LearningTaskType.EXECUTION)
+                .description(description)
+                .priority(3)
+                .dependsOn(new ArrayList<>(List.of(dependsOn)))
+                .build();
+    }
+}
@@ -0,0 +1,93 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PlanningFastPath 单元测试
+ * 测试简单请求直接生成单任务计划、复杂请求调用规划模型和命中率指标
+ */
+class PlanningFastPathTest {
+
+    private SimpleMeterRegistry registry;
+    private PlanningFastPath fastPath;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        fastPath = new PlanningFastPath(registry, true, 60);
+    }
+
+    @Test
+    void testPlanning_SimpleQuery_ShouldSkipPlanningModel() {
+        // Given
+        AtomicInteger modelCalls = new AtomicInteger();
+        WorkflowNode node = fastPath.planning(state -> {
+            modelCalls.incrementAndGet();
+            return state;
+        });
+        AgentState state = createState("帮我整理一下牛顿第二定律的笔记");
+
+        // When
+        AgentState result = node.process(state);
+
+        // Then
+        assertEquals(0, modelCalls.get());
+        assertEquals(1, result.getTasks().size());
+        LearningTask task = result.getTasks().getFirst();
+        assertEquals(PlanningFastPath.TASK_ID, task.getTaskId());
+        assertEquals(LearningTaskType.EXECUTION, task.getType());
+        assertTrue(task.getDescription().contains("牛顿第二定律"));
+        assertEquals(1.0, registry.get(PlanningFastPath.REQUESTS).tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void testPlanning_ComplexOrImageRequest_ShouldCallPlanningModel() {
+        // Given
+        AtomicInteger modelCalls = new AtomicInteger();
+        WorkflowNode node = fastPath.planning(state -> {
+            modelCalls.incrementAndGet();
+            return state;
+        });
+        AgentState withImage = createState("整理这道题的笔记");
+        withImage.setImagePath("/tmp/question.png");
+
+        // When
+        node.process(createState("制定一个每天复习线性代数的计划"));
+        node.process(createState("总结第一章。然后出三道练习题"));
+        node.process(withImage);
+
+        // Then
+        assertEquals(3, modelCalls.get());
+        assertEquals(3.0, registry.get(PlanningFastPath.REQUESTS).tag("result", "miss").counter().count());
+        assertEquals(0.0, registry.get(PlanningFastPath.REQUESTS).tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void testIsSimpleQuery_ShouldRequireSingleShortIntent() {
+        assertTrue(PlanningFastPath.isSimpleQuery("解释一下什么是特征值？", 60));
+        assertTrue(PlanningFastPath.isSimpleQuery("Explain eigenvalues", 60));
+        assertFalse(PlanningFastPath.isSimpleQuery("特征值", 60));
+        assertFalse(PlanningFastPath.isSimpleQuery("1. 总结第一章 2. 总结第二章", 60));
+        assertFalse(PlanningFastPath.isSimpleQuery("解释" + "很长的问题".repeat(20), 60));
+    }
+
+    // Helper methods
+
+    private static AgentState createState(String query) {
+        return AgentState.builder()
+                .learnerProfile(LearnerProfile.defaultProfile("test-learner-id"))
+                .tasks(new ArrayList<>())
+                .userQuery(query)
+                .build();
+    }
+}
@@ -0,0 +1,146 @@
+package com.learning.agent.workflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.agent.client.NotionTools;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ReactExecutor 单元测试
+ * 测试多轮消息的前缀保持不变、创建页面的捕获和同一轮多个操作的并发执行
+ */
+@ExtendWith(MockitoExtension.class)
+class ReactExecutorTest {
+
+    @Mock
+    private ChatLanguageModel chatModel;
+
+    @Mock
+    private NotionTools notionTools;
+
+    private SimpleMeterRegistry registry;
+    private ReactExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        executor = new ReactExecutor(chatModel, notionTools, new ObjectMapper(), registry, 12000, 2, 1500);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testExecute_MultipleTurns_ShouldAppendMessagesAfterFixedPrefix() {
+        // Given
+        when(chatModel.generate(anyList()))
+                .thenReturn(response("**Thought**: 搜索页面\n**Action**:\n```json\n"
+                        + "{\"tool\": \"notionSearch\", \"parameters\": {\"query\": \"sophie\"}}\n```", null))
+                .thenReturn(response("**Thought**: 创建页面\n**Action**:\n```json\n"
+                        + "{\"tool\": \"notionCreatePage\", \"parameters\": {\"parentPageId\": \"page-1\", "
+                        + "\"title\": \"测试\", \"content\": \"内容\"}}\n```", null))
+                .thenReturn(response("**Thought**: 完成\n**Final Answer**: 已创建页面", null));
+        when(notionTools.executeTool(eq("notionSearch"), anyMap())).thenReturn("{\"found\": true, \"id\": \"page-1\"}");
+        when(notionTools.executeTool(eq("notionCreatePage"), anyMap()))
+                .thenReturn("{\"id\": \"page-2\", \"url\": \"https://notion.so/page-2\"}");
+
+        // When
+        ReactExecutor.ReactResult result = executor.execute("在 sophie 页面下创建笔记");
+
+        // Then: 每轮请求都以上一轮的消息为前缀，只在末尾追加
+        ArgumentCaptor<List<ChatMessage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(chatModel, times(3)).generate(captor.capture());
+        List<List<ChatMessage>> requests = captor.getAllValues();
+        assertInstanceOf(SystemMessage.class, requests.get(0).get(0));
+        assertInstanceOf(UserMessage.class, requests.get(0).get(1));
+        for (int i = 1; i < requests.size(); i++) {
+            assertEquals(requests.get(i - 1), requests.get(i).subList(0, requests.get(i - 1).size()));
+        }
+        assertEquals("已创建页面", result.finalAnswer());
+        assertEquals(List.of(new ReactExecutor.CreatedPageInfo("page-2", "https://notion.so/page-2")),
+                result.createdPages());
+        assertTrue(registry.get(ReactExecutor.PREFIX_TOKENS).summary().totalAmount() > 0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testExecute_MaxIterations_ShouldKeepEveryRequestAsPrefixOfTheNext() {
+        // Given: 5 轮都执行操作，超过 recentTurns=2
+        when(chatModel.generate(anyList())).thenAnswer(invocation -> {
+            int turn = ((List<ChatMessage>) invocation.getArgument(0)).size() / 2;
+            return response("**Thought**: 第" + turn + "轮搜索\n**Action**:\n```json\n"
+                    + "{\"tool\": \"notionSearch\", \"parameters\": {\"query\": \"q" + turn + "\"}}\n```", null);
+        });
+        when(notionTools.executeTool(eq("notionSearch"), anyMap()))
+                .thenReturn("{\"found\": true, \"id\": \"page-1\", \"content\": \"" + "内容".repeat(100) + "\"}");
+
+        // When
+        executor.execute("整理所有笔记");
+
+        // Then
+        ArgumentCaptor<List<ChatMessage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(chatModel, times(5)).generate(captor.capture());
+        List<List<ChatMessage>> requests = captor.getAllValues();
+        for (int i = 1; i < requests.size(); i++) {
+            List<ChatMessage> prev = requests.get(i - 1);
+            assertEquals(prev, requests.get(i).subList(0, prev.size()));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testExecute_ActionArray_ShouldRunConcurrentlyAndReturnOneObservation() {
+        // Given: 两个搜索都开始后才能返回，串行执行时会超时
+        CountDownLatch started = new CountDownLatch(2);
+        when(chatModel.generate(anyList()))
+                .thenReturn(response("**Thought**: 同时搜索两个页面\n**Action**:\n```json\n["
+                        + "{\"tool\": \"notionSearch\", \"parameters\": {\"query\": \"sophie\"}}, "
+                        + "{\"tool\": \"notionSearch\", \"parameters\": {\"query\": \"物理笔记\"}}"
+                        + "]\n```", null))
+                .thenReturn(response("**Thought**: 完成\n**Final Answer**: 已找到两个页面", null));
+        when(notionTools.executeTool(eq("notionSearch"), anyMap())).thenAnswer(invocation -> {
+            started.countDown();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Map<String, Object> parameters = invocation.getArgument(1);
+            return "{\"found\": true, \"title\": \"" + parameters.get("query") + "\"}";
+        });
+
+        // When
+        ReactExecutor.ReactResult result = executor.execute("查找 sophie 和物理笔记页面");
+
+        // Then: 两个观察结果按操作顺序合并为一条消息
+        ArgumentCaptor<List<ChatMessage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(chatModel, times(2)).generate(captor.capture());
+        List<ChatMessage> second = captor.getAllValues().get(1);
+        assertEquals(4, second.size());
+        assertEquals("Observation: [{\"found\":true,\"title\":\"sophie\"},{\"found\":true,\"title\":\"物理笔记\"}]",
+                ((UserMessage) second.getLast()).singleText());
+        assertEquals("已找到两个页面", result.finalAnswer());
+        assertEquals(2, registry.get(ReactExecutor.TOOL_CALLS).summary().totalAmount());
+    }
+
+    // Helper methods
+
+    private static Response<AiMessage> response(String text, Map<String, Object> metadata) {
+        return Response.from(AiMessage.from(text), null, FinishReason.STOP, metadata);
+    }
+}
@@ -0,0 +1,130 @@
+package com.learning.agent.workflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ReactHistory 单元测试
+ * 测试超过上限时较早轮次的压缩、最近轮次保持原文、token 上限和消息前缀稳定
+ */
+class ReactHistoryTest {
+
+    private static final String SYSTEM_PROMPT = "你是一个智能助手，需要通过工具调用来完成任务。";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testPrompt_OverTokenCeiling_ShouldKeepOnlyKeyFieldsOfOlderTurns() {
+        // Given
+        ReactHistory history = new ReactHistory(objectMapper, SYSTEM_PROMPT, "在 sophie 页面下创建笔记", 1, 800, 1500);
+        String searchObservation = "{\"found\": true, \"id\": \"page-1\", \"title\": \"sophie\", "
+                + "\"properties\": {\"raw\": \"" + "很长的属性内容".repeat(50) + "\"}}";
+
+        // When
+        history.add(output("需要先搜索 sophie 页面", "notionSearch", "{\"query\": \"sophie\"}"), searchObservation);
+        history.add(output("创建页面", "notionCreatePage",
+                "{\"parentPageId\": \"page-1\", \"title\": \"测试\", \"content\": \"" + "笔记正文".repeat(100) + "\"}"),
+                "{\"id\": \"page-2\", \"url\": \"https://notion.so/page-2\"}");
+        String prompt = text(history.messages());
+
+        // Then: 第一轮压缩为关键字段，最近一轮保持原文
+        assertTrue(prompt.startsWith("Task: 在 sophie 页面下创建笔记"));
+        assertTrue(prompt.contains("Thought: 需要先搜索 sophie 页面"));
+        assertTrue(prompt.contains("Observation: {\"id\":\"page-1\",\"title\":\"sophie\",\"found\":true}"));
+        assertFalse(prompt.contains("很长的属性内容"));
+        assertTrue(prompt.contains("笔记正文".repeat(100)));
+        assertTrue(prompt.contains("Observation: {\"id\": \"page-2\", \"url\": \"https://notion.so/page-2\"}"));
+    }
+
+    @Test
+    void testAdd_OverTokenCeiling_ShouldOmitOldestTurnsAndKeepLatest() {
+        // Given
+        ReactHistory history = new ReactHistory(objectMapper, SYSTEM_PROMPT, "整理笔记", 2, 300, 100);
+
+        // When
+        for (int i = 1; i <= 6; i++) {
+            history.add(output("第" + i + "轮" + "思考".repeat(30), "notionSearch", "{\"query\": \"q" + i + "\"}"),
+                    "{\"id\": \"page-" + i + "\", \"content\": \"" + "内容".repeat(200) + "\"}");
+        }
+        String prompt = text(history.messages());
+
+        // Then
+        assertTrue(history.tokens() <= 300);
+        assertTrue(history.omittedTurns() > 0);
+        assertTrue(prompt.contains("已省略更早的 " + history.omittedTurns() + " 轮操作"));
+        assertTrue(prompt.contains("第6轮"));
+        assertFalse(prompt.contains("第1轮"));
+    }
+
+    @Test
+    void testMessages_TurnsBeyondRecentWindow_ShouldOnlyAppend() {
+        // Given: 超过 recentTurns 的轮次在未超过上限时不会被改写
+        ReactHistory history = new ReactHistory(objectMapper, SYSTEM_PROMPT, "整理笔记", 2, 12000, 1500);
+        List<List<ChatMessage>> requests = new ArrayList<>();
+        requests.add(history.messages());
+
+        // When
+        for (int i = 1; i <= 5; i++) {
+            history.add(output("第" + i + "轮", "notionSearch", "{\"query\": \"q" + i + "\"}"),
+                    "{\"found\": true, \"id\": \"page-" + i + "\", \"content\": \"" + "内容".repeat(50) + "\"}");
+            requests.add(history.messages());
+        }
+
+        // Then: 系统提示和任务在前，之后交替出现模型输出和观察结果，每次请求都以上一次的全部消息为前缀
+        List<ChatMessage> last = requests.getLast();
+        assertInstanceOf(SystemMessage.class, last.get(0));
+        assertInstanceOf(UserMessage.class, last.get(1));
+        assertInstanceOf(AiMessage.class, last.get(2));
+        assertInstanceOf(UserMessage.class, last.get(3));
+        assertEquals(12, last.size());
+        for (int i = 1; i < requests.size(); i++) {
+            List<ChatMessage> prev = requests.get(i - 1);
+            assertEquals(prev, requests.get(i).subList(0, prev.size()));
+        }
+        assertTrue(history.reusedPrefixTokens() > 0);
+    }
+
+    @Test
+    void testMessages_AfterCompaction_ShouldAppendAgainUntilNextCompaction() {
+        // Given: 第 3 轮超过上限触发一次压缩
+        ReactHistory history = new ReactHistory(objectMapper, SYSTEM_PROMPT, "整理笔记", 2, 700, 1500);
+        for (int i = 1; i <= 3; i++) {
+            history.add(output("第" + i + "轮", "notionSearch", "{\"query\": \"q" + i + "\"}"),
+                    "{\"id\": \"page-" + i + "\", \"content\": \"" + "内容".repeat(100) + "\"}");
+        }
+        List<ChatMessage> compacted = history.messages();
+
+        // When
+        history.add(output("第4轮", "notionSearch", "{\"query\": \"q4\"}"), "{\"id\": \"page-4\"}");
+        List<ChatMessage> next = history.messages();
+
+        // Then: 压缩块和之后的轮次保持不变，新的一轮追加在末尾
+        assertTrue(text(compacted).contains("Observation: {\"id\":\"page-1\"}"));
+        assertEquals(compacted, next.subList(0, compacted.size()));
+        assertEquals(compacted.size() + 2, next.size());
+    }
+
+    // Helper methods
+
+    private static String text(List<ChatMessage> messages) {
+        return messages.stream()
+                .skip(1)
+                .map(message -> message instanceof AiMessage ai ? ai.text() : ((UserMessage) message).singleText())
+                .collect(Collectors.joining("\n\n"));
+    }
+
+    private static String output(String thought, String tool, String parameters) {
+        return "**Thought**: " + thought + "\n**Action**:\n```json\n{\"tool\": \"" + tool + "\", \"parameters\": "
+                + parameters + "}\n```";
+    }
+}
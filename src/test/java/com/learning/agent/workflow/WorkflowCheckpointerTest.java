@@ -0,0 +1,184 @@
+package com.learning.agent.workflow;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.entity.WorkflowCheckpoint;
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import com.learning.agent.repository.WorkflowCheckpointRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * WorkflowCheckpointer 单元测试
+ * 测试状态快照的保存与恢复
+ */
+@ExtendWith(MockitoExtension.class)
+class WorkflowCheckpointerTest {
+
+    @Mock
+    private WorkflowCheckpointRepository repository;
+
+    private WorkflowCheckpointer checkpointer;
+
+    @BeforeEach
+    void setUp() {
+        checkpointer = new WorkflowCheckpointer(repository, new ObjectMapper(), true, 24);
+    }
+
+    @Test
+    void testSaveAndLoad_ShouldRestoreStateFromSnapshot() {
+        // Given
+        AgentState state = createState();
+        state.getTaskOutcomes().put("T1", new TaskOutcome("T1", List.of("任务1完成"), List.of()));
+        state.addCreatedPage("page-1", "https://notion.so/page1");
+
+        // When
+        checkpointer.save(state, "execution:T1");
+
+        // Then
+        ArgumentCaptor<String> json = ArgumentCaptor.forClass(String.class);
+        verify(repository).upsert(eq("req-1"), eq("execution:T1"), eq(WorkflowCheckpoint.STATUS_RUNNING),
+                json.capture(), any(LocalDateTime.class));
+
+        WorkflowCheckpoint entity = WorkflowCheckpoint.builder()
+                .requestId("req-1")
+                .lastNode("execution:T1")
+                .status(WorkflowCheckpoint.STATUS_RUNNING)
+                .stateJson(json.getValue())
+                .build();
+        when(repository.findById("req-1")).thenReturn(Optional.of(entity));
+
+        WorkflowCheckpointer.Checkpoint checkpoint = checkpointer.load("req-1").orElseThrow();
+        AgentState restored = checkpoint.state();
+        assertFalse(checkpoint.isCompleted());
+        assertEquals("execution:T1", checkpoint.lastNode());
+        assertEquals("req-1", restored.getRequestId());
+        assertEquals(2, restored.getTasks().size());
+        assertEquals("识别文本", restored.getOcrResult().getPlainText());
+        assertEquals(List.of("任务1完成"), restored.getTaskOutcomes().get("T1").contents());
+        assertEquals(List.of("page-1"), restored.getCreatedPageIds());
+    }
+
+    @Test
+    void testSave_WithoutRequestId_ShouldSkip() {
+        // Given
+        AgentState state = createState();
+        state.setRequestId(null);
+
+        // When
+        checkpointer.save(state, "ocr");
+
+        // Then
+        verify(repository, never()).upsert(anyString(), anyString(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void testSave_SlowWriteForOneRequest_ShouldNotBlockOtherRequests() throws Exception {
+        // Given: req-1 的写入卡住
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if ("req-1".equals(invocation.getArgument(0))) {
+                writing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(repository).upsert(anyString(), anyString(), anyString(), anyString(), any());
+        AgentState slow = createState();
+        AgentState other = createState();
+        other.setRequestId("req-2");
+
+        // When
+        Thread first = Thread.ofVirtual().start(() -> checkpointer.save(slow, "ocr"));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        checkpointer.save(other, "ocr");
+
+        // Then: req-2 在 req-1 写入完成前就已保存
+        verify(repository).upsert(eq("req-2"), eq("ocr"), eq(WorkflowCheckpoint.STATUS_RUNNING), anyString(),
+                any(LocalDateTime.class));
+        release.countDown();
+        first.join();
+    }
+
+    @Test
+    void testSave_OlderSnapshotFinishingLast_ShouldNotOverwriteNewer() throws Exception {
+        // Given: 第一次保存的快照在序列化时暂停，期间同一请求的第二次保存先写入
+        CountDownLatch serializing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ObjectMapper pausing = new ObjectMapper() {
+            @Override
+            public String writeValueAsString(Object value) throws JsonProcessingException {
+                if (value instanceof AgentStateSnapshot snapshot && snapshot.currentTaskIndex() == 0) {
+                    serializing.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.writeValueAsString(value);
+            }
+        };
+        WorkflowCheckpointer pausingCheckpointer = new WorkflowCheckpointer(repository, pausing, true, 24);
+        AgentState state = createState();
+
+        // When
+        Thread first = Thread.ofVirtual().start(() -> pausingCheckpointer.save(state, "execution:T1"));
+        assertTrue(serializing.await(5, TimeUnit.SECONDS));
+        state.setCurrentTaskIndex(1);
+        pausingCheckpointer.save(state, "execution:T2");
+        release.countDown();
+        first.join();
+
+        // Then: 较早的快照不再覆盖较新的快照
+        verify(repository).upsert(eq("req-1"), eq("execution:T2"), eq(WorkflowCheckpoint.STATUS_RUNNING),
+                anyString(), any(LocalDateTime.class));
+        verify(repository, never()).upsert(eq("req-1"), eq("execution:T1"), anyString(), anyString(), any());
+    }
+
+    // Helper methods
+
+    private AgentState createState() {
+        List<LearningTask> tasks = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            tasks.add(LearningTask.builder()
+                    .taskId("T" + i)
+                    .type(LearningTaskType.EXECUTION)
+                    .description("任务 " + i)
+                    .priority(i)
+                    .build());
+        }
+        return AgentState.builder()
+                .requestId("req-1")
+                .imagePath("")
+                .learnerProfile(LearnerProfile.defaultProfile("test-learner-id"))
+                .ocrResult(OcrStructuredResult.builder().success(true).plainText("识别文本").build())
+                .tasks(tasks)
+                .userQuery("测试")
+                .currentTaskIndex(0)
+                .generatedContents(new ArrayList<>())
+                .createdPageIds(new ArrayList<>())
+                .createdPages(new ArrayList<>())
+                .build();
+    }
+}
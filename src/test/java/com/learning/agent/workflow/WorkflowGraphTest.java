@@ -0,0 +1,130 @@
+package com.learning.agent.workflow;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * WorkflowGraph 单元测试
+ * 测试图的编译校验、条件分支、循环和边计数
+ */
+class WorkflowGraphTest {
+
+    private SimpleMeterRegistry registry;
+    private WorkflowMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new WorkflowMetrics(registry, true);
+    }
+
+    @Test
+    void testRun_BranchAndLoop_ShouldFollowRoutesAndCountEdges() {
+        // Given: START -> (a | b)，b 循环执行直到 3 次
+        List<String> visited = new ArrayList<>();
+        WorkflowGraph graph = WorkflowGraph.builder()
+                .node("a", state -> visit(visited, "a", state))
+                .node("b", state -> visit(visited, "b", state))
+                .conditionalEdge(WorkflowGraph.START,
+                        state -> state.getUserQuery().isEmpty() ? "a" : "b", "a", "b")
+                .edge("a", WorkflowGraph.END)
+                .conditionalEdge("b",
+                        state -> state.getCurrentTaskIndex() < 3 ? "b" : WorkflowGraph.END, "b", WorkflowGraph.END)
+                .compile(metrics);
+
+        // When
+        AgentState result = graph.run(state("循环"), WorkflowGraph.Observer.NOOP);
+
+        // Then
+        assertEquals(List.of("b", "b", "b"), visited);
+        assertEquals(3, result.getCurrentTaskIndex());
+        assertEquals(2.0, edgeCount("b", "b"));
+        assertEquals(1.0, edgeCount("b", WorkflowGraph.END));
+        assertEquals(0.0, edgeCount(WorkflowGraph.START, "a"));
+    }
+
+    @Test
+    void testRun_ShouldNotifyObserverAfterEachNode() {
+        // Given
+        WorkflowGraph graph = WorkflowGraph.builder()
+                .node("a", state -> state)
+                .node("b", state -> state)
+                .edge(WorkflowGraph.START, "a")
+                .edge("a", "b")
+                .edge("b", WorkflowGraph.END)
+                .compile(metrics);
+        List<String> completed = new ArrayList<>();
+
+        // When
+        graph.run(state(""), new WorkflowGraph.Observer() {
+            @Override
+            public void onNodeCompleted(String node, AgentState state) {
+                completed.add(node);
+            }
+        });
+
+        // Then
+        assertEquals(List.of("a", "b"), completed);
+    }
+
+    @Test
+    void testCompile_InvalidGraph_ShouldFail() {
+        // 缺少出边
+        assertThrows(IllegalStateException.class, () -> WorkflowGraph.builder()
+                .node("a", state -> state)
+                .edge(WorkflowGraph.START, "a")
+                .compile(metrics));
+
+        // 指向未声明的节点
+        assertThrows(IllegalStateException.class, () -> WorkflowGraph.builder()
+                .node("a", state -> state)
+                .edge(WorkflowGraph.START, "a")
+                .edge("a", "missing")
+                .compile(metrics));
+    }
+
+    @Test
+    void testRun_UndeclaredRouteOrEndlessLoop_ShouldFail() {
+        // Given
+        WorkflowGraph undeclared = WorkflowGraph.builder()
+                .node("a", state -> state)
+                .edge(WorkflowGraph.START, "a")
+                .conditionalEdge("a", state -> "b", WorkflowGraph.END)
+                .compile(metrics);
+        WorkflowGraph endless = WorkflowGraph.builder()
+                .node("a", state -> state)
+                .edge(WorkflowGraph.START, "a")
+                .edge("a", "a")
+                .maxSteps(10)
+                .compile(metrics);
+
+        // When / Then
+        assertThrows(IllegalStateException.class, () -> undeclared.run(state(""), WorkflowGraph.Observer.NOOP));
+        assertThrows(IllegalStateException.class, () -> endless.run(state(""), WorkflowGraph.Observer.NOOP));
+    }
+
+    // Helper methods
+
+    private double edgeCount(String from, String to) {
+        return registry.get(WorkflowMetrics.EDGE_COUNTER).tags("from", from, "to", to).counter().count();
+    }
+
+    private static AgentState visit(List<String> visited, String node, AgentState state) {
+        visited.add(node);
+        state.setCurrentTaskIndex(state.getCurrentTaskIndex() + 1);
+        return state;
+    }
+
+    private static AgentState state(String query) {
+        return AgentState.builder()
+                .userQuery(query)
+                .currentTaskIndex(0)
+                .build();
+    }
+}
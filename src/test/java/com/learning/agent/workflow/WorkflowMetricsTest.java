@@ -0,0 +1,123 @@
+package com.learning.agent.workflow;
+
+import com.learning.agent.dto.client.OcrStructuredResult;
+import com.learning.agent.model.LearnerProfile;
+import com.learning.agent.model.LearningTask;
+import com.learning.agent.model.LearningTaskType;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * WorkflowMetrics 单元测试
+ * 测试节点耗时指标的标签和结果分类
+ */
+class WorkflowMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private WorkflowMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new WorkflowMetrics(registry, true);
+    }
+
+    @Test
+    void testInstrument_ExecutionNode_ShouldTagTaskTypeModeAndOutcome() {
+        // Given
+        WorkflowNode node = state -> {
+            state.addGeneratedContent("完成");
+            state.addCreatedPage("page-1", "https://notion.so/page1");
+            state.moveToNextTask();
+            return state;
+        };
+        AgentState state = createState(LearningTaskType.ORGANIZATION);
+
+        // When
+        metrics.instrument(WorkflowMetrics.NODE_EXECUTION, node).process(state);
+
+        // Then
+        Timer timer = registry.find(WorkflowMetrics.NODE_TIMER)
+                .tags("node", "execution", "task.type", "organization", "mode", "react", "outcome", "success")
+                .timer();
+        assertNotNull(timer);
+        assertEquals(1, timer.count());
+        assertEquals(1.0, registry.get(WorkflowMetrics.PAGES_COUNTER).counter().count());
+    }
+
+    @Test
+    void testInstrument_FailedTask_ShouldRecordFailedOutcome() {
+        // Given: 执行节点捕获异常后生成失败内容
+        WorkflowNode node = state -> {
+            state.addGeneratedContent(WorkflowNodes.TASK_FAILURE_PREFIX + "timeout");
+            state.moveToNextTask();
+            return state;
+        };
+
+        // When
+        metrics.instrument(WorkflowMetrics.NODE_EXECUTION, node).process(createState(LearningTaskType.ANALYSIS));
+
+        // Then
+        assertEquals(1, registry.get(WorkflowMetrics.NODE_TIMER).tag("outcome", "failed").timer().count());
+    }
+
+    @Test
+    void testInstrument_NodeThrows_ShouldRecordErrorAndRethrow() {
+        // Given
+        WorkflowNode node = state -> {
+            throw new IllegalStateException("规划执行失败");
+        };
+        AgentState state = createState(LearningTaskType.ANALYSIS);
+        state.setTasks(new ArrayList<>());
+
+        // When / Then
+        assertThrows(IllegalStateException.class,
+                () -> metrics.instrument(WorkflowMetrics.NODE_PLANNING, node).process(state));
+        Timer timer = registry.get(WorkflowMetrics.NODE_TIMER)
+                .tags("node", "planning", "task.type", "none", "mode", "none", "outcome", "error")
+                .timer();
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    void testInstrument_ExistingOcrResult_ShouldNotRecordAgain() {
+        // Given
+        AgentState state = createState(LearningTaskType.ANALYSIS);
+        state.setOcrResult(OcrStructuredResult.empty());
+
+        // When
+        metrics.instrument(WorkflowMetrics.NODE_OCR, s -> s).process(state);
+
+        // Then: 预先完成的 OCR 已在 runOcr 中记录过一次
+        assertTrue(registry.find(WorkflowMetrics.NODE_TIMER).tags("node", "ocr").timers().isEmpty());
+    }
+
+    // Helper methods
+
+    private static AgentState createState(LearningTaskType type) {
+        List<LearningTask> tasks = new ArrayList<>();
+        tasks.add(LearningTask.builder()
+                .taskId("T1")
+                .type(type)
+                .description("任务 1")
+                .priority(1)
+                .build());
+        return AgentState.builder()
+                .imagePath("")
+                .learnerProfile(LearnerProfile.defaultProfile("test-learner-id"))
+                .tasks(tasks)
+                .userQuery("测试")
+                .currentTaskIndex(0)
+                .generatedContents(new ArrayList<>())
+                .createdPageIds(new ArrayList<>())
+                .createdPages(new ArrayList<>())
+                .build();
+    }
+}
@@ -7,8 +7,12 @@ import com.learning.agent.dto.client.OcrStructuredResult;
 import com.learning.agent.model.*;
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,6 +20,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -34,6 +39,9 @@ class WorkflowNodesTest {
     @Mock
     private ChatLanguageModel planningChatModel;
 
+    @Mock
+    private StreamingChatLanguageModel planningStreamingChatModel;
+
     @Mock
     private ChatLanguageModel executionChatModel;
 
@@ -51,11 +59,15 @@ class WorkflowNodesTest {
         workflowNodes = new WorkflowNodes(
                 ocrClient,
                 planningChatModel,
+                planningStreamingChatModel,
                 executionChatModel,
                 notionToolService,
                 reactExecutor,
                 objectMapper,
-                true  // useReactMode
+                new ExecutionContextAssembler(new SimpleMeterRegistry(), 6000, 1200, 3000),
+                new OcrSections(new SimpleMeterRegistry(), true, 3000, 1500, 6),
+                true,  // useReactMode
+                true   // streamingPlanning
         );
     }
 
@@ -206,6 +218,91 @@ class WorkflowNodesTest {
         verify(planningChatModel, times(1)).generate(any(ChatMessage.class), any(ChatMessage.class));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStreamPlan_ShouldEmitEachTaskBeforeOutputCompletes() {
+        // Given: 第一段输出包含完整的 T1 和半个 T2
+        AgentState state = createTestState();
+        state.setOcrResult(OcrStructuredResult.empty());
+        String part1 = "```json\n[{\"taskId\": \"T1\", \"type\": \"execution\", \"description\": \"整理 {公式}\", "
+                + "\"dependsOn\": []}, {\"taskId\": \"T2\", \"type\": \"exec";
+        String part2 = "ution\", \"description\": \"基于 T1 新建笔记\", \"dependsOn\": [\"T1\"]}]\n```";
+        List<String> events = new ArrayList<>();
+        doAnswer(invocation -> {
+            StreamingResponseHandler<AiMessage> handler = invocation.getArgument(1);
+            handler.onNext(part1);
+            events.add("part1-done");
+            handler.onNext(part2);
+            handler.onComplete(Response.from(AiMessage.from(part1 + part2)));
+            return null;
+        }).when(planningStreamingChatModel).generate(anyList(), any(StreamingResponseHandler.class));
+
+        // When
+        List<LearningTask> tasks = workflowNodes.streamPlan(state, task -> events.add(task.getTaskId()));
+
+        // Then
+        assertEquals(List.of("T1", "part1-done", "T2"), events);
+        assertEquals(2, tasks.size());
+        assertEquals("整理 {公式}", tasks.getFirst().getDescription());
+        assertEquals(List.of("T1"), tasks.get(1).getDependsOn());
+        verify(planningChatModel, never()).generate(any(ChatMessage.class), any(ChatMessage.class));
+    }
+
+    @Test
+    void testStreamPlan_LongOcrContent_ShouldPlanSectionsAndMerge() {
+        // Given: OCR 内容超过阈值，按段落切成两段；第二段重复规划了第一段的任务
+        AgentState state = createTestState();
+        String mechanics = "力学" + "受力分析".repeat(500);
+        String electricity = "电磁学" + "电场强度".repeat(500);
+        state.setOcrResult(OcrStructuredResult.builder()
+                .success(true)
+                .plainText(mechanics + "\n\n" + electricity)
+                .markdownText("")
+                .build());
+        when(planningChatModel.generate(any(ChatMessage.class), any(ChatMessage.class))).thenAnswer(invocation -> {
+            String input = ((UserMessage) invocation.getArgument(1)).singleText();
+            String tasks = input.contains("index=\"1\"")
+                    ? "[{\"taskId\": \"T1\", \"type\": \"execution\", \"description\": \"整理力学部分的笔记\"}]"
+                    : "[{\"taskId\": \"T1\", \"type\": \"execution\", \"description\": \"整理电磁学部分的笔记\"}, "
+                    + "{\"taskId\": \"T2\", \"type\": \"execution\", \"description\": \"整理力学部分的笔记\"}]";
+            return Response.from(AiMessage.from(tasks));
+        });
+        List<String> emitted = new ArrayList<>();
+
+        // When
+        List<LearningTask> tasks = workflowNodes.streamPlan(state, task -> emitted.add(task.getTaskId()));
+
+        // Then: 两段各调用一次规划模型，合并后去掉重复任务并重新编号
+        assertEquals(List.of("T1", "T2"), emitted);
+        assertEquals(2, tasks.size());
+        assertEquals("整理力学部分的笔记", tasks.getFirst().getDescription());
+        assertEquals("整理电磁学部分的笔记", tasks.get(1).getDescription());
+        verify(planningChatModel, times(2)).generate(any(ChatMessage.class), any(ChatMessage.class));
+        verifyNoInteractions(planningStreamingChatModel);
+    }
+
+    @Test
+    void testExecutionNode_DeferredWrite_ShouldOnlyGenerateContent() {
+        // Given
+        AgentState state = createTestState();
+        state.setTasks(new ArrayList<>(List.of(LearningTask.builder()
+                .taskId("T1")
+                .type(LearningTaskType.EXECUTION)
+                .description("整理复习要点")
+                .deferWrite(true)
+                .build())));
+        when(executionChatModel.generate(any(ChatMessage.class), any(ChatMessage.class)))
+                .thenReturn(Response.from(AiMessage.from("### 复习要点")));
+
+        // When
+        AgentState result = workflowNodes.createExecutionNode().process(state);
+
+        // Then: 不调用 Notion 工具，内容留给合并写入节点
+        assertEquals(List.of("### 复习要点"), result.getGeneratedContents());
+        assertTrue(result.getCreatedPages().isEmpty());
+        verifyNoInteractions(reactExecutor);
+    }
+
     @Test
     void testExecutionNode_ShouldCreateExecutionNode() {
         // When